@@ -0,0 +1,44 @@
+package cs2110;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JMH benchmarks of this project with the GC profiler, which adds the allocation rate
+ * ("gc.alloc.rate.norm", in bytes per operation) to each benchmark's score.
+ * <p>
+ * The benchmarks live in the "bench" source folder and need jmh-core and
+ * jmh-generator-annprocess (see a4.iml), whose annotation processor generates the benchmark
+ * harness when they are compiled.  From the a4 directory, with those jars (and their
+ * dependencies jopt-simple and commons-math3) in `$JMH`:
+ * <pre>
+ * javac -cp lib/commons-csv-1.10.0.jar:$JMH -d out src/cs2110/*.java bench/cs2110/*.java
+ * javac --add-modules jdk.incubator.vector -cp out -d out vector/cs2110/*.java
+ * java -cp out:lib/commons-csv-1.10.0.jar:$JMH cs2110.BenchmarkMain [&lt;benchmark_regex&gt;]
+ * </pre>
+ * The forked benchmark JVMs are started with `--add-modules jdk.incubator.vector`, so that the
+ * vector batch backends use the Vector API if the "vector" source folder was compiled.
+ * Benchmarks should be run with nothing else running, not through a debugger.
+ */
+public class BenchmarkMain {
+
+    /**
+     * Run the benchmarks whose names match the regular expression given as the program
+     * argument, or all of them if none is given; e.g. "EvalBenchmark.eval" or "CsvBenchmark".
+     */
+    public static void main(String[] args) throws RunnerException {
+        if (args.length > 1) {
+            System.err.println("Usage: java BenchmarkMain [<benchmark_regex>]");
+            System.exit(1);
+        }
+        Options options = new OptionsBuilder()
+                .include(args.length > 0 ? args[0] : "cs2110\\..*Benchmark")
+                .addProfiler(GCProfiler.class)
+                .jvmArgsAppend("--add-modules", "jdk.incubator.vector")
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,68 @@
+package cs2110;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVPrinter;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures evaluating a whole spreadsheet with `CsvEvaluator.evaluateCsv()`, from parsing its
+ * text to printing its evaluated cells.  Scores are in cells per second.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CsvBenchmark {
+
+    /**
+     * The shape of the spreadsheet: a column of numbers followed by formula columns, each
+     * referring to cells to its left and in the row above.
+     */
+    static final int ROWS = 2000;
+    static final int COLUMNS = 8;
+    static final int CELLS = ROWS * COLUMNS;
+
+    private String sheet;
+
+    @Setup
+    public void setUp() {
+        StringBuilder text = new StringBuilder();
+        for (int row = 1; row <= ROWS; row++) {
+            text.append(row * 0.5);
+            for (int col = 2; col <= COLUMNS; col++) {
+                String left = CsvEvaluator.colToLetters(col - 1) + row;
+                String above = CsvEvaluator.colToLetters(col) + Math.max(1, row - 1);
+                text.append(",=").append(left).append(' ');
+                text.append(row == 1 ? "2" : above).append(" + 3 / ").append(left).append(" *");
+            }
+            text.append('\n');
+        }
+        sheet = text.toString();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(CELLS)
+    public void evaluateCsv() throws IOException {
+        try (CSVParser parser = CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(sheet))) {
+            CSVPrinter printer = CsvEvaluator.SIMPLIFIED_CSV.print(Writer.nullWriter());
+            CsvEvaluator.evaluateCsv(parser, printer);
+            printer.flush();
+        }
+    }
+}
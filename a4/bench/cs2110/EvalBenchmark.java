@@ -0,0 +1,108 @@
+package cs2110;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures interpreting expression trees with `Expression.eval()` and a `MapVarTable`, and
+ * optimizing them with some variables left free, over trees of different shapes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class EvalBenchmark {
+
+    /**
+     * The number of operations in every tree.
+     */
+    static final int OPERATIONS = 256;
+
+    /**
+     * The shape of the tree: "deep" is a chain of operations each applied to the previous one,
+     * "wide" is a balanced tree, "variables" is a balanced tree whose leaves are all distinct
+     * variables, and "pow" is a chain of exponentiations and math functions.
+     */
+    @Param({"deep", "wide", "variables", "pow"})
+    public String shape;
+
+    private Expression expr;
+
+    /**
+     * Values for every variable of `expr`, and for only half of them.
+     */
+    private MapVarTable vars;
+    private MapVarTable halfVars;
+
+    @Setup
+    public void setUp() throws IncompleteRpnException, UndefinedFunctionException {
+        StringBuilder formula = new StringBuilder();
+        switch (shape) {
+            case "deep" -> {
+                formula.append("x");
+                for (int i = 0; i < OPERATIONS; i++) {
+                    formula.append(i % 2 == 0 ? " 1.0001 *" : " y +");
+                }
+            }
+            case "wide" -> balanced(formula, 0, OPERATIONS + 1, false);
+            case "variables" -> balanced(formula, 0, OPERATIONS + 1, true);
+            case "pow" -> {
+                formula.append("x");
+                for (int i = 0; i < OPERATIONS; i++) {
+                    formula.append(i % 2 == 0 ? " 1.01 ^" : " y ^ abs() sqrt()");
+                }
+            }
+            default -> throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+        expr = RpnParser.parse(formula.toString(), UnaryFunction.mathDefs());
+
+        vars = new MapVarTable();
+        halfVars = new MapVarTable();
+        int i = 0;
+        for (String name : expr.dependencies()) {
+            vars.set(name, 1 + i * 0.001);
+            if (i % 2 == 0) {
+                halfVars.set(name, 1 + i * 0.001);
+            }
+            i++;
+        }
+    }
+
+    /**
+     * Append to `formula` a balanced tree of additions and multiplications over the leaves
+     * numbered `first` to `first + count` (exclusive), which are distinct variables if `distinct`,
+     * or else cycle through "x", "y", and a constant.  Requires `count >= 1`.
+     */
+    private static void balanced(StringBuilder formula, int first, int count, boolean distinct) {
+        if (count == 1) {
+            formula.append(formula.length() == 0 ? "" : " ").append(distinct ? "v" + first
+                    : first % 3 == 0 ? "x" : first % 3 == 1 ? "y" : "0.5");
+            return;
+        }
+        balanced(formula, first, count / 2, distinct);
+        balanced(formula, first + count / 2, count - count / 2, distinct);
+        formula.append(first % 2 == 0 ? " +" : " *");
+    }
+
+    @Benchmark
+    public double eval() throws UnboundVariableException {
+        return expr.eval(vars);
+    }
+
+    @Benchmark
+    public Expression optimize() {
+        return expr.optimize(halfVars);
+    }
+}
@@ -0,0 +1,73 @@
+package cs2110;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures tokenizing and parsing RPN formulas, from a typical spreadsheet formula to one with
+ * tens of thousands of tokens.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    /**
+     * The formula to parse: "short" is a formula from pizza.csv, "huge" is a sum of 10,000
+     * products of variables, constants, and function applications.
+     */
+    @Param({"short", "huge"})
+    public String size;
+
+    private String formula;
+    private Map<String, UnaryFunction> defs;
+
+    @Setup
+    public void setUp() {
+        defs = UnaryFunction.mathDefs();
+        formula = size.equals("short") ? "B7 B2 B3 - * B4 * B5 * B6 * 1 B5 + /"
+                : hugeFormula(10_000);
+    }
+
+    /**
+     * Return a formula summing `terms` products such as "x3 1.5 * sin()".
+     */
+    static String hugeFormula(int terms) {
+        StringBuilder formula = new StringBuilder("0");
+        for (int i = 0; i < terms; i++) {
+            formula.append(" x").append(i % 50).append(' ').append(i * 0.25).append(" *");
+            if (i % 7 == 0) {
+                formula.append(" sin()");
+            }
+            formula.append(" +");
+        }
+        return formula.toString();
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole blackhole) {
+        for (Token token : Token.tokenizer(formula)) {
+            blackhole.consume(token);
+        }
+    }
+
+    @Benchmark
+    public Expression parse() throws IncompleteRpnException, UndefinedFunctionException {
+        return RpnParser.parse(formula, defs);
+    }
+}
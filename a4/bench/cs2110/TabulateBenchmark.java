@@ -0,0 +1,52 @@
+package cs2110;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures tabulating an expression at a million evenly spaced points with `Tabulator`, written
+ * as text or binary to a stream that discards it, so that the time is that of evaluating and
+ * formatting the table.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TabulateBenchmark {
+
+    /**
+     * The number of points tabulated.
+     */
+    static final int POINTS = 1_000_000;
+
+    @Param({"TEXT", "BINARY"})
+    public Tabulator.Format format;
+
+    private Expression expr;
+    private Tabulator tabulator;
+
+    @Setup
+    public void setUp() throws IncompleteRpnException, UndefinedFunctionException {
+        expr = RpnParser.parse("x x * 3 x * - 2 + sqrt()", UnaryFunction.mathDefs());
+        tabulator = new Tabulator(new BatchEvaluator());
+    }
+
+    @Benchmark
+    public void tabulate() throws IOException, UnboundVariableException {
+        tabulator.tabulate(expr, "x", 0, 10, POINTS, OutputStream.nullOutputStream(), format);
+    }
+}
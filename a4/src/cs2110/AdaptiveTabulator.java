@@ -0,0 +1,314 @@
+package cs2110;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Tabulates an expression of one variable with samples concentrated where it is not close to
+ * linear.  Tabulation starts from evenly spaced samples.  The midpoint of every interval between
+ * neighboring samples is then evaluated, and an interval is split at its midpoint if the value
+ * there differs from the average of its ends by more than a tolerance, or if some but not all of
+ * the three values are finite (as near a pole or the edge of a function's domain).  The halves
+ * are refined in the same way, one level at a time, until no interval needs splitting, intervals
+ * become too narrow, or a budget of evaluations is spent.
+ * <p>
+ * The midpoints of a level are evaluated in parallel, in blocks, on a ForkJoinPool.  When the
+ * budget does not cover a whole level, the intervals whose parents deviated most are refined
+ * first.  Samples therefore do not depend on the number of threads.
+ */
+public class AdaptiveTabulator {
+
+    /**
+     * The number of evaluations allowed if no budget is given.
+     */
+    public static final int DEFAULT_BUDGET = 100_000;
+
+    /**
+     * The number of times an initial interval may be halved.
+     */
+    static final int MAX_DEPTH = 48;
+
+    /**
+     * The number of midpoints evaluated by a single task.
+     */
+    static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Evaluates the expression at each block of midpoints.
+     */
+    private final BatchEvaluator evaluator;
+
+    /**
+     * The pool that blocks of midpoints are evaluated on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a tabulator evaluating blocks of samples with `evaluator` on `pool`.
+     */
+    public AdaptiveTabulator(BatchEvaluator evaluator, ForkJoinPool pool) {
+        assert evaluator != null;
+        assert pool != null;
+
+        this.evaluator = evaluator;
+        this.pool = pool;
+    }
+
+    /**
+     * An interval between two samples and, once it has been evaluated, its midpoint and halves.
+     */
+    private static class Interval {
+
+        /**
+         * The ends of this interval and the values there.
+         */
+        final double lo;
+        final double fLo;
+        final double hi;
+        final double fHi;
+
+        /**
+         * How far the value at the midpoint of this interval's parent was from linear, used to
+         * decide which intervals to refine first.
+         */
+        final double priority;
+
+        /**
+         * The number of times an initial interval was halved to make this one.
+         */
+        final int depth;
+
+        /**
+         * The midpoint of this interval, and the value there once `evaluated` is true.
+         */
+        final double mid;
+        double fMid;
+        boolean evaluated;
+
+        /**
+         * The halves of this interval, or null if it was not split.
+         */
+        Interval left;
+        Interval right;
+
+        Interval(double lo, double fLo, double hi, double fHi, double priority, int depth) {
+            this.lo = lo;
+            this.fLo = fLo;
+            this.hi = hi;
+            this.fHi = fHi;
+            this.priority = priority;
+            this.depth = depth;
+            mid = lo + (hi - lo) / 2;
+        }
+
+        /**
+         * Return whether this interval has a representable point strictly inside it.
+         */
+        boolean divisible() {
+            return lo < mid && mid < hi;
+        }
+
+        /**
+         * Return how far the value at the midpoint is from the average of the values at the ends:
+         * infinite if some but not all of them are finite, and 0 if none are.  Requires that the
+         * midpoint has been evaluated.
+         */
+        double deviation() {
+            int finite = (Double.isFinite(fLo) ? 1 : 0) + (Double.isFinite(fMid) ? 1 : 0)
+                    + (Double.isFinite(fHi) ? 1 : 0);
+            if (finite == 0) {
+                return 0;
+            }
+            if (finite < 3) {
+                return Double.POSITIVE_INFINITY;
+            }
+            double deviation = Math.abs(fMid - (fLo / 2 + fHi / 2));
+            // Values near the limit of the double range can overflow the estimate.
+            return Double.isNaN(deviation) ? Double.POSITIVE_INFINITY : deviation;
+        }
+    }
+
+    /**
+     * Write samples of `expr` for values of `var` from `lo` to `hi` to `out` in `format` (see
+     * `Tabulator.Format`), in increasing order of `var`.  Sampling starts with `n` evenly spaced
+     * values (see `Tabulator.abscissa()`) and refines intervals whose midpoint deviates from
+     * linear by more than `tolerance`, evaluating `expr` at most `budget` times in all.  Return
+     * the number of samples written.  Throws UnboundVariableException, before writing anything,
+     * if `expr` depends on a variable other than `var`.  `out` is flushed but not closed.
+     * Requires `lo < hi`, `tolerance >= 0`, and `2 <= n <= budget`.
+     */
+    public int tabulate(Expression expr, String var, double lo, double hi, int n,
+            double tolerance, int budget, OutputStream out, Tabulator.Format format)
+            throws UnboundVariableException, IOException {
+        assert expr != null;
+        assert var != null;
+        assert lo < hi;
+        assert tolerance >= 0;
+        assert 2 <= n && n <= budget;
+        assert out != null;
+        assert format != null;
+
+        for (String name : expr.dependencies()) {
+            if (!name.equals(var)) {
+                throw new UnboundVariableException(name);
+            }
+        }
+
+        double[] xs = new double[n];
+        double[] ys = new double[n];
+        for (int i = 0; i < n; i++) {
+            xs[i] = Tabulator.abscissa(lo, hi, n, i);
+        }
+        ColumnTable columns = new ColumnTable(n);
+        columns.set(var, xs);
+        evaluator.eval(expr, columns, ys);
+        int evaluations = n;
+
+        List<Interval> roots = new ArrayList<>(n - 1);
+        for (int i = 0; i + 1 < n; i++) {
+            roots.add(new Interval(xs[i], ys[i], xs[i + 1], ys[i + 1],
+                    Double.POSITIVE_INFINITY, 0));
+        }
+        List<Interval> level = new ArrayList<>();
+        for (Interval root : roots) {
+            if (root.divisible()) {
+                level.add(root);
+            }
+        }
+
+        while (!level.isEmpty() && evaluations < budget) {
+            if (level.size() > budget - evaluations) {
+                // The sort is stable, so ties are broken by position.
+                level.sort(Comparator.comparingDouble((Interval interval) -> interval.priority)
+                        .reversed());
+                level = level.subList(0, budget - evaluations);
+            }
+            evaluateMidpoints(expr, var, level);
+            evaluations += level.size();
+
+            List<Interval> next = new ArrayList<>();
+            for (Interval interval : level) {
+                double deviation = interval.deviation();
+                if (deviation > tolerance && interval.depth < MAX_DEPTH) {
+                    interval.left = new Interval(interval.lo, interval.fLo, interval.mid,
+                            interval.fMid, deviation, interval.depth + 1);
+                    interval.right = new Interval(interval.mid, interval.fMid, interval.hi,
+                            interval.fHi, deviation, interval.depth + 1);
+                    if (interval.left.divisible()) {
+                        next.add(interval.left);
+                    }
+                    if (interval.right.divisible()) {
+                        next.add(interval.right);
+                    }
+                }
+            }
+            level = next;
+        }
+
+        double[] sampleXs = new double[evaluations];
+        double[] sampleYs = new double[evaluations];
+        int count = 0;
+        for (Interval root : roots) {
+            sampleXs[count] = root.lo;
+            sampleYs[count] = root.fLo;
+            count = appendInterior(root, sampleXs, sampleYs, count + 1);
+        }
+        sampleXs[count] = xs[n - 1];
+        sampleYs[count] = ys[n - 1];
+        count++;
+
+        Tabulator.write(sampleXs, sampleYs, count, out, format);
+        out.flush();
+        return count;
+    }
+
+    /**
+     * Store the evaluated samples strictly inside `interval`, in increasing order, in `xs` and
+     * `ys` starting at index `count`, and return the index after the last one stored.
+     */
+    private static int appendInterior(Interval interval, double[] xs, double[] ys, int count) {
+        if (!interval.evaluated) {
+            return count;
+        }
+        if (interval.left != null) {
+            count = appendInterior(interval.left, xs, ys, count);
+        }
+        xs[count] = interval.mid;
+        ys[count] = interval.fMid;
+        count++;
+        if (interval.right != null) {
+            count = appendInterior(interval.right, xs, ys, count);
+        }
+        return count;
+    }
+
+    /**
+     * Evaluate `expr`, which depends only on `var`, at the midpoints of `intervals`, splitting
+     * them into blocks evaluated in parallel if there are many.
+     */
+    private void evaluateMidpoints(Expression expr, String var, List<Interval> intervals) {
+        if (intervals.size() <= BLOCK_SIZE) {
+            evaluateBlock(expr, var, intervals);
+        } else {
+            pool.invoke(new EvaluateRange(expr, var, intervals));
+        }
+    }
+
+    /**
+     * Evaluate `expr`, which depends only on `var`, at the midpoints of `intervals` as one batch.
+     */
+    private void evaluateBlock(Expression expr, String var, List<Interval> intervals) {
+        int length = intervals.size();
+        double[] mids = new double[length];
+        double[] values = new double[length];
+        for (int i = 0; i < length; i++) {
+            mids[i] = intervals.get(i).mid;
+        }
+        ColumnTable columns = new ColumnTable(length);
+        columns.set(var, mids);
+        try {
+            evaluator.eval(expr, columns, values);
+        } catch (UnboundVariableException rethrown) {
+            // Dependencies were checked before sampling started, so this should not happen.
+            throw new RuntimeException(rethrown);
+        }
+        for (int i = 0; i < length; i++) {
+            Interval interval = intervals.get(i);
+            interval.fMid = values[i];
+            interval.evaluated = true;
+        }
+    }
+
+    /**
+     * Evaluates the midpoints of a range of intervals, splitting it among tasks.
+     */
+    private class EvaluateRange extends RecursiveAction {
+
+        private final Expression expr;
+        private final String var;
+        private final List<Interval> intervals;
+
+        EvaluateRange(Expression expr, String var, List<Interval> intervals) {
+            this.expr = expr;
+            this.var = var;
+            this.intervals = intervals;
+        }
+
+        @Override
+        protected void compute() {
+            int size = intervals.size();
+            if (size <= BLOCK_SIZE) {
+                evaluateBlock(expr, var, intervals);
+                return;
+            }
+            int middle = size >>> 1;
+            invokeAll(new EvaluateRange(expr, var, intervals.subList(0, middle)),
+                    new EvaluateRange(expr, var, intervals.subList(middle, size)));
+        }
+    }
+}
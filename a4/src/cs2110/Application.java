@@ -21,6 +21,17 @@ public class Application implements Expression{
      */
     private final Expression argument;
 
+    /**
+     * The operation count and depth of this node, computed when it is created.
+     */
+    private final int opCount;
+    private final int depth;
+
+    /**
+     * The hash code of this node, or 0 if it has not been computed yet.
+     */
+    private int hash;
+
 
     /**
      * Constructs an Application node with a given unary function and its argument.
@@ -35,6 +46,23 @@ public class Application implements Expression{
 
         this.func = func;
         this.argument = argument;
+        opCount = 1 + argument.opCount();
+        depth = 1 + argument.depth();
+    }
+
+
+    /**
+     * Return the unary function applied by this node.
+     */
+    UnaryFunction function() {
+        return func;
+    }
+
+    /**
+     * Return the argument that this node's function is applied to.
+     */
+    Expression argument() {
+        return argument;
     }
 
 
@@ -66,8 +94,15 @@ public class Application implements Expression{
      */
     @Override
     public int opCount() {
-        return 1 + argument.opCount();
+        return opCount;
+    }
 
+    /**
+     * Returns one more than the depth of the argument, computed when this node is created.
+     */
+    @Override
+    public int depth() {
+        return depth;
     }
 
 
@@ -97,9 +132,10 @@ public class Application implements Expression{
     }
 
     /**
-     * Optimizes the expression by attempting to evaluate it. If successful, returns
-     * a Constant with the result. Otherwise, returns a new Application
-     * with the optimized argument.
+     * Optimizes the expression by optimizing its argument and, if that becomes a constant
+     * (which it does exactly when every variable it depends on is in `vars`), returning a
+     * Constant with the result.  Otherwise, returns an Application with the optimized argument
+     * (this node if the argument did not change).  Never throws UnboundVariableException.
      *
      * param vars Variable table to resolve variable names to their values.
      * return The optimized expression.
@@ -109,15 +145,14 @@ public class Application implements Expression{
     public Expression optimize(VarTable vars) {
         assert vars != null;
 
-        Expression optimizedExpr = argument.optimize(vars);
-
-        try{
-            double res = func.apply(optimizedExpr.eval(vars));
-            return new Constant(res);
+        Expression optimized = argument.optimize(vars);
+        if (optimized instanceof Constant) {
+            return new Constant(func.apply(((Constant) optimized).value()));
         }
-        catch(UnboundVariableException e){
-            return new Application(func,optimizedExpr);
+        if (optimized == argument) {
+            return this;
         }
+        return new Application(func, optimized);
     }
 
 
@@ -131,20 +166,54 @@ public class Application implements Expression{
         return argument.dependencies();
     }
 
+    /**
+     * Returns the variables of the argument.
+     */
+    @Override
+    public VarSet variables() {
+        return argument.variables();
+    }
+
+    /**
+     * Returns whether the argument is constant.
+     */
+    @Override
+    public boolean isConstant() {
+        return argument.isConstant();
+    }
+
     /**
      * Compares this Application to another object for equality. Two Application nodes
-     * are equal if they apply the same unary function to equal arguments.
+     * are equal if they apply the same unary function (the same instance) to equal arguments.
      *
      * param obj The object to compare with.
      * return true if the objects are equal, code false otherwise.
      */
     @Override
     public boolean equals(Object obj){
-        assert obj != null;
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
         Application otherObject = (Application)obj;
-        return otherObject.func.name().equals(func.name())
+        return otherObject.func == func
                 && argument.equals(otherObject.argument);
+    }
 
-
+    /**
+     * Returns a hash code combining the function and the hash code of the argument, consistent
+     * with `equals()`.  It is computed once, so hashing a tree whose subtrees have already been
+     * hashed takes constant time.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * func.hashCode() + argument.hashCode();
+            hash = h;
+        }
+        return h;
     }
 }
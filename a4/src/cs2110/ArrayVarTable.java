@@ -0,0 +1,160 @@
+package cs2110;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A VarTable that stores its values in a `double[]` indexed by the slots of a `VarSlots`.
+ * Variables can be read and written by slot, without hashing or boxing, as well as by name.
+ * Expressions bound to the same slots (see `VarSlots.bind()`) read their variables by slot.
+ */
+public class ArrayVarTable implements VarTable {
+
+    /**
+     * The slot assignment of this table's variables.  Setting a variable that has no slot adds it
+     * to these slots.
+     */
+    private final VarSlots slots;
+
+    /**
+     * The value of each variable, indexed by slot.  Unassigned slots hold NaN.
+     */
+    private double[] values;
+
+    /**
+     * Whether each slot currently has a value.
+     */
+    private boolean[] assigned;
+
+    /**
+     * The number of slots that currently have a value.
+     */
+    private int size;
+
+    /**
+     * Create an empty table whose variables are stored according to `slots`.
+     */
+    public ArrayVarTable(VarSlots slots) {
+        assert slots != null;
+
+        this.slots = slots;
+        values = new double[0];
+        assigned = new boolean[0];
+        ensureCapacity(slots.size());
+    }
+
+    /**
+     * Return the slot assignment used by this table.
+     */
+    public VarSlots slots() {
+        return slots;
+    }
+
+    /**
+     * Return the value in slot `slot`.  Throws UnboundVariableException if the slot has no value.
+     */
+    public double get(int slot) throws UnboundVariableException {
+        if (slot >= assigned.length || !assigned[slot]) {
+            throw new UnboundVariableException(slots.name(slot));
+        }
+        return values[slot];
+    }
+
+    /**
+     * Assign `value` to slot `slot`.  Requires `0 <= slot < slots().size()`.
+     */
+    public void set(int slot, double value) {
+        ensureCapacity(slot + 1);
+        if (!assigned[slot]) {
+            assigned[slot] = true;
+            size++;
+        }
+        values[slot] = value;
+    }
+
+    /**
+     * Return the array of values backing this table, indexed by slot.  Unassigned slots hold NaN.
+     * The array is shared with this table and may be replaced when slots are added, so it should
+     * only be used until the next call to `set()`.  Suitable for passing to a CompiledExpression
+     * whose slots were assigned by `slots()`.
+     */
+    public double[] values() {
+        ensureCapacity(slots.size());
+        return values;
+    }
+
+    /**
+     * Return whether every slot assigned so far currently has a value.
+     */
+    public boolean allAssigned() {
+        return size == slots.size();
+    }
+
+    @Override
+    public double get(String name) throws UnboundVariableException {
+        assert name != null;
+
+        int slot = slots.slotOf(name);
+        if (slot < 0) {
+            throw new UnboundVariableException(name);
+        }
+        return get(slot);
+    }
+
+    @Override
+    public void set(String name, double value) {
+        assert name != null;
+
+        set(slots.add(name), value);
+    }
+
+    @Override
+    public void unset(String name) {
+        assert name != null;
+
+        int slot = slots.slotOf(name);
+        if (slot >= 0 && slot < assigned.length && assigned[slot]) {
+            assigned[slot] = false;
+            values[slot] = Double.NaN;
+            size--;
+        }
+    }
+
+    @Override
+    public boolean contains(String name) {
+        assert name != null;
+
+        int slot = slots.slotOf(name);
+        return slot >= 0 && slot < assigned.length && assigned[slot];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public Set<String> names() {
+        Set<String> names = new LinkedHashSet<>();
+        for (int slot = 0; slot < assigned.length; slot++) {
+            if (assigned[slot]) {
+                names.add(slots.name(slot));
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Grow the backing arrays, if necessary, to hold at least `capacity` slots.
+     */
+    private void ensureCapacity(int capacity) {
+        if (capacity > values.length) {
+            int oldLength = values.length;
+            int newLength = Math.max(capacity, 2 * oldLength);
+            values = Arrays.copyOf(values, newLength);
+            Arrays.fill(values, oldLength, newLength, Double.NaN);
+            assigned = Arrays.copyOf(assigned, newLength);
+        }
+    }
+}
@@ -0,0 +1,429 @@
+package cs2110;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates an expression for many bindings of its variables at once.  Variable values are given
+ * as columns (see `ColumnTable`), and the expression is evaluated node by node over blocks of rows:
+ * each operation is applied to a whole block of operand values in a tight loop before moving on to
+ * the next node, instead of walking the entire tree once per row.
+ * <p>
+ * By default, the result for each row is identical to that of `Expression.eval()` with the row's
+ * values bound to the variables.  If fused operations are enabled, multiplications whose product
+ * is immediately added or subtracted are computed with `Math.fma()`, which rounds only once and so
+ * may differ from the tree in the last bit.  (Fused operations are only fast on hardware with a
+ * fused multiply-add instruction.)
+ * <p>
+ * Operations are carried out by one of two backends (see `Backend`), chosen when the evaluator is
+ * created.  The default backend is given by the system property "cs2110.batch.backend" ("scalar",
+ * "vector", or "vector_relaxed"), or is SCALAR if the property is not set.
+ * <p>
+ * BatchEvaluator objects are immutable and may be shared between threads.
+ */
+public class BatchEvaluator {
+
+    /**
+     * The implementations available for operations on blocks of values.
+     */
+    public enum Backend {
+        /**
+         * Apply every operation exactly as `Expression.eval()` would.  Loops over pairs of blocks
+         * for ADD, SUBTRACT, MULTIPLY, DIVIDE, abs(), and sqrt() are generally vectorized by the
+         * JIT compiler, but operations with a constant operand are performed on a block filled
+         * with that constant, and POW is always computed with `Math.pow()`.
+         */
+        SCALAR,
+
+        /**
+         * Lower operations onto SIMD loops (see `VectorKernels`), written with the Vector API if
+         * it is available (see README.md): constant operands are broadcast across lanes rather
+         * than materialized, and ADD, SUBTRACT, MULTIPLY, DIVIDE, abs(), and sqrt() use SIMD
+         * instructions, all of which are correctly rounded.  Everything else falls back to the
+         * scalar loops, so results match SCALAR exactly.
+         */
+        VECTOR,
+
+        /**
+         * Like VECTOR, but also expand POW with a small integer exponent into lanewise
+         * multiplications and (with the Vector API) compute the `exp()`, `log()`, `sin()`,
+         * `cos()`, and `tan()` of `UnaryFunction.mathDefs()` lanewise.  Expanded powers may differ
+         * from `Math.pow()` by a few units in the last place (see `VectorKernels.powConstant()`),
+         * and lanewise functions may differ from `java.lang.Math` in the last place, so this
+         * backend must be chosen explicitly by callers that accept those differences.
+         */
+        VECTOR_RELAXED;
+
+        /**
+         * Return the backend named by the system property "cs2110.batch.backend", or SCALAR if
+         * it is not set.  Throws IllegalArgumentException if it names an unknown backend.
+         */
+        public static Backend fromSystemProperty() {
+            String name = System.getProperty("cs2110.batch.backend");
+            return name == null ? SCALAR : valueOf(name.toUpperCase());
+        }
+    }
+
+    /**
+     * The default number of rows evaluated per block.  Small enough that a block's intermediate
+     * values stay in cache, large enough to amortize the per-node overhead.
+     */
+    public static final int DEFAULT_BLOCK_SIZE = 1024;
+
+    /**
+     * The implementation of operations on blocks.
+     */
+    private final Backend backend;
+
+    /**
+     * Whether multiply-add and multiply-subtract patterns are computed with `Math.fma()`.
+     */
+    private final boolean fused;
+
+    /**
+     * The number of rows evaluated per block.
+     */
+    private final int blockSize;
+
+    /**
+     * Create an evaluator using the default backend without fused operations.
+     */
+    public BatchEvaluator() {
+        this(false);
+    }
+
+    /**
+     * Create an evaluator using the default backend that uses fused multiply-add operations if
+     * `fused` is true.
+     */
+    public BatchEvaluator(boolean fused) {
+        this(Backend.fromSystemProperty(), fused);
+    }
+
+    /**
+     * Create an evaluator using the default backend that uses fused multiply-add operations if
+     * `fused` is true and evaluates `blockSize` rows at a time.  Requires `blockSize > 0`.
+     */
+    public BatchEvaluator(boolean fused, int blockSize) {
+        this(Backend.fromSystemProperty(), fused, blockSize);
+    }
+
+    /**
+     * Create an evaluator using `backend` that uses fused multiply-add operations if `fused` is
+     * true.
+     */
+    public BatchEvaluator(Backend backend, boolean fused) {
+        this(backend, fused, DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Create an evaluator using `backend` that uses fused multiply-add operations if `fused` is
+     * true and evaluates `blockSize` rows at a time.  Requires `blockSize > 0`.
+     */
+    public BatchEvaluator(Backend backend, boolean fused, int blockSize) {
+        assert backend != null;
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.backend = backend;
+        this.fused = fused;
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Return the backend this evaluator uses.
+     */
+    public Backend backend() {
+        return backend;
+    }
+
+    /**
+     * Return whether this evaluator uses fused multiply-add operations.
+     */
+    public boolean fused() {
+        return fused;
+    }
+
+    /**
+     * Store in `out[i]` the result of evaluating `expr` with each of its variables bound to row
+     * `i` of that variable's column in `columns`, for every row `i` of `columns`.  Throws
+     * UnboundVariableException (before evaluating any rows) if `expr` depends on a variable with
+     * no column in `columns`.  Requires `out.length >= columns.rows()`.
+     */
+    public void eval(Expression expr, ColumnTable columns, double[] out)
+            throws UnboundVariableException {
+        assert expr != null;
+        assert columns != null;
+        if (out.length < columns.rows()) {
+            throw new IllegalArgumentException("Output has " + out.length + " rows; expected "
+                    + columns.rows());
+        }
+
+        Pass pass = new Pass(expr, columns);
+        for (int from = 0; from < columns.rows(); from += blockSize) {
+            int length = Math.min(blockSize, columns.rows() - from);
+            pass.evalInto(expr, from, length, out, from);
+        }
+    }
+
+    /**
+     * The state of a single call to `eval()`.
+     */
+    private class Pass {
+
+        /**
+         * The column of each variable the expression depends on.
+         */
+        private final Map<String, double[]> columns = new HashMap<>();
+
+        /**
+         * Scratch buffers (each `blockSize` long) that are not currently in use.
+         */
+        private final Deque<double[]> freeBuffers = new ArrayDeque<>();
+
+        /**
+         * Resolve the columns of all of `expr`'s variables.  Throws UnboundVariableException if
+         * any of them has no column in `table`.
+         */
+        Pass(Expression expr, ColumnTable table) throws UnboundVariableException {
+            for (String name : expr.dependencies()) {
+                columns.put(name, table.get(name));
+            }
+        }
+
+        /**
+         * Store the values of `expr` for rows `from` to `from + length` (exclusive) in `dest`,
+         * starting at index `destOffset`.
+         */
+        void evalInto(Expression expr, int from, int length, double[] dest, int destOffset) {
+            if (expr instanceof Constant) {
+                Arrays.fill(dest, destOffset, destOffset + length, ((Constant) expr).value());
+            } else if (expr instanceof Variable) {
+                System.arraycopy(columns.get(((Variable) expr).name()), from, dest, destOffset,
+                        length);
+            } else if (expr instanceof Operation) {
+                evalOperation((Operation) expr, from, length, dest, destOffset);
+            } else if (expr instanceof Application) {
+                Application application = (Application) expr;
+                evalInto(application.argument(), from, length, dest, destOffset);
+                if (backend != Backend.SCALAR && application.function() == UnaryFunction.ABS) {
+                    VectorKernels.abs(dest, destOffset, length);
+                } else if (backend != Backend.SCALAR
+                        && application.function() == UnaryFunction.SQRT) {
+                    VectorKernels.sqrt(dest, destOffset, length);
+                } else if (backend == Backend.VECTOR_RELAXED
+                        && VectorKernels.isLanewise(application.function())) {
+                    VectorKernels.apply(application.function(), dest, destOffset, length);
+                } else {
+                    apply(application.function(), dest, destOffset, length);
+                }
+            } else {
+                evalRows(expr, from, length, dest, destOffset);
+            }
+        }
+
+        private void evalOperation(Operation operation, int from, int length, double[] dest,
+                int destOffset) {
+            if (fused && evalFused(operation, from, length, dest, destOffset)) {
+                return;
+            }
+            if (backend != Backend.SCALAR
+                    && evalVector(operation, from, length, dest, destOffset)) {
+                return;
+            }
+
+            // Evaluate the left operand in place, then combine it with the right operand.  Right
+            // operands that are variables are read directly from their column.
+            evalInto(operation.leftOperand(), from, length, dest, destOffset);
+            Expression right = operation.rightOperand();
+            if (right instanceof Variable) {
+                combine(operation.operator(), dest, destOffset,
+                        columns.get(((Variable) right).name()), from, length);
+            } else {
+                double[] buffer = acquire();
+                evalInto(right, from, length, buffer, 0);
+                combine(operation.operator(), dest, destOffset, buffer, 0, length);
+                release(buffer);
+            }
+        }
+
+        /**
+         * Replace `a[aOffset + i]` with `a[aOffset + i] op b[bOffset + i]` for
+         * `0 <= i < length`, using the vector backends' kernels if possible.
+         */
+        private void combine(Operator op, double[] a, int aOffset, double[] b, int bOffset,
+                int length) {
+            if (backend != Backend.SCALAR && VectorKernels.isArithmetic(op)) {
+                VectorKernels.operate(op, a, aOffset, b, bOffset, length);
+            } else {
+                operate(op, a, aOffset, b, bOffset, length);
+            }
+        }
+
+        /**
+         * If `operation` has a constant operand that the vector backends can broadcast, store its
+         * values in `dest` using their kernels and return true.  Otherwise, return false.
+         */
+        private boolean evalVector(Operation operation, int from, int length, double[] dest,
+                int destOffset) {
+            Operator operator = operation.operator();
+            Expression left = operation.leftOperand();
+            Expression right = operation.rightOperand();
+            if (right instanceof Constant) {
+                double value = ((Constant) right).value();
+                if (VectorKernels.isArithmetic(operator)) {
+                    evalInto(left, from, length, dest, destOffset);
+                    VectorKernels.operateConstant(operator, dest, destOffset, value, length);
+                    return true;
+                }
+                if (operator == Operator.POW && backend == Backend.VECTOR_RELAXED
+                        && VectorKernels.isExpandableExponent(value)) {
+                    evalInto(left, from, length, dest, destOffset);
+                    double[] scratch = acquire();
+                    double[] bases = acquire();
+                    VectorKernels.powConstant(dest, destOffset, value, length, scratch, bases);
+                    release(bases);
+                    release(scratch);
+                    return true;
+                }
+            } else if (left instanceof Constant && VectorKernels.isArithmetic(operator)) {
+                evalInto(right, from, length, dest, destOffset);
+                VectorKernels.constantOperate(operator, ((Constant) left).value(), dest,
+                        destOffset, length);
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * If `operation` adds or subtracts a product, store its values computed with fused
+         * multiply-add in `dest` and return true.  Otherwise, return false.
+         */
+        private boolean evalFused(Operation operation, int from, int length, double[] dest,
+                int destOffset) {
+            Operator operator = operation.operator();
+            if (operator != Operator.ADD && operator != Operator.SUBTRACT) {
+                return false;
+            }
+            Expression left = operation.leftOperand();
+            Expression right = operation.rightOperand();
+            // a*b + c, a*b - c, c + a*b, or c - a*b
+            boolean productOnLeft = isProduct(left);
+            if (!productOnLeft && !isProduct(right)) {
+                return false;
+            }
+            Operation product = (Operation) (productOnLeft ? left : right);
+            Expression addend = productOnLeft ? right : left;
+            boolean negateAddend = productOnLeft && operator == Operator.SUBTRACT;
+            boolean negateProduct = !productOnLeft && operator == Operator.SUBTRACT;
+
+            double[] multiplicands = acquire();
+            double[] addends = acquire();
+            evalInto(product.leftOperand(), from, length, dest, destOffset);
+            evalInto(product.rightOperand(), from, length, multiplicands, 0);
+            evalInto(addend, from, length, addends, 0);
+            for (int i = 0; i < length; i++) {
+                double a = negateProduct ? -dest[destOffset + i] : dest[destOffset + i];
+                double c = negateAddend ? -addends[i] : addends[i];
+                dest[destOffset + i] = Math.fma(a, multiplicands[i], c);
+            }
+            release(addends);
+            release(multiplicands);
+            return true;
+        }
+
+        /**
+         * Store the values of `expr`, an expression of a type this class cannot evaluate by
+         * block, for the given rows in `dest` by evaluating it once per row.
+         */
+        private void evalRows(Expression expr, int from, int length, double[] dest,
+                int destOffset) {
+            VarSlots slots = new VarSlots();
+            Expression bound = slots.bind(expr);
+            ArrayVarTable vars = new ArrayVarTable(slots);
+            Set<String> names = expr.dependencies();
+            for (int i = 0; i < length; i++) {
+                for (String name : names) {
+                    vars.set(name, columns.get(name)[from + i]);
+                }
+                try {
+                    dest[destOffset + i] = bound.eval(vars);
+                } catch (UnboundVariableException rethrown) {
+                    // Every variable of `expr` was assigned a value, so this should not happen.
+                    throw new RuntimeException(rethrown);
+                }
+            }
+        }
+
+        private double[] acquire() {
+            double[] buffer = freeBuffers.poll();
+            return buffer != null ? buffer : new double[blockSize];
+        }
+
+        private void release(double[] buffer) {
+            freeBuffers.push(buffer);
+        }
+    }
+
+    /**
+     * Return whether `expr` is a multiplication.
+     */
+    private static boolean isProduct(Expression expr) {
+        return expr instanceof Operation && ((Operation) expr).operator() == Operator.MULTIPLY;
+    }
+
+    /**
+     * Replace `a[aOffset + i]` with `a[aOffset + i] op b[bOffset + i]` for `0 <= i < length`.
+     */
+    private static void operate(Operator op, double[] a, int aOffset, double[] b, int bOffset,
+            int length) {
+        if (op == Operator.ADD) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] + b[bOffset + i];
+            }
+        } else if (op == Operator.SUBTRACT) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] - b[bOffset + i];
+            }
+        } else if (op == Operator.MULTIPLY) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] * b[bOffset + i];
+            }
+        } else if (op == Operator.DIVIDE) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] / b[bOffset + i];
+            }
+        } else if (op == Operator.POW) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = Math.pow(a[aOffset + i], b[bOffset + i]);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = op.operate(a[aOffset + i], b[bOffset + i]);
+            }
+        }
+    }
+
+    /**
+     * Replace `a[offset + i]` with `f(a[offset + i])` for `0 <= i < length`.
+     */
+    private static void apply(UnaryFunction f, double[] a, int offset, int length) {
+        if (f == UnaryFunction.ABS) {
+            for (int i = offset; i < offset + length; i++) {
+                a[i] = Math.abs(a[i]);
+            }
+        } else if (f == UnaryFunction.SQRT) {
+            for (int i = offset; i < offset + length; i++) {
+                a[i] = Math.sqrt(a[i]);
+            }
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                a[i] = f.apply(a[i]);
+            }
+        }
+    }
+}
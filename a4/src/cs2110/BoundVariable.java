@@ -0,0 +1,60 @@
+package cs2110;
+
+/**
+ * A Variable node whose name has been resolved to a slot of a `VarSlots` (see `VarSlots.bind()`).
+ * When evaluated against an `ArrayVarTable` using the same slots, its value is read directly from
+ * that slot; against any other VarTable, it is looked up by name like any other Variable.
+ */
+public class BoundVariable extends Variable {
+
+    /**
+     * The slot assignment this variable was bound to.
+     */
+    private final VarSlots slots;
+
+    /**
+     * The slot of this variable in `slots`.
+     */
+    private final int slot;
+
+    /**
+     * Create a variable named `name` that is bound to slot `slot` of `slots`.  Requires `slot` is
+     * the slot assigned to `name` in `slots`.
+     */
+    BoundVariable(String name, VarSlots slots, int slot) {
+        super(name);
+        assert slots.slotOf(name) == slot;
+
+        this.slots = slots;
+        this.slot = slot;
+    }
+
+    /**
+     * Return the slot assignment this variable is bound to.
+     */
+    VarSlots slots() {
+        return slots;
+    }
+
+    /**
+     * Return the slot this variable is bound to.
+     */
+    int slot() {
+        return slot;
+    }
+
+    /**
+     * Return the value of this variable in `vars`, reading it by slot if `vars` is an
+     * ArrayVarTable using the same slots as this variable.  Throws UnboundVariableException if
+     * this variable is not assigned a value in `vars`.
+     */
+    @Override
+    public double eval(VarTable vars) throws UnboundVariableException {
+        assert vars != null;
+
+        if (vars instanceof ArrayVarTable && ((ArrayVarTable) vars).slots() == slots) {
+            return ((ArrayVarTable) vars).get(slot);
+        }
+        return super.eval(vars);
+    }
+}
@@ -0,0 +1,277 @@
+package cs2110;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * A VarTable for spreadsheet cells, storing numeric cell values as primitive doubles indexed by
+ * (row, column), with a bitmap recording which cells have a value.  Rows and columns are numbered
+ * from 1, as in cell names: the cell named "B4" is at row 4, column 2 (see `coordinates()`).
+ * <p>
+ * Cells are best accessed by coordinates, as `CellReference` nodes do; access by name is supported
+ * for compatibility with other VarTable clients, but requires decoding the name on every access.
+ * Only valid cell names can be assigned values.
+ */
+public class CellGrid implements VarTable {
+
+    /**
+     * Cell values, indexed by row - 1 and then column - 1.  Rows that have no values may be null
+     * or shorter than other rows.
+     */
+    private double[][] values = new double[16][];
+
+    /**
+     * Presence bitmaps, indexed like `values`: bit `(column - 1) % 64` of word `(column - 1) / 64`
+     * is set if the cell has a value.
+     */
+    private long[][] present = new long[16][];
+
+    /**
+     * The number of cells that have a value.
+     */
+    private int size = 0;
+
+    /**
+     * Return the value of the cell at (`row`, `column`).  Throws UnboundVariableException if that
+     * cell has no value.
+     */
+    public double get(int row, int column) throws UnboundVariableException {
+        if (!contains(row, column)) {
+            throw new UnboundVariableException(CsvEvaluator.colToLetters(column) + row);
+        }
+        return values[row - 1][column - 1];
+    }
+
+    /**
+     * Return the value of the cell at (`row`, `column`), which must have a value.
+     */
+    double value(int row, int column) {
+        assert contains(row, column);
+
+        return values[row - 1][column - 1];
+    }
+
+    /**
+     * Assign `value` to the cell at (`row`, `column`).  Requires `row >= 1` and `column >= 1`.
+     */
+    public void set(int row, int column, double value) {
+        assert row >= 1 && column >= 1;
+
+        ensureCapacity(row, column);
+        long[] bits = present[row - 1];
+        long mask = 1L << (column - 1);
+        if ((bits[(column - 1) >>> 6] & mask) == 0) {
+            bits[(column - 1) >>> 6] |= mask;
+            size++;
+        }
+        values[row - 1][column - 1] = value;
+    }
+
+    /**
+     * Remove any value assigned to the cell at (`row`, `column`).
+     */
+    public void unset(int row, int column) {
+        if (contains(row, column)) {
+            present[row - 1][(column - 1) >>> 6] &= ~(1L << (column - 1));
+            size--;
+        }
+    }
+
+    /**
+     * Return whether the cell at (`row`, `column`) has a value.
+     */
+    public boolean contains(int row, int column) {
+        if (row < 1 || row > present.length || column < 1) {
+            return false;
+        }
+        long[] bits = present[row - 1];
+        return bits != null && (column - 1) >>> 6 < bits.length
+                && (bits[(column - 1) >>> 6] & (1L << (column - 1))) != 0;
+    }
+
+    @Override
+    public double get(String name) throws UnboundVariableException {
+        assert name != null;
+
+        long coordinates = coordinates(name);
+        if (coordinates < 0) {
+            throw new UnboundVariableException(name);
+        }
+        return get(row(coordinates), column(coordinates));
+    }
+
+    /**
+     * Associate `value` with the cell named `name`.  Throws IllegalArgumentException if `name` is
+     * not a valid cell name.
+     */
+    @Override
+    public void set(String name, double value) {
+        assert name != null;
+
+        long coordinates = coordinates(name);
+        if (coordinates < 0) {
+            throw new IllegalArgumentException("Not a cell name: " + name);
+        }
+        set(row(coordinates), column(coordinates), value);
+    }
+
+    @Override
+    public void unset(String name) {
+        assert name != null;
+
+        long coordinates = coordinates(name);
+        if (coordinates >= 0) {
+            unset(row(coordinates), column(coordinates));
+        }
+    }
+
+    @Override
+    public boolean contains(String name) {
+        assert name != null;
+
+        long coordinates = coordinates(name);
+        return coordinates >= 0 && contains(row(coordinates), column(coordinates));
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the names of all cells that have a value, in reading order.
+     */
+    @Override
+    public Set<String> names() {
+        Set<String> names = new LinkedHashSet<>();
+        for (int row = 1; row <= present.length; row++) {
+            long[] bits = present[row - 1];
+            if (bits == null) {
+                continue;
+            }
+            for (int column = 1; column <= 64 * bits.length; column++) {
+                if (contains(row, column)) {
+                    names.add(CsvEvaluator.colToLetters(column) + row);
+                }
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Grow the storage, if necessary, to hold the cell at (`row`, `column`).
+     */
+    private void ensureCapacity(int row, int column) {
+        if (row > values.length) {
+            int length = Math.max(row, 2 * values.length);
+            values = Arrays.copyOf(values, length);
+            present = Arrays.copyOf(present, length);
+        }
+        double[] rowValues = values[row - 1];
+        if (rowValues == null || column > rowValues.length) {
+            int length = rowValues == null ? Math.max(column, 8)
+                    : Math.max(column, 2 * rowValues.length);
+            values[row - 1] = rowValues == null ? new double[length]
+                    : Arrays.copyOf(rowValues, length);
+            long[] bits = present[row - 1];
+            int words = (length + 63) >>> 6;
+            present[row - 1] = bits == null ? new long[words] : Arrays.copyOf(bits, words);
+        }
+    }
+
+    /* Cell names */
+
+    /**
+     * Return the coordinates of the cell named `name` (column letters followed by a row number,
+     * e.g. "B4"), packed as by `coordinates(int, int)`, or -1 if `name` is not a valid cell name.
+     * A valid name consists of one or more upper-case letters, naming a column as in
+     * `CsvEvaluator.colToLetters()`, followed by a positive decimal row number without leading
+     * zeros.
+     */
+    public static long coordinates(CharSequence name) {
+        return coordinates(name, 0, name.length());
+    }
+
+    /**
+     * Return the coordinates of the cell named by the characters of `text` from index `start`
+     * (inclusive) to `end` (exclusive), as by `coordinates(CharSequence)`, or -1 if they are not a
+     * valid cell name.
+     */
+    public static long coordinates(CharSequence text, int start, int end) {
+        int i = start;
+        long column = 0;
+        while (i < end && text.charAt(i) >= 'A' && text.charAt(i) <= 'Z') {
+            column = 26 * column + (text.charAt(i) - 'A' + 1);
+            if (column > Integer.MAX_VALUE) {
+                return -1;
+            }
+            i++;
+        }
+        if (i == start || i == end || text.charAt(i) == '0') {
+            return -1;
+        }
+        long row = 0;
+        for (; i < end; i++) {
+            char c = text.charAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            row = 10 * row + (c - '0');
+            if (row > Integer.MAX_VALUE) {
+                return -1;
+            }
+        }
+        return coordinates((int) row, (int) column);
+    }
+
+    /**
+     * Return the coordinates (`row`, `column`) packed into a single non-negative long.
+     */
+    public static long coordinates(int row, int column) {
+        return ((long) row << 32) | column;
+    }
+
+    /**
+     * Return the row of packed coordinates `coordinates`.
+     */
+    public static int row(long coordinates) {
+        return (int) (coordinates >>> 32);
+    }
+
+    /**
+     * Return the column of packed coordinates `coordinates`.
+     */
+    public static int column(long coordinates) {
+        return (int) coordinates;
+    }
+
+    /**
+     * Return a copy of `expr` in which every Variable node whose name is a valid cell name is
+     * replaced by a `CellReference` to that cell, so that evaluating it against a CellGrid reads
+     * the cell by coordinates.  Other variables are left unchanged.
+     */
+    public static Expression bindCells(Expression expr) {
+        assert expr != null;
+
+        if (expr instanceof CellReference) {
+            return expr;
+        }
+        if (expr instanceof Variable) {
+            String name = ((Variable) expr).name();
+            long coordinates = coordinates(name);
+            return coordinates < 0 ? expr
+                    : new CellReference(name, row(coordinates), column(coordinates));
+        }
+        if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            return new Operation(operation.operator(), bindCells(operation.leftOperand()),
+                    bindCells(operation.rightOperand()));
+        }
+        if (expr instanceof Application) {
+            Application application = (Application) expr;
+            return new Application(application.function(), bindCells(application.argument()));
+        }
+        return expr;
+    }
+}
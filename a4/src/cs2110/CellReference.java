@@ -0,0 +1,60 @@
+package cs2110;
+
+/**
+ * A Variable node naming a spreadsheet cell whose coordinates were decoded from its name when the
+ * node was created (see `CellGrid.bindCells()`).  When evaluated against a CellGrid, its value is
+ * read by coordinates; against any other VarTable, it is looked up by name like any other
+ * Variable.
+ */
+public class CellReference extends Variable {
+
+    /**
+     * The row and column of the referenced cell (numbered from 1).
+     */
+    private final int row;
+    private final int column;
+
+    /**
+     * Create a reference named `name` to the cell at (`row`, `column`).  Requires `name` to be
+     * the name of that cell.
+     */
+    CellReference(String name, int row, int column) {
+        super(name);
+        assert CellGrid.coordinates(name) == CellGrid.coordinates(row, column);
+
+        this.row = row;
+        this.column = column;
+    }
+
+    /**
+     * Return the row of the referenced cell.
+     */
+    int row() {
+        return row;
+    }
+
+    /**
+     * Return the column of the referenced cell.
+     */
+    int column() {
+        return column;
+    }
+
+    /**
+     * Return the value of the referenced cell in `vars`, reading it by coordinates if `vars` is a
+     * CellGrid.  Throws UnboundVariableException if the cell has no value in `vars`.
+     */
+    @Override
+    public double eval(VarTable vars) throws UnboundVariableException {
+        assert vars != null;
+
+        if (vars instanceof CellGrid) {
+            CellGrid cells = (CellGrid) vars;
+            if (!cells.contains(row, column)) {
+                throw new UnboundVariableException(name());
+            }
+            return cells.value(row, column);
+        }
+        return super.eval(vars);
+    }
+}
@@ -0,0 +1,85 @@
+package cs2110;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A collection of variable names, each associated with a column of values (one per row), as used
+ * when evaluating an expression for many bindings of its variables at once.  All columns have the
+ * same number of rows.
+ */
+public class ColumnTable {
+
+    /**
+     * The number of rows in every column.
+     */
+    private final int rows;
+
+    /**
+     * The column of values assigned to each variable.
+     */
+    private final Map<String, double[]> columns = new HashMap<>();
+
+    /**
+     * Create an empty table whose columns will each have `rows` rows.  Requires `rows >= 0`.
+     */
+    public ColumnTable(int rows) {
+        assert rows >= 0;
+
+        this.rows = rows;
+    }
+
+    /**
+     * Return the number of rows in each column.
+     */
+    public int rows() {
+        return rows;
+    }
+
+    /**
+     * Return the column of values associated with the variable `name`.  Throws
+     * UnboundVariableException if `name` is not associated with a column in this table.  The
+     * returned array is shared with this table.
+     */
+    public double[] get(String name) throws UnboundVariableException {
+        assert name != null;
+
+        double[] column = columns.get(name);
+        if (column == null) {
+            throw new UnboundVariableException(name);
+        }
+        return column;
+    }
+
+    /**
+     * Associate `column` with variable `name` in this table, replacing any previously assigned
+     * column.  The array is shared with this table, not copied.  Requires `column.length` to equal
+     * `rows()`.
+     */
+    public void set(String name, double[] column) {
+        assert name != null;
+        if (column.length != rows) {
+            throw new IllegalArgumentException("Column '" + name + "' has " + column.length
+                    + " rows; expected " + rows);
+        }
+
+        columns.put(name, column);
+    }
+
+    /**
+     * Return whether variable `name` is currently associated with a column in this table.
+     */
+    public boolean contains(String name) {
+        assert name != null;
+
+        return columns.containsKey(name);
+    }
+
+    /**
+     * Return the names of all variables associated with a column in this table.
+     */
+    public Set<String> names() {
+        return columns.keySet();
+    }
+}
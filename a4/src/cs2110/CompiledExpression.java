@@ -0,0 +1,140 @@
+package cs2110;
+
+/**
+ * An expression that has been compiled (by `ExpressionCompiler`) into a form that reads its
+ * variables from a `double[]` of slot values instead of looking them up by name.  Slots are
+ * assigned to variables by a `VarSlots`; the array passed to `eval()` must hold the value of each
+ * variable the expression depends on at that variable's slot.
+ */
+public abstract class CompiledExpression {
+
+    /**
+     * The slot assignment of this expression's variables.
+     */
+    private final VarSlots slots;
+
+    /**
+     * The slots this expression reads, in the order its variables first appear.
+     */
+    private final int[] usedSlots;
+
+    /**
+     * The number of slots that had been assigned when this expression was compiled.
+     */
+    private final int slotCount;
+
+    /**
+     * Functions invoked by the compiled code that have no direct equivalent in `java.lang.Math`.
+     * Generated subclasses load these by index.
+     */
+    final UnaryFunction[] functions;
+
+    /**
+     * Operators invoked by the compiled code that are not one of the core `Operator` singletons.
+     * Generated subclasses load these by index.
+     */
+    final Operator[] operators;
+
+    /**
+     * Create a compiled expression reading the slots `usedSlots` of `slots` and invoking
+     * `functions` and `operators` by index.
+     */
+    CompiledExpression(VarSlots slots, int[] usedSlots, UnaryFunction[] functions,
+            Operator[] operators) {
+        assert slots != null;
+        assert usedSlots != null;
+        assert functions != null;
+        assert operators != null;
+
+        this.slots = slots;
+        this.usedSlots = usedSlots;
+        this.slotCount = slots.size();
+        this.functions = functions;
+        this.operators = operators;
+    }
+
+    /**
+     * Return the value of this expression when each variable it depends on has the value stored at
+     * its slot in `values`.  Requires `values.length >= slotCount()`.
+     */
+    public abstract double eval(double[] values);
+
+    /**
+     * Return the value of this expression when its only variable has the value `x`.  Requires that
+     * this expression reads at most one variable.  Compiled bytecode implements this without
+     * allocating; this implementation builds an array of slot values.
+     */
+    public double eval(double x) {
+        assert usedSlots.length <= 1;
+        double[] values = new double[slotCount];
+        if (usedSlots.length == 1) {
+            values[usedSlots[0]] = x;
+        }
+        return eval(values);
+    }
+
+    /**
+     * Return the value of this expression, reading each of its variables from `vars`.  Throws
+     * UnboundVariableException if one of its variables is not in `vars`.  If `vars` is an
+     * ArrayVarTable using the same slots as this expression, its values are read in place.
+     */
+    public double eval(VarTable vars) throws UnboundVariableException {
+        assert vars != null;
+
+        if (vars instanceof ArrayVarTable && ((ArrayVarTable) vars).slots() == slots) {
+            ArrayVarTable table = (ArrayVarTable) vars;
+            for (int slot : usedSlots) {
+                // Throws if the slot is unassigned.
+                table.get(slot);
+            }
+            return eval(table.values());
+        }
+        double[] values = new double[slotCount];
+        for (int slot : usedSlots) {
+            values[slot] = vars.get(slots.name(slot));
+        }
+        return eval(values);
+    }
+
+    /**
+     * Return the slot assignment of this expression's variables.
+     */
+    public VarSlots slots() {
+        return slots;
+    }
+
+    /**
+     * Return the minimum length of the array passed to `eval()`.
+     */
+    public int slotCount() {
+        return slotCount;
+    }
+
+    /**
+     * Return the number of distinct variables this expression reads.
+     */
+    public int variableCount() {
+        return usedSlots.length;
+    }
+
+    /**
+     * Return the name of the variable whose value is read from slot `slot`.
+     */
+    public String slotName(int slot) {
+        return slots.name(slot);
+    }
+
+    /**
+     * Return the slot that variable `name` is read from, or -1 if this expression does not depend
+     * on `name`.
+     */
+    public int slotOf(String name) {
+        int slot = slots.slotOf(name);
+        for (int used : usedSlots) {
+            if (used == slot) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+}
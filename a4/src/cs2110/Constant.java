@@ -19,6 +19,13 @@ public class Constant implements Expression {
         this.value = value;
     }
 
+    /**
+     * Return the value represented by this node.
+     */
+    double value() {
+        return value;
+    }
+
     /**
      * Return this node's value.
      */
@@ -70,6 +77,15 @@ public class Constant implements Expression {
         return c.value == value;
     }
 
+    /**
+     * Return a hash code for this constant, consistent with `equals()` (which considers 0.0 and
+     * -0.0 equal).
+     */
+    @Override
+    public int hashCode() {
+        return value == 0 ? 0 : Double.hashCode(value);
+    }
+
     /**
      * A Constant has no dependencies.
      */
@@ -80,6 +96,30 @@ public class Constant implements Expression {
         // Alternative: return new HashSet<>();
     }
 
+    /**
+     * A Constant has no dependencies.
+     */
+    @Override
+    public VarSet variables() {
+        return VarSet.EMPTY;
+    }
+
+    /**
+     * A Constant is a leaf.
+     */
+    @Override
+    public int depth() {
+        return 0;
+    }
+
+    /**
+     * A Constant is constant.
+     */
+    @Override
+    public boolean isConstant() {
+        return true;
+    }
+
     /**
      * Return self (a Constant is already fully optimized).
      */
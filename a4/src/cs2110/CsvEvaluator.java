@@ -2,7 +2,21 @@ package cs2110;
 
 import java.io.FileReader;
 import java.io.IOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
 import org.apache.commons.csv.CSVFormat;
 import org.apache.commons.csv.CSVParser;
 import org.apache.commons.csv.CSVPrinter;
@@ -28,47 +42,44 @@ public class CsvEvaluator {
      */
     public static void evaluateCsv(CSVParser parser, CSVPrinter printer) throws IOException {
         // Support the most common math functions when parsing expressions.
-        Map<String, UnaryFunction> defs = UnaryFunction.mathDefs();
+        Map<String, UnaryFunction> defs = mathDefs();
+        evaluateCsv(parser, printer, new FormulaCache(DEFAULT_CACHE_CAPACITY, defs));
+    }
 
-        // A mapping of the coordinates of cells we have seen so far to their numerical values (if
-        // they are a number or a successfully evaluated formula).
-        VarTable vars = new MapVarTable();
+    /**
+     * Return the core math functions in the mode selected by the system property
+     * "cs2110.math.mode" (see `MathMode.fromSystemProperty()`), with which formulas are evaluated
+     * unless a `FormulaCache` with other functions is provided.
+     */
+    static Map<String, UnaryFunction> mathDefs() {
+        return UnaryFunction.mathDefs(MathMode.fromSystemProperty());
+    }
+
+    /**
+     * The number of distinct formula shapes remembered while evaluating a spreadsheet.
+     */
+    static final int DEFAULT_CACHE_CAPACITY = 1024;
+
+    /**
+     * Copy the spreadsheet data from `parser` to `printer` as in `evaluateCsv(parser, printer)`,
+     * looking up formulas in `cache` so that formulas with the same relative shape (such as a
+     * formula filled down a column) are parsed only once.  Formulas may apply the functions
+     * `cache` was created with.
+     */
+    public static void evaluateCsv(CSVParser parser, CSVPrinter printer, FormulaCache cache)
+            throws IOException {
+        assert cache != null;
+
+        // The numerical values of the cells we have seen so far (if they are a number or a
+        // successfully evaluated formula), indexed by their coordinates.
+        CellGrid cells = new CellGrid();
+        NumberFormatter formatter = new NumberFormatter();
 
         int row = 1;
         for (CSVRecord record : parser){
             int column = 1;
             for (String cell : record){
-
-                // if the cell is a formula
-
-                if(!cell.isEmpty() && cell.charAt(0) == '='){
-                    try{
-
-                        // parse the formula
-                        Expression expr = RpnParser.parse(cell.substring(1),defs);
-                        // append the number the formula evaluates to
-                        double num = expr.eval(vars);
-                        vars.set(colToLetters(column)+row,num);
-                        // print the cell
-                        printer.print(num);
-                    }catch(Exception e){
-                        printer.print("#N/A");
-                    }
-                }
-
-
-                else {
-                    try{
-                    // try to make it a double
-                    double number = Double.parseDouble(cell);
-                    // if successful, add the position and number to vars
-                    vars.set(colToLetters(column)+row,number);
-                    // print the cell
-                    printer.print(cell);
-                    }
-                    catch(Exception e){
-                        printer.print(cell);}
-                }
+                evaluateCell(cell, row, column, cells, cache, formatter, printer);
                 column++;
             }
             printer.println();
@@ -77,9 +88,133 @@ public class CsvEvaluator {
         // Note that `CSVParser` implements `Iterable<CSVRecord>` and that `CSVRecord` implements
         // `Iterable<String>`.  This may suggest a solution using "enhanced for-loops" (though this
         // is not strictly required).
+    }
+
+    /**
+     * Copy the spreadsheet data read by `reader` to `printer` as in
+     * `evaluateCsv(parser, printer, cache)`.  Cells are evaluated directly from the reader's
+     * buffer, without creating a String for each one.
+     */
+    public static void evaluateCsv(SimplifiedCsvReader reader, CSVPrinter printer,
+            FormulaCache cache) throws IOException {
+        assert cache != null;
+
+        CellGrid cells = new CellGrid();
+        NumberFormatter formatter = new NumberFormatter();
+
+        int row = 1;
+        while (reader.nextRecord()) {
+            for (int column = 1; column <= reader.size(); column++) {
+                evaluateCell(reader.cell(column - 1), row, column, cells, cache, formatter,
+                        printer);
+            }
+            printer.println();
+            row++;
+        }
+    }
+
+    /**
+     * Print the evaluated contents of `cell`, located at (`row`, `column`), to `printer`.  If the
+     * cell is a number or a formula that can be evaluated using the values in `cells`, store its
+     * value in `cells`.  Formulas are looked up in `cache`, and their values are formatted by
+     * `formatter`.
+     */
+    private static void evaluateCell(CharSequence cell, int row, int column, CellGrid cells,
+            FormulaCache cache, NumberFormatter formatter, CSVPrinter printer)
+            throws IOException {
+
+        // if the cell is a formula
+
+        if(cell.length() != 0 && cell.charAt(0) == '='){
+            double num;
+            try{
+
+                // look up the formula's shape, parsing it if this shape is new
+                FormulaCache.Shape shape = cache.get(cell,1,row,column);
+                // append the number the formula evaluates to
+                num = shape.eval(cells,row,column);
+            }catch(Exception e){
+                printer.print("#N/A");
+                return;
+            }
+            cells.set(row,column,num);
+            // print the cell
+            printer.print(formatter.format(num));
+        }
+
+        // if the cell is a number, add it at its position (checking first, since most text
+        // cells are not numbers and exceptions are expensive)
+
+        else if(NumberParser.isDouble(cell)){
+            cells.set(row,column,NumberParser.parseDouble(cell));
+            printer.print(cell);
+        }
+
+        else {
+            printer.print(cell);
+        }
+    }
+
+    /**
+     * Copy the spreadsheet data from `parser` to `printer` with the same output as
+     * `evaluateCsv(parser, printer)`, but evaluate formulas that do not depend on each other in
+     * parallel on `pool`.  The whole spreadsheet is held in memory until it has been evaluated.
+     */
+    public static void evaluateCsvParallel(CSVParser parser, CSVPrinter printer,
+            ForkJoinPool pool) throws IOException {
+        assert pool != null;
 
+        FormulaCache cache = new FormulaCache(DEFAULT_CACHE_CAPACITY, mathDefs());
+        List<String[]> records = new ArrayList<>();
+        for (CSVRecord record : parser) {
+            records.add(record.values());
+        }
+        new ParallelSheetEvaluator(cache, pool).evaluate(records, printer);
+    }
 
+    /**
+     * Copy the spreadsheet data read by `reader` to `printer` as in
+     * `evaluateCsvParallel(parser, printer, pool)`.
+     */
+    public static void evaluateCsvParallel(SimplifiedCsvReader reader, CSVPrinter printer,
+            ForkJoinPool pool) throws IOException {
+        assert pool != null;
 
+        FormulaCache cache = new FormulaCache(DEFAULT_CACHE_CAPACITY, mathDefs());
+        List<String[]> records = new ArrayList<>();
+        while (reader.nextRecord()) {
+            records.add(reader.values());
+        }
+        new ParallelSheetEvaluator(cache, pool).evaluate(records, printer);
+    }
+
+    /**
+     * Copy the spreadsheet data from `parser` to `printer` with the same output as
+     * `evaluateCsv(parser, printer)`, but evaluate all formulas together as one DAG, computing
+     * each subexpression shared by several formulas (including through references to other
+     * formula cells) only once (see `SharedSheetEvaluator`).  The whole spreadsheet is held in
+     * memory until it has been evaluated.
+     */
+    public static void evaluateCsvShared(CSVParser parser, CSVPrinter printer)
+            throws IOException {
+        List<String[]> records = new ArrayList<>();
+        for (CSVRecord record : parser) {
+            records.add(record.values());
+        }
+        new SharedSheetEvaluator(mathDefs()).evaluate(records, printer);
+    }
+
+    /**
+     * Copy the spreadsheet data read by `reader` to `printer` as in
+     * `evaluateCsvShared(parser, printer)`.
+     */
+    public static void evaluateCsvShared(SimplifiedCsvReader reader, CSVPrinter printer)
+            throws IOException {
+        List<String[]> records = new ArrayList<>();
+        while (reader.nextRecord()) {
+            records.add(reader.values());
+        }
+        new SharedSheetEvaluator(mathDefs()).evaluate(records, printer);
     }
 
     /**
@@ -113,28 +248,161 @@ public class CsvEvaluator {
             .build();
 
     /**
-     * Parse a CSV file whose name is provided as the sole program argument, then print its
+     * How long the input file must go without changing before watch mode re-reads it, in
+     * milliseconds.  Editors often save a file in several writes.
+     */
+    static final long WATCH_QUIET_MILLIS = 100;
+
+    /**
+     * Evaluate the spreadsheet in `in`, writing its contents with formulas evaluated to `out`,
+     * then keep watching `in` for changes until interrupted.  Whenever `in` is rewritten, only the
+     * cells that changed and the formulas depending on them are recomputed, and `out` is replaced.
+     * A version of `in` that cannot be read (for example, because it is only partly written) is
+     * skipped until the next change.
+     */
+    public static void watch(Path in, Path out) throws IOException, InterruptedException {
+        IncrementalSheet sheet = new IncrementalSheet(
+                new FormulaCache(DEFAULT_CACHE_CAPACITY, mathDefs()));
+        sheet.update(readRecords(in));
+        writeSheet(sheet, out);
+
+        Path directory = in.toAbsolutePath().getParent();
+        try (WatchService watcher = directory.getFileSystem().newWatchService()) {
+            directory.register(watcher, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                WatchKey key = watcher.take();
+                boolean changed = false;
+                while (key != null) {
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        changed |= event.kind() == StandardWatchEventKinds.OVERFLOW
+                                || in.getFileName().equals(event.context());
+                    }
+                    key.reset();
+                    key = watcher.poll(WATCH_QUIET_MILLIS, TimeUnit.MILLISECONDS);
+                }
+                if (!changed) {
+                    continue;
+                }
+
+                List<String[]> records;
+                try {
+                    records = readRecords(in);
+                } catch (IOException e) {
+                    System.err.println("Could not read " + in + ": " + e.getMessage());
+                    continue;
+                }
+                int recomputed = sheet.update(records);
+                writeSheet(sheet, out);
+                System.err.println("Recomputed " + recomputed + " cells");
+            }
+        }
+    }
+
+    /**
+     * Return the records of the spreadsheet in `file`.  The file is read into memory rather than
+     * mapped, since it may be rewritten while it is being read.
+     */
+    private static List<String[]> readRecords(Path file) throws IOException {
+        SimplifiedCsvReader reader = new SimplifiedCsvReader(
+                ByteBuffer.wrap(Files.readAllBytes(file)), Charset.defaultCharset());
+        List<String[]> records = new ArrayList<>();
+        while (reader.nextRecord()) {
+            records.add(reader.values());
+        }
+        return records;
+    }
+
+    /**
+     * Replace the file `out` with the evaluated contents of `sheet`.  The contents are written to
+     * a temporary file first, so readers of `out` never see it partly written.
+     */
+    private static void writeSheet(IncrementalSheet sheet, Path out) throws IOException {
+        Path absolute = out.toAbsolutePath();
+        Path temporary = Files.createTempFile(absolute.getParent(),
+                absolute.getFileName().toString(), ".tmp");
+        try {
+            try (Writer writer = Files.newBufferedWriter(temporary, Charset.defaultCharset())) {
+                CSVPrinter printer = SIMPLIFIED_CSV.print(writer);
+                sheet.print(printer);
+                printer.flush();
+            }
+            Files.move(temporary, absolute, StandardCopyOption.REPLACE_EXISTING,
+                    StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temporary);
+        }
+    }
+
+    /**
+     * Parse a CSV file whose name is provided as the last program argument, then print its
      * contents, evaluating any cells containing formulas, to the standard output stream (also in
-     * CSV format).
+     * CSV format).  If the file name is preceded by "--parallel", independent formulas are
+     * evaluated in parallel on the common ForkJoinPool; if it is preceded by "--shared", all
+     * formulas are evaluated together, computing subexpressions they share once (see
+     * `evaluateCsvShared()`).  If it is preceded by "--watch" and an output file name, the
+     * evaluated contents are written to that file instead, and rewritten whenever the input file
+     * changes (see `watch()`).  The math functions formulas may apply
+     * are evaluated in the mode named by the system property "cs2110.math.mode" (for example,
+     * `java -Dcs2110.math.mode=strict CsvEvaluator <infile>`), DEFAULT if it is not set.
      */
     public static void main(String[] args) throws IOException {
         // Ensure that the user provided the expected number of program arguments, then extract
         // those arguments.
-        if (args.length != 1) {
-            System.err.println("Usage: java CsvEvaluator <infile>");
+        boolean parallel = args.length == 2 && args[0].equals("--parallel");
+        boolean shared = args.length == 2 && args[0].equals("--shared");
+        boolean watch = args.length == 3 && args[0].equals("--watch");
+        if (args.length != 1 && !parallel && !shared && !watch) {
+            System.err.println("Usage: java CsvEvaluator [--parallel | --shared | "
+                    + "--watch <outfile>] <infile>");
             System.exit(1);
         }
-        String filename = args[0];
+        String filename = args[args.length - 1];
+        try {
+            MathMode.fromSystemProperty();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown math mode: " + System.getProperty("cs2110.math.mode"));
+            System.exit(1);
+        }
+
+        if (watch) {
+            try {
+                watch(Path.of(filename), Path.of(args[1]));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return;
+        }
 
         // Open the specified CSV file, then copy its contents, with formulas evaluated, to
-        // `System.out`.
-        try (FileReader reader = new FileReader(filename);
-                CSVParser parser = SIMPLIFIED_CSV.parse(reader)) {
-            // We don't open the Printer as a "resource" because we don't want to automatically
-            // close `System.out`.  Instead, we flush it manually when we are done writing.
-            CSVPrinter printer = SIMPLIFIED_CSV.printer();
-            evaluateCsv(parser, printer);
-            printer.flush();
+        // `System.out`.  Files small enough to be memory-mapped are read by the dedicated reader
+        // for our format.
+        // We don't open the Printer as a "resource" because we don't want to automatically close
+        // `System.out`.  Instead, we flush it manually when we are done writing.
+        CSVPrinter printer = SIMPLIFIED_CSV.printer();
+        if (Files.size(Path.of(filename)) <= SimplifiedCsvReader.MAX_MAPPED_SIZE) {
+            try (SimplifiedCsvReader reader = SimplifiedCsvReader.open(Path.of(filename))) {
+                if (parallel) {
+                    evaluateCsvParallel(reader, printer, ForkJoinPool.commonPool());
+                } else if (shared) {
+                    evaluateCsvShared(reader, printer);
+                } else {
+                    evaluateCsv(reader, printer, new FormulaCache(DEFAULT_CACHE_CAPACITY,
+                            mathDefs()));
+                }
+            }
+        } else {
+            try (FileReader reader = new FileReader(filename);
+                    CSVParser parser = SIMPLIFIED_CSV.parse(reader)) {
+                if (parallel) {
+                    evaluateCsvParallel(parser, printer, ForkJoinPool.commonPool());
+                } else if (shared) {
+                    evaluateCsvShared(parser, printer);
+                } else {
+                    evaluateCsv(parser, printer);
+                }
+            }
         }
+        printer.flush();
     }
 }
@@ -16,6 +16,16 @@ public interface Expression {
      */
     double eval(VarTable vars) throws UnboundVariableException;
 
+    /**
+     * Store in `out[i]` the result of evaluating this expression with each of its variables bound
+     * to row `i` of that variable's column in `columns`, for every row of `columns`.  Each result
+     * is identical to that of `eval()`.  Throws UnboundVariableException if this expression
+     * contains a variable with no column in `columns`.  Requires `out.length >= columns.rows()`.
+     */
+    default void evalBatch(ColumnTable columns, double[] out) throws UnboundVariableException {
+        new BatchEvaluator().eval(this, columns, out);
+    }
+
     /**
      * Return the number of operations and unary functions contained in this expression.
      */
@@ -48,4 +58,29 @@ public interface Expression {
      */
     Set<String> dependencies();
 
+    /**
+     * Return the set of variables that this expression depends on, as a VarSet.  The core node
+     * types compute it once, when they are created, so this takes constant time.
+     */
+    default VarSet variables() {
+        return VarSet.copyOf(dependencies());
+    }
+
+    /**
+     * Return the number of operations and unary functions on the longest path from this node to
+     * a leaf (0 for a constant or variable).  The core node types compute it once, when they are
+     * created; other node types may return `opCount()`, which is an upper bound.
+     */
+    default int depth() {
+        return opCount();
+    }
+
+    /**
+     * Return whether this expression depends on no variables, so that it always evaluates to the
+     * same value.
+     */
+    default boolean isConstant() {
+        return variables().isEmpty();
+    }
+
 }
@@ -0,0 +1,678 @@
+package cs2110;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles expression trees into JVM bytecode.  Each compiled expression is a hidden class whose
+ * `eval(double[])` method performs the expression's arithmetic as straight-line code: constants
+ * are loaded from the constant pool, variables are read from the slot array, the core operators
+ * become single arithmetic instructions, and the core math functions of every `MathMode` become
+ * direct calls into `java.lang.Math`, `java.lang.StrictMath`, or `FastMath`.  Results are
+ * identical to those of `Expression.eval()`.  An expression with at most one variable also gets
+ * an `eval(double)` method that takes that variable's value as its argument, so that evaluating
+ * it allocates nothing.
+ * <p>
+ * Expressions containing node types other than `Constant`, `Variable`, `Operation`,
+ * `Application`, and `FusedMultiplyAdd` (or that are too large for a single JVM method) cannot
+ * be compiled; for these, `compile()` returns an object that evaluates the original tree
+ * instead.
+ */
+public final class ExpressionCompiler {
+
+    /**
+     * Class file version to emit (Java 15, the first release supporting hidden classes).
+     */
+    private static final int CLASS_VERSION = 59;
+
+    /**
+     * Largest code array permitted in a single JVM method.
+     */
+    private static final int MAX_CODE_LENGTH = 65535;
+
+    /**
+     * Internal names of classes referenced by generated code.
+     */
+    private static final String BASE_CLASS = "cs2110/CompiledExpression";
+    private static final String GENERATED_CLASS = "cs2110/CompiledExpression$Generated";
+    private static final String CONSTRUCTOR_DESCRIPTOR =
+            "(Lcs2110/VarSlots;[I[Lcs2110/UnaryFunction;[Lcs2110/Operator;)V";
+
+    /**
+     * Core functions that are compiled to direct static calls, mapped to the internal name of
+     * the class declaring the method they wrap.  The method has the function's name.
+     */
+    private static final Map<UnaryFunction, String> MATH_METHODS = mathMethods();
+
+    /**
+     * Return the owners of the core functions of every `MathMode`: `java.lang.Math` for the
+     * DEFAULT functions (including `abs()` and `sqrt()`, which every mode shares, and the
+     * functions FAST shares with DEFAULT), `java.lang.StrictMath` for STRICT, and `FastMath` for
+     * the `tan()` of FAST.
+     */
+    private static Map<UnaryFunction, String> mathMethods() {
+        Map<UnaryFunction, String> methods = new HashMap<>();
+        for (MathMode mode : List.of(MathMode.DEFAULT, MathMode.STRICT, MathMode.FAST)) {
+            String owner = switch (mode) {
+                case STRICT -> "java/lang/StrictMath";
+                case DEFAULT -> "java/lang/Math";
+                case FAST -> "cs2110/FastMath";
+            };
+            for (UnaryFunction function : UnaryFunction.mathDefs(mode).values()) {
+                methods.putIfAbsent(function, owner);
+            }
+        }
+        return methods;
+    }
+
+    /* JVM opcodes used by generated code. */
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int ALOAD = 0x19;
+    private static final int ALOAD_0 = 0x2a;
+    private static final int ALOAD_1 = 0x2b;
+    private static final int ALOAD_2 = 0x2c;
+    private static final int ALOAD_3 = 0x2d;
+    private static final int DLOAD_1 = 0x27;
+    private static final int DALOAD = 0x31;
+    private static final int AALOAD = 0x32;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6b;
+    private static final int DDIV = 0x6f;
+    private static final int DRETURN = 0xaf;
+    private static final int RETURN = 0xb1;
+    private static final int GETFIELD = 0xb4;
+    private static final int INVOKEVIRTUAL = 0xb6;
+    private static final int INVOKESPECIAL = 0xb7;
+    private static final int INVOKESTATIC = 0xb8;
+    private static final int INVOKEINTERFACE = 0xb9;
+
+    private ExpressionCompiler() {
+    }
+
+    /**
+     * Return a compiled form of `expr`.  Its slots are assigned to the variables of `expr` in the
+     * order they first appear in its postfix representation.  If `expr` cannot be compiled to
+     * bytecode, the returned object evaluates `expr` as a tree.
+     */
+    public static CompiledExpression compile(Expression expr) {
+        return compile(expr, new VarSlots());
+    }
+
+    /**
+     * Return a compiled form of `expr` that reads its variables from the slots assigned by
+     * `slots`.  Variables of `expr` that have no slot yet are added to `slots` in the order they
+     * first appear in its postfix representation.  If `expr` cannot be compiled to bytecode, the
+     * returned object evaluates `expr` as a tree.
+     */
+    public static CompiledExpression compile(Expression expr, VarSlots slots) {
+        assert expr != null;
+        assert slots != null;
+
+        Set<Integer> used = new LinkedHashSet<>();
+        boolean compilable = assignSlots(expr, slots, used);
+        int[] usedSlots = used.stream().mapToInt(Integer::intValue).toArray();
+        if (!compilable) {
+            return new Interpreted(expr, slots, usedSlots);
+        }
+
+        MethodWriter writer;
+        MethodHandle constructor;
+        try {
+            writer = new MethodWriter(new ConstantPool(), slots);
+            writer.emit(expr);
+            writer.op(DRETURN);
+            if (usedSlots.length <= 1) {
+                // With at most one variable, `eval(double)` can take its value as an argument.
+                writer.beginScalarMethod();
+                writer.emit(expr);
+                writer.op(DRETURN);
+            }
+            if (writer.tooLong()) {
+                return new Interpreted(expr, slots, usedSlots);
+            }
+
+            MethodHandles.Lookup lookup = MethodHandles.lookup()
+                    .defineHiddenClass(writer.toClassFile(), true);
+            constructor = lookup.findConstructor(lookup.lookupClass(),
+                    MethodType.methodType(void.class, VarSlots.class, int[].class,
+                            UnaryFunction[].class, Operator[].class));
+        } catch (LinkageError | IllegalAccessException | IllegalArgumentException
+                | IllegalStateException e) {
+            // The expression exceeds a limit of the class file format or the JVM, so evaluate the
+            // tree instead.
+            return new Interpreted(expr, slots, usedSlots);
+        } catch (IOException | NoSuchMethodException rethrown) {
+            // Class files are written to memory, and every generated class declares this
+            // constructor, so this should not happen.
+            throw new RuntimeException(rethrown);
+        }
+        try {
+            return (CompiledExpression) constructor.invoke(slots, usedSlots,
+                    writer.functions.toArray(new UnaryFunction[0]),
+                    writer.operators.toArray(new Operator[0]));
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable rethrown) {
+            // The generated constructor only stores its arguments, so this should not happen.
+            throw new RuntimeException(rethrown);
+        }
+    }
+
+    /**
+     * Add the slots of the variables of `expr` to `used` in order of first appearance, assigning
+     * new slots in `slots` to variables that do not have one.  Return whether every node of `expr`
+     * is of a type that can be compiled; if not, `used` will still contain the slot of every
+     * variable `expr` depends on.
+     */
+    private static boolean assignSlots(Expression expr, VarSlots slots, Set<Integer> used) {
+        if (expr instanceof Constant) {
+            return true;
+        }
+        if (expr instanceof Variable) {
+            used.add(slots.add(((Variable) expr).name()));
+            return true;
+        }
+        if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            boolean left = assignSlots(operation.leftOperand(), slots, used);
+            boolean right = assignSlots(operation.rightOperand(), slots, used);
+            return left && right;
+        }
+        if (expr instanceof Application) {
+            return assignSlots(((Application) expr).argument(), slots, used);
+        }
+        if (expr instanceof FusedMultiplyAdd) {
+            FusedMultiplyAdd fma = (FusedMultiplyAdd) expr;
+            boolean multiplier = assignSlots(fma.multiplier(), slots, used);
+            boolean multiplicand = assignSlots(fma.multiplicand(), slots, used);
+            boolean addend = assignSlots(fma.addend(), slots, used);
+            return multiplier && multiplicand && addend;
+        }
+        for (String name : expr.dependencies()) {
+            used.add(slots.add(name));
+        }
+        return false;
+    }
+
+    /**
+     * A compiled expression that evaluates its original expression tree.  Used for expressions
+     * that cannot be compiled to bytecode.
+     */
+    private static final class Interpreted extends CompiledExpression {
+
+        /**
+         * The expression being evaluated.
+         */
+        private final Expression expr;
+
+        Interpreted(Expression expr, VarSlots slots, int[] usedSlots) {
+            super(slots, usedSlots, new UnaryFunction[0], new Operator[0]);
+            this.expr = slots.bind(expr);
+        }
+
+        @Override
+        public double eval(double[] values) {
+            ArrayVarTable vars = new ArrayVarTable(slots());
+            for (int slot = 0; slot < slotCount(); slot++) {
+                vars.set(slot, values[slot]);
+            }
+            try {
+                return expr.eval(vars);
+            } catch (UnboundVariableException rethrown) {
+                // Every variable of `expr` was assigned a slot, so this should not happen.
+                throw new RuntimeException(rethrown);
+            }
+        }
+
+        @Override
+        public double eval(VarTable vars) throws UnboundVariableException {
+            return expr.eval(vars);
+        }
+    }
+
+    /**
+     * The constant pool of a class file under construction.  Entries are deduplicated.
+     */
+    private static final class ConstantPool {
+
+        private static final int UTF8 = 1;
+        private static final int DOUBLE = 6;
+        private static final int CLASS = 7;
+        private static final int FIELDREF = 9;
+        private static final int METHODREF = 10;
+        private static final int INTERFACE_METHODREF = 11;
+        private static final int NAME_AND_TYPE = 12;
+
+        /**
+         * Serialized entries, in index order.
+         */
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        /**
+         * Index of each entry added so far, keyed by a description of its contents.
+         */
+        private final Map<String, Integer> indices = new HashMap<>();
+
+        /**
+         * The index that will be assigned to the next entry (index 0 is unused).
+         */
+        private int next = 1;
+
+        int utf8(String value) {
+            Integer index = indices.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            write(UTF8);
+            writeUtf(value);
+            return register("U" + value, 1);
+        }
+
+        int classRef(String internalName) {
+            int name = utf8(internalName);
+            return entry("C" + internalName, CLASS, name);
+        }
+
+        int doubleValue(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            Integer index = indices.get("D" + bits);
+            if (index != null) {
+                return index;
+            }
+            write(DOUBLE);
+            writeLong(bits);
+            // Doubles occupy two constant pool indices.
+            return register("D" + bits, 2);
+        }
+
+        int fieldRef(String owner, String name, String descriptor) {
+            return memberRef(FIELDREF, owner, name, descriptor);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            return memberRef(METHODREF, owner, name, descriptor);
+        }
+
+        int interfaceMethodRef(String owner, String name, String descriptor) {
+            return memberRef(INTERFACE_METHODREF, owner, name, descriptor);
+        }
+
+        private int memberRef(int tag, String owner, String name, String descriptor) {
+            int ownerIndex = classRef(owner);
+            int nameAndType = entry("N" + name + ":" + descriptor, NAME_AND_TYPE, utf8(name),
+                    utf8(descriptor));
+            return entry(tag + owner + "." + name + ":" + descriptor, tag, ownerIndex,
+                    nameAndType);
+        }
+
+        private int entry(String key, int tag, int... operands) {
+            Integer index = indices.get(key);
+            if (index != null) {
+                return index;
+            }
+            write(tag);
+            for (int operand : operands) {
+                writeShort(operand);
+            }
+            return register(key, 1);
+        }
+
+        private int register(String key, int width) {
+            int index = next;
+            indices.put(key, index);
+            next += width;
+            return index;
+        }
+
+        /**
+         * Return the number of constant pool indices used (the `constant_pool_count` field).
+         */
+        int count() {
+            return next;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+
+        private void write(int b) {
+            bytes.write(b);
+        }
+
+        private void writeShort(int s) {
+            try {
+                out.writeShort(s);
+            } catch (IOException e) {
+                // Writes to a ByteArrayOutputStream cannot fail.
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void writeLong(long l) {
+            try {
+                out.writeLong(l);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+
+        private void writeUtf(String s) {
+            try {
+                out.writeUTF(s);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            }
+        }
+    }
+
+    /**
+     * Emits the bodies of the generated `eval()` methods and assembles the class file around them.
+     * The body of `eval(double[])` is emitted first; if `beginScalarMethod()` is then called, the
+     * body of `eval(double)` is emitted next.
+     */
+    private static final class MethodWriter {
+
+        private final ConstantPool pool;
+
+        /**
+         * Slot assignment of the variables.
+         */
+        private final VarSlots slots;
+
+        /**
+         * Bytecode of the method being emitted so far.
+         */
+        private ByteArrayOutputStream code = new ByteArrayOutputStream();
+
+        /**
+         * Whether the method being emitted is `eval(double)`, which reads its only variable from
+         * its argument rather than from the slot array.
+         */
+        private boolean scalar = false;
+
+        /**
+         * Bytecode and maximum stack depth of `eval(double[])`, once emission of `eval(double)` has
+         * begun.
+         */
+        private ByteArrayOutputStream arrayCode = null;
+        private int arrayMaxStack = 0;
+
+        /**
+         * Functions and operators that must be invoked through their objects, indexed as they
+         * will be stored in the compiled expression.
+         */
+        private final List<UnaryFunction> functions = new ArrayList<>();
+        private final List<Operator> operators = new ArrayList<>();
+
+        /**
+         * Current and maximum operand stack depth (in JVM stack words) of the emitted code.
+         */
+        private int stack = 0;
+        private int maxStack = 0;
+
+        MethodWriter(ConstantPool pool, VarSlots slots) {
+            this.pool = pool;
+            this.slots = slots;
+        }
+
+        /**
+         * Finish the body of `eval(double[])` and begin that of `eval(double)`.  Requires the
+         * expression to have at most one variable.
+         */
+        void beginScalarMethod() {
+            assert !scalar;
+            arrayCode = code;
+            arrayMaxStack = maxStack;
+            code = new ByteArrayOutputStream();
+            stack = 0;
+            maxStack = 0;
+            scalar = true;
+        }
+
+        /**
+         * Return whether a method body is too long for the class file format.
+         */
+        boolean tooLong() {
+            return code.size() > MAX_CODE_LENGTH
+                    || (arrayCode != null && arrayCode.size() > MAX_CODE_LENGTH);
+        }
+
+        /**
+         * Emit code that leaves the value of `expr` on the operand stack.  Requires every node of
+         * `expr` to be compilable.
+         */
+        void emit(Expression expr) {
+            if (expr instanceof Constant) {
+                op(LDC2_W);
+                u2(pool.doubleValue(((Constant) expr).value()));
+                push(2);
+            } else if (expr instanceof Variable && scalar) {
+                op(DLOAD_1);
+                push(2);
+            } else if (expr instanceof Variable) {
+                op(ALOAD_1);
+                push(1);
+                pushInt(slots.slotOf(((Variable) expr).name()));
+                op(DALOAD);
+                pop(2);
+                push(2);
+            } else if (expr instanceof Operation) {
+                emitOperation((Operation) expr);
+            } else if (expr instanceof FusedMultiplyAdd) {
+                FusedMultiplyAdd fma = (FusedMultiplyAdd) expr;
+                emit(fma.multiplier());
+                emit(fma.multiplicand());
+                emit(fma.addend());
+                op(INVOKESTATIC);
+                u2(pool.methodRef("java/lang/Math", "fma", "(DDD)D"));
+                pop(4);
+            } else {
+                emitApplication((Application) expr);
+            }
+        }
+
+        private void emitOperation(Operation operation) {
+            Operator operator = operation.operator();
+            int opcode = operator == Operator.ADD ? DADD
+                    : operator == Operator.SUBTRACT ? DSUB
+                    : operator == Operator.MULTIPLY ? DMUL
+                    : operator == Operator.DIVIDE ? DDIV
+                    : -1;
+            if (opcode != -1) {
+                emit(operation.leftOperand());
+                emit(operation.rightOperand());
+                op(opcode);
+                pop(2);
+            } else if (operator == Operator.POW) {
+                emit(operation.leftOperand());
+                emit(operation.rightOperand());
+                op(INVOKESTATIC);
+                u2(pool.methodRef("java/lang/Math", "pow", "(DD)D"));
+                pop(2);
+            } else {
+                loadElement("operators", "[Lcs2110/Operator;", indexOf(operators, operator));
+                emit(operation.leftOperand());
+                emit(operation.rightOperand());
+                op(INVOKEINTERFACE);
+                u2(pool.interfaceMethodRef("cs2110/Operator", "operate", "(DD)D"));
+                // Argument words, including the receiver.
+                code.write(5);
+                code.write(0);
+                pop(5);
+                push(2);
+            }
+        }
+
+        private void emitApplication(Application application) {
+            UnaryFunction function = application.function();
+            String owner = MATH_METHODS.get(function);
+            if (owner != null) {
+                emit(application.argument());
+                op(INVOKESTATIC);
+                u2(pool.methodRef(owner, function.name(), "(D)D"));
+            } else {
+                loadElement("functions", "[Lcs2110/UnaryFunction;",
+                        indexOf(functions, function));
+                emit(application.argument());
+                op(INVOKEVIRTUAL);
+                u2(pool.methodRef("cs2110/UnaryFunction", "apply", "(D)D"));
+                pop(3);
+                push(2);
+            }
+        }
+
+        /**
+         * Return the index of `element` in `list`, compared by identity, appending it if it is not
+         * there yet.
+         */
+        private static <T> int indexOf(List<T> list, T element) {
+            for (int i = 0; i < list.size(); i++) {
+                if (list.get(i) == element) {
+                    return i;
+                }
+            }
+            list.add(element);
+            return list.size() - 1;
+        }
+
+        /**
+         * Emit code that pushes element `index` of the array stored in field `field` of the
+         * compiled expression.
+         */
+        private void loadElement(String field, String descriptor, int index) {
+            op(ALOAD_0);
+            push(1);
+            op(GETFIELD);
+            u2(pool.fieldRef(BASE_CLASS, field, descriptor));
+            pushInt(index);
+            op(AALOAD);
+            pop(1);
+        }
+
+        /**
+         * Emit code that pushes the int `value`.
+         */
+        private void pushInt(int value) {
+            if (value <= 5) {
+                op(ICONST_0 + value);
+            } else if (value <= Byte.MAX_VALUE) {
+                op(BIPUSH);
+                code.write(value);
+            } else if (value <= Short.MAX_VALUE) {
+                op(SIPUSH);
+                u2(value);
+            } else {
+                // `compile()` falls back to the tree for expressions with this many slots.
+                throw new IllegalStateException("Index too large to compile: " + value);
+            }
+            push(1);
+        }
+
+        void op(int opcode) {
+            code.write(opcode);
+        }
+
+        private void u2(int value) {
+            code.write(value >>> 8);
+            code.write(value);
+        }
+
+        private void push(int words) {
+            stack += words;
+            maxStack = Math.max(maxStack, stack);
+        }
+
+        private void pop(int words) {
+            stack -= words;
+        }
+
+        /**
+         * Return a complete class file for a subclass of `CompiledExpression` whose `eval()`
+         * methods execute the emitted code.
+         */
+        byte[] toClassFile() throws IOException {
+            int thisClass = pool.classRef(GENERATED_CLASS);
+            int superClass = pool.classRef(BASE_CLASS);
+            int codeAttribute = pool.utf8("Code");
+
+            int initName = pool.utf8("<init>");
+            int initDescriptor = pool.utf8(CONSTRUCTOR_DESCRIPTOR);
+            int superInit = pool.methodRef(BASE_CLASS, "<init>", CONSTRUCTOR_DESCRIPTOR);
+            int evalName = pool.utf8("eval");
+            int evalDescriptor = pool.utf8("([D)D");
+            int scalarDescriptor = pool.utf8("(D)D");
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            out.writeShort(pool.count());
+            out.write(pool.toByteArray());
+            // ACC_FINAL | ACC_SUPER
+            out.writeShort(0x0030);
+            out.writeShort(thisClass);
+            out.writeShort(superClass);
+            // No interfaces or fields.
+            out.writeShort(0);
+            out.writeShort(0);
+
+            out.writeShort(scalar ? 3 : 2);
+            byte[] init = {
+                    (byte) ALOAD_0, (byte) ALOAD_1, (byte) ALOAD_2, (byte) ALOAD_3,
+                    (byte) ALOAD, 4, (byte) INVOKESPECIAL, (byte) (superInit >>> 8),
+                    (byte) superInit, (byte) RETURN};
+            writeMethod(out, initName, initDescriptor, codeAttribute, 5, 5, init);
+            if (scalar) {
+                writeMethod(out, evalName, evalDescriptor, codeAttribute, arrayMaxStack, 2,
+                        arrayCode.toByteArray());
+                // Locals: this, and the argument (two words).
+                writeMethod(out, evalName, scalarDescriptor, codeAttribute, maxStack, 3,
+                        code.toByteArray());
+            } else {
+                writeMethod(out, evalName, evalDescriptor, codeAttribute, maxStack, 2,
+                        code.toByteArray());
+            }
+
+            // No class attributes.
+            out.writeShort(0);
+            return bytes.toByteArray();
+        }
+
+        /**
+         * Write a public method with the given name, descriptor, and code to `out`.
+         */
+        private static void writeMethod(DataOutputStream out, int name, int descriptor,
+                int codeAttribute, int maxStack, int maxLocals, byte[] code) throws IOException {
+            // ACC_PUBLIC
+            out.writeShort(0x0001);
+            out.writeShort(name);
+            out.writeShort(descriptor);
+            out.writeShort(1);
+            out.writeShort(codeAttribute);
+            // max_stack, max_locals, code_length, code, exception_table_length, attributes_count
+            out.writeInt(2 + 2 + 4 + code.length + 2 + 2);
+            out.writeShort(maxStack);
+            out.writeShort(maxLocals);
+            out.writeInt(code.length);
+            out.write(code);
+            out.writeShort(0);
+            out.writeShort(0);
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package cs2110;
+
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * One or more expressions flattened into a list of distinct nodes in dependency order, so that
+ * evaluating them computes each node exactly once, however many times it is shared.  Nodes are
+ * distinct by identity; build the expressions with an `ExpressionInterner` (or pass them through
+ * `intern()`) so that identical subtrees are shared.
+ */
+public class ExpressionDag {
+
+    /**
+     * Kinds of nodes.  Leaves (constants, variables, and nodes of unknown classes) are evaluated
+     * by their own `eval()`.
+     */
+    private static final byte LEAF = 0;
+    private static final byte OPERATION = 1;
+    private static final byte APPLICATION = 2;
+
+    /**
+     * The distinct nodes, each after all of its children.
+     */
+    private final Expression[] nodes;
+
+    /**
+     * The kind of each node, and the indices of its children in `nodes` (-1 if none).
+     */
+    private final byte[] kinds;
+    private final int[] lefts;
+    private final int[] rights;
+
+    /**
+     * The index in `nodes` of each root expression.
+     */
+    private final int[] roots;
+
+    /**
+     * Flatten `roots`, evaluated together, into a DAG.
+     */
+    public ExpressionDag(List<Expression> roots) {
+        assert roots != null;
+
+        Map<Expression, Integer> indices = new IdentityHashMap<>();
+        List<Expression> order = new ArrayList<>();
+        this.roots = new int[roots.size()];
+        for (int i = 0; i < roots.size(); i++) {
+            this.roots[i] = add(roots.get(i), indices, order);
+        }
+
+        nodes = order.toArray(new Expression[0]);
+        kinds = new byte[nodes.length];
+        lefts = new int[nodes.length];
+        rights = new int[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            Expression node = nodes[i];
+            lefts[i] = -1;
+            rights[i] = -1;
+            if (node instanceof Operation) {
+                kinds[i] = OPERATION;
+                lefts[i] = indices.get(((Operation) node).leftOperand());
+                rights[i] = indices.get(((Operation) node).rightOperand());
+            } else if (node instanceof Application) {
+                kinds[i] = APPLICATION;
+                lefts[i] = indices.get(((Application) node).argument());
+            } else {
+                kinds[i] = LEAF;
+            }
+        }
+    }
+
+    /**
+     * Flatten the single expression `root` into a DAG.
+     */
+    public ExpressionDag(Expression root) {
+        this(List.of(root));
+    }
+
+    /**
+     * Add `expr` and its descendants to `order` after their children, unless already added, and
+     * return the index of `expr`.
+     */
+    private static int add(Expression expr, Map<Expression, Integer> indices,
+            List<Expression> order) {
+        Integer index = indices.get(expr);
+        if (index != null) {
+            return index;
+        }
+        if (expr instanceof Operation) {
+            add(((Operation) expr).leftOperand(), indices, order);
+            add(((Operation) expr).rightOperand(), indices, order);
+        } else if (expr instanceof Application) {
+            add(((Application) expr).argument(), indices, order);
+        }
+        indices.put(expr, order.size());
+        order.add(expr);
+        return order.size() - 1;
+    }
+
+    /**
+     * Return the number of distinct nodes, which is the number of values computed per evaluation.
+     */
+    public int nodeCount() {
+        return nodes.length;
+    }
+
+    /**
+     * Return the value of the single root expression, substituting variables with their values in
+     * `vars`.  Throws UnboundVariableException if it contains a variable not in `vars`.
+     */
+    public double eval(VarTable vars) throws UnboundVariableException {
+        assert roots.length == 1;
+        return evalNodes(vars)[roots[0]];
+    }
+
+    /**
+     * Store the value of root expression `i` in `out[i]`, for each root, substituting variables
+     * with their values in `vars`.  Throws UnboundVariableException if the roots contain a
+     * variable not in `vars`.  Requires `out.length >= ` the number of roots.
+     */
+    public void evalAll(VarTable vars, double[] out) throws UnboundVariableException {
+        double[] values = evalNodes(vars);
+        for (int i = 0; i < roots.length; i++) {
+            out[i] = values[roots[i]];
+        }
+    }
+
+    /**
+     * Return the value of every node, in the order of `nodes`.
+     */
+    private double[] evalNodes(VarTable vars) throws UnboundVariableException {
+        assert vars != null;
+
+        double[] values = new double[nodes.length];
+        for (int i = 0; i < nodes.length; i++) {
+            switch (kinds[i]) {
+                case OPERATION:
+                    values[i] = ((Operation) nodes[i]).operator()
+                            .operate(values[lefts[i]], values[rights[i]]);
+                    break;
+                case APPLICATION:
+                    values[i] = ((Application) nodes[i]).function().apply(values[lefts[i]]);
+                    break;
+                default:
+                    values[i] = nodes[i].eval(vars);
+            }
+        }
+        return values;
+    }
+}
@@ -0,0 +1,176 @@
+package cs2110;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * A factory for expression nodes that returns one shared instance for each distinct expression
+ * (hash-consing), so that identical subtrees, within one expression or across many, are the same
+ * object.  An expression built from interned nodes is a DAG; `ExpressionDag` evaluates each of its
+ * shared nodes once.
+ * <p>
+ * Nodes are identified by their class, their operator, function, variable name, or constant bits,
+ * and the identity of their (already interned) children.  This agrees with `equals()`, except that
+ * constants are compared by their bits, so 0.0 and -0.0 are distinct and NaN is equal to itself.
+ * Functions and operators are compared by identity.  Nodes of other classes are only shared with
+ * themselves.
+ */
+public class ExpressionInterner {
+
+    /**
+     * The interned node for each key.
+     */
+    private final Map<Key, Expression> nodes = new HashMap<>();
+
+    /**
+     * The interned nodes, compared by identity, so that interning an interned node (or a DAG of
+     * them) returns immediately.
+     */
+    private final Set<Expression> interned = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    /**
+     * Identifies a node by its class, its head (operator, function, name, or constant bits), and
+     * the identities of its children.
+     */
+    private static final class Key {
+
+        private final Class<?> type;
+        private final Object head;
+        private final Expression left;
+        private final Expression right;
+
+        Key(Class<?> type, Object head, Expression left, Expression right) {
+            this.type = type;
+            this.head = head;
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) obj;
+            return type == other.type && head.equals(other.head) && left == other.left
+                    && right == other.right;
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(type, head, System.identityHashCode(left),
+                    System.identityHashCode(right));
+        }
+    }
+
+    /**
+     * Return the interned constant with value `value`.
+     */
+    public Expression constant(double value) {
+        return intern(new Key(Constant.class, Double.doubleToRawLongBits(value), null, null),
+                new Constant(value));
+    }
+
+    /**
+     * Return the interned variable named `name`.
+     */
+    public Expression variable(String name) {
+        assert name != null;
+        return intern(new Key(Variable.class, name, null, null), new Variable(name));
+    }
+
+    /**
+     * Return the interned operation applying `op` to `left` and `right`, which must have been
+     * returned by this interner.
+     */
+    public Expression operation(Operator op, Expression left, Expression right) {
+        assert op != null;
+        Key key = new Key(Operation.class, new Identity(op), left, right);
+        Expression node = nodes.get(key);
+        return node != null ? node : intern(key, new Operation(op, left, right));
+    }
+
+    /**
+     * Return the interned application of `function` to `argument`, which must have been returned
+     * by this interner.
+     */
+    public Expression application(UnaryFunction function, Expression argument) {
+        assert function != null;
+        Key key = new Key(Application.class, new Identity(function), argument, null);
+        Expression node = nodes.get(key);
+        return node != null ? node : intern(key, new Application(function, argument));
+    }
+
+    /**
+     * Return the interned node equivalent to `expr`, interning all of its subtrees.
+     */
+    public Expression intern(Expression expr) {
+        assert expr != null;
+
+        if (interned.contains(expr)) {
+            return expr;
+        }
+        if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            return operation(operation.operator(), intern(operation.leftOperand()),
+                    intern(operation.rightOperand()));
+        }
+        if (expr instanceof Application) {
+            Application application = (Application) expr;
+            return application(application.function(), intern(application.argument()));
+        }
+        if (expr.getClass() == Constant.class) {
+            return intern(new Key(Constant.class,
+                    Double.doubleToRawLongBits(((Constant) expr).value()), null, null), expr);
+        }
+        if (expr.getClass() == Variable.class || expr.getClass() == CellReference.class) {
+            return intern(new Key(expr.getClass(), ((Variable) expr).name(), null, null), expr);
+        }
+        return intern(new Key(expr.getClass(), new Identity(expr), null, null), expr);
+    }
+
+    /**
+     * Return the number of distinct nodes interned.
+     */
+    public int size() {
+        return nodes.size();
+    }
+
+    /**
+     * Return the node interned under `key`, interning `node` under it if there is none.
+     */
+    private Expression intern(Key key, Expression node) {
+        Expression existing = nodes.putIfAbsent(key, node);
+        if (existing != null) {
+            return existing;
+        }
+        interned.add(node);
+        return node;
+    }
+
+    /**
+     * Wraps an object so that it is compared by identity.
+     */
+    private static final class Identity {
+
+        private final Object object;
+
+        Identity(Object object) {
+            this.object = object;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj instanceof Identity && ((Identity) obj).object == object;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(object);
+        }
+    }
+}
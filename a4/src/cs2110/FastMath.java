@@ -0,0 +1,235 @@
+package cs2110;
+
+/**
+ * Approximations of `exp()`, `log()`, `sin()`, `cos()`, and `tan()` that trade a few units in the
+ * last place (ulps) of accuracy for short, branch-light code the JIT compiler can inline into
+ * compiled expressions.  Each reduces its argument to a small interval, evaluates a polynomial
+ * there, and undoes the reduction.  Arguments outside the range where the reduction is accurate
+ * (and special values) are handed to the `java.lang.Math` method of the same name.
+ * <p>
+ * Maximum errors against `StrictMath`, as measured by `MathAccuracyReport` over a million
+ * arguments per function and, for the trigonometric functions, also found at the doubles within
+ * 3 ulps of each multiple of pi/2 in range, where the reduced argument is smallest:
+ * <ul>
+ *     <li>`exp()`: 1 ulp for |x| <= 708</li>
+ *     <li>`log()`: 1 ulp for positive normal x</li>
+ *     <li>`sin()`, `cos()`: 2 ulps for |x| <= 1e5</li>
+ *     <li>`tan()`: 4 ulps for |x| <= 1e5</li>
+ * </ul>
+ * These are always much faster than `StrictMath`.  Against `java.lang.Math`, whose methods the
+ * JIT compiler may replace with intrinsics, only `tan()` is faster on HotSpot for x86-64 (about
+ * 2.5x); `exp()`, `log()`, `sin()`, and `cos()` are slower.  So `MathMode.FAST` uses only
+ * `tan()` from here.
+ */
+public final class FastMath {
+
+    private FastMath() {
+    }
+
+    /**
+     * The largest magnitude of an argument to `exp()` computed here.  The result is then a
+     * normal double.
+     */
+    private static final double MAX_EXP_ARGUMENT = 708;
+
+    /**
+     * The number of steps per power of two in the table used by `exp()`, and the table:
+     * `EXP_TABLE[j]` is 2^(j/32).
+     */
+    private static final int EXP_STEPS = 32;
+    private static final double[] EXP_TABLE = new double[EXP_STEPS];
+
+    static {
+        for (int j = 0; j < EXP_STEPS; j++) {
+            EXP_TABLE[j] = StrictMath.pow(2, (double) j / EXP_STEPS);
+        }
+    }
+
+    /**
+     * ln(2) split into a part whose products with small integers are exact and the rest, and
+     * EXP_STEPS / ln(2).
+     */
+    private static final double LN2_HI = 6.93147180369123816490e-01;
+    private static final double LN2_LO = 1.90821492927058770002e-10;
+    private static final double STEPS_PER_LN2 = EXP_STEPS / 0.6931471805599453;
+
+    /**
+     * Return an approximation of `Math.exp(x)`.
+     */
+    public static double exp(double x) {
+        if (!(Math.abs(x) <= MAX_EXP_ARGUMENT)) {
+            return Math.exp(x);
+        }
+        // x = (32 m + j) ln(2) / 32 + r, with |r| <= ln(2) / 64.
+        int n = (int) Math.rint(x * STEPS_PER_LN2);
+        double r = x - n * (LN2_HI / EXP_STEPS) - n * (LN2_LO / EXP_STEPS);
+        int j = n & (EXP_STEPS - 1);
+        int m = n >> 5;
+        // e^r - 1, by its Taylor series, which is accurate to 2^-60 for such small r.
+        double q = r + r * r * (1.0 / 2 + r * (1.0 / 6 + r * (1.0 / 24 + r * (1.0 / 120
+                + r * (1.0 / 720)))));
+        double scale = Double.longBitsToDouble((long) (m + 1023) << 52);
+        return (EXP_TABLE[j] + EXP_TABLE[j] * q) * scale;
+    }
+
+    /**
+     * sqrt(2), and the bits of a double's exponent field and of 1.0.
+     */
+    private static final double SQRT2 = 1.4142135623730951;
+    private static final long EXPONENT_BITS = 0x7FF0000000000000L;
+    private static final long ONE_BITS = 0x3FF0000000000000L;
+
+    /**
+     * Return an approximation of `Math.log(x)`.
+     */
+    public static double log(double x) {
+        long bits = Double.doubleToRawLongBits(x);
+        if (!(x > 0) || (bits & EXPONENT_BITS) == 0 || (bits & EXPONENT_BITS) == EXPONENT_BITS) {
+            // Not positive, subnormal, infinite, or NaN.
+            return Math.log(x);
+        }
+        // x = 2^e (1 + f), with sqrt(1/2) <= 1 + f < sqrt(2).
+        int e = (int) ((bits & EXPONENT_BITS) >>> 52) - 1023;
+        double m = Double.longBitsToDouble((bits & ~EXPONENT_BITS) | ONE_BITS);
+        if (m > SQRT2) {
+            m /= 2;
+            e++;
+        }
+        double f = m - 1;
+        // log(1 + f) = 2 atanh(s) = 2s + 2s^3/3 + 2s^5/5 + ..., rearranged (as in fdlibm) so that
+        // the largest terms are added last.
+        double s = f / (2 + f);
+        double z = s * s;
+        double r = z * (2.0 / 3 + z * (2.0 / 5 + z * (2.0 / 7 + z * (2.0 / 9 + z * (2.0 / 11
+                + z * (2.0 / 13 + z * (2.0 / 15 + z * (2.0 / 17 + z * (2.0 / 19
+                + z * (2.0 / 21))))))))));
+        double halfSquare = 0.5 * f * f;
+        return e * LN2_HI + (f - (halfSquare - (s * (halfSquare + r) + e * LN2_LO)));
+    }
+
+    /**
+     * The largest magnitude of an argument to `sin()`, `cos()`, and `tan()` reduced here, and
+     * the magnitude below which `sin(x)` and `tan(x)` round to `x` (which keeps the sign of -0.0).
+     */
+    private static final double MAX_TRIG_ARGUMENT = 1e5;
+    private static final double TINY_TRIG_ARGUMENT = 0x1p-27;
+
+    /**
+     * 2/pi, pi/2 split into three parts of 33 bits each (whose products with integers below 2^20
+     * are exact), and the rest of pi/2 (`pio2_3t`).  From fdlibm.
+     */
+    private static final double TWO_OVER_PI = 6.36619772367581382433e-01;
+    private static final double PI_OVER_2_1 = 1.57079632673412561417e+00;
+    private static final double PI_OVER_2_2 = 6.07710050630396597660e-11;
+    private static final double PI_OVER_2_3 = 2.02226624871116645580e-21;
+    private static final double PI_OVER_2_3_TAIL = 8.47842766036889956997e-32;
+
+    /**
+     * Coefficients of the polynomials approximating sin and cos on [-pi/4, pi/4], from fdlibm.
+     */
+    private static final double S1 = -1.66666666666666324348e-01;
+    private static final double S2 = 8.33333333332248946124e-03;
+    private static final double S3 = -1.98412698298579493134e-04;
+    private static final double S4 = 2.75573137070700676789e-06;
+    private static final double S5 = -2.50507602534068634195e-08;
+    private static final double S6 = 1.58969099521155010221e-10;
+    private static final double C1 = 4.16666666666666019037e-02;
+    private static final double C2 = -1.38888888888741095749e-03;
+    private static final double C3 = 2.48015872894767294178e-05;
+    private static final double C4 = -2.75573143513906633035e-07;
+    private static final double C5 = 2.08757232129817482790e-09;
+    private static final double C6 = -1.13596475577881948265e-11;
+
+    /**
+     * Return the integer nearest `x` divided by pi/2.  Requires `|x| <= MAX_TRIG_ARGUMENT`.
+     */
+    private static double quadrant(double x) {
+        return Math.rint(x * TWO_OVER_PI);
+    }
+
+    /**
+     * Return `x` minus `k` times pi/2.  Requires `k = quadrant(x)`.
+     */
+    private static double reduce(double x, double k) {
+        // Each subtraction cancels the leading bits of the next, so the steps are exact (or
+        // nearly so) however close x is to a multiple of pi/2, and the result is accurate to
+        // about 1 ulp.  Without the tail, results near a multiple of pi/2 would only be accurate
+        // to about k * 2^-103, many ulps of the result.
+        return (((x - k * PI_OVER_2_1) - k * PI_OVER_2_2) - k * PI_OVER_2_3)
+                - k * PI_OVER_2_3_TAIL;
+    }
+
+    /**
+     * Return sin(r) for |r| <= pi/4.
+     */
+    private static double sinKernel(double r) {
+        double z = r * r;
+        return r + r * z * (S1 + z * (S2 + z * (S3 + z * (S4 + z * (S5 + z * S6)))));
+    }
+
+    /**
+     * Return cos(r) for |r| <= pi/4.
+     */
+    private static double cosKernel(double r) {
+        double z = r * r;
+        double halfZ = 0.5 * z;
+        double w = 1 - halfZ;
+        // Recover the rounding error of `w` so that it is not lost for larger r.
+        return w + (((1 - w) - halfZ)
+                + z * z * (C1 + z * (C2 + z * (C3 + z * (C4 + z * (C5 + z * C6))))));
+    }
+
+    /**
+     * Return an approximation of `Math.sin(x)`.
+     */
+    public static double sin(double x) {
+        if (!(Math.abs(x) <= MAX_TRIG_ARGUMENT)) {
+            return Math.sin(x);
+        }
+        if (Math.abs(x) < TINY_TRIG_ARGUMENT) {
+            return x;
+        }
+        double k = quadrant(x);
+        double r = reduce(x, k);
+        return switch ((int) k & 3) {
+            case 0 -> sinKernel(r);
+            case 1 -> cosKernel(r);
+            case 2 -> -sinKernel(r);
+            default -> -cosKernel(r);
+        };
+    }
+
+    /**
+     * Return an approximation of `Math.cos(x)`.
+     */
+    public static double cos(double x) {
+        if (!(Math.abs(x) <= MAX_TRIG_ARGUMENT)) {
+            return Math.cos(x);
+        }
+        double k = quadrant(x);
+        double r = reduce(x, k);
+        return switch ((int) k & 3) {
+            case 0 -> cosKernel(r);
+            case 1 -> -sinKernel(r);
+            case 2 -> -cosKernel(r);
+            default -> sinKernel(r);
+        };
+    }
+
+    /**
+     * Return an approximation of `Math.tan(x)`.
+     */
+    public static double tan(double x) {
+        if (!(Math.abs(x) <= MAX_TRIG_ARGUMENT)) {
+            return Math.tan(x);
+        }
+        if (Math.abs(x) < TINY_TRIG_ARGUMENT) {
+            return x;
+        }
+        double k = quadrant(x);
+        double r = reduce(x, k);
+        double s = sinKernel(r);
+        double c = cosKernel(r);
+        return ((int) k & 1) == 0 ? s / c : -c / s;
+    }
+}
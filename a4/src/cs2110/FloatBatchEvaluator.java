@@ -0,0 +1,291 @@
+package cs2110;
+
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Evaluates an expression for many bindings of its variables at once in single precision.  Like
+ * `BatchEvaluator`, it evaluates node by node over blocks of rows, but columns, scratch blocks,
+ * and results are floats: every block moves half as many bytes through memory, and the JIT
+ * compiler packs twice as many lanes into each SIMD instruction.
+ * <p>
+ * Constants are rounded to the nearest float.  ADD, SUBTRACT, MULTIPLY, and DIVIDE, `abs()`, and
+ * `sqrt()` are carried out in float arithmetic (and so are correctly rounded to float); other
+ * operators and functions are computed in double precision from their float operands and rounded
+ * to float.  Each operation's result is therefore accurate to about 7 significant digits, but
+ * rounding errors accumulate across operations and can be magnified by cancellation, and values
+ * beyond about 3.4e38 overflow.  Use `FloatPrecisionCheck` to find out whether single precision is
+ * accurate enough for a given expression and data.
+ * <p>
+ * FloatBatchEvaluator objects are immutable and may be shared between threads.
+ */
+public class FloatBatchEvaluator {
+
+    /**
+     * The number of rows evaluated per block.
+     */
+    private final int blockSize;
+
+    /**
+     * Create an evaluator that evaluates `BatchEvaluator.DEFAULT_BLOCK_SIZE` rows at a time.
+     */
+    public FloatBatchEvaluator() {
+        this(BatchEvaluator.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * Create an evaluator that evaluates `blockSize` rows at a time.  Requires `blockSize > 0`.
+     */
+    public FloatBatchEvaluator(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive: " + blockSize);
+        }
+        this.blockSize = blockSize;
+    }
+
+    /**
+     * Store in `out[i]` the result of evaluating `expr` in single precision with each of its
+     * variables bound to row `i` of that variable's column in `columns`, for every row `i` of
+     * `columns`.  Throws UnboundVariableException (before evaluating any rows) if `expr` depends
+     * on a variable with no column in `columns`.  Requires `out.length >= columns.rows()`.
+     */
+    public void eval(Expression expr, FloatColumnTable columns, float[] out)
+            throws UnboundVariableException {
+        assert expr != null;
+        assert columns != null;
+        if (out.length < columns.rows()) {
+            throw new IllegalArgumentException("Output has " + out.length + " rows; expected "
+                    + columns.rows());
+        }
+
+        Pass pass = new Pass(expr, columns);
+        for (int from = 0; from < columns.rows(); from += blockSize) {
+            int length = Math.min(blockSize, columns.rows() - from);
+            pass.evalInto(expr, from, length, out, from);
+        }
+    }
+
+    /**
+     * The state of a single call to `eval()`.
+     */
+    private class Pass {
+
+        /**
+         * The column of each variable the expression depends on.
+         */
+        private final Map<String, float[]> columns = new HashMap<>();
+
+        /**
+         * Scratch buffers (each `blockSize` long) that are not currently in use.
+         */
+        private final Deque<float[]> freeBuffers = new ArrayDeque<>();
+
+        /**
+         * Resolve the columns of all of `expr`'s variables.  Throws UnboundVariableException if
+         * any of them has no column in `table`.
+         */
+        Pass(Expression expr, FloatColumnTable table) throws UnboundVariableException {
+            for (String name : expr.dependencies()) {
+                columns.put(name, table.get(name));
+            }
+        }
+
+        /**
+         * Store the values of `expr` for rows `from` to `from + length` (exclusive) in `dest`,
+         * starting at index `destOffset`.
+         */
+        void evalInto(Expression expr, int from, int length, float[] dest, int destOffset) {
+            if (expr instanceof Constant) {
+                Arrays.fill(dest, destOffset, destOffset + length,
+                        (float) ((Constant) expr).value());
+            } else if (expr instanceof Variable) {
+                System.arraycopy(columns.get(((Variable) expr).name()), from, dest, destOffset,
+                        length);
+            } else if (expr instanceof Operation) {
+                evalOperation((Operation) expr, from, length, dest, destOffset);
+            } else if (expr instanceof Application) {
+                Application application = (Application) expr;
+                evalInto(application.argument(), from, length, dest, destOffset);
+                apply(application.function(), dest, destOffset, length);
+            } else {
+                evalRows(expr, from, length, dest, destOffset);
+            }
+        }
+
+        private void evalOperation(Operation operation, int from, int length, float[] dest,
+                int destOffset) {
+            Operator operator = operation.operator();
+            Expression left = operation.leftOperand();
+            Expression right = operation.rightOperand();
+
+            // Constant operands of arithmetic operators are broadcast rather than materialized.
+            if (right instanceof Constant && VectorKernels.isArithmetic(operator)) {
+                evalInto(left, from, length, dest, destOffset);
+                operateConstant(operator, dest, destOffset, (float) ((Constant) right).value(),
+                        length);
+                return;
+            }
+            if (left instanceof Constant && VectorKernels.isArithmetic(operator)) {
+                evalInto(right, from, length, dest, destOffset);
+                constantOperate(operator, (float) ((Constant) left).value(), dest, destOffset,
+                        length);
+                return;
+            }
+
+            // Evaluate the left operand in place, then combine it with the right operand.  Right
+            // operands that are variables are read directly from their column.
+            evalInto(left, from, length, dest, destOffset);
+            if (right instanceof Variable) {
+                operate(operator, dest, destOffset, columns.get(((Variable) right).name()), from,
+                        length);
+            } else {
+                float[] buffer = acquire();
+                evalInto(right, from, length, buffer, 0);
+                operate(operator, dest, destOffset, buffer, 0, length);
+                release(buffer);
+            }
+        }
+
+        /**
+         * Store the values of `expr`, an expression of a type this class cannot evaluate by
+         * block, for the given rows in `dest` by evaluating it in double precision once per row.
+         */
+        private void evalRows(Expression expr, int from, int length, float[] dest,
+                int destOffset) {
+            VarSlots slots = new VarSlots();
+            Expression bound = slots.bind(expr);
+            ArrayVarTable vars = new ArrayVarTable(slots);
+            Set<String> names = expr.dependencies();
+            for (int i = 0; i < length; i++) {
+                for (String name : names) {
+                    vars.set(name, columns.get(name)[from + i]);
+                }
+                try {
+                    dest[destOffset + i] = (float) bound.eval(vars);
+                } catch (UnboundVariableException rethrown) {
+                    // Every variable of `expr` was assigned a value, so this should not happen.
+                    throw new RuntimeException(rethrown);
+                }
+            }
+        }
+
+        private float[] acquire() {
+            float[] buffer = freeBuffers.poll();
+            return buffer != null ? buffer : new float[blockSize];
+        }
+
+        private void release(float[] buffer) {
+            freeBuffers.push(buffer);
+        }
+    }
+
+    /**
+     * Replace `a[aOffset + i]` with `a[aOffset + i] op b[bOffset + i]` for `0 <= i < length`.
+     */
+    private static void operate(Operator op, float[] a, int aOffset, float[] b, int bOffset,
+            int length) {
+        if (op == Operator.ADD) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] + b[bOffset + i];
+            }
+        } else if (op == Operator.SUBTRACT) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] - b[bOffset + i];
+            }
+        } else if (op == Operator.MULTIPLY) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] * b[bOffset + i];
+            }
+        } else if (op == Operator.DIVIDE) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] / b[bOffset + i];
+            }
+        } else if (op == Operator.POW) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = (float) Math.pow(a[aOffset + i], b[bOffset + i]);
+            }
+        } else {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = (float) op.operate(a[aOffset + i], b[bOffset + i]);
+            }
+        }
+    }
+
+    /**
+     * Replace `a[offset + i]` with `a[offset + i] op s` for `0 <= i < length`.  Requires
+     * `VectorKernels.isArithmetic(op)`.
+     */
+    private static void operateConstant(Operator op, float[] a, int offset, float s,
+            int length) {
+        int end = offset + length;
+        if (op == Operator.ADD) {
+            for (int i = offset; i < end; i++) {
+                a[i] = a[i] + s;
+            }
+        } else if (op == Operator.SUBTRACT) {
+            for (int i = offset; i < end; i++) {
+                a[i] = a[i] - s;
+            }
+        } else if (op == Operator.MULTIPLY) {
+            for (int i = offset; i < end; i++) {
+                a[i] = a[i] * s;
+            }
+        } else {
+            assert op == Operator.DIVIDE;
+            for (int i = offset; i < end; i++) {
+                a[i] = a[i] / s;
+            }
+        }
+    }
+
+    /**
+     * Replace `a[offset + i]` with `s op a[offset + i]` for `0 <= i < length`.  Requires
+     * `VectorKernels.isArithmetic(op)`.
+     */
+    private static void constantOperate(Operator op, float s, float[] a, int offset,
+            int length) {
+        int end = offset + length;
+        if (op == Operator.ADD) {
+            for (int i = offset; i < end; i++) {
+                a[i] = s + a[i];
+            }
+        } else if (op == Operator.SUBTRACT) {
+            for (int i = offset; i < end; i++) {
+                a[i] = s - a[i];
+            }
+        } else if (op == Operator.MULTIPLY) {
+            for (int i = offset; i < end; i++) {
+                a[i] = s * a[i];
+            }
+        } else {
+            assert op == Operator.DIVIDE;
+            for (int i = offset; i < end; i++) {
+                a[i] = s / a[i];
+            }
+        }
+    }
+
+    /**
+     * Replace `a[offset + i]` with `f(a[offset + i])` for `0 <= i < length`.
+     */
+    private static void apply(UnaryFunction f, float[] a, int offset, int length) {
+        if (f == UnaryFunction.ABS) {
+            for (int i = offset; i < offset + length; i++) {
+                a[i] = Math.abs(a[i]);
+            }
+        } else if (f == UnaryFunction.SQRT) {
+            // The square root of a float, computed in double and rounded, is correctly rounded.
+            for (int i = offset; i < offset + length; i++) {
+                a[i] = (float) Math.sqrt(a[i]);
+            }
+        } else {
+            for (int i = offset; i < offset + length; i++) {
+                a[i] = (float) f.apply(a[i]);
+            }
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package cs2110;
+
+import java.util.Random;
+
+/**
+ * The result of checking whether single-precision evaluation (see `FloatBatchEvaluator`) is
+ * accurate enough for an expression over a table of data: a random sample of the table's rows is
+ * evaluated both in single precision, from the rows' values rounded to float, and in double
+ * precision, from the exact values, and the relative differences are measured.  The error found
+ * therefore includes both the rounding of the data and the rounding of every operation.  Being a
+ * sample, it is a lower bound on the error over the whole table.
+ */
+public final class FloatPrecisionCheck {
+
+    /**
+     * The largest relative error considered safe: about a hundred times the rounding error of a
+     * single float operation, leaving about 5 correct significant digits.
+     */
+    public static final double SAFE_RELATIVE_ERROR = 1e-5;
+
+    /**
+     * The number of rows sampled if no number is given.
+     */
+    public static final int DEFAULT_SAMPLES = 1000;
+
+    /**
+     * The number of rows compared, the largest and mean relative error among them, and the row
+     * (of the checked table) at which the error was largest.
+     */
+    private final int samples;
+    private final double maxRelativeError;
+    private final double meanRelativeError;
+    private final int worstRow;
+
+    private FloatPrecisionCheck(int samples, double maxRelativeError, double meanRelativeError,
+            int worstRow) {
+        this.samples = samples;
+        this.maxRelativeError = maxRelativeError;
+        this.meanRelativeError = meanRelativeError;
+        this.worstRow = worstRow;
+    }
+
+    /**
+     * Compare the values of `expr` evaluated in single and double precision at up to `samples`
+     * rows of `columns` chosen by `random` (every row, if the table has no more than `samples`).
+     * Throws UnboundVariableException if `expr` depends on a variable with no column in
+     * `columns`.  Requires `samples > 0`.
+     */
+    public static FloatPrecisionCheck check(Expression expr, ColumnTable columns, int samples,
+            Random random) throws UnboundVariableException {
+        assert expr != null;
+        assert columns != null;
+        assert samples > 0;
+        assert random != null;
+
+        int count = Math.min(samples, columns.rows());
+        int[] rows = new int[count];
+        for (int i = 0; i < count; i++) {
+            rows[i] = count == columns.rows() ? i : random.nextInt(columns.rows());
+        }
+        ColumnTable sample = new ColumnTable(count);
+        for (String name : expr.dependencies()) {
+            double[] column = columns.get(name);
+            double[] values = new double[count];
+            for (int i = 0; i < count; i++) {
+                values[i] = column[rows[i]];
+            }
+            sample.set(name, values);
+        }
+
+        double[] exact = new double[count];
+        new BatchEvaluator(BatchEvaluator.Backend.SCALAR, false).eval(expr, sample, exact);
+        float[] single = new float[count];
+        new FloatBatchEvaluator().eval(expr, FloatColumnTable.narrow(sample), single);
+
+        double max = 0;
+        double sum = 0;
+        int worst = count == 0 ? -1 : rows[0];
+        for (int i = 0; i < count; i++) {
+            double error = relativeError(single[i], exact[i]);
+            sum += error;
+            if (error > max) {
+                max = error;
+                worst = rows[i];
+            }
+        }
+        return new FloatPrecisionCheck(count, max, count == 0 ? 0 : sum / count, worst);
+    }
+
+    /**
+     * Return the relative difference between `approximate` and `exact`.  Values that are equal
+     * (or both NaN) differ by 0; a finite value differs infinitely from a non-finite one or from
+     * a different value when `exact` is 0.
+     */
+    static double relativeError(double approximate, double exact) {
+        if (approximate == exact || (Double.isNaN(approximate) && Double.isNaN(exact))) {
+            return 0;
+        }
+        if (!Double.isFinite(approximate) || !Double.isFinite(exact) || exact == 0) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.abs(approximate - exact) / Math.abs(exact);
+    }
+
+    /**
+     * Return the number of rows compared.
+     */
+    public int samples() {
+        return samples;
+    }
+
+    /**
+     * Return the largest relative error among the rows compared.
+     */
+    public double maxRelativeError() {
+        return maxRelativeError;
+    }
+
+    /**
+     * Return the mean relative error over the rows compared (infinite if any error is).
+     */
+    public double meanRelativeError() {
+        return meanRelativeError;
+    }
+
+    /**
+     * Return the row of the checked table at which the relative error was largest, or -1 if no
+     * rows were compared.
+     */
+    public int worstRow() {
+        return worstRow;
+    }
+
+    /**
+     * Return whether the largest relative error found is at most SAFE_RELATIVE_ERROR.
+     */
+    public boolean isSafe() {
+        return maxRelativeError <= SAFE_RELATIVE_ERROR;
+    }
+}
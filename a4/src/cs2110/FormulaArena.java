@@ -0,0 +1,499 @@
+package cs2110;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact store for many formulas.  Each formula added to the arena is flattened into postfix
+ * instructions appended to a single shared `int[]` code array, with its numeric constants stored
+ * in a shared `double[]` constant pool, instead of being kept as a tree of node objects.  Formulas
+ * are identified by the integer handle returned from `add()` and are evaluated by a loop over
+ * their instructions that keeps intermediate values on a primitive `double` stack.
+ * <p>
+ * Variables are read by slot from a `double[]` (or an ArrayVarTable), using slots assigned by the
+ * arena's `VarSlots`, which is shared by all of its formulas.  Evaluation results are identical to
+ * those of `Expression.eval()`.
+ * <p>
+ * The arena's own evaluation stack is reused between calls, so an arena must not be evaluated by
+ * multiple threads at once unless each thread passes its own stack (see `newStack()`).  Formulas
+ * must not be added while others are being evaluated.
+ * <p>
+ * `FormulaCache` keeps the shapes of spreadsheet formulas it caches in a shared arena, which
+ * evaluates each shape until it has been used often enough to be compiled.  A formula's tree can
+ * be rebuilt from its instructions by `expression()`, so holders of a handle need not keep it.
+ */
+public class FormulaArena {
+
+    /* Instruction opcodes.  CONST, LOAD, OPERATE, APPLY, and EVAL are followed by one operand. */
+
+    /**
+     * Push the constant at index `operand` of the constant pool.
+     */
+    private static final int CONST = 0;
+
+    /**
+     * Push the value of the variable in slot `operand`.
+     */
+    private static final int LOAD = 1;
+
+    /* Pop two values and push the result of the corresponding core operator. */
+    private static final int ADD = 2;
+    private static final int SUBTRACT = 3;
+    private static final int MULTIPLY = 4;
+    private static final int DIVIDE = 5;
+    private static final int POW = 6;
+
+    /*
+     * Pop a value and push the result of the corresponding core math function: of
+     * `UnaryFunction.mathDefs()`, or, for STRICT_ and FAST_ opcodes, of
+     * `UnaryFunction.mathDefs(MathMode)` for that mode.  `abs()` and `sqrt()` are the same in
+     * every mode, and FAST shares all but `tan()` with DEFAULT.
+     */
+    private static final int ABS = 7;
+    private static final int SQRT = 8;
+    private static final int EXP = 9;
+    private static final int LOG = 10;
+    private static final int SIN = 11;
+    private static final int COS = 12;
+    private static final int TAN = 13;
+
+    /**
+     * Pop two values and push the result of applying operator `operand`.
+     */
+    private static final int OPERATE = 14;
+
+    /**
+     * Pop a value and push the result of applying function `operand`.
+     */
+    private static final int APPLY = 15;
+
+    /**
+     * Push the value of expression `operand`, which is evaluated as a tree.  Used for nodes of
+     * types the arena cannot flatten.
+     */
+    private static final int EVAL = 16;
+
+    private static final int STRICT_EXP = 17;
+    private static final int STRICT_LOG = 18;
+    private static final int STRICT_SIN = 19;
+    private static final int STRICT_COS = 20;
+    private static final int STRICT_TAN = 21;
+    private static final int FAST_TAN = 22;
+
+    /**
+     * Opcodes of the core operators and math functions.
+     */
+    private static final Map<Operator, Integer> OPERATOR_CODES = Map.of(
+            Operator.ADD, ADD,
+            Operator.SUBTRACT, SUBTRACT,
+            Operator.MULTIPLY, MULTIPLY,
+            Operator.DIVIDE, DIVIDE,
+            Operator.POW, POW);
+    private static final Map<UnaryFunction, Integer> FUNCTION_CODES = functionCodes();
+
+    /**
+     * The core operator or math function of each opcode, indexed by opcode (null for other
+     * opcodes).
+     */
+    private static final Operator[] CODE_OPERATORS = new Operator[FAST_TAN + 1];
+    private static final UnaryFunction[] CODE_FUNCTIONS = new UnaryFunction[FAST_TAN + 1];
+
+    static {
+        for (Map.Entry<Operator, Integer> entry : OPERATOR_CODES.entrySet()) {
+            CODE_OPERATORS[entry.getValue()] = entry.getKey();
+        }
+        for (Map.Entry<UnaryFunction, Integer> entry : FUNCTION_CODES.entrySet()) {
+            CODE_FUNCTIONS[entry.getValue()] = entry.getKey();
+        }
+    }
+
+    /**
+     * Return the opcodes of the core math functions of every `MathMode`.
+     */
+    private static Map<UnaryFunction, Integer> functionCodes() {
+        Map<UnaryFunction, Integer> codes = new HashMap<>();
+        codes.put(UnaryFunction.ABS, ABS);
+        codes.put(UnaryFunction.SQRT, SQRT);
+        String[] names = {"exp", "log", "sin", "cos", "tan"};
+        int[][] modeCodes = {
+                {STRICT_EXP, STRICT_LOG, STRICT_SIN, STRICT_COS, STRICT_TAN},
+                {EXP, LOG, SIN, COS, TAN}};
+        MathMode[] modes = {MathMode.STRICT, MathMode.DEFAULT};
+        for (int m = 0; m < modes.length; m++) {
+            Map<String, UnaryFunction> defs = UnaryFunction.mathDefs(modes[m]);
+            for (int i = 0; i < names.length; i++) {
+                codes.put(defs.get(names[i]), modeCodes[m][i]);
+            }
+        }
+        // The other FAST functions are those of DEFAULT.
+        codes.put(UnaryFunction.mathDefs(MathMode.FAST).get("tan"), FAST_TAN);
+        return Map.copyOf(codes);
+    }
+
+    /**
+     * The slot assignment of variables read by this arena's formulas.
+     */
+    private final VarSlots slots;
+
+    /**
+     * Instructions of all formulas.  Formula `f` occupies indices `starts[f]` (inclusive) to
+     * `starts[f + 1]` (exclusive).
+     */
+    private int[] code = new int[64];
+    private int codeLength = 0;
+    private int[] starts = new int[16];
+    private int formulaCount = 0;
+
+    /**
+     * The maximum evaluation stack depth required by each formula.
+     */
+    private int[] depths = new int[16];
+
+    /**
+     * Constant pool shared by all formulas, and the index of each constant (by raw bit pattern)
+     * so that repeated constants are stored once.
+     */
+    private double[] constants = new double[16];
+    private int constantCount = 0;
+    private final Map<Long, Integer> constantIndices = new HashMap<>();
+
+    /**
+     * Operators, functions, and unflattenable expressions referenced by instruction operands.
+     */
+    private final List<Operator> operators = new ArrayList<>();
+    private final List<UnaryFunction> functions = new ArrayList<>();
+    private final List<Expression> expressions = new ArrayList<>();
+
+    /**
+     * The evaluation stack reused by `eval()` calls that do not supply their own.
+     */
+    private double[] stack = new double[0];
+
+    /**
+     * Create an empty arena whose formulas read variables according to `slots`.
+     */
+    public FormulaArena(VarSlots slots) {
+        assert slots != null;
+
+        this.slots = slots;
+    }
+
+    /**
+     * Create an empty arena with its own slot assignment.
+     */
+    public FormulaArena() {
+        this(new VarSlots());
+    }
+
+    /**
+     * Return the slot assignment of the variables read by this arena's formulas.
+     */
+    public VarSlots slots() {
+        return slots;
+    }
+
+    /**
+     * Flatten `expr` into this arena and return the handle identifying it.  Variables of `expr`
+     * that have no slot yet are assigned one.
+     */
+    public int add(Expression expr) {
+        assert expr != null;
+
+        int depth = emit(expr, 0);
+
+        formulaCount++;
+        if (formulaCount + 1 > starts.length) {
+            starts = Arrays.copyOf(starts, 2 * starts.length);
+            depths = Arrays.copyOf(depths, 2 * depths.length);
+        }
+        starts[formulaCount] = codeLength;
+        depths[formulaCount - 1] = depth;
+        if (depth > stack.length) {
+            stack = new double[depth];
+        }
+        return formulaCount - 1;
+    }
+
+    /**
+     * Return the number of formulas in this arena.
+     */
+    public int size() {
+        return formulaCount;
+    }
+
+    /**
+     * Return the number of instruction words (opcodes and operands) stored for all formulas.
+     */
+    public int codeLength() {
+        return codeLength;
+    }
+
+    /**
+     * Return the number of distinct constants stored for all formulas.
+     */
+    public int constantCount() {
+        return constantCount;
+    }
+
+    /**
+     * Return a new stack large enough to evaluate any formula currently in this arena, for callers
+     * that evaluate formulas concurrently.
+     */
+    public double[] newStack() {
+        return new double[stack.length];
+    }
+
+    /**
+     * Return the value of formula `formula` when each variable has the value stored at its slot in
+     * `values`.  Requires `values` to hold a value for each variable the formula reads.
+     */
+    public double eval(int formula, double[] values) {
+        return eval(formula, values, stack);
+    }
+
+    /**
+     * Return the value of formula `formula`, reading its variables by slot from `vars`.  Throws
+     * UnboundVariableException if a variable the formula reads is not assigned in `vars`.
+     * Requires `vars` to use the same slots as this arena.
+     */
+    public double eval(int formula, ArrayVarTable vars) throws UnboundVariableException {
+        assert vars.slots() == slots;
+
+        checkFormula(formula);
+        int end = starts[formula + 1];
+        for (int pc = starts[formula]; pc < end; pc++) {
+            int opcode = code[pc];
+            if (opcode == LOAD) {
+                // Throws if the slot is unassigned.
+                vars.get(code[pc + 1]);
+            } else if (opcode == EVAL) {
+                for (String name : expressions.get(code[pc + 1]).dependencies()) {
+                    vars.get(name);
+                }
+            }
+            if (hasOperand(opcode)) {
+                pc++;
+            }
+        }
+        return eval(formula, vars.values(), stack);
+    }
+
+    /**
+     * Return the value of formula `formula` when each variable has the value stored at its slot in
+     * `values`, using `stack` (which must have been returned by `newStack()` after the formula was
+     * added) to hold intermediate values.
+     */
+    public double eval(int formula, double[] values, double[] stack) {
+        checkFormula(formula);
+        assert stack.length >= depths[formula];
+
+        int[] code = this.code;
+        double[] constants = this.constants;
+        int top = -1;
+        int end = starts[formula + 1];
+        for (int pc = starts[formula]; pc < end; pc++) {
+            switch (code[pc]) {
+                case CONST -> stack[++top] = constants[code[++pc]];
+                case LOAD -> stack[++top] = values[code[++pc]];
+                case ADD -> {
+                    top--;
+                    stack[top] = stack[top] + stack[top + 1];
+                }
+                case SUBTRACT -> {
+                    top--;
+                    stack[top] = stack[top] - stack[top + 1];
+                }
+                case MULTIPLY -> {
+                    top--;
+                    stack[top] = stack[top] * stack[top + 1];
+                }
+                case DIVIDE -> {
+                    top--;
+                    stack[top] = stack[top] / stack[top + 1];
+                }
+                case POW -> {
+                    top--;
+                    stack[top] = Math.pow(stack[top], stack[top + 1]);
+                }
+                case ABS -> stack[top] = Math.abs(stack[top]);
+                case SQRT -> stack[top] = Math.sqrt(stack[top]);
+                case EXP -> stack[top] = Math.exp(stack[top]);
+                case LOG -> stack[top] = Math.log(stack[top]);
+                case SIN -> stack[top] = Math.sin(stack[top]);
+                case COS -> stack[top] = Math.cos(stack[top]);
+                case TAN -> stack[top] = Math.tan(stack[top]);
+                case STRICT_EXP -> stack[top] = StrictMath.exp(stack[top]);
+                case STRICT_LOG -> stack[top] = StrictMath.log(stack[top]);
+                case STRICT_SIN -> stack[top] = StrictMath.sin(stack[top]);
+                case STRICT_COS -> stack[top] = StrictMath.cos(stack[top]);
+                case STRICT_TAN -> stack[top] = StrictMath.tan(stack[top]);
+                case FAST_TAN -> stack[top] = FastMath.tan(stack[top]);
+                case OPERATE -> {
+                    top--;
+                    stack[top] = operators.get(code[++pc]).operate(stack[top], stack[top + 1]);
+                }
+                case APPLY -> stack[top] = functions.get(code[++pc]).apply(stack[top]);
+                case EVAL -> stack[++top] = evalExpression(code[++pc], values);
+                default -> throw new IllegalStateException("Unknown opcode " + code[pc]);
+            }
+        }
+        assert top == 0;
+        return stack[0];
+    }
+
+    /**
+     * Return formula `formula` as an expression tree: the expression it was added from, with its
+     * variables bound to this arena's slots.
+     */
+    public Expression expression(int formula) {
+        checkFormula(formula);
+
+        Deque<Expression> operands = new ArrayDeque<>();
+        int end = starts[formula + 1];
+        for (int pc = starts[formula]; pc < end; pc++) {
+            int opcode = code[pc];
+            if (opcode == CONST) {
+                operands.push(new Constant(constants[code[++pc]]));
+            } else if (opcode == LOAD) {
+                int slot = code[++pc];
+                operands.push(new BoundVariable(slots.name(slot), slots, slot));
+            } else if (opcode == EVAL) {
+                operands.push(expressions.get(code[++pc]));
+            } else if (opcode == APPLY || CODE_FUNCTIONS[opcode] != null) {
+                UnaryFunction function = opcode == APPLY ? functions.get(code[++pc])
+                        : CODE_FUNCTIONS[opcode];
+                operands.push(new Application(function, operands.pop()));
+            } else {
+                Operator operator = opcode == OPERATE ? operators.get(code[++pc])
+                        : CODE_OPERATORS[opcode];
+                Expression right = operands.pop();
+                operands.push(new Operation(operator, operands.pop(), right));
+            }
+        }
+        assert operands.size() == 1;
+        return operands.pop();
+    }
+
+    /**
+     * Append instructions computing `expr` to the code, given that `depth` values are already on
+     * the stack.  Return the maximum stack depth reached.
+     */
+    private int emit(Expression expr, int depth) {
+        if (expr instanceof Constant) {
+            append(CONST, constantIndex(((Constant) expr).value()));
+            return depth + 1;
+        }
+        if (expr instanceof Variable) {
+            append(LOAD, slots.add(((Variable) expr).name()));
+            return depth + 1;
+        }
+        if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            int leftDepth = emit(operation.leftOperand(), depth);
+            int rightDepth = emit(operation.rightOperand(), depth + 1);
+            Integer opcode = OPERATOR_CODES.get(operation.operator());
+            if (opcode != null) {
+                append(opcode);
+            } else {
+                append(OPERATE, operators.size());
+                operators.add(operation.operator());
+            }
+            return Math.max(leftDepth, rightDepth);
+        }
+        if (expr instanceof Application) {
+            Application application = (Application) expr;
+            int argDepth = emit(application.argument(), depth);
+            Integer opcode = FUNCTION_CODES.get(application.function());
+            if (opcode != null) {
+                append(opcode);
+            } else {
+                append(APPLY, functions.size());
+                functions.add(application.function());
+            }
+            return argDepth;
+        }
+        for (String name : expr.dependencies()) {
+            slots.add(name);
+        }
+        append(EVAL, expressions.size());
+        expressions.add(slots.bind(expr));
+        return depth + 1;
+    }
+
+    /**
+     * Evaluate expression `index` as a tree, reading variables from `values` by slot.
+     */
+    private double evalExpression(int index, double[] values) {
+        ArrayVarTable vars = new ArrayVarTable(slots);
+        for (int slot = 0; slot < Math.min(values.length, slots.size()); slot++) {
+            vars.set(slot, values[slot]);
+        }
+        try {
+            return expressions.get(index).eval(vars);
+        } catch (UnboundVariableException rethrown) {
+            // Every variable of the expression was assigned a slot, so this should not happen.
+            throw new RuntimeException(rethrown);
+        }
+    }
+
+    /**
+     * Return the index of `value` in the constant pool, adding it if necessary.
+     */
+    private int constantIndex(double value) {
+        Integer index = constantIndices.get(Double.doubleToRawLongBits(value));
+        if (index == null) {
+            if (constantCount == constants.length) {
+                constants = Arrays.copyOf(constants, 2 * constants.length);
+            }
+            index = constantCount;
+            constants[constantCount++] = value;
+            constantIndices.put(Double.doubleToRawLongBits(value), index);
+        }
+        return index;
+    }
+
+    /**
+     * Append an instruction without an operand to the code.
+     */
+    private void append(int opcode) {
+        ensureCodeCapacity(codeLength + 1);
+        code[codeLength++] = opcode;
+    }
+
+    /**
+     * Append an instruction with an operand to the code.
+     */
+    private void append(int opcode, int operand) {
+        ensureCodeCapacity(codeLength + 2);
+        code[codeLength++] = opcode;
+        code[codeLength++] = operand;
+    }
+
+    private void ensureCodeCapacity(int capacity) {
+        if (capacity > code.length) {
+            code = Arrays.copyOf(code, Math.max(capacity, 2 * code.length));
+        }
+    }
+
+    /**
+     * Return whether instructions with opcode `opcode` are followed by an operand.
+     */
+    private static boolean hasOperand(int opcode) {
+        return opcode == CONST || opcode == LOAD || opcode == OPERATE || opcode == APPLY
+                || opcode == EVAL;
+    }
+
+    /**
+     * Throw IndexOutOfBoundsException if `formula` is not a handle returned by `add()`.
+     */
+    private void checkFormula(int formula) {
+        if (formula < 0 || formula >= formulaCount) {
+            throw new IndexOutOfBoundsException("No formula with handle " + formula);
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package cs2110;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A bounded cache of parsed spreadsheet formulas, keyed by their shape in relative-reference
+ * form.  A formula filled down a column (`=B2 C2 *`, `=B3 C3 *`, ...) refers to cells at the same
+ * offsets from its own cell in every row, so every copy has the same relative form ("the cell one
+ * column left times the cell two columns left") and shares a single cached `Shape`.  Each distinct
+ * shape is parsed and optimized once and flattened into a `FormulaArena` shared by all shapes,
+ * which evaluates it until it has been used often enough to pay for compiling it to bytecode; a
+ * shape keeps only its handle in the arena and its cell offsets, and rebuilds its tree from the
+ * arena to compile it.  Evaluating a shape at a particular cell reads the cells at its offsets
+ * from that cell.
+ * <p>
+ * Formulas of evicted shapes stay in the arena, which is append-only.  Once it holds twice
+ * `capacity` formulas, new shapes are added to a fresh arena, and the old one is reclaimed along
+ * with the last of its shapes.
+ * <p>
+ * When the cache holds `capacity` shapes, adding another evicts the least recently used one.
+ * Counters record how many lookups were served from the cache (hits) and how many required
+ * parsing (misses).
+ */
+public class FormulaCache {
+
+    /**
+     * The number of evaluations after which a shape is compiled to bytecode.
+     */
+    static final int COMPILE_THRESHOLD = 8;
+
+    /**
+     * Functions that formulas may apply.
+     */
+    private final Map<String, UnaryFunction> defs;
+
+    /**
+     * The maximum number of shapes held.
+     */
+    private final int capacity;
+
+    /**
+     * Cached shapes keyed by relative form, in access order (least recently used first).
+     */
+    private final LinkedHashMap<String, Shape> shapes;
+
+    /**
+     * The arena new shapes are added to.  Its `i`th slot holds the `i`th cell a formula refers
+     * to, so that every shape reads its cells from the same `double[]` layout.
+     */
+    private FormulaArena arena = new FormulaArena();
+
+    /**
+     * Lookup statistics.
+     */
+    private long hits = 0;
+    private long misses = 0;
+
+    /**
+     * Create an empty cache holding at most `capacity` shapes of formulas that may apply the
+     * functions in `defs`.  Requires `capacity > 0`.
+     */
+    public FormulaCache(int capacity, Map<String, UnaryFunction> defs) {
+        assert defs != null;
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+
+        this.defs = defs;
+        this.capacity = capacity;
+        shapes = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Shape> eldest) {
+                return size() > FormulaCache.this.capacity;
+            }
+        };
+    }
+
+    /**
+     * Return the shape of the RPN formula `formula` located in the cell at (`row`, `column`),
+     * parsing it if no formula with the same shape is cached.  Throws IncompleteRpnException or
+     * UndefinedFunctionException if the formula cannot be parsed.
+     */
+    public Shape get(String formula, int row, int column)
+            throws IncompleteRpnException, UndefinedFunctionException {
+        return get(formula, 0, row, column);
+    }
+
+    /**
+     * Return the shape of the RPN formula `text[start..]` located in the cell at (`row`,
+     * `column`), as `get(formula, row, column)` does.  `text` is read in place.
+     */
+    public synchronized Shape get(CharSequence text, int start, int row, int column)
+            throws IncompleteRpnException, UndefinedFunctionException {
+        assert text != null;
+
+        String key = relativeForm(text, start, row, column);
+        Shape shape = shapes.get(key);
+        if (shape != null) {
+            hits++;
+            return shape;
+        }
+        misses++;
+        if (arena.size() >= 2 * capacity) {
+            arena = new FormulaArena();
+        }
+        shape = new Shape(RpnParser.parse(text, start, text.length(), defs), row, column, arena);
+        shapes.put(key, shape);
+        return shape;
+    }
+
+    /**
+     * Return the number of lookups that found their shape in this cache.
+     */
+    public synchronized long hits() {
+        return hits;
+    }
+
+    /**
+     * Return the number of lookups that had to parse their formula.
+     */
+    public synchronized long misses() {
+        return misses;
+    }
+
+    /**
+     * Return the number of shapes currently cached.
+     */
+    public synchronized int size() {
+        return shapes.size();
+    }
+
+    /**
+     * Return the relative form of `formula` as located in the cell at (`row`, `column`): its
+     * whitespace-separated tokens, separated by single spaces, with each cell reference replaced by
+     * its offset from that cell.  Every token is tagged ('c' for cell offsets, 't' for other
+     * tokens) so that no other token can be mistaken for an offset.
+     */
+    static String relativeForm(String formula, int row, int column) {
+        return relativeForm(formula, 0, row, column);
+    }
+
+    /**
+     * Return the relative form of the formula `formula[start..]`, as `relativeForm(formula, row,
+     * column)` does.
+     */
+    static String relativeForm(CharSequence formula, int start, int row, int column) {
+        int length = formula.length();
+        StringBuilder key = new StringBuilder(length - start + 8);
+        int i = start;
+        while (i < length) {
+            if (Character.isWhitespace(formula.charAt(i))) {
+                i++;
+                continue;
+            }
+            int tokenStart = i;
+            while (i < length && !Character.isWhitespace(formula.charAt(i))) {
+                i++;
+            }
+            if (key.length() > 0) {
+                key.append(' ');
+            }
+            long coordinates = CellGrid.coordinates(formula, tokenStart, i);
+            if (coordinates >= 0) {
+                key.append('c').append(CellGrid.row(coordinates) - row).append(',')
+                        .append(CellGrid.column(coordinates) - column);
+            } else {
+                key.append('t').append(formula, tokenStart, i);
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * A parsed and optimized formula whose cell references are relative to the cell containing
+     * it, which can be evaluated at any cell.  Shapes may be evaluated by multiple threads at once.
+     */
+    public static final class Shape {
+
+        /**
+         * The arena holding this formula's instructions, and the formula's handle in it (-1 if
+         * the formula was not added because it cannot be evaluated).  The formula reads the value
+         * of its `i`th reference from slot `i`.  The arena is shared with other shapes, so it is
+         * only accessed while holding its lock.
+         */
+        private final FormulaArena arena;
+        private final int formula;
+
+        /**
+         * The offset, from the formula's own cell, of the cell each reference refers to.
+         */
+        private final int[] rowOffsets;
+        private final int[] columnOffsets;
+
+        /**
+         * The name of a variable in the formula that does not refer to a cell, or null if there
+         * is none.  Such a formula cannot be evaluated.
+         */
+        private final String unboundName;
+
+        /**
+         * The number of times this shape has been evaluated, up to COMPILE_THRESHOLD.
+         */
+        private final AtomicInteger uses = new AtomicInteger();
+
+        /**
+         * The compiled form of this formula, or null if it has not been compiled yet.
+         */
+        private volatile CompiledExpression compiled;
+
+        /**
+         * Create the shape of formula `parsed`, located in the cell at (`row`, `column`), and add
+         * it to `arena`.
+         */
+        private Shape(Expression parsed, int row, int column, FormulaArena arena) {
+            Expression optimized = CellGrid.bindCells(parsed).optimize(MapVarTable.empty());
+            String unbound = null;
+            for (String name : optimized.dependencies()) {
+                if (CellGrid.coordinates(name) < 0) {
+                    unbound = name;
+                }
+            }
+            unboundName = unbound;
+
+            VarSlots references = new VarSlots();
+            Expression relative = relativize(optimized, references);
+            this.arena = arena;
+            if (unbound == null) {
+                synchronized (arena) {
+                    for (int i = 0; i < references.size(); i++) {
+                        arena.slots().add(slotName(i));
+                    }
+                    formula = arena.add(relative);
+                }
+            } else {
+                formula = -1;
+            }
+            rowOffsets = new int[references.size()];
+            columnOffsets = new int[references.size()];
+            for (int i = 0; i < references.size(); i++) {
+                long offset = CellGrid.coordinates(references.name(i));
+                rowOffsets[i] = CellGrid.row(offset) - row;
+                columnOffsets[i] = CellGrid.column(offset) - column;
+            }
+        }
+
+        /**
+         * Return a copy of `expr` in which each cell reference is replaced by a variable named
+         * for its index in `references`, adding cells that are not there yet.  Index names are "@"
+         * followed by the index, which no variable in a parsed formula can collide with.
+         */
+        private static Expression relativize(Expression expr, VarSlots references) {
+            if (expr instanceof CellReference) {
+                return new Variable(slotName(references.add(((CellReference) expr).name())));
+            }
+            if (expr instanceof Operation) {
+                Operation operation = (Operation) expr;
+                return new Operation(operation.operator(),
+                        relativize(operation.leftOperand(), references),
+                        relativize(operation.rightOperand(), references));
+            }
+            if (expr instanceof Application) {
+                Application application = (Application) expr;
+                return new Application(application.function(),
+                        relativize(application.argument(), references));
+            }
+            return expr;
+        }
+
+        /**
+         * Return the name of the variable holding the value of reference `i`.
+         */
+        private static String slotName(int i) {
+            return "@" + i;
+        }
+
+        /**
+         * Return the arena holding this formula's instructions.
+         */
+        FormulaArena arena() {
+            return arena;
+        }
+
+        /**
+         * Return whether this formula refers to its own cell or to a cell after it in reading
+         * order (a later row, or a later column of the same row).  Such a formula cannot be
+         * evaluated in a spreadsheet.
+         */
+        boolean refersForward() {
+            for (int i = 0; i < rowOffsets.length; i++) {
+                if (rowOffsets[i] > 0 || (rowOffsets[i] == 0 && columnOffsets[i] >= 0)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Return the number of distinct cells this formula refers to.
+         */
+        int referenceCount() {
+            return rowOffsets.length;
+        }
+
+        /**
+         * Return the row offset, from the formula's own cell, of the cell it refers to as its
+         * `i`th reference.
+         */
+        int rowOffset(int i) {
+            return rowOffsets[i];
+        }
+
+        /**
+         * Return the column offset, from the formula's own cell, of the cell it refers to as its
+         * `i`th reference.
+         */
+        int columnOffset(int i) {
+            return columnOffsets[i];
+        }
+
+        /**
+         * Return the value of this formula when located in the cell at (`row`, `column`), reading
+         * the cells it refers to from `cells`.  Throws UnboundVariableException if any of those
+         * cells has no value in `cells`, or if the formula refers to a variable that is not a
+         * cell.
+         */
+        public double eval(CellGrid cells, int row, int column) throws UnboundVariableException {
+            if (unboundName != null) {
+                throw new UnboundVariableException(unboundName);
+            }
+            double[] values = new double[rowOffsets.length];
+            for (int slot = 0; slot < values.length; slot++) {
+                // Throws if the cell has no value.
+                values[slot] = cells.get(row + rowOffsets[slot], column + columnOffsets[slot]);
+            }
+
+            CompiledExpression compiled = this.compiled;
+            if (compiled == null && uses.incrementAndGet() == COMPILE_THRESHOLD) {
+                Expression expr;
+                synchronized (arena) {
+                    expr = arena.expression(formula);
+                }
+                // Compile against slots of this formula's own references, so that the compiled
+                // form needs no more values than the formula has references.  The EXACT rewrites
+                // do not change its value.
+                VarSlots slots = new VarSlots();
+                for (int i = 0; i < values.length; i++) {
+                    slots.add(slotName(i));
+                }
+                compiled = ExpressionCompiler.compile(Simplifier.EXACT.simplify(expr), slots);
+                this.compiled = compiled;
+            }
+            if (compiled != null) {
+                return compiled.eval(values);
+            }
+            synchronized (arena) {
+                return arena.eval(formula, values);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package cs2110;
+
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * An expression tree node representing `a * b + c` computed with `Math.fma()`, which rounds only
+ * once.  Its value may therefore differ in the last bit from that of the equivalent tree of an
+ * ADD and a MULTIPLY operation.  It is printed as that equivalent tree.  (`Math.fma()` is only
+ * fast on hardware with a fused multiply-add instruction.)
+ */
+public class FusedMultiplyAdd implements Expression {
+
+    /**
+     * The two factors of the product, and the value added to it.
+     */
+    private final Expression multiplier;
+    private final Expression multiplicand;
+    private final Expression addend;
+
+    /**
+     * The variables, operation count, and depth of this node, computed when it is created.
+     */
+    private final VarSet variables;
+    private final int opCount;
+    private final int depth;
+
+    /**
+     * The hash code of this node, or 0 if it has not been computed yet.
+     */
+    private int hash;
+
+    /**
+     * Create a node representing `multiplier * multiplicand + addend`, rounded once.
+     */
+    public FusedMultiplyAdd(Expression multiplier, Expression multiplicand, Expression addend) {
+        assert multiplier != null;
+        assert multiplicand != null;
+        assert addend != null;
+
+        this.multiplier = multiplier;
+        this.multiplicand = multiplicand;
+        this.addend = addend;
+        variables = multiplier.variables().union(multiplicand.variables())
+                .union(addend.variables());
+        opCount = 2 + multiplier.opCount() + multiplicand.opCount() + addend.opCount();
+        depth = 2 + Math.max(Math.max(multiplier.depth(), multiplicand.depth()),
+                addend.depth() - 1);
+    }
+
+    /**
+     * Return the left factor of the product.
+     */
+    Expression multiplier() {
+        return multiplier;
+    }
+
+    /**
+     * Return the right factor of the product.
+     */
+    Expression multiplicand() {
+        return multiplicand;
+    }
+
+    /**
+     * Return the value added to the product.
+     */
+    Expression addend() {
+        return addend;
+    }
+
+    /**
+     * Return the fused product and sum of the values of the operands, substituting variables with
+     * their values in `vars`.  Throws UnboundVariableException if an operand contains a variable
+     * not in `vars`.
+     */
+    @Override
+    public double eval(VarTable vars) throws UnboundVariableException {
+        assert vars != null;
+        return Math.fma(multiplier.eval(vars), multiplicand.eval(vars), addend.eval(vars));
+    }
+
+    /**
+     * Return the number of operations in the operands plus 2, for the multiplication and the
+     * addition this node performs.
+     */
+    @Override
+    public int opCount() {
+        return opCount;
+    }
+
+    /**
+     * Return the depth of the equivalent unfused tree.
+     */
+    @Override
+    public int depth() {
+        return depth;
+    }
+
+    /**
+     * Return the infix representation of the equivalent unfused tree.
+     */
+    @Override
+    public String infixString() {
+        return "((" + multiplier.infixString() + " * " + multiplicand.infixString() + ") + "
+                + addend.infixString() + ")";
+    }
+
+    /**
+     * Return the postfix representation of the equivalent unfused tree.
+     */
+    @Override
+    public String postfixString() {
+        return multiplier.postfixString() + " " + multiplicand.postfixString() + " * "
+                + addend.postfixString() + " +";
+    }
+
+    /**
+     * Return a constant if all three operands optimize to constants, or else a node with the
+     * optimized operands (this node if none of them changed).
+     */
+    @Override
+    public Expression optimize(VarTable vars) {
+        assert vars != null;
+
+        Expression a = multiplier.optimize(vars);
+        Expression b = multiplicand.optimize(vars);
+        Expression c = addend.optimize(vars);
+        if (a instanceof Constant && b instanceof Constant && c instanceof Constant) {
+            return new Constant(Math.fma(((Constant) a).value(), ((Constant) b).value(),
+                    ((Constant) c).value()));
+        }
+        if (a == multiplier && b == multiplicand && c == addend) {
+            return this;
+        }
+        return new FusedMultiplyAdd(a, b, c);
+    }
+
+    /**
+     * Return the names of the variables any of the operands depend on.
+     */
+    @Override
+    public Set<String> dependencies() {
+        return variables.names();
+    }
+
+    /**
+     * Return the union of the variables of the operands.
+     */
+    @Override
+    public VarSet variables() {
+        return variables;
+    }
+
+    /**
+     * Return whether no operand depends on a variable.
+     */
+    @Override
+    public boolean isConstant() {
+        return variables.isEmpty();
+    }
+
+    /**
+     * Return whether `obj` is a FusedMultiplyAdd node with equal operands.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (obj == null || getClass() != obj.getClass()) {
+            return false;
+        }
+        FusedMultiplyAdd other = (FusedMultiplyAdd) obj;
+        return multiplier.equals(other.multiplier) && multiplicand.equals(other.multiplicand)
+                && addend.equals(other.addend);
+    }
+
+    /**
+     * Return a hash code combining those of the operands, consistent with `equals()`.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = Objects.hash(multiplier, multiplicand, addend);
+            hash = h;
+        }
+        return h;
+    }
+}
@@ -0,0 +1,224 @@
+package cs2110;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * An evaluated spreadsheet that can be updated with new cell contents, recomputing only the cells
+ * that changed and the formulas that depend on them.  Its output is always the same as that of
+ * `CsvEvaluator.evaluateCsv()` for its current contents.
+ * <p>
+ * Besides the value of each cell, the sheet keeps a reverse-dependency index mapping each cell to
+ * the formulas that refer to it.  When the contents of some cells change, those cells are
+ * recomputed in reading order; whenever a recomputed cell's value changes (including gaining or
+ * losing a value), the formulas referring to it are recomputed in turn.  Since a formula can only
+ * use cells before it in reading order, every cell is recomputed at most once per update, after
+ * all the cells it uses.
+ */
+public class IncrementalSheet {
+
+    /**
+     * Parses formulas into shapes.
+     */
+    private final FormulaCache cache;
+
+    /**
+     * Formats the values of formulas.
+     */
+    private final NumberFormatter formatter = new NumberFormatter();
+
+    /**
+     * The contents of each cell, by record.
+     */
+    private List<String[]> records = new ArrayList<>();
+
+    /**
+     * The output text of each cell, indexed like `records`.
+     */
+    private List<String[]> outputs = new ArrayList<>();
+
+    /**
+     * The values of cells that are numbers or evaluated formulas.
+     */
+    private final CellGrid values = new CellGrid();
+
+    /**
+     * The packed coordinates of the formulas referring to each cell, keyed by the packed
+     * coordinates of that cell.  Only references to earlier cells are indexed, since a formula
+     * referring to a later cell cannot be evaluated whatever that cell contains.
+     */
+    private final Map<Long, Set<Long>> dependents = new HashMap<>();
+
+    /**
+     * The packed coordinates of the cells each formula is indexed under in `dependents`, keyed by
+     * the packed coordinates of the formula.
+     */
+    private final Map<Long, long[]> references = new HashMap<>();
+
+    /**
+     * Create an empty sheet whose formulas are looked up in `cache`.
+     */
+    public IncrementalSheet(FormulaCache cache) {
+        assert cache != null;
+        this.cache = cache;
+    }
+
+    /**
+     * Replace the contents of this sheet with `newRecords` (the cells of each record, in order),
+     * recomputing the cells whose contents changed and the formulas depending on them.  Return the
+     * number of cells recomputed.  `newRecords` must not be modified afterwards.
+     */
+    public int update(List<String[]> newRecords) {
+        assert newRecords != null;
+
+        // Cells to recompute, ordered by packed coordinates, which is reading order.
+        TreeSet<Long> dirty = new TreeSet<>();
+        int rows = Math.max(records.size(), newRecords.size());
+        for (int row = 1; row <= rows; row++) {
+            String[] oldRecord = row <= records.size() ? records.get(row - 1) : new String[0];
+            String[] newRecord = row <= newRecords.size() ? newRecords.get(row - 1)
+                    : new String[0];
+            for (int column = 1; column <= Math.max(oldRecord.length, newRecord.length);
+                    column++) {
+                String oldCell = column <= oldRecord.length ? oldRecord[column - 1] : null;
+                String newCell = column <= newRecord.length ? newRecord[column - 1] : null;
+                if (oldCell == null || !oldCell.equals(newCell)) {
+                    dirty.add(CellGrid.coordinates(row, column));
+                }
+            }
+        }
+
+        records = newRecords;
+        List<String[]> newOutputs = new ArrayList<>(newRecords.size());
+        for (int row = 0; row < newRecords.size(); row++) {
+            String[] output = new String[newRecords.get(row).length];
+            if (row < outputs.size()) {
+                String[] oldOutput = outputs.get(row);
+                System.arraycopy(oldOutput, 0, output, 0, Math.min(oldOutput.length,
+                        output.length));
+            }
+            newOutputs.add(output);
+        }
+        outputs = newOutputs;
+
+        int recomputed = 0;
+        while (!dirty.isEmpty()) {
+            long cell = dirty.pollFirst();
+            recomputed++;
+            if (recompute(CellGrid.row(cell), CellGrid.column(cell))) {
+                dirty.addAll(dependents.getOrDefault(cell, Set.of()));
+            }
+        }
+        return recomputed;
+    }
+
+    /**
+     * Return the contents of the cell at (`row`, `column`), or null if there is no such cell.
+     */
+    private String contents(int row, int column) {
+        if (row > records.size() || column > records.get(row - 1).length) {
+            return null;
+        }
+        return records.get(row - 1)[column - 1];
+    }
+
+    /**
+     * Recompute the value and output of the cell at (`row`, `column`) from its contents, and
+     * re-index the cells it refers to.  Return whether its value changed.
+     */
+    private boolean recompute(int row, int column) {
+        boolean hadValue = values.contains(row, column);
+        double oldValue = hadValue ? values.value(row, column) : 0;
+        unindex(CellGrid.coordinates(row, column));
+
+        String cell = contents(row, column);
+        if (cell == null) {
+            values.unset(row, column);
+        } else if (!cell.isEmpty() && cell.charAt(0) == '=') {
+            outputs.get(row - 1)[column - 1] = evaluateFormula(cell, row, column);
+        } else {
+            if (NumberParser.isDouble(cell)) {
+                values.set(row, column, NumberParser.parseDouble(cell));
+            } else {
+                values.unset(row, column);
+            }
+            outputs.get(row - 1)[column - 1] = cell;
+        }
+
+        boolean hasValue = values.contains(row, column);
+        return hasValue != hadValue || (hasValue && Double.doubleToRawLongBits(oldValue)
+                != Double.doubleToRawLongBits(values.value(row, column)));
+    }
+
+    /**
+     * Evaluate the formula `cell` located at (`row`, `column`), store its value in `values` (or
+     * remove it if it cannot be evaluated), index the cells it refers to, and return its output
+     * text.
+     */
+    private String evaluateFormula(String cell, int row, int column) {
+        values.unset(row, column);
+        FormulaCache.Shape shape;
+        try {
+            shape = cache.get(cell, 1, row, column);
+        } catch (Exception e) {
+            return "#N/A";
+        }
+        if (shape.refersForward()) {
+            return "#N/A";
+        }
+
+        long formula = CellGrid.coordinates(row, column);
+        long[] cells = new long[shape.referenceCount()];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = CellGrid.coordinates(row + shape.rowOffset(i),
+                    column + shape.columnOffset(i));
+            dependents.computeIfAbsent(cells[i], k -> new HashSet<>()).add(formula);
+        }
+        references.put(formula, cells);
+
+        try {
+            double value = shape.eval(values, row, column);
+            values.set(row, column, value);
+            return formatter.format(value).toString();
+        } catch (Exception e) {
+            return "#N/A";
+        }
+    }
+
+    /**
+     * Remove the formula at packed coordinates `formula`, if any, from the dependents of the cells
+     * it refers to.
+     */
+    private void unindex(long formula) {
+        long[] cells = references.remove(formula);
+        if (cells == null) {
+            return;
+        }
+        for (long cell : cells) {
+            Set<Long> formulas = dependents.get(cell);
+            formulas.remove(formula);
+            if (formulas.isEmpty()) {
+                dependents.remove(cell);
+            }
+        }
+    }
+
+    /**
+     * Print the evaluated contents of this sheet to `printer`.
+     */
+    public void print(CSVPrinter printer) throws IOException {
+        for (String[] output : outputs) {
+            for (String cell : output) {
+                printer.print(cell);
+            }
+            printer.println();
+        }
+    }
+}
@@ -0,0 +1,254 @@
+package cs2110;
+
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * An approximation of a smooth function from doubles to doubles by interpolation in a table of
+ * its values, built to meet a given bound on the absolute error.  Inside the table's domain
+ * `[lo, hi]`, evaluation takes constant time: it locates the interval containing its argument by
+ * arithmetic rather than search, then interpolates between the values at the nearest nodes.
+ * At nodes, the table's values are exact.  Outside the domain (and at NaN), the exact function
+ * is evaluated.
+ * <p>
+ * Nodes are either evenly spaced, or placed at Chebyshev points, which crowd towards the ends of
+ * the domain where polynomial interpolation errs most.  Chebyshev points are evenly spaced in the
+ * angle `acos(t)`, where `t` is the argument scaled to [-1, 1], so they are located with one
+ * `Math.acos()`, and interpolation is done in that angle.
+ * <p>
+ * The error bound is checked by sampling when the table is built: the table is refined until the
+ * error at three points inside every interval between nodes is within the bound.  The bound is
+ * therefore not guaranteed between those points, though for a smooth function the error there is
+ * similar.
+ */
+public final class InterpolationTable {
+
+    /**
+     * Where the nodes of a table are placed.
+     */
+    public enum Nodes {
+        /**
+         * Evenly spaced over the domain.
+         */
+        UNIFORM,
+
+        /**
+         * At the Chebyshev extrema, the projections of evenly spaced points on a semicircle over
+         * the domain.
+         */
+        CHEBYSHEV
+    }
+
+    /**
+     * How values between nodes are computed.
+     */
+    public enum Method {
+        /**
+         * Linearly from the two nearest nodes; the error shrinks with the square of the spacing.
+         */
+        LINEAR,
+
+        /**
+         * By the cubic through the four nearest nodes; the error shrinks with the fourth power of
+         * the spacing.
+         */
+        CUBIC
+    }
+
+    /**
+     * The number of nodes a table starts with, and the most it may have.
+     */
+    static final int MIN_NODES = 16;
+    static final int MAX_NODES = 1 << 22;
+
+    /**
+     * The function approximated, and the ends of its domain.
+     */
+    private final DoubleUnaryOperator f;
+    private final double lo;
+    private final double hi;
+
+    private final Nodes nodes;
+    private final Method method;
+
+    /**
+     * The value of `f` at each node, in order of the interpolation parameter (see `parameter()`),
+     * which for Chebyshev nodes is decreasing order of the argument.
+     */
+    private final double[] values;
+
+    /**
+     * The number of units of the interpolation parameter per unit of the argument (uniform
+     * nodes) or of the angle (Chebyshev nodes).
+     */
+    private final double scale;
+
+    /**
+     * The largest error found when the table was checked.
+     */
+    private final double maxError;
+
+    private InterpolationTable(DoubleUnaryOperator f, double lo, double hi, Nodes nodes,
+            Method method, int size) {
+        this.f = f;
+        this.lo = lo;
+        this.hi = hi;
+        this.nodes = nodes;
+        this.method = method;
+        scale = (size - 1) / (nodes == Nodes.UNIFORM ? hi - lo : Math.PI);
+        values = new double[size];
+        for (int k = 0; k < size; k++) {
+            double x = argument(k);
+            values[k] = f.applyAsDouble(x);
+            requireFinite(values[k], x);
+        }
+        maxError = measureError();
+    }
+
+    /**
+     * Return a table approximating `f` on `[lo, hi]` with nodes placed by `nodes` and
+     * interpolation by `method`, with as few nodes (doubling from MIN_NODES) as keep the sampled
+     * error within `bound`.  Throws IllegalArgumentException if `f` is not finite at a node or
+     * sample point, or if MAX_NODES nodes do not meet the bound.  Requires `lo < hi`, both
+     * finite, and `bound > 0`.
+     */
+    public static InterpolationTable build(DoubleUnaryOperator f, double lo, double hi,
+            double bound, Nodes nodes, Method method) {
+        assert f != null;
+        assert Double.isFinite(lo) && Double.isFinite(hi) && lo < hi;
+        assert bound > 0;
+        assert nodes != null;
+        assert method != null;
+
+        for (int size = MIN_NODES; ; size *= 2) {
+            InterpolationTable table = new InterpolationTable(f, lo, hi, nodes, method, size);
+            if (table.maxError <= bound) {
+                return table;
+            }
+            if (size == MAX_NODES) {
+                throw new IllegalArgumentException("Could not interpolate within " + bound
+                        + " on [" + lo + ", " + hi + "] with " + MAX_NODES
+                        + " nodes (error " + table.maxError + ")");
+            }
+        }
+    }
+
+    /**
+     * Return the approximate value of the function at `x` if `x` is in the domain, or its exact
+     * value otherwise.
+     */
+    public double eval(double x) {
+        if (!(x >= lo && x <= hi)) {
+            return f.applyAsDouble(x);
+        }
+        return interpolate(parameter(x));
+    }
+
+    /**
+     * Return the interpolation parameter of `x`, which is `k` at node `k`.  Requires `x` to be
+     * in the domain.
+     */
+    private double parameter(double x) {
+        // Rounding could otherwise put the ends slightly off their nodes.
+        if (x == lo || x == hi) {
+            return (x == lo) == (nodes == Nodes.UNIFORM) ? 0 : values.length - 1;
+        }
+        if (nodes == Nodes.UNIFORM) {
+            return (x - lo) * scale;
+        }
+        double t = (2 * x - lo - hi) / (hi - lo);
+        return Math.acos(Math.max(-1, Math.min(1, t))) * scale;
+    }
+
+    /**
+     * Return the argument at interpolation parameter `u`, exactly `lo` or `hi` at the ends.
+     */
+    private double argument(double u) {
+        int last = values.length - 1;
+        if (nodes == Nodes.UNIFORM) {
+            return u == last ? hi : lo + u / scale;
+        }
+        if (u == 0) {
+            return hi;
+        }
+        if (u == last) {
+            return lo;
+        }
+        return (lo + hi) / 2 + (hi - lo) / 2 * Math.cos(u / scale);
+    }
+
+    /**
+     * Return the interpolated value at parameter `u`, for `0 <= u <= values.length - 1`.
+     */
+    private double interpolate(double u) {
+        int last = values.length - 1;
+        if (u == (int) u) {
+            return values[(int) u];
+        }
+        if (method == Method.LINEAR) {
+            int i = Math.min((int) u, last - 1);
+            double fraction = u - i;
+            return values[i] + fraction * (values[i + 1] - values[i]);
+        }
+        // Use the nodes i-1 through i+2, shifted to stay inside the table at its ends.
+        int j = Math.max(0, Math.min((int) u - 1, last - 3));
+        double s = u - j;
+        double s1 = s - 1;
+        double s2 = s - 2;
+        double s3 = s - 3;
+        return (-s1 * s2 * s3 * values[j] + s * s3 * (3 * s2 * values[j + 1]
+                - 3 * s1 * values[j + 2]) + s * s1 * s2 * values[j + 3]) / 6;
+    }
+
+    /**
+     * Return the largest error of this table at a quarter, half, and three quarters of the way
+     * through each interval between nodes.  Throws IllegalArgumentException if the function is
+     * not finite at one of those points.
+     */
+    private double measureError() {
+        double max = 0;
+        for (int k = 0; k + 1 < values.length; k++) {
+            for (double offset = 0.25; offset < 1; offset += 0.25) {
+                double x = argument(k + offset);
+                double exact = f.applyAsDouble(x);
+                requireFinite(exact, x);
+                max = Math.max(max, Math.abs(interpolate(parameter(x)) - exact));
+            }
+        }
+        return max;
+    }
+
+    private static void requireFinite(double value, double x) {
+        if (!Double.isFinite(value)) {
+            throw new IllegalArgumentException("Cannot interpolate a function that is " + value
+                    + " at " + x);
+        }
+    }
+
+    /**
+     * Return the smallest argument in the domain of this table.
+     */
+    public double lo() {
+        return lo;
+    }
+
+    /**
+     * Return the largest argument in the domain of this table.
+     */
+    public double hi() {
+        return hi;
+    }
+
+    /**
+     * Return the number of nodes in this table.
+     */
+    public int size() {
+        return values.length;
+    }
+
+    /**
+     * Return the largest error found when this table was checked.
+     */
+    public double maxError() {
+        return maxError;
+    }
+}
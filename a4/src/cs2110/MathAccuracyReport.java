@@ -0,0 +1,166 @@
+package cs2110;
+
+import java.io.PrintStream;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+
+/**
+ * Measures the accuracy and speed of the core math functions in each `MathMode` against
+ * `StrictMath`, whose results are the same on every platform.  Errors are measured in units in
+ * the last place (ulps) of the strict result.
+ */
+public final class MathAccuracyReport {
+
+    private MathAccuracyReport() {
+    }
+
+    /**
+     * The number of arguments each function is measured at if no number is given.
+     */
+    static final int DEFAULT_SAMPLES = 1_000_000;
+
+    /**
+     * The functions measured, with the ranges their arguments are drawn from.
+     */
+    static final List<Domain> DOMAINS = List.of(
+            new Domain("exp", -708, 708, false),
+            new Domain("log", -1000, 1000, true),
+            new Domain("sin", -1e5, 1e5, false),
+            new Domain("cos", -1e5, 1e5, false),
+            new Domain("tan", -1e5, 1e5, false),
+            new Domain("sin", -Math.PI, Math.PI, false),
+            new Domain("sqrt", -1000, 1000, true));
+
+    /**
+     * The name of a function and a range of arguments to measure it over: `[lo, hi]` if not
+     * `logarithmic`, or else `[2^lo, 2^hi]` with uniformly distributed exponents.
+     */
+    record Domain(String function, double lo, double hi, boolean logarithmic) {
+
+        /**
+         * Return `samples` arguments drawn from this domain by `random`.
+         */
+        double[] arguments(int samples, SplittableRandom random) {
+            double[] xs = new double[samples];
+            for (int i = 0; i < samples; i++) {
+                double u = random.nextDouble(lo, hi);
+                xs[i] = logarithmic ? Math.pow(2, u) : u;
+            }
+            return xs;
+        }
+
+        @Override
+        public String toString() {
+            return logarithmic ? "[2^" + (int) lo + ", 2^" + (int) hi + "]"
+                    : "[" + (float) lo + ", " + (float) hi + "]";
+        }
+    }
+
+    /**
+     * The error of a function over a set of arguments: the largest and mean error in ulps, and
+     * the argument at which the error was largest.
+     */
+    record Error(double maxUlps, double meanUlps, double worstArgument) {
+    }
+
+    /**
+     * Return the error of `f` relative to `reference` at each of `xs`.  Arguments at which both
+     * are NaN, or both are the same infinity, count as exact; arguments at which only one is
+     * finite count as infinitely wrong.  Requires `xs` to be non-empty.
+     */
+    static Error measure(UnaryFunction f, UnaryFunction reference, double[] xs) {
+        assert xs.length > 0;
+
+        double max = 0;
+        double sum = 0;
+        double worst = xs[0];
+        for (double x : xs) {
+            double ulps = ulps(f.apply(x), reference.apply(x));
+            sum += ulps;
+            if (ulps > max) {
+                max = ulps;
+                worst = x;
+            }
+        }
+        return new Error(max, sum / xs.length, worst);
+    }
+
+    /**
+     * Return the distance from `actual` to `expected` in ulps of `expected`.
+     */
+    static double ulps(double actual, double expected) {
+        if (actual == expected || (Double.isNaN(actual) && Double.isNaN(expected))) {
+            return 0;
+        }
+        if (!Double.isFinite(actual) || !Double.isFinite(expected)) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return Math.abs(actual - expected) / Math.ulp(expected);
+    }
+
+    /**
+     * Return the average time in nanoseconds `f` takes to apply to each of `xs`, over the best of
+     * several repetitions.
+     */
+    static double nanosPerCall(UnaryFunction f, double[] xs) {
+        double best = Double.POSITIVE_INFINITY;
+        double sink = 0;
+        for (int rep = 0; rep < 5; rep++) {
+            long start = System.nanoTime();
+            for (double x : xs) {
+                sink += f.apply(x);
+            }
+            best = Math.min(best, (double) (System.nanoTime() - start) / xs.length);
+        }
+        // Keep the JIT compiler from discarding the calls.
+        if (sink == 42) {
+            System.err.print("");
+        }
+        return best;
+    }
+
+    /**
+     * Print to `out` a table of the error and speed of each function of `DOMAINS` in each mode,
+     * measured at `samples` arguments drawn with `seed`.
+     */
+    public static void report(int samples, long seed, PrintStream out) {
+        assert samples > 0;
+
+        Map<String, UnaryFunction> strict = UnaryFunction.mathDefs(MathMode.STRICT);
+        out.printf("%-5s %-24s %-8s %10s %10s %9s  %s%n", "func", "arguments", "mode",
+                "max ulps", "mean ulps", "ns/call", "worst argument");
+        for (Domain domain : DOMAINS) {
+            double[] xs = domain.arguments(samples, new SplittableRandom(seed));
+            for (MathMode mode : MathMode.values()) {
+                UnaryFunction f = UnaryFunction.mathDefs(mode).get(domain.function());
+                Error error = measure(f, strict.get(domain.function()), xs);
+                out.printf("%-5s %-24s %-8s %10.3f %10.4f %9.2f  %s%n", domain.function(), domain,
+                        mode.name().toLowerCase(), error.maxUlps(), error.meanUlps(),
+                        nanosPerCall(f, xs), error.maxUlps() == 0 ? "-" : error.worstArgument());
+            }
+        }
+    }
+
+    /**
+     * Print an accuracy report to standard output.  Optional program arguments are the number of
+     * arguments to measure each function at and the seed of the random arguments.
+     */
+    public static void main(String[] args) {
+        if (args.length > 2) {
+            System.err.println("Usage: java MathAccuracyReport [<samples> [<seed>]]");
+            System.exit(1);
+        }
+        try {
+            int samples = args.length > 0 ? Integer.parseInt(args[0]) : DEFAULT_SAMPLES;
+            long seed = args.length > 1 ? Long.parseLong(args[1]) : 2110;
+            if (samples <= 0) {
+                throw new NumberFormatException();
+            }
+            report(samples, seed, System.out);
+        } catch (NumberFormatException e) {
+            System.err.println("Samples and seed must be integers, with samples positive");
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,36 @@
+package cs2110;
+
+/**
+ * The implementations the core math functions `exp()`, `log()`, `sin()`, `cos()`, and `tan()`
+ * can be evaluated with (see `UnaryFunction.mathDefs(MathMode)`).  `abs()` and `sqrt()` are
+ * exact in every mode.  Modes differ only in the last few bits of their results; see
+ * `MathAccuracyReport` for measured errors.
+ */
+public enum MathMode {
+    /**
+     * `java.lang.StrictMath`: the fdlibm algorithms, giving the same results on every platform.
+     */
+    STRICT,
+
+    /**
+     * `java.lang.Math`: within 1 ulp of the exact result, and usually replaced by the JIT
+     * compiler with platform-specific code.
+     */
+    DEFAULT,
+
+    /**
+     * The fastest implementation of each function: `FastMath.tan()`, within 4 ulps for
+     * |x| <= 1e5 and falling back to `java.lang.Math` outside that range, and `java.lang.Math`
+     * for the others, which `FastMath` is not faster than.
+     */
+    FAST;
+
+    /**
+     * Return the mode named by the system property "cs2110.math.mode", or DEFAULT if it is not
+     * set.  Throws IllegalArgumentException if it names an unknown mode.
+     */
+    public static MathMode fromSystemProperty() {
+        String name = System.getProperty("cs2110.math.mode");
+        return name == null ? DEFAULT : valueOf(name.toUpperCase());
+    }
+}
@@ -0,0 +1,269 @@
+package cs2110;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.DoubleUnaryOperator;
+
+/**
+ * A bounded cache of the values of a function from doubles to doubles, for memoizing functions
+ * that are expensive to evaluate and are applied to few distinct arguments.  Keys and values are
+ * stored in primitive arrays, so lookups and insertions do not allocate.
+ * <p>
+ * Entries are spread over stripes by the hash of their key, and each stripe is guarded by its own
+ * lock, so threads applying the function to different arguments rarely contend.  The function
+ * itself is evaluated outside any lock.  When a stripe is full, an entry is evicted by the CLOCK
+ * algorithm: entries are marked when they are hit, and a hand sweeping over the stripe evicts the
+ * first unmarked entry, clearing marks as it passes.  This approximates evicting the least
+ * recently used entry without reordering anything on a hit.
+ * <p>
+ * Arguments are compared by their bits, so -0.0 and 0.0 are cached separately, and all NaNs are
+ * one argument.
+ */
+public final class MemoCache {
+
+    /**
+     * The number of entries a cache holds if no capacity is given.
+     */
+    public static final int DEFAULT_CAPACITY = 4096;
+
+    /**
+     * The greatest number of stripes a cache is divided into.
+     */
+    static final int MAX_STRIPES = 16;
+
+    /**
+     * The fewest entries a stripe holds, unless the whole cache holds fewer.  Eviction within a
+     * tiny stripe would be close to random.
+     */
+    static final int MIN_STRIPE_CAPACITY = 64;
+
+    /**
+     * The stripes of this cache.  Their number is a power of two.
+     */
+    private final Stripe[] stripes;
+
+    /**
+     * The number of bits of a hash that select its stripe.
+     */
+    private final int stripeBits;
+
+    /**
+     * The number of entries this cache can hold.
+     */
+    private final int capacity;
+
+    /**
+     * The number of lookups that found their argument, that did not, and that evicted an entry
+     * to make room for the argument.
+     */
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * Create an empty cache that holds up to about `capacity` entries (rounded up to a multiple
+     * of the number of stripes).  Requires `capacity >= 1`.
+     */
+    public MemoCache(int capacity) {
+        assert capacity >= 1;
+
+        int stripeCount = Math.min(MAX_STRIPES,
+                Integer.highestOneBit(Math.max(1, capacity / MIN_STRIPE_CAPACITY)));
+        int perStripe = (capacity + stripeCount - 1) / stripeCount;
+        stripes = new Stripe[stripeCount];
+        for (int i = 0; i < stripeCount; i++) {
+            stripes[i] = new Stripe(perStripe);
+        }
+        stripeBits = Integer.numberOfTrailingZeros(stripeCount);
+        this.capacity = perStripe * stripeCount;
+    }
+
+    /**
+     * Return `f(x)`, from this cache if `x` is in it, or else by applying `f` and caching the
+     * result.  `f` must be the same function on every call.
+     */
+    public double apply(double x, DoubleUnaryOperator f) {
+        long key = Double.doubleToLongBits(x);
+        long hash = hash(key);
+        Stripe stripe = stripes[stripeBits == 0 ? 0 : (int) (hash >>> (64 - stripeBits))];
+        synchronized (stripe) {
+            int entry = stripe.find(key, (int) hash);
+            if (entry >= 0) {
+                stripe.referenced[entry] = true;
+                hits.increment();
+                return stripe.values[entry];
+            }
+        }
+
+        misses.increment();
+        double value = f.applyAsDouble(x);
+        synchronized (stripe) {
+            // Another thread may have added `x` while `f` was being applied.
+            if (stripe.find(key, (int) hash) < 0 && stripe.put(key, (int) hash, value)) {
+                evictions.increment();
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Return a hash of `key` whose high bits select a stripe and whose low bits select a slot.
+     */
+    private static long hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return h ^ (h >>> 29);
+    }
+
+    /**
+     * Return the number of entries this cache can hold.
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * Return the number of entries in this cache.
+     */
+    public int size() {
+        int size = 0;
+        for (Stripe stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Return the number of calls to `apply()` whose argument was in this cache.
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Return the number of calls to `apply()` whose argument was not in this cache.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Return the number of entries evicted to make room for new ones.
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Return the fraction of calls to `apply()` whose argument was in this cache, or 0 if it has
+     * not been called.
+     */
+    public double hitRate() {
+        long hitCount = hits();
+        long total = hitCount + misses();
+        return total == 0 ? 0 : (double) hitCount / total;
+    }
+
+    /**
+     * The entries of one stripe, with an open-addressing index from keys to entries.
+     */
+    private static final class Stripe {
+
+        /**
+         * The key, value, and CLOCK mark of each entry.  Entries `[0, size)` are in use.
+         */
+        final long[] keys;
+        final double[] values;
+        final boolean[] referenced;
+        int size;
+
+        /**
+         * The entry the CLOCK hand points to.
+         */
+        int hand;
+
+        /**
+         * For each slot, 1 plus the index of the entry whose key is stored there, or 0 if the slot
+         * is empty.  Keys are placed by linear probing from the slot selected by their hash.  At
+         * most half the slots are used.
+         */
+        final int[] index;
+        final int mask;
+
+        Stripe(int capacity) {
+            keys = new long[capacity];
+            values = new double[capacity];
+            referenced = new boolean[capacity];
+            index = new int[Integer.highestOneBit(capacity) << 2];
+            mask = index.length - 1;
+        }
+
+        /**
+         * Return the entry whose key is `key`, or -1 if there is none.  `hash` must be the hash of
+         * `key`.
+         */
+        int find(long key, int hash) {
+            for (int slot = hash & mask; index[slot] != 0; slot = (slot + 1) & mask) {
+                int entry = index[slot] - 1;
+                if (keys[entry] == key) {
+                    return entry;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * Add an entry mapping `key`, whose hash is `hash` and which is not in this stripe, to
+         * `value`.  Return whether another entry was evicted to make room for it.
+         */
+        boolean put(long key, int hash, double value) {
+            boolean evicted = size == keys.length;
+            int entry;
+            if (evicted) {
+                while (referenced[hand]) {
+                    referenced[hand] = false;
+                    hand = (hand + 1) % keys.length;
+                }
+                entry = hand;
+                hand = (hand + 1) % keys.length;
+                remove(keys[entry]);
+            } else {
+                entry = size++;
+            }
+            keys[entry] = key;
+            values[entry] = value;
+            referenced[entry] = false;
+
+            int slot = hash & mask;
+            while (index[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = entry + 1;
+            return evicted;
+        }
+
+        /**
+         * Remove `key`, which is in this stripe, from the index, shifting back the keys probed
+         * past it so that every key stays reachable from its home slot.
+         */
+        private void remove(long key) {
+            int slot = (int) hash(key) & mask;
+            while (keys[index[slot] - 1] != key) {
+                slot = (slot + 1) & mask;
+            }
+            index[slot] = 0;
+            int hole = slot;
+            for (int next = (hole + 1) & mask; index[next] != 0; next = (next + 1) & mask) {
+                int home = (int) hash(keys[index[next] - 1]) & mask;
+                // The key at `next` may fill the hole unless its home is cyclically in
+                // (hole, next].
+                boolean homeAfterHole = ((home - hole - 1) & mask) < ((next - hole) & mask);
+                if (!homeAfterHole) {
+                    index[hole] = index[next];
+                    index[next] = 0;
+                    hole = next;
+                }
+            }
+        }
+    }
+}
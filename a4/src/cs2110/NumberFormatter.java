@@ -0,0 +1,113 @@
+package cs2110;
+
+/**
+ * Formats doubles in the format of `Double.toString()` into a reusable buffer.  Values of
+ * magnitude in [1e-3, 1e7) that are within rounding of a decimal with at most 15 significant
+ * digits, which covers most values read from or computed in spreadsheets, are formatted by
+ * integer arithmetic as the shortest decimal that parses back to the same double.  All other
+ * values are formatted by `StringBuilder.append(double)`.
+ * <p>
+ * A double is closer to a decimal with at most 15 significant digits than any other such decimal,
+ * so the decimal found by the fast path is the one `Double.toString()` would print.
+ */
+public class NumberFormatter {
+
+    /**
+     * Powers of ten that are exactly representable as doubles, as doubles and as longs.
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+            1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+    private static final long[] LONG_POWERS_OF_TEN = {1L, 10L, 100L, 1000L, 10000L, 100000L,
+            1000000L, 10000000L, 100000000L, 1000000000L, 10000000000L, 100000000000L,
+            1000000000000L, 10000000000000L, 100000000000000L, 1000000000000000L,
+            10000000000000000L, 100000000000000000L, 1000000000000000000L};
+
+    /**
+     * The number of significant digits the fast path can produce.
+     */
+    private static final int MAX_DIGITS = 15;
+
+    /**
+     * Holds the most recently formatted value.
+     */
+    private final StringBuilder buffer = new StringBuilder(32);
+
+    /**
+     * Return `x` formatted as by `Double.toString()`.  The returned sequence is reused by the next
+     * call to `format()`; call `toString()` on it to keep it.
+     */
+    public CharSequence format(double x) {
+        buffer.setLength(0);
+        appendTo(buffer, x);
+        return buffer;
+    }
+
+    /**
+     * Append `x`, formatted as by `Double.toString()`, to `out`.
+     */
+    public static void appendTo(StringBuilder out, double x) {
+        double magnitude = Math.abs(x);
+        if (!(magnitude >= 1e-3 && magnitude < 1e7)) {
+            // Zero, scientific notation, or not finite.
+            out.append(x);
+            return;
+        }
+
+        // Find the fewest fractional digits that represent x exactly after rounding.  The
+        // quotient of two exactly representable values is correctly rounded, so it equals the
+        // value `Double.parseDouble()` would produce for the corresponding decimal.
+        int integerDigits = magnitude < 1 ? 0 : digitCount((long) magnitude);
+        int leadingZeros = 0;
+        if (magnitude < 1) {
+            leadingZeros = magnitude < 1e-2 ? 2 : magnitude < 1e-1 ? 1 : 0;
+        }
+        // A decimal with fewer fractional digits is also one with the most digits allowed, so if
+        // that fails, every scale fails, and full-precision values are handed off at once.
+        int maxScale = MAX_DIGITS - integerDigits + leadingZeros;
+        long allDigits = Math.round(magnitude * POWERS_OF_TEN[maxScale]);
+        if (allDigits / POWERS_OF_TEN[maxScale] != magnitude) {
+            out.append(x);
+            return;
+        }
+        for (int scale = 0; scale <= maxScale; scale++) {
+            long digits = Math.round(magnitude * POWERS_OF_TEN[scale]);
+            if (digits / POWERS_OF_TEN[scale] == magnitude) {
+                if (x < 0) {
+                    out.append('-');
+                }
+                appendFixed(out, digits, scale);
+                return;
+            }
+        }
+        out.append(x);
+    }
+
+    /**
+     * Append `digits` scaled by 10^-`scale` to `out`, with at least one digit after the decimal
+     * point.
+     */
+    private static void appendFixed(StringBuilder out, long digits, int scale) {
+        long integerPart = digits / LONG_POWERS_OF_TEN[scale];
+        long fraction = digits % LONG_POWERS_OF_TEN[scale];
+        out.append(integerPart).append('.');
+        if (scale == 0) {
+            out.append('0');
+            return;
+        }
+        for (int i = scale - 1; i > 0 && fraction < LONG_POWERS_OF_TEN[i]; i--) {
+            out.append('0');
+        }
+        out.append(fraction);
+    }
+
+    /**
+     * Return the number of decimal digits in `n`.  Requires `n > 0`.
+     */
+    private static int digitCount(long n) {
+        int count = 1;
+        while (count < LONG_POWERS_OF_TEN.length && n >= LONG_POWERS_OF_TEN[count]) {
+            count++;
+        }
+        return count;
+    }
+}
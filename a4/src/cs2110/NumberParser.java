@@ -0,0 +1,261 @@
+package cs2110;
+
+/**
+ * Recognizes and parses floating-point numbers in character sequences without creating Strings
+ * or throwing exceptions.  The accepted syntax is exactly that of `Double.parseDouble()`: an
+ * optional sign followed by "NaN", "Infinity", a decimal number (digits with an optional decimal
+ * point and exponent), or a hexadecimal number with a binary exponent, then an optional type
+ * suffix ('f', 'F', 'd', or 'D'), all optionally surrounded by characters no greater than ' '.
+ * <p>
+ * Decimal numbers with at most 18 significant digits whose value is an exactly representable
+ * integer scaled by an exactly representable power of ten (Clinger's fast path) are converted
+ * with a single floating-point multiplication or division, which is correctly rounded.  All other
+ * numbers are converted by `Double.parseDouble()`.
+ */
+public final class NumberParser {
+
+    /**
+     * Powers of ten that are exactly representable as doubles.
+     */
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8,
+            1e9, 1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+
+    /**
+     * The largest integer such that it and all smaller non-negative integers are exactly
+     * representable as doubles.
+     */
+    private static final long MAX_EXACT_INTEGER = 1L << 53;
+
+    private NumberParser() {
+    }
+
+    /**
+     * Return whether `text` is a number that `Double.parseDouble()` would accept.
+     */
+    public static boolean isDouble(CharSequence text) {
+        return isDouble(text, 0, text.length());
+    }
+
+    /**
+     * Return whether `text[start..end)` is a number that `Double.parseDouble()` would accept.
+     */
+    public static boolean isDouble(CharSequence text, int start, int end) {
+        assert text != null;
+        assert 0 <= start && start <= end && end <= text.length();
+
+        // Trim as `String.trim()` does.
+        while (start < end && text.charAt(start) <= ' ') {
+            start++;
+        }
+        while (end > start && text.charAt(end - 1) <= ' ') {
+            end--;
+        }
+
+        int i = start;
+        if (i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            i++;
+        }
+        if (matches(text, i, end, "NaN") || matches(text, i, end, "Infinity")) {
+            return true;
+        }
+        if (end - i > 1 && text.charAt(i) == '0'
+                && (text.charAt(i + 1) == 'x' || text.charAt(i + 1) == 'X')) {
+            return isHexSignificandAndExponent(text, i + 2, end);
+        }
+
+        int digits = 0;
+        while (i < end && isDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(text.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0) {
+            return false;
+        }
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            i = skipExponent(text, i + 1, end);
+            if (i < 0) {
+                return false;
+            }
+        }
+        return i == end || (i == end - 1 && isSuffix(text.charAt(i)));
+    }
+
+    /**
+     * Return the value of the number `text`, as `Double.parseDouble()` would.  Throws
+     * NumberFormatException if `isDouble(text)` is false.
+     */
+    public static double parseDouble(CharSequence text) {
+        return parseDouble(text, 0, text.length());
+    }
+
+    /**
+     * Return the value of the number `text[start..end)`, as `Double.parseDouble()` would.  Throws
+     * NumberFormatException if `isDouble(text, start, end)` is false.
+     */
+    public static double parseDouble(CharSequence text, int start, int end) {
+        assert text != null;
+        assert 0 <= start && start <= end && end <= text.length();
+
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+
+        // Accumulate the significant digits.  The fast path accepts at most 18 of them, which
+        // cannot overflow a long (19 can); longer significands exceed `MAX_EXACT_INTEGER` anyway.
+        long significand = 0;
+        int significantDigits = 0;
+        int scale = 0;
+        int digits = 0;
+        while (i < end && isDigit(text.charAt(i))) {
+            if (significand != 0 || text.charAt(i) != '0') {
+                significand = 10 * significand + (text.charAt(i) - '0');
+                significantDigits++;
+            }
+            i++;
+            digits++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && isDigit(text.charAt(i))) {
+                if (significand != 0 || text.charAt(i) != '0') {
+                    significand = 10 * significand + (text.charAt(i) - '0');
+                    significantDigits++;
+                }
+                scale--;
+                i++;
+                digits++;
+            }
+        }
+        if (i < end && (text.charAt(i) == 'e' || text.charAt(i) == 'E')) {
+            int exponent = parseSmallExponent(text, i + 1, end);
+            if (exponent == Integer.MIN_VALUE) {
+                return slowParse(text, start, end);
+            }
+            scale += exponent;
+            i = end;
+        }
+
+        if (digits == 0 || i != end || significantDigits > 18) {
+            // Malformed, padded, suffixed, or too precise for the fast path.
+            return slowParse(text, start, end);
+        }
+        if (significand == 0) {
+            return negative ? -0.0 : 0.0;
+        }
+        if (significand > MAX_EXACT_INTEGER || scale < -22 || scale > 22) {
+            return slowParse(text, start, end);
+        }
+        double value = scale < 0 ? significand / POWERS_OF_TEN[-scale]
+                : significand * POWERS_OF_TEN[scale];
+        return negative ? -value : value;
+    }
+
+    /**
+     * Return the value of `text[start..end)` as computed by `Double.parseDouble()`.
+     */
+    private static double slowParse(CharSequence text, int start, int end) {
+        return Double.parseDouble(text.subSequence(start, end).toString());
+    }
+
+    /**
+     * Return the value of the optionally signed exponent `text[start..end)`, or
+     * `Integer.MIN_VALUE` if it is malformed or too large in magnitude to matter to the fast path.
+     */
+    private static int parseSmallExponent(CharSequence text, int start, int end) {
+        int i = start;
+        boolean negative = false;
+        if (i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            negative = text.charAt(i) == '-';
+            i++;
+        }
+        if (i == end || end - i > 3) {
+            return Integer.MIN_VALUE;
+        }
+        int exponent = 0;
+        for (; i < end; i++) {
+            if (!isDigit(text.charAt(i))) {
+                return Integer.MIN_VALUE;
+            }
+            exponent = 10 * exponent + (text.charAt(i) - '0');
+        }
+        return negative ? -exponent : exponent;
+    }
+
+    /**
+     * Return whether `text[start..end)` is a hexadecimal significand (after its "0x" prefix)
+     * followed by a binary exponent and an optional suffix.
+     */
+    private static boolean isHexSignificandAndExponent(CharSequence text, int start, int end) {
+        int i = start;
+        int digits = 0;
+        while (i < end && isHexDigit(text.charAt(i))) {
+            i++;
+            digits++;
+        }
+        if (i < end && text.charAt(i) == '.') {
+            i++;
+            while (i < end && isHexDigit(text.charAt(i))) {
+                i++;
+                digits++;
+            }
+        }
+        if (digits == 0 || i == end || (text.charAt(i) != 'p' && text.charAt(i) != 'P')) {
+            return false;
+        }
+        i = skipExponent(text, i + 1, end);
+        return i == end || (i == end - 1 && isSuffix(text.charAt(i)));
+    }
+
+    /**
+     * Return the index after the optionally signed decimal exponent starting at `start`, or -1 if
+     * there is no such exponent.
+     */
+    private static int skipExponent(CharSequence text, int start, int end) {
+        int i = start;
+        if (i < end && (text.charAt(i) == '+' || text.charAt(i) == '-')) {
+            i++;
+        }
+        int digitsStart = i;
+        while (i < end && isDigit(text.charAt(i))) {
+            i++;
+        }
+        return i == digitsStart ? -1 : i;
+    }
+
+    /**
+     * Return whether `text[start..end)` is exactly `word`.
+     */
+    private static boolean matches(CharSequence text, int start, int end, String word) {
+        if (end - start != word.length()) {
+            return false;
+        }
+        for (int i = 0; i < word.length(); i++) {
+            if (text.charAt(start + i) != word.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isHexDigit(char c) {
+        return isDigit(c) || (c >= 'a' && c <= 'f') || (c >= 'A' && c <= 'F');
+    }
+
+    private static boolean isSuffix(char c) {
+        return c == 'f' || c == 'F' || c == 'd' || c == 'D';
+    }
+}
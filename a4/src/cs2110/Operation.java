@@ -1,6 +1,5 @@
 package cs2110;
 
-import java.util.HashSet;
 import java.util.Set;
 
 /**
@@ -23,6 +22,18 @@ public class Operation implements Expression {
      */
     private final Expression rightOperand;
 
+    /**
+     * The variables, operation count, and depth of this operation, computed when it is created.
+     */
+    private final VarSet variables;
+    private final int opCount;
+    private final int depth;
+
+    /**
+     * The hash code of this operation, or 0 if it has not been computed yet.
+     */
+    private int hash;
+
     /**
      * Constructs an Operation with a specified operator and two operands.
      *
@@ -34,6 +45,30 @@ public class Operation implements Expression {
         this.op = op;
         this.leftOperand = leftOperand;
         this.rightOperand = rightOperand;
+        variables = leftOperand.variables().union(rightOperand.variables());
+        opCount = 1 + leftOperand.opCount() + rightOperand.opCount();
+        depth = 1 + Math.max(leftOperand.depth(), rightOperand.depth());
+    }
+
+    /**
+     * Return the operator applied by this operation.
+     */
+    Operator operator() {
+        return op;
+    }
+
+    /**
+     * Return the left operand of this operation.
+     */
+    Expression leftOperand() {
+        return leftOperand;
+    }
+
+    /**
+     * Return the right operand of this operation.
+     */
+    Expression rightOperand() {
+        return rightOperand;
     }
 
     /**
@@ -51,12 +86,22 @@ public class Operation implements Expression {
 
     /**
      * Returns the count of operations in this expression, including this operation and those in its operands.
+     * It is computed when the operation is created.
      *
      * return The total count of operations.
      */
     @Override
     public int opCount() {
-        return 1 + leftOperand.opCount() + rightOperand.opCount();
+        return opCount;
+    }
+
+    /**
+     * Returns one more than the greater depth of the operands, computed when the operation is
+     * created.
+     */
+    @Override
+    public int depth() {
+        return depth;
     }
 
     /**
@@ -80,7 +125,9 @@ public class Operation implements Expression {
     }
 
     /**
-     * Attempts to optimize the operation by optimizing its operands and evaluating it if possible.
+     * Optimizes the operation by optimizing its operands and evaluating it if both become
+     * constants (which they do exactly when every variable they depend on is in `vars`).  Never
+     * throws; returns this operation itself if its operands did not change.
      *
      * @param vars The variable table to use for evaluating variable expressions.
      * @return An optimized expression, possibly a Constant if the operation can be fully evaluated.
@@ -90,27 +137,40 @@ public class Operation implements Expression {
         assert vars != null;
         Expression left = leftOperand.optimize(vars);
         Expression right = rightOperand.optimize(vars);
-
-        try {
-            double result = new Operation(op, left, right).eval(vars);
-            return new Constant(result);
-        } catch (UnboundVariableException e) {
-            return new Operation(op, left, right);
+        if (left instanceof Constant && right instanceof Constant) {
+            return new Constant(op.operate(((Constant) left).value(), ((Constant) right).value()));
         }
+        if (left == leftOperand && right == rightOperand) {
+            return this;
+        }
+        return new Operation(op, left, right);
     }
 
     /**
-     * Returns a set containing all variable names that this operation depends on.
+     * Returns a set containing all variable names that this operation depends on.  The set is an
+     * unmodifiable view of `variables()`, so this does not allocate.
      *
      * return A set of strings representing the variable names this operation depends on.
      */
     @Override
     public Set<String> dependencies() {
-        Set<String> rightDeps = rightOperand.dependencies();
-        Set<String> leftDeps = leftOperand.dependencies();
-        Set<String> merged = new HashSet<>(rightDeps);
-        merged.addAll(leftDeps);
-        return merged;
+        return variables.names();
+    }
+
+    /**
+     * Returns the union of the variables of the operands, computed when the operation is created.
+     */
+    @Override
+    public VarSet variables() {
+        return variables;
+    }
+
+    /**
+     * Returns whether neither operand depends on a variable.
+     */
+    @Override
+    public boolean isConstant() {
+        return variables.isEmpty();
     }
 
     /**
@@ -129,4 +189,19 @@ public class Operation implements Expression {
                 leftOperand.equals(other.leftOperand) &&
                 rightOperand.equals(other.rightOperand);
     }
+
+    /**
+     * Returns a hash code combining the operator and the hash codes of both operands, consistent
+     * with `equals()`.  It is computed once, so hashing a tree whose subtrees have already been
+     * hashed takes constant time.
+     */
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            h = 31 * (31 * op.hashCode() + leftOperand.hashCode()) + rightOperand.hashCode();
+            hash = h;
+        }
+        return h;
+    }
 }
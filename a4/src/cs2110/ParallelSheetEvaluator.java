@@ -0,0 +1,257 @@
+package cs2110;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Evaluates the formulas of a spreadsheet in parallel, producing the same output as
+ * `CsvEvaluator.evaluateCsv()`.  The whole sheet is read into memory first.  Each formula is then
+ * assigned a level one greater than the highest level of the cells it refers to (number cells
+ * have level 0), so that every formula depends only on cells of lower levels.  Levels are
+ * evaluated in increasing order, and the formulas within a level are evaluated in parallel on a
+ * ForkJoinPool.
+ * <p>
+ * A formula may only use cells that precede it in reading order (see `evaluateCsv()`).  A formula
+ * referring to a later cell is rejected while levels are assigned, since that cell might be
+ * evaluated in an earlier level.
+ */
+class ParallelSheetEvaluator {
+
+    /**
+     * The number of formulas below which a level, or part of one, is evaluated by a single task.
+     */
+    static final int LEAF_SIZE = 256;
+
+    /**
+     * Parses formulas into shapes.
+     */
+    private final FormulaCache cache;
+
+    /**
+     * The pool that levels are evaluated on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Create an evaluator that parses formulas using `cache` and evaluates them on `pool`.
+     */
+    ParallelSheetEvaluator(FormulaCache cache, ForkJoinPool pool) {
+        assert cache != null;
+        assert pool != null;
+
+        this.cache = cache;
+        this.pool = pool;
+    }
+
+    /**
+     * A formula cell and, once it has been evaluated, its value.
+     */
+    private static class Formula {
+
+        /**
+         * The coordinates of this formula's cell.
+         */
+        final int row;
+        final int column;
+
+        /**
+         * The parsed formula, or null if it could not be parsed.
+         */
+        final FormulaCache.Shape shape;
+
+        /**
+         * This formula's level, or -1 if it cannot be evaluated (because it could not be parsed
+         * or refers to a later cell).
+         */
+        int level;
+
+        /**
+         * The value of this formula, valid if `evaluated` is true.
+         */
+        double value;
+        boolean evaluated;
+
+        Formula(int row, int column, FormulaCache.Shape shape) {
+            this.row = row;
+            this.column = column;
+            this.shape = shape;
+        }
+
+        /**
+         * Evaluate this formula, reading the cells it refers to from `cells`.
+         */
+        void eval(CellGrid cells) {
+            try {
+                value = shape.eval(cells, row, column);
+                evaluated = true;
+            } catch (Exception e) {
+                evaluated = false;
+            }
+        }
+    }
+
+    /**
+     * Evaluates the formulas `formulas[from..to)` of one level, splitting the range among tasks.
+     * Reads `cells` but does not modify it.
+     */
+    private static class EvaluateRange extends RecursiveAction {
+
+        private final Formula[] formulas;
+        private final int from;
+        private final int to;
+        private final CellGrid cells;
+
+        EvaluateRange(Formula[] formulas, int from, int to, CellGrid cells) {
+            this.formulas = formulas;
+            this.from = from;
+            this.to = to;
+            this.cells = cells;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= LEAF_SIZE) {
+                for (int i = from; i < to; i++) {
+                    formulas[i].eval(cells);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EvaluateRange(formulas, from, middle, cells),
+                    new EvaluateRange(formulas, middle, to, cells));
+        }
+    }
+
+    /**
+     * Copy the spreadsheet data in `records` to `printer`, replacing any formula cells with their
+     * evaluated value, exactly as `CsvEvaluator.evaluateCsv()` would.
+     */
+    void evaluate(List<String[]> records, CSVPrinter printer) throws IOException {
+        // The formula cells in reading order.
+        List<Formula> formulas = new ArrayList<>();
+        // The values of number cells, then of formulas as they are evaluated.
+        CellGrid cells = new CellGrid();
+        // The level of every cell that has one.
+        CellGrid levels = new CellGrid();
+        int maxLevel = 0;
+
+        int row = 1;
+        for (String[] record : records) {
+            int column = 1;
+            for (String cell : record) {
+                if (!cell.isEmpty() && cell.charAt(0) == '=') {
+                    Formula formula = parse(cell.substring(1), row, column);
+                    formula.level = level(formula, levels);
+                    if (formula.level > 0) {
+                        levels.set(row, column, formula.level);
+                        maxLevel = Math.max(maxLevel, formula.level);
+                    }
+                    formulas.add(formula);
+                } else {
+                    // Formulas can only use cells that are numbers.
+                    if (NumberParser.isDouble(cell)) {
+                        cells.set(row, column, NumberParser.parseDouble(cell));
+                        levels.set(row, column, 0);
+                    }
+                }
+                column++;
+            }
+            row++;
+        }
+
+        for (Formula[] level : byLevel(formulas, maxLevel)) {
+            if (level.length <= LEAF_SIZE) {
+                for (Formula formula : level) {
+                    formula.eval(cells);
+                }
+            } else {
+                pool.invoke(new EvaluateRange(level, 0, level.length, cells));
+            }
+            // The next level reads these values, so they must be stored before it starts.
+            for (Formula formula : level) {
+                if (formula.evaluated) {
+                    cells.set(formula.row, formula.column, formula.value);
+                }
+            }
+        }
+
+        NumberFormatter formatter = new NumberFormatter();
+        int next = 0;
+        for (String[] record : records) {
+            for (String cell : record) {
+                if (!cell.isEmpty() && cell.charAt(0) == '=') {
+                    Formula formula = formulas.get(next++);
+                    if (formula.evaluated) {
+                        printer.print(formatter.format(formula.value));
+                    } else {
+                        printer.print("#N/A");
+                    }
+                } else {
+                    printer.print(cell);
+                }
+            }
+            printer.println();
+        }
+    }
+
+    /**
+     * Return the formula `text` located in the cell at (`row`, `column`), with a null shape if it
+     * cannot be parsed.
+     */
+    private Formula parse(String text, int row, int column) {
+        try {
+            return new Formula(row, column, cache.get(text, row, column));
+        } catch (Exception e) {
+            return new Formula(row, column, null);
+        }
+    }
+
+    /**
+     * Return the level of `formula` given the levels of earlier cells in `levels`, or -1 if the
+     * formula cannot be evaluated.  A formula referring to a cell without a level (one that is not
+     * a number and not an evaluable formula) gets level 1; its evaluation will fail when that cell
+     * is found to have no value.
+     */
+    private static int level(Formula formula, CellGrid levels) {
+        if (formula.shape == null || formula.shape.refersForward()) {
+            return -1;
+        }
+        int level = 1;
+        for (int i = 0; i < formula.shape.referenceCount(); i++) {
+            int row = formula.row + formula.shape.rowOffset(i);
+            int column = formula.column + formula.shape.columnOffset(i);
+            if (levels.contains(row, column)) {
+                level = Math.max(level, (int) levels.value(row, column) + 1);
+            }
+        }
+        return level;
+    }
+
+    /**
+     * Return the evaluable formulas among `formulas` grouped by level, from level 1 to
+     * `maxLevel`.  Within a level, formulas stay in reading order.
+     */
+    private static Formula[][] byLevel(List<Formula> formulas, int maxLevel) {
+        int[] counts = new int[maxLevel + 1];
+        for (Formula formula : formulas) {
+            if (formula.level > 0) {
+                counts[formula.level]++;
+            }
+        }
+        Formula[][] levels = new Formula[maxLevel][];
+        for (int level = 1; level <= maxLevel; level++) {
+            levels[level - 1] = new Formula[counts[level]];
+            counts[level] = 0;
+        }
+        for (Formula formula : formulas) {
+            if (formula.level > 0) {
+                levels[formula.level - 1][counts[formula.level]++] = formula;
+            }
+        }
+        return levels;
+    }
+}
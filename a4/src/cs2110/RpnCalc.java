@@ -1,17 +1,26 @@
 package cs2110;
 
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.Reader;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.InputMismatchException;
+import java.util.List;
 import java.util.Map;
 import java.util.NoSuchElementException;
+import java.util.Random;
 import java.util.Scanner;
 import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 /**
  * An interactive calculator for evaluating expressions represented in Reverse Polish Notation.
@@ -40,16 +49,27 @@ public class RpnCalc {
 
     /**
      * Create a new calculator object with no variables set and an initial expression of "0" that
-     * understands the core math functions defined in `UnaryFunction`.
+     * understands the core math functions defined in `UnaryFunction`, evaluated in the mode named
+     * by the system property "cs2110.math.mode" (see `MathMode.fromSystemProperty()`).
      */
     public RpnCalc() {
+        this(MathMode.fromSystemProperty());
+    }
+
+    /**
+     * Create a new calculator object with no variables set and an initial expression of "0" that
+     * understands the core math functions defined in `UnaryFunction`, evaluated in mode `mode`.
+     */
+    public RpnCalc(MathMode mode) {
+        assert mode != null;
+
         // Initially no variables are set.
         vars = new MapVarTable();
 
         // Initially only core math functions are registered.
         // FIXME: Use TreeMap for consistent ordering
         defs = new HashMap<>();
-        defs.putAll(UnaryFunction.mathDefs());
+        defs.putAll(UnaryFunction.mathDefs(mode));
 
         // Initially set the user's expression to "0" (so it's never null).
         expr = new Constant(0);
@@ -111,6 +131,27 @@ public class RpnCalc {
         }
     }
 
+    /**
+     * Return the user's expression optimized with every assigned variable except those in
+     * `varying` replaced by its value, and with calls to user-defined functions inlined, ready to
+     * be evaluated many times as `varying` changes.
+     */
+    private Expression bindExcept(Set<String> varying) {
+        MapVarTable bound = new MapVarTable();
+        for (String name : vars.names()) {
+            if (!varying.contains(name)) {
+                try {
+                    bound.set(name, vars.get(name));
+                } catch (UnboundVariableException rethrown) {
+                    // Since we are only querying variables known to be in this table, this should
+                    // not happen.
+                    throw new RuntimeException(rethrown);
+                }
+            }
+        }
+        return UnaryFunction.inlineCalls(expr.optimize(bound));
+    }
+
     /**
      * Consume the first token in `scanner`, interpret it as a command name, and execute the
      * appropriate command handler.  Do nothing if `scanner` has no tokens.  If the command name is
@@ -134,6 +175,7 @@ public class RpnCalc {
             case "opcount" -> doOpcount(scanner);
             case "optimize" -> doOptimize(scanner);
             case "tabulate" -> doTabulate(scanner);
+            case "sweep" -> doSweep(scanner);
             case "def" -> doDef(scanner);
             case "help" -> doHelp(scanner);
             case "exit" -> exitRequested = true;
@@ -165,9 +207,10 @@ public class RpnCalc {
                 postfix [<expr>]\t\t\tPrint <expr> (or the last expression) in postfix notation
                 deps [<expr>]\t\t\t\tPrint the variables that <expr> (or the last expression) depends on
                 opcount [<expr>]\t\t\tCount the number of operations needed to evaluate <expr> (or the last expression)
-                optimize [<expr>]\t\t\tReplace the user's expression with the optimized form of <expr> (or the last expression)
-                tabulate <var> <lo> <hi> <n> [<expr>]\tEvaluate <expr> (or the last expression) at <n> values of <var> between <lo> and <hi>
-                def <name> <var> [<expr>]\t\tDefine a new function named <name> that evaluates <expr> (or the last expression) with <var> set to its argument
+                optimize [--exact | --relaxed] [--fma] [<expr>]\tReplace the user's expression with the optimized form of <expr> (or the last expression), then simplify it exactly if --exact, allowing rewrites that may change rounding if --relaxed, and fusing multiply-adds if --fma
+                tabulate [--out <file>] [--binary] [--adaptive <tolerance>] [--budget <evaluations>] [--float] <var> <lo> <hi> <n> [<expr>]\tEvaluate <expr> (or the last expression) at <n> values of <var> between <lo> and <hi> (refined where it deviates from linear by more than <tolerance> if --adaptive; in single precision, reporting its error, if --float), writing them to <file> (as doubles if --binary) if given
+                sweep [--out <file>] [--binary] <var> <lo> <hi> <n>... [<expr>]\tEvaluate <expr> (or the last expression) at every combination of the values of each <var>, in parallel
+                def [--memo [<capacity>]] [--table <lo> <hi> <bound> [--chebyshev] [--cubic]] <name> <var> [<expr>]\tDefine a new function named <name> that evaluates <expr> (or the last expression) with <var> set to its argument, caching up to <capacity> values if --memo, or interpolating within <bound> on [<lo>, <hi>] if --table
                 exit\t\t\t\t\tExit the program""");
     }
 
@@ -266,7 +309,8 @@ public class RpnCalc {
 
     /**
      * Parse remaining arguments in `scanner` and perform the "defs" command to print all function
-     * definitions in this calculator instance.  Prints usage to `System.err` and returns if
+     * definitions in this calculator instance, with cache statistics for memoized functions and the
+     * size of the table of interpolated ones.  Prints usage to `System.err` and returns if
      * improper arguments are passed.
      */
     public void doDefs(Scanner scanner) {
@@ -277,8 +321,21 @@ public class RpnCalc {
             return;
         }
 
-        for (String defName : defs.keySet()) {
-            System.out.println("* " + defName + "()");
+        for (UnaryFunction def : defs.values()) {
+            MemoCache memo = def.memo();
+            InterpolationTable table = def.table();
+            if (table != null) {
+                System.out.println("* " + def.name() + "() interpolated on [" + table.lo() + ", "
+                        + table.hi() + "] with " + table.size() + " nodes, sampled error "
+                        + table.maxError());
+            } else if (memo == null) {
+                System.out.println("* " + def.name() + "()");
+            } else {
+                System.out.printf("* %s() memoized: %d of %d entries, %d hits, %d misses"
+                                + " (%.1f%% hit rate), %d evictions%n", def.name(), memo.size(),
+                        memo.capacity(), memo.hits(), memo.misses(), 100 * memo.hitRate(),
+                        memo.evictions());
+            }
         }
     }
 
@@ -374,11 +431,35 @@ public class RpnCalc {
      * propagating constant subexpressions based on the current variable assignments. If arguments
      * are provided in `scanner`, parse them as an RPN expression and update the current expression.
      * Prints to `System.err` and returns if expression cannot be parsed.
+     * <p>
+     * The options `--exact` and `--relaxed` further rewrite the optimized form by the EXACT or
+     * RELAXED rules of `Simplifier`: EXACT rules never change its value, while RELAXED rules may
+     * change rounding and results for non-finite values.  `--fma` fuses multiplications whose
+     * product is added to another value into `Math.fma()` (under EXACT rules unless `--relaxed` is
+     * given).  Options may precede the expression.
      */
     public void doOptimize(Scanner scanner) {
+        Simplifier.Rules rules = null;
+        boolean fused = false;
+        while (scanner.hasNext("--.*")) {
+            String option = scanner.next();
+            switch (option) {
+                case "--exact" -> rules = Simplifier.Rules.EXACT;
+                case "--relaxed" -> rules = Simplifier.Rules.RELAXED;
+                case "--fma" -> fused = true;
+                default -> {
+                    System.err.println("Unknown option: " + option);
+                    return;
+                }
+            }
+        }
         try {
             updateExpr(scanner);
             expr = expr.optimize(vars);
+            if (rules != null || fused) {
+                Simplifier.Rules applied = rules == null ? Simplifier.Rules.EXACT : rules;
+                expr = new Simplifier(applied, fused).simplify(expr);
+            }
         } catch (IncompleteRpnException e) {
             System.err.println(e.getMessage());
         } catch (UndefinedFunctionException e) {
@@ -396,20 +477,286 @@ public class RpnCalc {
      *     <li>var: The name of the abscissa variable</li>
      *     <li>lo: The minimum value of the abscissa (floating-point number)</li>
      *     <li>hi: The maximum value of the abscissa (floating-point number)</li>
-     *     <li>n: The number of abscissa to sample at (integer)</li>
+     *     <li>n: The number of abscissa to sample at (positive integer)</li>
      * </ol>
-     * If additional arguments are provided in `scanner`, parse them as an RPN expression and update
-     * the current expression.
+     * They may be preceded by the options `--out <file>`, to write the table to `file` instead of
+     * `System.out`, and `--binary`, to write it as pairs of doubles (see `Tabulator.Format`)
+     * rather than as text; `--binary` requires `--out`.  The option `--adaptive <tolerance>`
+     * makes the `n` abscissa only a starting point: intervals between them are refined wherever
+     * the expression deviates from linear by more than `tolerance`, using at most
+     * `--budget <evaluations>` evaluations (see `AdaptiveTabulator`).  The option `--float`
+     * evaluates in single precision (see `FloatBatchEvaluator`), then reports to `System.err`
+     * the largest relative error at a sample of the abscissa against double precision (see
+     * `FloatPrecisionCheck`); it cannot be combined with `--adaptive`.  If additional arguments
+     * are provided in `scanner`, parse them as an RPN expression and update the current
+     * expression.
      * <p>
      * The `n` sampled abscissa are evenly spaced between `lo` and `hi`.  After executing this
      * command,`var` should be assigned the value `hi`.  Prints  to `System.err` and returns if
      * improper arguments are passed, if expression cannot be parsed, or if expression depends on
      * variables that have not been assigned a value.
+     * <p>
+     * The expression is optimized with every variable but `var` bound to its current value, then
+     * evaluated in chunks by a `Tabulator`, so a table of millions of rows is streamed rather than
+     * built in memory.
      */
     public void doTabulate(Scanner scanner) {
-        // TODO (challenge extension): Implement this method according to its specification.
-        // Use the helper function `updateExpr()` when appropriate.
-        System.err.println("Sorry, this command is not yet supported.");
+        String usage = "Expected: [--out <file>] [--binary] [--adaptive <tolerance>]"
+                + " [--budget <evaluations>] [--float] <var> <lo> <hi> <n> [<expr>]";
+        String outFile = null;
+        Tabulator.Format format = Tabulator.Format.TEXT;
+        boolean adaptive = false;
+        boolean single = false;
+        double tolerance = 0;
+        int budget = -1;
+        String var;
+        double lo;
+        double hi;
+        int n;
+        try {
+            while (scanner.hasNext("--.*")) {
+                String option = scanner.next();
+                switch (option) {
+                    case "--out" -> outFile = scanner.next();
+                    case "--binary" -> format = Tabulator.Format.BINARY;
+                    case "--adaptive" -> {
+                        adaptive = true;
+                        tolerance = scanner.nextDouble();
+                    }
+                    case "--budget" -> budget = scanner.nextInt();
+                    case "--float" -> single = true;
+                    default -> {
+                        System.err.println("Unknown option: " + option);
+                        return;
+                    }
+                }
+            }
+            var = scanner.next();
+            lo = scanner.nextDouble();
+            hi = scanner.nextDouble();
+            n = scanner.nextInt();
+        } catch (InputMismatchException e) {
+            System.err.println(usage);
+            return;
+        } catch (NoSuchElementException e) {
+            System.err.println(usage);
+            return;
+        }
+        if (n < 1) {
+            System.err.println("Number of abscissa must be positive");
+            return;
+        }
+        if (format == Tabulator.Format.BINARY && outFile == null) {
+            System.err.println("Binary output requires --out <file>");
+            return;
+        }
+        if (budget != -1 && !adaptive) {
+            System.err.println("--budget requires --adaptive <tolerance>");
+            return;
+        }
+        if (single && adaptive) {
+            System.err.println("--float cannot be combined with --adaptive");
+            return;
+        }
+        if (adaptive) {
+            if (budget == -1) {
+                budget = Math.max(n, AdaptiveTabulator.DEFAULT_BUDGET);
+            }
+            if (!(tolerance >= 0)) {
+                System.err.println("Tolerance must not be negative");
+                return;
+            }
+            if (!(lo < hi) || n < 2) {
+                System.err.println("Adaptive tabulation requires <lo> < <hi> and <n> >= 2");
+                return;
+            }
+            if (budget < n) {
+                System.err.println("Budget must allow at least <n> evaluations");
+                return;
+            }
+        }
+
+        try {
+            updateExpr(scanner);
+        } catch (IncompleteRpnException e) {
+            System.err.println(e.getMessage());
+            return;
+        } catch (UndefinedFunctionException e) {
+            printUndefinedFunctionError(e.name());
+            return;
+        }
+
+        Expression body = bindExcept(Set.of(var));
+
+        try (OutputStream file = outFile == null ? null : new FileOutputStream(outFile)) {
+            OutputStream out = file == null ? System.out : new BufferedOutputStream(file);
+            if (adaptive) {
+                new AdaptiveTabulator(new BatchEvaluator(), ForkJoinPool.commonPool())
+                        .tabulate(body, var, lo, hi, n, tolerance, budget, out, format);
+            } else if (single) {
+                new Tabulator(new FloatBatchEvaluator()).tabulate(body, var, lo, hi, n, out,
+                        format);
+                reportFloatPrecision(body, var, lo, hi, n);
+            } else {
+                new Tabulator(new BatchEvaluator()).tabulate(body, var, lo, hi, n, out, format);
+            }
+        } catch (UnboundVariableException e) {
+            printUnboundVariableError(e.name());
+            return;
+        } catch (IOException e) {
+            System.err.println("Could not write table: " + e.getMessage());
+            return;
+        }
+        vars.set(var, hi);
+    }
+
+    /**
+     * Print to `System.err` how far the values of `expr`, which depends on no variable other than
+     * `var`, evaluated in single precision deviate from double precision at a sample of the `n`
+     * abscissa tabulated from `lo` to `hi`.
+     */
+    private static void reportFloatPrecision(Expression expr, String var, double lo, double hi,
+            int n) throws UnboundVariableException {
+        Random random = new Random();
+        int samples = Math.min(n, FloatPrecisionCheck.DEFAULT_SAMPLES);
+        double[] xs = new double[samples];
+        for (int i = 0; i < samples; i++) {
+            xs[i] = Tabulator.abscissa(lo, hi, n, samples == n ? i : random.nextInt(n));
+        }
+        ColumnTable columns = new ColumnTable(samples);
+        columns.set(var, xs);
+        FloatPrecisionCheck check = FloatPrecisionCheck.check(expr, columns, samples, random);
+        System.err.println("Single precision: max relative error " + check.maxRelativeError()
+                + " over " + check.samples() + " sampled abscissa");
+        if (!check.isSafe()) {
+            System.err.println("Warning: exceeds " + FloatPrecisionCheck.SAFE_RELATIVE_ERROR
+                    + " at " + var + " = " + xs[check.worstRow()]
+                    + "; tabulate in double precision instead");
+        }
+    }
+
+    /**
+     * Parse remaining arguments in `scanner` and perform the "sweep" command to evaluate the
+     * current expression at every point of a grid of values of several variables and print each
+     * point's coordinates and value.  The arguments are one or more ranges, each of four tokens:
+     * <ol>
+     *     <li>var: The name of a variable to sweep</li>
+     *     <li>lo: The minimum value of the variable (floating-point number)</li>
+     *     <li>hi: The maximum value of the variable (floating-point number)</li>
+     *     <li>n: The number of values of the variable to sample at (positive integer)</li>
+     * </ol>
+     * Ranges are read for as long as the next four tokens have this form.  They may be preceded by
+     * the `--out` and `--binary` options of "tabulate".  If additional arguments follow them,
+     * parse them as an RPN expression and update the current expression.
+     * <p>
+     * Points are printed in row-major order (the last variable varies fastest) and are evaluated
+     * in parallel by a `Sweep` on the common ForkJoinPool.  Progress and the elapsed time are
+     * printed to `System.err`.  After executing this command, each swept variable is assigned its
+     * `hi` value.  Prints to `System.err` and returns if improper arguments are passed, if
+     * expression cannot be parsed, or if expression depends on variables that are neither swept
+     * nor assigned a value.
+     */
+    public void doSweep(Scanner scanner) {
+        String usage = "Expected: [--out <file>] [--binary] <var> <lo> <hi> <n>... [<expr>]";
+        String outFile = null;
+        Tabulator.Format format = Tabulator.Format.TEXT;
+        try {
+            while (scanner.hasNext("--.*")) {
+                String option = scanner.next();
+                switch (option) {
+                    case "--out" -> outFile = scanner.next();
+                    case "--binary" -> format = Tabulator.Format.BINARY;
+                    default -> {
+                        System.err.println("Unknown option: " + option);
+                        return;
+                    }
+                }
+            }
+        } catch (NoSuchElementException e) {
+            System.err.println(usage);
+            return;
+        }
+        if (format == Tabulator.Format.BINARY && outFile == null) {
+            System.err.println("Binary output requires --out <file>");
+            return;
+        }
+
+        String[] tokens = scanner.hasNext() ? scanner.nextLine().trim().split("\\s+")
+                : new String[0];
+        List<Sweep.Range> ranges = new ArrayList<>();
+        Set<String> swept = new HashSet<>();
+        int next = 0;
+        while (next + 3 < tokens.length && !NumberParser.isDouble(tokens[next])
+                && NumberParser.isDouble(tokens[next + 1])
+                && NumberParser.isDouble(tokens[next + 2]) && tokens[next + 3].matches("\\d+")) {
+            String var = tokens[next];
+            int n;
+            try {
+                n = Integer.parseInt(tokens[next + 3]);
+            } catch (NumberFormatException e) {
+                System.err.println("Too many values of " + var);
+                return;
+            }
+            if (n < 1) {
+                System.err.println("Number of values of " + var + " must be positive");
+                return;
+            }
+            if (!swept.add(var)) {
+                System.err.println("Variable " + var + " is swept more than once");
+                return;
+            }
+            ranges.add(new Sweep.Range(var, NumberParser.parseDouble(tokens[next + 1]),
+                    NumberParser.parseDouble(tokens[next + 2]), n));
+            next += 4;
+        }
+        if (ranges.isEmpty()) {
+            System.err.println(usage);
+            return;
+        }
+        long size;
+        try {
+            size = Sweep.size(ranges);
+        } catch (IllegalArgumentException e) {
+            System.err.println(e.getMessage());
+            return;
+        }
+
+        try {
+            updateExpr(new Scanner(String.join(" ",
+                    Arrays.asList(tokens).subList(next, tokens.length))));
+        } catch (IncompleteRpnException e) {
+            System.err.println(e.getMessage());
+            return;
+        } catch (UndefinedFunctionException e) {
+            printUndefinedFunctionError(e.name());
+            return;
+        }
+        Expression body = bindExcept(swept);
+
+        Sweep sweep = new Sweep(new BatchEvaluator(), ForkJoinPool.commonPool());
+        long start = System.nanoTime();
+        try {
+            if (outFile == null) {
+                sweep.sweep(body, ranges, System.out, format, System.err);
+            } else {
+                try (OutputStream out = new FileOutputStream(outFile)) {
+                    sweep.sweep(body, ranges, new BufferedOutputStream(out), format,
+                            System.err);
+                }
+            }
+        } catch (UnboundVariableException e) {
+            printUnboundVariableError(e.name());
+            return;
+        } catch (IOException e) {
+            System.err.println("Could not write sweep: " + e.getMessage());
+            return;
+        }
+        long elapsed = System.nanoTime() - start;
+        System.err.println("Swept " + size + " points in " + elapsed / 1_000_000
+                + " ms with parallelism " + ForkJoinPool.commonPool().getParallelism());
+        for (Sweep.Range range : ranges) {
+            vars.set(range.var, range.hi);
+        }
     }
 
     /**
@@ -420,30 +767,135 @@ public class RpnCalc {
      *     <li>var: The name of the variable to serve as the function's argument</li>
      * </ol>
      * If additional arguments are provided in `scanner`, parse them as an RPN expression and update
-     * the current expression.
+     * the current expression.  If the arguments are preceded by `--memo`, optionally followed by a
+     * capacity, the function caches its most recently used values (see
+     * `UnaryFunction.memoized()`).  If they are preceded by `--table <lo> <hi> <bound>`, the
+     * function interpolates within `bound` in a table of its values on `[lo, hi]`, with nodes at
+     * Chebyshev points if `--chebyshev` is given and cubic interpolation if `--cubic` is given
+     * (see `UnaryFunction.interpolated()`).
      * <p>
      * Prints  to `System.err` and returns if improper arguments are passed, if expression cannot be
      * parsed, if expression depends on variables other than var, or if a function named `name` has
      * already been defined (in the latter two cases, the current expression is still updated).
      */
     public void doDef(Scanner scanner) {
-        // TODO (challenge extension): Implement this method according to its specification.
-        // Use the helper functions `updateExpr()` and `registerDef()` when appropriate.
-        System.err.println("Sorry, this command is not yet supported.");
+        String usage = "Expected: [--memo [<capacity>]] [--table <lo> <hi> <bound> [--chebyshev]"
+                + " [--cubic]] <name> <var> [<expr>]";
+        int memoCapacity = 0;
+        boolean interpolated = false;
+        double tableLo = 0;
+        double tableHi = 0;
+        double bound = 0;
+        InterpolationTable.Nodes nodes = InterpolationTable.Nodes.UNIFORM;
+        InterpolationTable.Method method = InterpolationTable.Method.LINEAR;
+        String name;
+        String var;
+        try {
+            while (scanner.hasNext("--.*")) {
+                String option = scanner.next();
+                switch (option) {
+                    case "--memo" -> memoCapacity = scanner.hasNextInt() ? scanner.nextInt()
+                            : MemoCache.DEFAULT_CAPACITY;
+                    case "--table" -> {
+                        interpolated = true;
+                        tableLo = scanner.nextDouble();
+                        tableHi = scanner.nextDouble();
+                        bound = scanner.nextDouble();
+                    }
+                    case "--chebyshev" -> nodes = InterpolationTable.Nodes.CHEBYSHEV;
+                    case "--cubic" -> method = InterpolationTable.Method.CUBIC;
+                    default -> {
+                        System.err.println("Unknown option: " + option);
+                        return;
+                    }
+                }
+                if (option.equals("--memo") && memoCapacity < 1) {
+                    System.err.println("Memo capacity must be positive");
+                    return;
+                }
+            }
+            name = scanner.next();
+            var = scanner.next();
+        } catch (NoSuchElementException e) {
+            System.err.println(usage);
+            return;
+        }
+        if (interpolated && memoCapacity > 0) {
+            System.err.println("--memo and --table cannot be combined");
+            return;
+        }
+        if (interpolated && !(Double.isFinite(tableLo) && Double.isFinite(tableHi)
+                && tableLo < tableHi && bound > 0)) {
+            System.err.println("Table requires finite <lo> < <hi> and a positive <bound>");
+            return;
+        }
+
+        try {
+            updateExpr(scanner);
+        } catch (IncompleteRpnException e) {
+            System.err.println(e.getMessage());
+            return;
+        } catch (UndefinedFunctionException e) {
+            printUndefinedFunctionError(e.name());
+            return;
+        }
+
+        for (String dep : expr.dependencies()) {
+            if (!dep.equals(var)) {
+                System.err.println("Cannot define function " + name
+                        + " that depends on variable " + dep + " other than " + var);
+                return;
+            }
+        }
+        if (defs.containsKey(name)) {
+            System.err.println("Function " + name + "() is already defined");
+            return;
+        }
+        // The function's body is compiled once, so applying it allocates nothing.
+        UnaryFunction f = UnaryFunction.fromExpression(name, expr, var);
+        if (memoCapacity > 0) {
+            f = f.memoized(memoCapacity);
+        } else if (interpolated) {
+            try {
+                f = f.interpolated(tableLo, tableHi, bound, nodes, method);
+            } catch (IllegalArgumentException e) {
+                System.err.println(e.getMessage());
+                return;
+            }
+        }
+        registerDef(f);
     }
 
 
     /**
      * Run an interactive calculator application.  If a program argument is provided, commands are
-     * read from a file rather than `System.in`.
+     * read from a file rather than `System.in`.  It may be preceded by "--math" and the name of a
+     * `MathMode` (case-insensitive) selecting how the core math functions are evaluated in this
+     * session.
      */
     public static void main(String[] args) {
+        MathMode mode = null;
+        if (args.length >= 2 && args[0].equals("--math")) {
+            try {
+                mode = MathMode.valueOf(args[1].toUpperCase());
+            } catch (IllegalArgumentException e) {
+                System.err.println("Unknown math mode: " + args[1]);
+                System.exit(1);
+            }
+            args = Arrays.copyOfRange(args, 2, args.length);
+        }
         if (args.length > 1) {
-            System.err.println("Usage: java RpnCalc [<input_file>]");
+            System.err.println("Usage: java RpnCalc [--math strict|default|fast] [<input_file>]");
             System.exit(1);
         }
 
-        RpnCalc calc = new RpnCalc();
+        RpnCalc calc = null;
+        try {
+            calc = mode == null ? new RpnCalc() : new RpnCalc(mode);
+        } catch (IllegalArgumentException e) {
+            System.err.println("Unknown math mode: " + System.getProperty("cs2110.math.mode"));
+            System.exit(1);
+        }
 
         // Whether to print prompts to standard output
         boolean interactive = true;
@@ -0,0 +1,181 @@
+package cs2110;
+
+/**
+ * Splits a range of a character sequence into whitespace-separated tokens and classifies them,
+ * in a single pass and without creating objects for the tokens.  Tokens are classified as
+ * `Token.parse()` classifies them: operator symbols, then numbers (as accepted by
+ * `Double.parseDouble()`), then function names (ending in "()"), then variable names.
+ * <p>
+ * A lexer is a cursor: `next()` advances to the next token, and the other methods describe the
+ * current one.
+ */
+public class RpnLexer {
+
+    /**
+     * The kinds of tokens.
+     */
+    public enum Kind {
+        NUMBER,
+        OPERATOR,
+        FUNCTION,
+        VARIABLE
+    }
+
+    /**
+     * The characters being split, and the end (exclusive) of the range being split.
+     */
+    private final CharSequence text;
+    private final int end;
+
+    /**
+     * The range of the current token.  Before the first call to `next()`, both are the start of
+     * the range being split.
+     */
+    private int tokenStart;
+    private int tokenEnd;
+
+    /**
+     * The kind of the current token, or null if there is none.
+     */
+    private Kind kind = null;
+
+    /**
+     * The value of the current token if it is a number, or its operator if it is an operator.
+     */
+    private double number;
+    private Operator operator;
+
+    /**
+     * Create a lexer for the tokens of `text[start..end)`.
+     */
+    public RpnLexer(CharSequence text, int start, int end) {
+        assert text != null;
+        assert 0 <= start && start <= end && end <= text.length();
+
+        this.text = text;
+        this.end = end;
+        tokenStart = start;
+        tokenEnd = start;
+    }
+
+    /**
+     * Advance to the next token, returning false if there are no more tokens.
+     */
+    public boolean next() {
+        int i = tokenEnd;
+        while (i < end && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        if (i == end) {
+            kind = null;
+            tokenStart = end;
+            tokenEnd = end;
+            return false;
+        }
+        tokenStart = i;
+        while (i < end && !Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        tokenEnd = i;
+        classify();
+        return true;
+    }
+
+    /**
+     * Set `kind` (and `number` or `operator`) for the current token.
+     */
+    private void classify() {
+        if (tokenEnd - tokenStart == 1) {
+            operator = operator(text.charAt(tokenStart));
+            if (operator != null) {
+                kind = Kind.OPERATOR;
+                return;
+            }
+        }
+        if (NumberParser.isDouble(text, tokenStart, tokenEnd)) {
+            number = NumberParser.parseDouble(text, tokenStart, tokenEnd);
+            kind = Kind.NUMBER;
+        } else if (tokenEnd - tokenStart >= 2 && text.charAt(tokenEnd - 2) == '('
+                && text.charAt(tokenEnd - 1) == ')') {
+            kind = Kind.FUNCTION;
+        } else {
+            kind = Kind.VARIABLE;
+        }
+    }
+
+    /**
+     * Return the operator whose symbol is `symbol`, or null if there is none.
+     */
+    private static Operator operator(char symbol) {
+        switch (symbol) {
+            case '+':
+                return Operator.ADD;
+            case '-':
+                return Operator.SUBTRACT;
+            case '*':
+                return Operator.MULTIPLY;
+            case '/':
+                return Operator.DIVIDE;
+            case '^':
+                return Operator.POW;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Return the kind of the current token.  Requires that `next()` last returned true.
+     */
+    public Kind kind() {
+        assert kind != null;
+        return kind;
+    }
+
+    /**
+     * Return the index of the first character of the current token.
+     */
+    public int start() {
+        return tokenStart;
+    }
+
+    /**
+     * Return the index after the last character of the current token.
+     */
+    public int end() {
+        return tokenEnd;
+    }
+
+    /**
+     * Return the value of the current token.  Requires that it is a number.
+     */
+    public double number() {
+        assert kind == Kind.NUMBER;
+        return number;
+    }
+
+    /**
+     * Return the operator the current token stands for.  Requires that it is an operator.
+     */
+    public Operator operator() {
+        assert kind == Kind.OPERATOR;
+        return operator;
+    }
+
+    /**
+     * Return the name of the current token: the function name without its "()" suffix if it is a
+     * function, or else the token itself.
+     */
+    public String name() {
+        assert kind != null;
+        int nameEnd = kind == Kind.FUNCTION ? tokenEnd - 2 : tokenEnd;
+        return text.subSequence(tokenStart, nameEnd).toString();
+    }
+
+    /**
+     * Return the current token as a String.
+     */
+    public String text() {
+        assert kind != null;
+        return text.subSequence(tokenStart, tokenEnd).toString();
+    }
+}
@@ -3,7 +3,6 @@ package cs2110;
 import java.util.ArrayDeque;
 import java.util.Deque;
 import java.util.Map;
-import java.util.NoSuchElementException;
 
 public class RpnParser {
 
@@ -22,6 +21,52 @@ public class RpnParser {
     public static Expression parse(String exprString, Map<String, UnaryFunction> funcDefs)
             throws IncompleteRpnException, UndefinedFunctionException {
         assert exprString != null;
+        return parse(exprString, 0, exprString.length(), funcDefs);
+    }
+
+    /**
+     * Parse the RPN expression in `exprString` as `parse(String, Map)` does.  If `inline` is true,
+     * applications of user-defined functions whose bodies are small enough are replaced by their
+     * bodies (see `UnaryFunction.inline()`), so that calling them costs no more than writing them
+     * out in full.
+     */
+    public static Expression parse(String exprString, Map<String, UnaryFunction> funcDefs,
+            boolean inline) throws IncompleteRpnException, UndefinedFunctionException {
+        assert exprString != null;
+        return parse(exprString, 0, exprString.length(), funcDefs, null, inline);
+    }
+
+    /**
+     * Parse the RPN expression in `text[start..end)` and return the corresponding expression tree,
+     * as `parse(String, Map)` does.  The characters are read in place; only the names of
+     * variables and functions are copied.
+     */
+    public static Expression parse(CharSequence text, int start, int end,
+            Map<String, UnaryFunction> funcDefs)
+            throws IncompleteRpnException, UndefinedFunctionException {
+        return parse(text, start, end, funcDefs, null);
+    }
+
+    /**
+     * Parse the RPN expression in `text[start..end)` as `parse(CharSequence, int, int, Map)` does,
+     * but create its nodes with `interner`, so that repeated subexpressions (within this
+     * expression, or shared with others parsed by the same interner) are the same node.  If
+     * `interner` is null, a fresh tree is created.
+     */
+    public static Expression parse(CharSequence text, int start, int end,
+            Map<String, UnaryFunction> funcDefs, ExpressionInterner interner)
+            throws IncompleteRpnException, UndefinedFunctionException {
+        return parse(text, start, end, funcDefs, interner, false);
+    }
+
+    /**
+     * Parse the RPN expression in `text[start..end)`, creating its nodes with `interner` if it is
+     * not null, and inlining calls to small user-defined functions if `inline` is true.
+     */
+    private static Expression parse(CharSequence text, int start, int end,
+            Map<String, UnaryFunction> funcDefs, ExpressionInterner interner, boolean inline)
+            throws IncompleteRpnException, UndefinedFunctionException {
+        assert text != null;
         assert funcDefs != null;
 
         // Each token will result in a subexpression being pushed onto this stack.  If the
@@ -29,61 +74,60 @@ public class RpnParser {
         Deque<Expression> stack = new ArrayDeque<>();
 
         // Loop over each token in the expression string from left to right
-        for (Token token : Token.tokenizer(exprString)) {
-
-            // TODO: Based on the dynamic type of the token, create the appropriate Expression node
-            // and push it onto the stack, popping arguments as needed.
-            // The "number" token is done for you as an example.
-
-            if (token instanceof Token.Number) {
-                Token.Number numToken = (Token.Number) token;
-                stack.push(new Constant(numToken.doubleValue()));
-            }
-
-            if (token instanceof Token.Variable) {
-                Token.Variable varToken = (Token.Variable) token;
-                stack.push(new Variable(varToken.value()));
-            }
-
-            if(token instanceof Token.Operator){
-                // cast the token to use the methods of operator
-                Token.Operator tokenOper = (Token.Operator) token;
-
-                // check if stack size is at least 2
-                if (stack.size() < 2 ){ throw new IncompleteRpnException(exprString,stack.size());}
-                Expression toPop1 = stack.pop();
-                Expression toPop2 = stack.pop();
-
-                Operation opp = new Operation
-                        (Operator.fromString(tokenOper.value()),toPop2,toPop1);
-
-                stack.push(opp);
-
+        RpnLexer lexer = new RpnLexer(text, start, end);
+        while (lexer.next()) {
+            switch (lexer.kind()) {
+                case NUMBER:
+                    stack.push(interner == null ? new Constant(lexer.number())
+                            : interner.constant(lexer.number()));
+                    break;
+
+                case VARIABLE:
+                    stack.push(interner == null ? new Variable(lexer.name())
+                            : interner.variable(lexer.name()));
+                    break;
+
+                case OPERATOR: {
+                    // check if stack size is at least 2
+                    if (stack.size() < 2) {
+                        throw new IncompleteRpnException(
+                                text.subSequence(start, end).toString(), stack.size());
+                    }
+                    Expression right = stack.pop();
+                    Expression left = stack.pop();
+                    stack.push(interner == null ? new Operation(lexer.operator(), left, right)
+                            : interner.operation(lexer.operator(), left, right));
+                    break;
                 }
-            if(token instanceof Token.Function){
-                // cast the token
-                Token.Function tokenFunc = (Token.Function) token;
-                if (stack.isEmpty()){ throw new IncompleteRpnException(exprString, 0);}
-
-                // pop expression
-                Expression toPop3 = stack.pop();
-                // parse the token's function name
-                UnaryFunction function = funcDefs.get(tokenFunc.name());
-                if(function == null){throw new UndefinedFunctionException(tokenFunc.name());}
 
-                // create application node and
-                Application app = new Application(function,toPop3);
-                stack.push(app);
+                case FUNCTION: {
+                    if (stack.isEmpty()) {
+                        throw new IncompleteRpnException(text.subSequence(start, end).toString(),
+                                0);
+                    }
+                    Expression argument = stack.pop();
+                    String name = lexer.name();
+                    UnaryFunction function = funcDefs.get(name);
+                    if (function == null) {
+                        throw new UndefinedFunctionException(name);
+                    }
+                    Expression inlined = inline ? function.inline(argument) : null;
+                    if (inlined != null) {
+                        stack.push(interner == null ? inlined : interner.intern(inlined));
+                    } else {
+                        stack.push(interner == null ? new Application(function, argument)
+                                : interner.application(function, argument));
+                    }
+                    break;
+                }
             }
-
-
-
         }
 
-        if(stack.size() != 1){throw new IncompleteRpnException(exprString,stack.size());}
+        // Check that the string really did correspond to a single expression.
+        if (stack.size() != 1) {
+            throw new IncompleteRpnException(text.subSequence(start, end).toString(),
+                    stack.size());
+        }
         return stack.pop();
-
-        // TODO: Return the overall expression node.  (This might also be a good place to check that
-        // the string really did correspond to a single expression.)
     }
 }
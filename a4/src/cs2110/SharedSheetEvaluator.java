@@ -0,0 +1,161 @@
+package cs2110;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import org.apache.commons.csv.CSVPrinter;
+
+/**
+ * Evaluates all the formulas of a spreadsheet as a single `ExpressionDag`, producing the same
+ * output as `CsvEvaluator.evaluateCsv()` while computing each subexpression that several formulas
+ * share only once.  The whole sheet is read into memory first.  Formulas are parsed with one
+ * `ExpressionInterner`, and each reference to an earlier cell is replaced by that cell's own
+ * interned expression (a constant for a number cell), so that a repeated subexpression such as
+ * `B9 B7 /` is one node however many formulas use it, and the formulas of a sheet become one DAG
+ * whose only leaves are constants.
+ * <p>
+ * A formula may only use cells that precede it in reading order (see `evaluateCsv()`).  A formula
+ * referring to a later cell, to a cell that is neither a number nor an evaluable formula, or to a
+ * variable that is not a cell cannot be evaluated, which is known before the DAG is built.
+ */
+class SharedSheetEvaluator {
+
+    /**
+     * Functions that formulas may apply.
+     */
+    private final Map<String, UnaryFunction> defs;
+
+    /**
+     * Create an evaluator whose formulas may apply the functions in `defs`.
+     */
+    SharedSheetEvaluator(Map<String, UnaryFunction> defs) {
+        assert defs != null;
+        this.defs = defs;
+    }
+
+    /**
+     * Copy the spreadsheet data in `records` to `printer`, replacing any formula cells with their
+     * evaluated value, exactly as `CsvEvaluator.evaluateCsv()` would.  Return the number of
+     * distinct nodes computed.
+     */
+    int evaluate(List<String[]> records, CSVPrinter printer) throws IOException {
+        ExpressionInterner interner = new ExpressionInterner();
+        // The expression of every cell that is a number or an evaluable formula, keyed by its
+        // packed coordinates.  Cells are added in reading order, so a formula can only find the
+        // cells before it.
+        Map<Long, Expression> cells = new HashMap<>();
+        // The expression of each formula in reading order, null if it cannot be evaluated.
+        List<Expression> formulas = new ArrayList<>();
+        // Parsed nodes already resolved, and the nodes they resolved to.
+        Map<Expression, Expression> resolved = new IdentityHashMap<>();
+
+        int row = 1;
+        for (String[] record : records) {
+            int column = 1;
+            for (String cell : record) {
+                if (!cell.isEmpty() && cell.charAt(0) == '=') {
+                    Expression formula = resolve(cell, cells, interner, resolved);
+                    formulas.add(formula);
+                    if (formula != null) {
+                        cells.put(CellGrid.coordinates(row, column), formula);
+                    }
+                } else if (NumberParser.isDouble(cell)) {
+                    cells.put(CellGrid.coordinates(row, column),
+                            interner.constant(NumberParser.parseDouble(cell)));
+                }
+                column++;
+            }
+            row++;
+        }
+
+        List<Expression> roots = new ArrayList<>();
+        for (Expression formula : formulas) {
+            if (formula != null) {
+                roots.add(formula);
+            }
+        }
+        double[] values = new double[roots.size()];
+        ExpressionDag dag = new ExpressionDag(roots);
+        try {
+            dag.evalAll(MapVarTable.empty(), values);
+        } catch (UnboundVariableException rethrown) {
+            // Every leaf is a constant, so this should not happen.
+            throw new RuntimeException(rethrown);
+        }
+
+        NumberFormatter formatter = new NumberFormatter();
+        int nextFormula = 0;
+        int nextValue = 0;
+        for (String[] record : records) {
+            for (String cell : record) {
+                if (!cell.isEmpty() && cell.charAt(0) == '=') {
+                    if (formulas.get(nextFormula++) != null) {
+                        printer.print(formatter.format(values[nextValue++]));
+                    } else {
+                        printer.print("#N/A");
+                    }
+                } else {
+                    printer.print(cell);
+                }
+            }
+            printer.println();
+        }
+        return dag.nodeCount();
+    }
+
+    /**
+     * Return the formula cell `cell` (including its leading '=') as an interned expression in
+     * which every cell reference is replaced by the expression of that cell in `cells`, or null
+     * if it cannot be parsed or refers to a cell or variable not in `cells`.  `resolved` maps
+     * parsed nodes that have been resolved successfully to their results.
+     */
+    private Expression resolve(String cell, Map<Long, Expression> cells,
+            ExpressionInterner interner, Map<Expression, Expression> resolved) {
+        Expression parsed;
+        try {
+            parsed = RpnParser.parse(cell, 1, cell.length(), defs, interner);
+        } catch (IncompleteRpnException | UndefinedFunctionException e) {
+            return null;
+        }
+        return substitute(parsed, cells, interner, resolved);
+    }
+
+    /**
+     * Return the interned node `expr` with every variable replaced by the expression of the cell
+     * it names in `cells`, or null if some variable does not name a cell in `cells`.  Only
+     * successful results are remembered in `resolved`, since a cell missing from `cells` may be
+     * added later.
+     */
+    private static Expression substitute(Expression expr, Map<Long, Expression> cells,
+            ExpressionInterner interner, Map<Expression, Expression> resolved) {
+        Expression result = resolved.get(expr);
+        if (result != null) {
+            return result;
+        }
+        if (expr instanceof Variable) {
+            long coordinates = CellGrid.coordinates(((Variable) expr).name());
+            result = coordinates < 0 ? null : cells.get(coordinates);
+        } else if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            Expression left = substitute(operation.leftOperand(), cells, interner, resolved);
+            Expression right = substitute(operation.rightOperand(), cells, interner, resolved);
+            result = left == null || right == null ? null
+                    : interner.operation(operation.operator(), left, right);
+        } else if (expr instanceof Application) {
+            Application application = (Application) expr;
+            Expression argument = substitute(application.argument(), cells, interner, resolved);
+            result = argument == null ? null
+                    : interner.application(application.function(), argument);
+        } else {
+            // Constants, and nodes of other classes (which cannot refer to cells).
+            result = expr.dependencies().isEmpty() ? expr : null;
+        }
+        if (result != null) {
+            resolved.put(expr, result);
+        }
+        return result;
+    }
+}
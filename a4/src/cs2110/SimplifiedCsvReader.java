@@ -0,0 +1,414 @@
+package cs2110;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A reader for spreadsheets in the `CsvEvaluator.SIMPLIFIED_CSV` format that scans the bytes of a
+ * memory-mapped file directly.  It reads the same records and cells as a Commons CSV parser using
+ * that format: cells are separated by ',', records end at "\n", "\r", or "\r\n", a backslash
+ * escapes the character after it, and a cell starting with '"' is quoted.
+ * <p>
+ * Records are read one at a time with `nextRecord()`.  Cells of the current record are returned as
+ * CharSequences that view the mapped bytes without copying them, so they are only valid until the
+ * next call to `nextRecord()`; call `toString()` on a cell to keep it.  Only cells that contain
+ * escapes, quotes, or non-ASCII characters are decoded into Strings.
+ * <p>
+ * The file's encoding must represent ASCII characters as single bytes that never occur inside
+ * the encoding of another character (as in UTF-8 and the ISO-8859 encodings).
+ */
+public class SimplifiedCsvReader implements Closeable {
+
+    /**
+     * The largest file that can be mapped.
+     */
+    public static final long MAX_MAPPED_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * The bytes of the spreadsheet, from index 0 to `limit`.
+     */
+    private final ByteBuffer bytes;
+    private final int limit;
+
+    /**
+     * The encoding used to decode cells containing non-ASCII characters.
+     */
+    private final Charset charset;
+
+    /**
+     * The channel `bytes` was mapped from, or null if they were not mapped by this reader.
+     */
+    private final FileChannel channel;
+
+    /**
+     * The index of the next byte to be scanned.
+     */
+    private int position = 0;
+
+    /**
+     * The line of the input that `position` is on, for error messages.
+     */
+    private long line = 1;
+
+    /**
+     * The cells of the current record, of which the first `size` are valid.  Cell objects are
+     * reused from one record to the next.
+     */
+    private Cell[] cells = new Cell[16];
+    private int size = 0;
+
+    /**
+     * Holds the bytes of a cell while its escapes and quotes are removed.
+     */
+    private byte[] decoded = new byte[64];
+
+    /**
+     * Create a reader for the spreadsheet stored in `bytes` from its position to its limit,
+     * encoded in `charset`.  Requires that `bytes` has at most `MAX_MAPPED_SIZE` bytes remaining.
+     */
+    public SimplifiedCsvReader(ByteBuffer bytes, Charset charset) {
+        this(bytes, charset, null);
+    }
+
+    private SimplifiedCsvReader(ByteBuffer bytes, Charset charset, FileChannel channel) {
+        assert bytes != null;
+        assert charset != null;
+
+        this.bytes = bytes.slice();
+        this.limit = this.bytes.limit();
+        this.charset = charset;
+        this.channel = channel;
+    }
+
+    /**
+     * Return a reader for the spreadsheet in the file `file`, encoded in the platform's default
+     * charset (as read by `FileReader`).  The file is mapped into memory until the reader is
+     * closed.  Throws IOException if the file cannot be opened or is larger than
+     * `MAX_MAPPED_SIZE`.
+     */
+    public static SimplifiedCsvReader open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            long length = channel.size();
+            if (length > MAX_MAPPED_SIZE) {
+                throw new IOException("File too large to map: " + file);
+            }
+            ByteBuffer bytes = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            return new SimplifiedCsvReader(bytes, Charset.defaultCharset(), channel);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Advance to the next record, returning false if there are no more records.  Throws
+     * IOException if the record is malformed (an escape or quoted cell is not finished before
+     * the end of the input, or a quoted cell is followed by something other than whitespace).
+     */
+    public boolean nextRecord() throws IOException {
+        size = 0;
+        if (position >= limit) {
+            return false;
+        }
+        boolean more = true;
+        while (more) {
+            if (size == cells.length) {
+                cells = Arrays.copyOf(cells, 2 * size);
+            }
+            if (cells[size] == null) {
+                cells[size] = new Cell();
+            }
+            more = readCell(cells[size]);
+            size++;
+        }
+        return true;
+    }
+
+    /**
+     * Return the number of cells in the current record.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return cell `i` of the current record.  The cell is only valid until the next call to
+     * `nextRecord()`.  Requires `0 <= i < size()`.
+     */
+    public CharSequence cell(int i) {
+        assert 0 <= i && i < size;
+        return cells[i];
+    }
+
+    /**
+     * Return the cells of the current record as Strings.
+     */
+    public String[] values() {
+        String[] values = new String[size];
+        for (int i = 0; i < size; i++) {
+            values[i] = cells[i].toString();
+        }
+        return values;
+    }
+
+    /**
+     * Release the mapped file, if any.
+     */
+    @Override
+    public void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Read the cell starting at `position` into `cell`, leaving `position` after the delimiter or
+     * record separator that ends it.  Return true if another cell follows in the same record.
+     */
+    private boolean readCell(Cell cell) throws IOException {
+        int start = position;
+        if (start < limit && bytes.get(start) == '"') {
+            return readQuotedCell(cell);
+        }
+
+        boolean plain = true;
+        int i = start;
+        while (i < limit) {
+            byte b = bytes.get(i);
+            if (b == ',' || b == '\n' || b == '\r') {
+                break;
+            }
+            if (b == '\\') {
+                if (i + 1 == limit) {
+                    throw new IOException("(line " + line + ") EOF whilst processing escape sequence");
+                }
+                if (bytes.get(i + 1) == '\n') {
+                    line++;
+                }
+                plain = false;
+                i++;
+            } else if (b < 0) {
+                plain = false;
+            }
+            i++;
+        }
+
+        if (plain) {
+            cell.view(start, i);
+        } else {
+            int length = 0;
+            for (int j = start; j < i; j++) {
+                byte b = bytes.get(j);
+                if (b == '\\') {
+                    j++;
+                    int unescaped = unescape(bytes.get(j));
+                    if (unescaped < 0) {
+                        length = append(length, b);
+                        length = append(length, bytes.get(j));
+                    } else {
+                        length = append(length, (byte) unescaped);
+                    }
+                } else {
+                    length = append(length, b);
+                }
+            }
+            cell.hold(new String(decoded, 0, length, charset));
+        }
+        position = i;
+        return endCell();
+    }
+
+    /**
+     * Read the quoted cell starting at `position` into `cell`, as `readCell()` does.  Within the
+     * quotes, a doubled quote stands for one quote, and escapes are processed as in unquoted
+     * cells.  Only whitespace may follow the closing quote.
+     */
+    private boolean readQuotedCell(Cell cell) throws IOException {
+        long startLine = line;
+        int length = 0;
+        int i = position + 1;
+        while (true) {
+            if (i >= limit) {
+                throw new IOException("(startline " + startLine
+                        + ") EOF reached before encapsulated token finished");
+            }
+            byte b = bytes.get(i++);
+            if (b == '\\') {
+                if (i == limit) {
+                    throw new IOException("(line " + line + ") EOF whilst processing escape sequence");
+                }
+                byte next = bytes.get(i++);
+                int unescaped = unescape(next);
+                if (unescaped < 0) {
+                    length = append(length, b);
+                    length = append(length, next);
+                } else {
+                    length = append(length, (byte) unescaped);
+                }
+                if (next == '\n') {
+                    line++;
+                }
+            } else if (b == '"') {
+                if (i < limit && bytes.get(i) == '"') {
+                    length = append(length, b);
+                    i++;
+                } else {
+                    break;
+                }
+            } else {
+                if (b == '\n') {
+                    line++;
+                }
+                length = append(length, b);
+            }
+        }
+        while (i < limit) {
+            byte b = bytes.get(i);
+            if (b == ',' || b == '\n' || b == '\r') {
+                break;
+            }
+            if (!Character.isWhitespace((char) b)) {
+                throw new IOException("(line " + line
+                        + ") invalid char between encapsulated token and delimiter");
+            }
+            i++;
+        }
+        cell.hold(new String(decoded, 0, length, charset));
+        position = i;
+        return endCell();
+    }
+
+    /**
+     * Consume the delimiter or record separator at `position`, if any.  Return true if it was a
+     * delimiter, meaning another cell follows in the same record.
+     */
+    private boolean endCell() {
+        if (position >= limit) {
+            return false;
+        }
+        byte b = bytes.get(position++);
+        if (b == ',') {
+            return true;
+        }
+        if (b == '\r' && position < limit && bytes.get(position) == '\n') {
+            position++;
+        }
+        line++;
+        return false;
+    }
+
+    /**
+     * Return the character that the escape sequence consisting of a backslash followed by `b`
+     * stands for, or -1 if it is not a recognized escape (in which case both characters stand for
+     * themselves).
+     */
+    private static int unescape(byte b) {
+        switch (b) {
+            case 'r':
+                return '\r';
+            case 'n':
+                return '\n';
+            case 't':
+                return '\t';
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case '\r':
+            case '\n':
+            case '\t':
+            case '\b':
+            case '\f':
+            case ',':
+            case '\\':
+            case '"':
+                return b;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * Store `b` at index `length` of `decoded`, growing it if necessary, and return the new length.
+     */
+    private int append(int length, byte b) {
+        if (length == decoded.length) {
+            decoded = Arrays.copyOf(decoded, 2 * length);
+        }
+        decoded[length] = b;
+        return length + 1;
+    }
+
+    /**
+     * A cell of the current record: either a view of ASCII bytes in the input, or a String holding
+     * its decoded contents.
+     */
+    private class Cell implements CharSequence {
+
+        /**
+         * The bytes this cell views, if `text` is null.
+         */
+        private int start;
+        private int end;
+
+        /**
+         * The decoded contents of this cell, or null if it views the input.
+         */
+        private String text;
+
+        /**
+         * Make this cell view the ASCII bytes from `start` to `end` of the input.
+         */
+        void view(int start, int end) {
+            this.start = start;
+            this.end = end;
+            text = null;
+        }
+
+        /**
+         * Make this cell hold `text`.
+         */
+        void hold(String text) {
+            this.text = text;
+        }
+
+        @Override
+        public int length() {
+            return text == null ? end - start : text.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (text != null) {
+                return text.charAt(index);
+            }
+            if (index < 0 || index >= end - start) {
+                throw new IndexOutOfBoundsException(index);
+            }
+            return (char) bytes.get(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return toString().substring(from, to);
+        }
+
+        @Override
+        public String toString() {
+            if (text != null) {
+                return text;
+            }
+            byte[] ascii = new byte[end - start];
+            bytes.get(start, ascii);
+            return new String(ascii, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
@@ -0,0 +1,485 @@
+package cs2110;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rewrites expressions into cheaper forms: folds constant subexpressions, removes identity
+ * operations, replaces POW with multiplications or `sqrt()` where it can, and replaces division
+ * by a constant with multiplication where that is exact.
+ * <p>
+ * Which rewrites are allowed depends on the rules the simplifier follows (see `Rules`).  Under
+ * EXACT rules the simplified expression evaluates to the same value as the original for every
+ * binding of its variables, bit for bit, including NaN, infinities, and the sign of zero.  These
+ * are the rules applied before compiling a formula or function (`Expression.optimize()` only
+ * folds constants).  RELAXED rules allow rewrites that only hold for finite values and that may
+ * change rounding.  Independently, multiplications whose product is added to another value may
+ * be fused into `FusedMultiplyAdd` nodes.
+ * <p>
+ * Rewrites only repeat subexpressions that have no operations, and expanded powers share their
+ * squares (so an `ExpressionDag` computes each square once); a power of a subexpression with
+ * operations is expanded inside a function applied to it, whose parameter holds its value.
+ * Subtrees that are not rewritten are shared with the original expression, and an expression with
+ * nothing to rewrite is returned as is.
+ */
+public class Simplifier {
+
+    /**
+     * The sets of rewrites a simplifier may apply.
+     */
+    public enum Rules {
+        /**
+         * Rewrites that never change the value of an expression: `x * 1`, `1 * x`, `x / 1`,
+         * `x - 0`, `x + -0`, `-0 + x`, and `x ^ 1` become `x`; `x ^ 2` becomes `x * x` (which
+         * `Math.pow()` computes exactly); and `x / c`, where `c` is a power of two whose
+         * reciprocal is a double, becomes `x * (1 / c)`.  No rewrite removes a variable, so an
+         * expression that cannot be evaluated (because a variable is unbound) still cannot be
+         * after it is simplified.
+         */
+        EXACT,
+
+        /**
+         * The EXACT rewrites, plus rewrites that assume all values are finite and ignore the sign
+         * of zero and differences in rounding, and that may remove variables: `x + 0`, `0 + x`,
+         * and `x - -0` become `x`; `x * 0`, `0 * x`, and `x - x` become 0; `x ^ 0` becomes 1;
+         * constants in chains of additions and subtractions, or of multiplications and divisions,
+         * are folded together; `x ^ 0.5` becomes `sqrt(x)`; and `x ^ n`, for an integer `n` with
+         * `|n| <= VectorKernels.MAX_EXPANDED_EXPONENT`, becomes a product of `x`s formed by
+         * repeated squaring (divided into 1 if `n` is negative).  If `x` has operations, it is
+         * evaluated once and passed to a function computing that product (see `power()`).
+         */
+        RELAXED
+    }
+
+    /**
+     * The simplifier applying EXACT rules without fused operations.
+     */
+    static final Simplifier EXACT = new Simplifier(Rules.EXACT, false);
+
+    /**
+     * The rewrites this simplifier may apply.
+     */
+    private final Rules rules;
+
+    /**
+     * Whether sums of a product and another value are rewritten to `FusedMultiplyAdd` nodes.
+     */
+    private final boolean fused;
+
+    /**
+     * Create a simplifier applying `rules` that fuses multiply-add operations if `fused` is true.
+     */
+    public Simplifier(Rules rules, boolean fused) {
+        assert rules != null;
+        this.rules = rules;
+        this.fused = fused;
+    }
+
+    /**
+     * Return a simplified form of `expr`.
+     */
+    public Expression simplify(Expression expr) {
+        assert expr != null;
+
+        if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            return simplify(operation, simplify(operation.leftOperand()),
+                    simplify(operation.rightOperand()));
+        }
+        if (expr instanceof Application) {
+            Application application = (Application) expr;
+            return simplify(application, simplify(application.argument()));
+        }
+        return expr;
+    }
+
+    /**
+     * Return a simplified form of `operation` with its operands replaced by `left` and `right`,
+     * which have already been simplified.  Returns `operation` itself if its operands are
+     * unchanged and no rewrite applies.
+     */
+    Expression simplify(Operation operation, Expression left, Expression right) {
+        Operator op = operation.operator();
+        if (left instanceof Constant && right instanceof Constant) {
+            return new Constant(op.operate(((Constant) left).value(),
+                    ((Constant) right).value()));
+        }
+
+        Expression rewritten = null;
+        if (op == Operator.ADD) {
+            rewritten = simplifySum(left, right);
+        } else if (op == Operator.SUBTRACT) {
+            rewritten = simplifyDifference(left, right);
+        } else if (op == Operator.MULTIPLY) {
+            rewritten = simplifyProduct(left, right);
+        } else if (op == Operator.DIVIDE) {
+            rewritten = simplifyQuotient(left, right);
+        } else if (op == Operator.POW && right instanceof Constant) {
+            rewritten = simplifyPower(left, ((Constant) right).value());
+        }
+        if (rewritten != null) {
+            return rewritten;
+        }
+        if (left == operation.leftOperand() && right == operation.rightOperand()) {
+            return operation;
+        }
+        return new Operation(op, left, right);
+    }
+
+    /**
+     * Return a simplified form of `application` with its argument replaced by `argument`, which
+     * has already been simplified.  Returns `application` itself if its argument is unchanged and
+     * no rewrite applies.
+     */
+    Expression simplify(Application application, Expression argument) {
+        if (argument instanceof Constant) {
+            return new Constant(application.function().apply(((Constant) argument).value()));
+        }
+        if (argument == application.argument()) {
+            return application;
+        }
+        return new Application(application.function(), argument);
+    }
+
+    /**
+     * Return a rewritten form of `left + right`, or null if no rewrite applies.
+     */
+    private Expression simplifySum(Expression left, Expression right) {
+        if (isConstant(right, -0.0) || (relaxed() && isZero(right))) {
+            return left;
+        }
+        if (isConstant(left, -0.0) || (relaxed() && isZero(left))) {
+            return right;
+        }
+        Expression folded = relaxed() ? foldSum(left, right, false) : null;
+        if (folded != null) {
+            return folded;
+        }
+        if (fused && isProduct(left)) {
+            Operation product = (Operation) left;
+            return new FusedMultiplyAdd(product.leftOperand(), product.rightOperand(), right);
+        }
+        if (fused && isProduct(right)) {
+            Operation product = (Operation) right;
+            return new FusedMultiplyAdd(product.leftOperand(), product.rightOperand(), left);
+        }
+        return null;
+    }
+
+    /**
+     * Return a rewritten form of `left - right`, or null if no rewrite applies.
+     */
+    private Expression simplifyDifference(Expression left, Expression right) {
+        if (isConstant(right, 0.0) || (relaxed() && isZero(right))) {
+            return left;
+        }
+        if (relaxed() && left.equals(right)) {
+            return new Constant(0);
+        }
+        Expression folded = relaxed() ? foldSum(left, right, true) : null;
+        if (folded != null) {
+            return folded;
+        }
+        if (fused && isProduct(left) && right instanceof Constant) {
+            // Subtracting a constant is exactly adding its negation.
+            Operation product = (Operation) left;
+            return new FusedMultiplyAdd(product.leftOperand(), product.rightOperand(),
+                    new Constant(-((Constant) right).value()));
+        }
+        return null;
+    }
+
+    /**
+     * Return a rewritten form of `left * right`, or null if no rewrite applies.
+     */
+    private Expression simplifyProduct(Expression left, Expression right) {
+        if (isConstant(right, 1)) {
+            return left;
+        }
+        if (isConstant(left, 1)) {
+            return right;
+        }
+        if (relaxed() && (isZero(left) || isZero(right))) {
+            return new Constant(0);
+        }
+        return relaxed() ? foldProduct(left, right, false) : null;
+    }
+
+    /**
+     * Return a rewritten form of `left / right`, or null if no rewrite applies.
+     */
+    private Expression simplifyQuotient(Expression left, Expression right) {
+        if (isConstant(right, 1)) {
+            return left;
+        }
+        Expression folded = relaxed() ? foldProduct(left, right, true) : null;
+        if (folded != null) {
+            return folded;
+        }
+        if (right instanceof Constant && hasExactReciprocal(((Constant) right).value())) {
+            // Both x / c and x * (1 / c) are the exact quotient, rounded once.
+            return new Operation(Operator.MULTIPLY, left,
+                    new Constant(1 / ((Constant) right).value()));
+        }
+        return null;
+    }
+
+    /**
+     * Return a rewritten form of `base ^ exponent`, or null if no rewrite applies.
+     */
+    private Expression simplifyPower(Expression base, double exponent) {
+        if (exponent == 0 && (relaxed() || base.isConstant())) {
+            // pow(x, 0) is 1 for every x, including NaN, but under EXACT rules `x` must still be
+            // evaluated if it has variables, so that an unbound variable is reported.
+            return new Constant(1);
+        }
+        if (exponent == 1) {
+            return base;
+        }
+        if (exponent == 2 && isLeaf(base)) {
+            return new Operation(Operator.MULTIPLY, base, base);
+        }
+        if (!relaxed()) {
+            return null;
+        }
+        if (exponent == 0.5) {
+            return new Application(UnaryFunction.SQRT, base);
+        }
+        if (VectorKernels.isExpandableExponent(exponent)) {
+            int n = (int) Math.abs(exponent);
+            Expression power = n == 1 || isLeaf(base) ? expandPower(base, n)
+                    : new Application(power(n), base);
+            return exponent > 0 ? power : new Operation(Operator.DIVIDE, new Constant(1), power);
+        }
+        return null;
+    }
+
+    /**
+     * Return the function named "pow`n`" computing `t ^ n` as the product `expandPower(t, n)`,
+     * for expanding powers of subexpressions that should only be evaluated once.  It is never
+     * inlined into a call whose argument has operations (see `UnaryFunction.inline()`).
+     * Requires `2 <= n <= VectorKernels.MAX_EXPANDED_EXPONENT`.
+     */
+    static UnaryFunction power(int n) {
+        assert 2 <= n && n <= VectorKernels.MAX_EXPANDED_EXPONENT;
+        return Powers.FUNCTIONS[n];
+    }
+
+    /**
+     * Holds the functions returned by `power()`, created when first needed (compiling them
+     * optimizes their bodies, which needs this class to be initialized already).
+     */
+    private static final class Powers {
+
+        static final UnaryFunction[] FUNCTIONS =
+                new UnaryFunction[VectorKernels.MAX_EXPANDED_EXPONENT + 1];
+
+        static {
+            for (int n = 2; n < FUNCTIONS.length; n++) {
+                FUNCTIONS[n] = UnaryFunction.fromExpression("pow" + n,
+                        expandPower(new Variable("t"), n), "t");
+            }
+        }
+    }
+
+    /**
+     * Return `base ^ n` as a product formed by repeated squaring.  Squares are shared between the
+     * factors that use them.  Requires `n > 0`.
+     */
+    private static Expression expandPower(Expression base, int n) {
+        assert n > 0;
+        Expression power = null;
+        Expression square = base;
+        for (int rest = n; ; rest >>>= 1) {
+            if ((rest & 1) != 0) {
+                power = power == null ? square : new Operation(Operator.MULTIPLY, power, square);
+            }
+            if (rest == 1) {
+                return power;
+            }
+            square = new Operation(Operator.MULTIPLY, square, square);
+        }
+    }
+
+    /**
+     * Return `left + right` (or `left - right` if `subtract` is true) with all of the constants in
+     * the chain of additions and subtractions it heads folded into one, or null if the chain has
+     * fewer than two constants.  The remaining terms are added, then subtracted, in their original
+     * order, followed by the constant.
+     */
+    private Expression foldSum(Expression left, Expression right, boolean subtract) {
+        List<Expression> added = new ArrayList<>();
+        List<Expression> subtracted = new ArrayList<>();
+        Chain constants = new Chain();
+        collectTerms(left, false, added, subtracted, constants);
+        collectTerms(right, subtract, added, subtracted, constants);
+        if (constants.count < 2) {
+            return null;
+        }
+
+        double constant = constants.value;
+        Expression sum = null;
+        for (Expression term : added) {
+            sum = sum == null ? term : new Operation(Operator.ADD, sum, term);
+        }
+        if (sum == null && !subtracted.isEmpty()) {
+            sum = new Constant(constant);
+            constant = 0;
+        }
+        for (Expression term : subtracted) {
+            sum = new Operation(Operator.SUBTRACT, sum, term);
+        }
+        if (sum == null) {
+            return new Constant(constant);
+        }
+        if (constant > 0) {
+            return new Operation(Operator.ADD, sum, new Constant(constant));
+        }
+        if (constant < 0) {
+            return new Operation(Operator.SUBTRACT, sum, new Constant(-constant));
+        }
+        return sum;
+    }
+
+    /**
+     * Add the terms of `expr`, a chain of additions and subtractions, to `added` or `subtracted`
+     * (swapped if `negate` is true), and fold its constants into `constants`.
+     */
+    private static void collectTerms(Expression expr, boolean negate, List<Expression> added,
+            List<Expression> subtracted, Chain constants) {
+        if (expr instanceof Constant) {
+            double value = ((Constant) expr).value();
+            constants.value += negate ? -value : value;
+            constants.count++;
+        } else if (isOperation(expr, Operator.ADD) || isOperation(expr, Operator.SUBTRACT)) {
+            Operation operation = (Operation) expr;
+            collectTerms(operation.leftOperand(), negate, added, subtracted, constants);
+            collectTerms(operation.rightOperand(),
+                    negate != (operation.operator() == Operator.SUBTRACT), added, subtracted,
+                    constants);
+        } else {
+            (negate ? subtracted : added).add(expr);
+        }
+    }
+
+    /**
+     * Return `left * right` (or `left / right` if `divide` is true) with all of the constants in
+     * the chain of multiplications and divisions it heads folded into one, or null if the chain
+     * has fewer than two constants.  The remaining factors are multiplied, then divided, in their
+     * original order, followed by the constant.
+     */
+    private Expression foldProduct(Expression left, Expression right, boolean divide) {
+        List<Expression> numerators = new ArrayList<>();
+        List<Expression> denominators = new ArrayList<>();
+        Chain numerator = new Chain();
+        numerator.value = 1;
+        Chain denominator = new Chain();
+        denominator.value = 1;
+        collectFactors(left, false, numerators, denominators, numerator, denominator);
+        collectFactors(right, divide, numerators, denominators, numerator, denominator);
+        if (numerator.count + denominator.count < 2) {
+            return null;
+        }
+
+        double constant = numerator.value / denominator.value;
+        if (constant == 0) {
+            return new Constant(0);
+        }
+        Expression product = null;
+        for (Expression factor : numerators) {
+            product = product == null ? factor : new Operation(Operator.MULTIPLY, product, factor);
+        }
+        if (product == null && !denominators.isEmpty()) {
+            product = new Constant(constant);
+            constant = 1;
+        }
+        for (Expression factor : denominators) {
+            product = new Operation(Operator.DIVIDE, product, factor);
+        }
+        if (product == null) {
+            return new Constant(constant);
+        }
+        return constant == 1 ? product
+                : new Operation(Operator.MULTIPLY, product, new Constant(constant));
+    }
+
+    /**
+     * Add the factors of `expr`, a chain of multiplications and divisions, to `numerators` or
+     * `denominators` (swapped if `invert` is true), and fold its constants into `numerator` or
+     * `denominator`.
+     */
+    private static void collectFactors(Expression expr, boolean invert,
+            List<Expression> numerators, List<Expression> denominators, Chain numerator,
+            Chain denominator) {
+        if (expr instanceof Constant) {
+            Chain constants = invert ? denominator : numerator;
+            constants.value *= ((Constant) expr).value();
+            constants.count++;
+        } else if (isOperation(expr, Operator.MULTIPLY) || isOperation(expr, Operator.DIVIDE)) {
+            Operation operation = (Operation) expr;
+            collectFactors(operation.leftOperand(), invert, numerators, denominators, numerator,
+                    denominator);
+            collectFactors(operation.rightOperand(),
+                    invert != (operation.operator() == Operator.DIVIDE), numerators,
+                    denominators, numerator, denominator);
+        } else {
+            (invert ? denominators : numerators).add(expr);
+        }
+    }
+
+    /**
+     * The constants of a chain of operations, folded together, and how many there were.
+     */
+    private static final class Chain {
+
+        double value;
+        int count;
+    }
+
+    private boolean relaxed() {
+        return rules == Rules.RELAXED;
+    }
+
+    /**
+     * Return whether `expr` is a Constant with the same bits as `value`.
+     */
+    private static boolean isConstant(Expression expr, double value) {
+        return expr instanceof Constant && Double.doubleToRawLongBits(((Constant) expr).value())
+                == Double.doubleToRawLongBits(value);
+    }
+
+    /**
+     * Return whether `expr` is a Constant equal to 0 or -0.
+     */
+    private static boolean isZero(Expression expr) {
+        return expr instanceof Constant && ((Constant) expr).value() == 0;
+    }
+
+    /**
+     * Return whether `expr` is an operation applying `op`.
+     */
+    private static boolean isOperation(Expression expr, Operator op) {
+        return expr instanceof Operation && ((Operation) expr).operator() == op;
+    }
+
+    private static boolean isProduct(Expression expr) {
+        return isOperation(expr, Operator.MULTIPLY);
+    }
+
+    /**
+     * Return whether `expr` has no operations, so that it can be repeated without repeating work.
+     */
+    private static boolean isLeaf(Expression expr) {
+        return expr instanceof Constant || expr instanceof Variable;
+    }
+
+    /**
+     * Return whether `c` is a power of two whose reciprocal is a finite double, so that dividing
+     * by `c` and multiplying by its reciprocal give the same result for every dividend.
+     */
+    private static boolean hasExactReciprocal(double c) {
+        return Double.isFinite(c) && c != 0
+                && Math.abs(c) == Math.scalb(1.0, Math.getExponent(c))
+                && Double.isFinite(1 / c);
+    }
+}
@@ -0,0 +1,288 @@
+package cs2110;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Evaluates an expression at every point of the cartesian grid spanned by ranges of several of its
+ * variables, in parallel on a ForkJoinPool.  Points are numbered in row-major order (the last
+ * range varies fastest), and are evaluated a window at a time: the blocks of a window are
+ * evaluated and formatted concurrently, each by a task with its own columns of variable values,
+ * and the window is then written in order.  Output is therefore the same whatever the number of
+ * threads, and memory use does not grow with the size of the grid.
+ */
+public class Sweep {
+
+    /**
+     * The values of one variable swept over: `n` evenly spaced values from `lo` to `hi` (see
+     * `Tabulator.abscissa()`).
+     */
+    public static class Range {
+
+        final String var;
+        final double lo;
+        final double hi;
+        final int n;
+
+        /**
+         * Create the range of `n` values of `var` from `lo` to `hi`.  Requires `n >= 1`.
+         */
+        public Range(String var, double lo, double hi, int n) {
+            assert var != null;
+            assert n >= 1;
+
+            this.var = var;
+            this.lo = lo;
+            this.hi = hi;
+            this.n = n;
+        }
+
+        /**
+         * Return value `i` of this range.
+         */
+        double value(int i) {
+            return Tabulator.abscissa(lo, hi, n, i);
+        }
+    }
+
+    /**
+     * The number of points evaluated by a single task.
+     */
+    static final int BLOCK_SIZE = 2048;
+
+    /**
+     * The number of blocks evaluated before they are written.
+     */
+    static final int BLOCKS_PER_WINDOW = 64;
+
+    /**
+     * Evaluates the expression over each block.
+     */
+    private final BatchEvaluator evaluator;
+
+    /**
+     * The pool that blocks are evaluated on.
+     */
+    private final ForkJoinPool pool;
+
+    /**
+     * Create a sweep evaluating blocks with `evaluator` on `pool`.
+     */
+    public Sweep(BatchEvaluator evaluator, ForkJoinPool pool) {
+        assert evaluator != null;
+        assert pool != null;
+
+        this.evaluator = evaluator;
+        this.pool = pool;
+    }
+
+    /**
+     * Return the number of points in the grid spanned by `ranges`.  Throws
+     * IllegalArgumentException if there are more than `Integer.MAX_VALUE`.
+     */
+    public static long size(List<Range> ranges) {
+        long size = 1;
+        for (Range range : ranges) {
+            size *= range.n;
+            if (size > Integer.MAX_VALUE) {
+                throw new IllegalArgumentException("Grid has more than " + Integer.MAX_VALUE
+                        + " points");
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Write the value of `expr` at every point of the grid spanned by `ranges` to `out` in
+     * `format`, in row-major order.  As text, each point is a line holding the values of the
+     * variables followed by the value of `expr`, separated by spaces; in binary, the same values
+     * are written as doubles.  If `progress` is not null and the grid spans more than one window,
+     * a line is printed to it each time another tenth of the grid has been written.  Throws
+     * UnboundVariableException, before writing anything, if `expr` depends on a variable that is
+     * not swept, and IllegalArgumentException if a variable is swept twice or the grid is too
+     * large (see `size()`).  `out` is flushed but not closed.
+     */
+    public void sweep(Expression expr, List<Range> ranges, OutputStream out,
+            Tabulator.Format format, PrintStream progress)
+            throws UnboundVariableException, IOException {
+        assert expr != null;
+        assert ranges != null && !ranges.isEmpty();
+        assert out != null;
+        assert format != null;
+
+        for (int i = 0; i < ranges.size(); i++) {
+            for (int j = 0; j < i; j++) {
+                if (ranges.get(i).var.equals(ranges.get(j).var)) {
+                    throw new IllegalArgumentException("Variable " + ranges.get(i).var
+                            + " is swept more than once");
+                }
+            }
+        }
+        for (String name : expr.dependencies()) {
+            if (ranges.stream().noneMatch(range -> range.var.equals(name))) {
+                throw new UnboundVariableException(name);
+            }
+        }
+        int size = (int) size(ranges);
+        Range[] dims = ranges.toArray(new Range[0]);
+
+        int windowSize = BLOCK_SIZE * BLOCKS_PER_WINDOW;
+        Block[] blocks = new Block[BLOCKS_PER_WINDOW];
+        int reportedTenths = 0;
+        for (int from = 0; from < size; from += windowSize) {
+            int blockCount = 0;
+            for (int start = from; start < size && start < from + windowSize;
+                    start += BLOCK_SIZE) {
+                blocks[blockCount++] = new Block(expr, dims, format,
+                        start, Math.min(BLOCK_SIZE, size - start));
+            }
+            pool.invoke(new EvaluateBlocks(blocks, 0, blockCount));
+
+            for (int b = 0; b < blockCount; b++) {
+                if (blocks[b].failure != null) {
+                    throw blocks[b].failure;
+                }
+                out.write(blocks[b].output);
+                blocks[b] = null;
+            }
+
+            int done = (int) Math.min(size, (long) from + windowSize);
+            int tenths = (int) (10L * done / size);
+            if (progress != null && size > windowSize && tenths > reportedTenths) {
+                reportedTenths = tenths;
+                progress.println("Swept " + done + " of " + size + " points ("
+                        + 10 * tenths + "%)");
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * A block of consecutive points of the grid and, once it has been evaluated, their output.
+     * Formatting is done by the task evaluating the block, since it costs more than evaluation.
+     */
+    private class Block {
+
+        private final Expression expr;
+        private final Range[] dims;
+        private final Tabulator.Format format;
+
+        /**
+         * The number of the first point of this block, and the number of points in it.
+         */
+        final int start;
+        final int length;
+
+        /**
+         * The output for the points of this block, in `format`.
+         */
+        byte[] output;
+
+        /**
+         * The exception thrown while evaluating this block, if any.
+         */
+        UnboundVariableException failure;
+
+        Block(Expression expr, Range[] dims, Tabulator.Format format, int start, int length) {
+            this.expr = expr;
+            this.dims = dims;
+            this.format = format;
+            this.start = start;
+            this.length = length;
+        }
+
+        /**
+         * Fill in the coordinates of this block's points, evaluate the expression at them, and
+         * format the results.
+         */
+        void eval() {
+            // Decode the index of each variable at the first point, then count up like an
+            // odometer.
+            int[] index = new int[dims.length];
+            int rest = start;
+            for (int d = dims.length - 1; d >= 0; d--) {
+                index[d] = rest % dims[d].n;
+                rest /= dims[d].n;
+            }
+
+            ColumnTable columns = new ColumnTable(length);
+            double[][] coordinates = new double[dims.length][];
+            for (int d = 0; d < dims.length; d++) {
+                coordinates[d] = new double[length];
+                columns.set(dims[d].var, coordinates[d]);
+            }
+            for (int i = 0; i < length; i++) {
+                for (int d = 0; d < dims.length; d++) {
+                    coordinates[d][i] = dims[d].value(index[d]);
+                }
+                for (int d = dims.length - 1; d >= 0 && ++index[d] == dims[d].n; d--) {
+                    index[d] = 0;
+                }
+            }
+
+            double[] values = new double[length];
+            try {
+                evaluator.eval(expr, columns, values);
+            } catch (UnboundVariableException e) {
+                failure = e;
+                return;
+            }
+
+            if (format == Tabulator.Format.TEXT) {
+                StringBuilder lines = new StringBuilder(32 * (dims.length + 1) * length);
+                for (int i = 0; i < length; i++) {
+                    for (double[] column : coordinates) {
+                        NumberFormatter.appendTo(lines, column[i]);
+                        lines.append(' ');
+                    }
+                    NumberFormatter.appendTo(lines, values[i]);
+                    lines.append('\n');
+                }
+                output = lines.toString().getBytes(StandardCharsets.US_ASCII);
+            } else {
+                ByteBuffer buffer = ByteBuffer.allocate(
+                        (dims.length + 1) * Double.BYTES * length);
+                for (int i = 0; i < length; i++) {
+                    for (double[] column : coordinates) {
+                        buffer.putDouble(column[i]);
+                    }
+                    buffer.putDouble(values[i]);
+                }
+                output = buffer.array();
+            }
+        }
+    }
+
+    /**
+     * Evaluates the blocks `blocks[from..to)`, splitting them among tasks.
+     */
+    private static class EvaluateBlocks extends RecursiveAction {
+
+        private final Block[] blocks;
+        private final int from;
+        private final int to;
+
+        EvaluateBlocks(Block[] blocks, int from, int to) {
+            this.blocks = blocks;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from == 1) {
+                blocks[from].eval();
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EvaluateBlocks(blocks, from, middle),
+                    new EvaluateBlocks(blocks, middle, to));
+        }
+    }
+}
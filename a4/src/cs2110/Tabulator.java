@@ -0,0 +1,181 @@
+package cs2110;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Evaluates an expression of one variable at evenly spaced values of that variable and streams
+ * the (abscissa, ordinate) pairs to an output.  Abscissas are computed into a primitive column a
+ * chunk at a time, each chunk is evaluated by a `BatchEvaluator`, and its pairs are formatted into
+ * a single buffer and written at once, so memory use does not grow with the number of samples.
+ * Chunks may instead be evaluated in single precision by a `FloatBatchEvaluator`; abscissas are
+ * then rounded to float for evaluation but written exactly.
+ */
+public class Tabulator {
+
+    /**
+     * The formats a tabulation can be written in.
+     */
+    public enum Format {
+        /**
+         * One line per sample, holding the abscissa and the ordinate, formatted as by
+         * `Double.toString()` and separated by a space.
+         */
+        TEXT,
+
+        /**
+         * Pairs of big-endian IEEE 754 doubles, the abscissa followed by the ordinate, as
+         * written by `DataOutputStream.writeDouble()`.
+         */
+        BINARY
+    }
+
+    /**
+     * The number of samples evaluated and written at a time.
+     */
+    static final int CHUNK_SIZE = 8192;
+
+    /**
+     * Evaluates the expression over each chunk, in double or in single precision.  Exactly one of
+     * these is not null.
+     */
+    private final BatchEvaluator evaluator;
+    private final FloatBatchEvaluator floatEvaluator;
+
+    /**
+     * Create a tabulator evaluating chunks with `evaluator`.
+     */
+    public Tabulator(BatchEvaluator evaluator) {
+        assert evaluator != null;
+        this.evaluator = evaluator;
+        this.floatEvaluator = null;
+    }
+
+    /**
+     * Create a tabulator evaluating chunks in single precision with `evaluator`.  Ordinates are
+     * written as text by `Float.toString()`, or as binary doubles holding the float values.
+     */
+    public Tabulator(FloatBatchEvaluator evaluator) {
+        assert evaluator != null;
+        this.evaluator = null;
+        this.floatEvaluator = evaluator;
+    }
+
+    /**
+     * Return sample `i` of `n` evenly spaced values from `lo` to `hi`.  The first sample is `lo`
+     * and the last is exactly `hi`.  Requires `0 <= i < n`.
+     */
+    public static double abscissa(double lo, double hi, int n, int i) {
+        assert 0 <= i && i < n;
+        if (i == n - 1 && n > 1) {
+            return hi;
+        }
+        return n == 1 ? lo : lo + i * ((hi - lo) / (n - 1));
+    }
+
+    /**
+     * Write the values of `expr` at `n` evenly spaced values of `var` from `lo` to `hi` (see
+     * `abscissa()`) to `out` in `format`.  Throws UnboundVariableException, before writing
+     * anything, if `expr` depends on a variable other than `var`.  `out` is flushed but not
+     * closed.  Requires `n >= 1`.
+     */
+    public void tabulate(Expression expr, String var, double lo, double hi, int n,
+            OutputStream out, Format format) throws UnboundVariableException, IOException {
+        assert expr != null;
+        assert var != null;
+        assert out != null;
+        assert format != null;
+        assert n >= 1;
+
+        for (String name : expr.dependencies()) {
+            if (!name.equals(var)) {
+                throw new UnboundVariableException(name);
+            }
+        }
+
+        ColumnTable columns = null;
+        double[] xs = null;
+        double[] ys = null;
+        FloatColumnTable floatColumns = null;
+        float[] floatXs = null;
+        float[] floatYs = null;
+        for (int from = 0; from < n; from += CHUNK_SIZE) {
+            int length = Math.min(CHUNK_SIZE, n - from);
+            if (xs == null || xs.length != length) {
+                xs = new double[length];
+                if (floatEvaluator == null) {
+                    columns = new ColumnTable(length);
+                    ys = new double[length];
+                    columns.set(var, xs);
+                } else {
+                    floatColumns = new FloatColumnTable(length);
+                    floatXs = new float[length];
+                    floatYs = new float[length];
+                    floatColumns.set(var, floatXs);
+                }
+            }
+            for (int i = 0; i < length; i++) {
+                xs[i] = abscissa(lo, hi, n, from + i);
+            }
+            if (floatEvaluator == null) {
+                evaluator.eval(expr, columns, ys);
+                write(xs, ys, length, out, format);
+            } else {
+                for (int i = 0; i < length; i++) {
+                    floatXs[i] = (float) xs[i];
+                }
+                floatEvaluator.eval(expr, floatColumns, floatYs);
+                write(xs, null, floatYs, length, out, format);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Write the pairs `(xs[i], ys[i])` for `i` in `[0, length)` to `out` in `format`, a chunk of
+     * `CHUNK_SIZE` pairs at a time.  `out` is not flushed.
+     */
+    static void write(double[] xs, double[] ys, int length, OutputStream out, Format format)
+            throws IOException {
+        write(xs, ys, null, length, out, format);
+    }
+
+    /**
+     * Write pairs as in `write(xs, ys, length, out, format)`, with ordinates taken from `ys` if
+     * it is not null or else from `floatYs`.
+     */
+    private static void write(double[] xs, double[] ys, float[] floatYs, int length,
+            OutputStream out, Format format) throws IOException {
+        assert length <= xs.length;
+        assert ys != null ? length <= ys.length : length <= floatYs.length;
+
+        StringBuilder lines = format == Format.TEXT ? new StringBuilder() : null;
+        ByteBuffer pairs = format == Format.BINARY
+                ? ByteBuffer.allocate(2 * Double.BYTES * Math.min(length, CHUNK_SIZE)) : null;
+        for (int from = 0; from < length; from += CHUNK_SIZE) {
+            int to = Math.min(length, from + CHUNK_SIZE);
+            if (format == Format.TEXT) {
+                lines.setLength(0);
+                for (int i = from; i < to; i++) {
+                    NumberFormatter.appendTo(lines, xs[i]);
+                    lines.append(' ');
+                    if (ys != null) {
+                        NumberFormatter.appendTo(lines, ys[i]);
+                    } else {
+                        lines.append(floatYs[i]);
+                    }
+                    lines.append('\n');
+                }
+                out.write(lines.toString().getBytes(StandardCharsets.US_ASCII));
+            } else {
+                pairs.clear();
+                for (int i = from; i < to; i++) {
+                    pairs.putDouble(xs[i]).putDouble(ys != null ? ys[i] : floatYs[i]);
+                }
+                out.write(pairs.array(), 0, pairs.position());
+            }
+        }
+    }
+}
@@ -1,7 +1,7 @@
 package cs2110;
 
 import java.util.Iterator;
-import java.util.Scanner;
+import java.util.NoSuchElementException;
 
 /**
  * Represents a single token (e.g., a number, variable name, operator symbol, or function name)
@@ -52,14 +52,37 @@ public abstract class Token {
     public static Iterable<Token> tokenizer(String str) {
         return new Iterable<>() {
             public Iterator<Token> iterator() {
-                Scanner scanner = new Scanner(str);
+                RpnLexer lexer = new RpnLexer(str, 0, str.length());
                 return new Iterator<>() {
+                    /**
+                     * Whether the lexer's current token has not been returned yet.
+                     */
+                    private boolean pending = lexer.next();
+
                     public boolean hasNext() {
-                        return scanner.hasNext();
+                        return pending;
                     }
 
                     public Token next() {
-                        return Token.parse(scanner.next());
+                        if (!pending) {
+                            throw new NoSuchElementException();
+                        }
+                        Token token;
+                        switch (lexer.kind()) {
+                            case NUMBER:
+                                token = new Number(lexer.text(), lexer.number());
+                                break;
+                            case OPERATOR:
+                                token = new Operator(lexer.text());
+                                break;
+                            case FUNCTION:
+                                token = new Function(lexer.text());
+                                break;
+                            default:
+                                token = new Variable(lexer.text());
+                        }
+                        pending = lexer.next();
+                        return token;
                     }
                 };
             }
@@ -106,20 +129,34 @@ public abstract class Token {
      */
     public static class Number extends Token {
 
+        /**
+         * The numeric value represented by this token.
+         */
+        private final double number;
+
         /**
          * Construct a new Number token whose value is represented by `value`.  Requires `value` is
          * a valid representation of a floating-point number (as determined by `validNumber()`).
          */
         private Number(String value) {
+            this(value, NumberParser.parseDouble(value));
+        }
+
+        /**
+         * Construct a new Number token represented by `value`, whose numeric value has already
+         * been parsed as `number`.
+         */
+        private Number(String value, double number) {
             super(value);
             assert validNumber(value);
+            this.number = number;
         }
 
         /**
          * Return the numeric value represented by this token, in double precision.
          */
         public double doubleValue() {
-            return Double.parseDouble(value);
+            return number;
         }
 
         /**
@@ -127,12 +164,7 @@ public abstract class Token {
          * `Double.valueOf()`).
          */
         public static boolean validNumber(String value) {
-            try {
-                Double.parseDouble(value);
-                return true;
-            } catch (NumberFormatException e) {
-                return false;
-            }
+            return NumberParser.isDouble(value);
         }
     }
 
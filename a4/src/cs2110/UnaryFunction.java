@@ -18,9 +18,35 @@ public class UnaryFunction {
      */
     private final DoubleUnaryOperator f;
 
+    /**
+     * The expression this function evaluates and the name of its parameter in that expression, or
+     * null if this function was not defined by an expression.
+     */
+    private final Expression body;
+    private final String param;
+
+    /**
+     * The cache of this function's values, or null if it is not memoized.
+     */
+    private final MemoCache memo;
+
+    /**
+     * The table this function interpolates in, or null if it is exact.
+     */
+    private final InterpolationTable table;
+
     public UnaryFunction(String name, DoubleUnaryOperator f) {
+        this(name, f, null, null, null, null);
+    }
+
+    private UnaryFunction(String name, DoubleUnaryOperator f, Expression body, String param,
+            MemoCache memo, InterpolationTable table) {
         this.name = name;
         this.f = f;
+        this.body = body;
+        this.param = param;
+        this.memo = memo;
+        this.table = table;
     }
 
     /**
@@ -38,20 +64,172 @@ public class UnaryFunction {
         return name;
     }
 
+    /**
+     * The largest number of operations in the body of a function that `inline()` will substitute
+     * into a calling expression.
+     */
+    static final int MAX_INLINED_OPS = 16;
+
     /**
      * Create a UnaryFunction with name `name` that, when applied, will evaluate `expr`, with its
-     * argument value bound to the variable `param`.  Requires that expr contain at most one
-     * variable name (which must be `param`).
+     * argument value bound to the variable `param`.  Throws IllegalArgumentException if `expr`
+     * depends on a variable other than `param`.
+     * <p>
+     * `expr` is optimized, simplified by the EXACT rules of `Simplifier`, and compiled once (see
+     * `ExpressionCompiler`), so applying the function allocates nothing.
      */
     public static UnaryFunction fromExpression(String name, Expression expr, String param) {
         Expression opt = expr.optimize(MapVarTable.empty());
-        return new UnaryFunction(name, x -> {
-            try {
-                return opt.eval(MapVarTable.of(param, x));
-            } catch (UnboundVariableException e) {
-                throw new RuntimeException(e);
+        for (String var : opt.dependencies()) {
+            if (!var.equals(param)) {
+                throw new IllegalArgumentException("Function " + name
+                        + " depends on variable " + var + " other than its parameter " + param);
+            }
+        }
+        VarSlots slots = new VarSlots();
+        slots.add(param);
+        CompiledExpression compiled = ExpressionCompiler.compile(Simplifier.EXACT.simplify(opt),
+                slots);
+        return new UnaryFunction(name, compiled::eval, opt, param, null, null);
+    }
+
+    /**
+     * Return a function with the same name and values as this one that caches up to about
+     * `capacity` of its most recently used values (see `MemoCache`).  Only worthwhile for
+     * functions that are expensive to evaluate and are applied to few distinct arguments.  The
+     * returned function is never inlined, since that would bypass its cache.  Requires
+     * `capacity >= 1`.
+     */
+    public UnaryFunction memoized(int capacity) {
+        MemoCache cache = new MemoCache(capacity);
+        DoubleUnaryOperator uncached = f;
+        return new UnaryFunction(name, x -> cache.apply(x, uncached), null, null, cache, null);
+    }
+
+    /**
+     * Return the cache of this function's values, or null if it is not memoized.
+     */
+    MemoCache memo() {
+        return memo;
+    }
+
+    /**
+     * Return a function with the same name as this one that approximates it on `[lo, hi]` by
+     * interpolation within `bound`, and is exact elsewhere (see `InterpolationTable`).  Only
+     * worthwhile for smooth functions that are expensive to evaluate and are applied many times.
+     * The returned function is never inlined.  Throws IllegalArgumentException if the bound cannot
+     * be met.  Requires `lo < hi`, both finite, and `bound > 0`.
+     */
+    public UnaryFunction interpolated(double lo, double hi, double bound,
+            InterpolationTable.Nodes nodes, InterpolationTable.Method method) {
+        InterpolationTable interpolation = InterpolationTable.build(f, lo, hi, bound, nodes,
+                method);
+        return new UnaryFunction(name, interpolation::eval, null, null, null, interpolation);
+    }
+
+    /**
+     * Return the table this function interpolates in, or null if it is exact.
+     */
+    InterpolationTable table() {
+        return table;
+    }
+
+    /**
+     * Return the expression this function evaluates with `argument` substituted for its parameter,
+     * or null if it cannot be inlined: if it was not defined by an expression, if its body has more
+     * than MAX_INLINED_OPS operations, if substituting would evaluate an `argument` with
+     * operations more than once, or if it would drop an `argument` with variables (whose call
+     * must still report them if they are unbound).
+     */
+    Expression inline(Expression argument) {
+        assert argument != null;
+
+        if (body == null || body.opCount() > MAX_INLINED_OPS) {
+            return null;
+        }
+        int uses = occurrences(body);
+        boolean leaf = argument instanceof Constant || argument instanceof Variable;
+        if (uses < 0 || (uses > 1 && !leaf)
+                || (uses == 0 && !argument.dependencies().isEmpty())) {
+            return null;
+        }
+        return substitute(body, argument);
+    }
+
+    /**
+     * Return the number of times the parameter occurs in `expr`, or -1 if `expr` has nodes that
+     * cannot be substituted into.
+     */
+    private static int occurrences(Expression expr) {
+        if (expr instanceof Constant) {
+            return 0;
+        }
+        if (expr instanceof Variable) {
+            return 1;
+        }
+        if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            int left = occurrences(operation.leftOperand());
+            int right = occurrences(operation.rightOperand());
+            return left < 0 || right < 0 ? -1 : left + right;
+        }
+        if (expr instanceof Application) {
+            return occurrences(((Application) expr).argument());
+        }
+        return -1;
+    }
+
+    /**
+     * Return `expr` with `argument` in place of the parameter.  Subtrees without the parameter
+     * are shared with `expr`.  Requires `occurrences(expr) >= 0`.
+     */
+    private static Expression substitute(Expression expr, Expression argument) {
+        if (expr.isConstant()) {
+            return expr;
+        }
+        if (expr instanceof Variable) {
+            // The body depends on no other variable.
+            return argument;
+        }
+        if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            return new Operation(operation.operator(),
+                    substitute(operation.leftOperand(), argument),
+                    substitute(operation.rightOperand(), argument));
+        }
+        Application application = (Application) expr;
+        return new Application(application.function(),
+                substitute(application.argument(), argument));
+    }
+
+    /**
+     * Return `expr` with every application of an inlinable function (see `inline()`) replaced by
+     * the function's body, applied to its (inlined) argument.  Subtrees without such applications
+     * are shared with `expr`.
+     */
+    public static Expression inlineCalls(Expression expr) {
+        assert expr != null;
+
+        if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            Expression left = inlineCalls(operation.leftOperand());
+            Expression right = inlineCalls(operation.rightOperand());
+            if (left == operation.leftOperand() && right == operation.rightOperand()) {
+                return operation;
             }
-        });
+            return new Operation(operation.operator(), left, right);
+        }
+        if (expr instanceof Application) {
+            Application application = (Application) expr;
+            Expression argument = inlineCalls(application.argument());
+            Expression inlined = application.function().inline(argument);
+            if (inlined != null) {
+                return inlined;
+            }
+            return argument == application.argument() ? application
+                    : new Application(application.function(), argument);
+        }
+        return expr;
     }
 
     /* Define some common math functions for convenience */
@@ -63,17 +241,57 @@ public class UnaryFunction {
     public static final UnaryFunction COS = new UnaryFunction("cos", Math::cos);
     public static final UnaryFunction TAN = new UnaryFunction("tan", Math::tan);
 
+    /**
+     * The core mathematical functions as evaluated by `java.lang.Math`.
+     */
+    private static final Map<String, UnaryFunction> MATH_DEFS = Map.of(ABS.name(), ABS,
+            SQRT.name(), SQRT,
+            EXP.name(), EXP,
+            LOG.name(), LOG,
+            SIN.name(), SIN,
+            COS.name(), COS,
+            TAN.name(), TAN);
+
     /**
      * Return a collection of core mathematical functions, each mapped to their name in
      * `java.lang.Math`.  Guaranteed to include at least abs, sqrt, exp, log, sin, cos, tan.
      */
     public static Map<String, UnaryFunction> mathDefs() {
-        return Map.of(ABS.name(), ABS,
-                SQRT.name(), SQRT,
-                EXP.name(), EXP,
-                LOG.name(), LOG,
-                SIN.name(), SIN,
-                COS.name(), COS,
-                TAN.name(), TAN);
+        return MATH_DEFS;
+    }
+
+    /**
+     * The core mathematical functions of the STRICT and FAST modes.  Each collection shares ABS
+     * and SQRT, which are exact in every mode.  FAST also shares the `java.lang.Math` functions
+     * that `FastMath` is not faster than, which are all but TAN (see `FastMath`).
+     */
+    private static final Map<String, UnaryFunction> STRICT_DEFS = Map.of(ABS.name(), ABS,
+            SQRT.name(), SQRT,
+            EXP.name(), new UnaryFunction(EXP.name(), StrictMath::exp),
+            LOG.name(), new UnaryFunction(LOG.name(), StrictMath::log),
+            SIN.name(), new UnaryFunction(SIN.name(), StrictMath::sin),
+            COS.name(), new UnaryFunction(COS.name(), StrictMath::cos),
+            TAN.name(), new UnaryFunction(TAN.name(), StrictMath::tan));
+    private static final Map<String, UnaryFunction> FAST_DEFS = Map.of(ABS.name(), ABS,
+            SQRT.name(), SQRT,
+            EXP.name(), EXP,
+            LOG.name(), LOG,
+            SIN.name(), SIN,
+            COS.name(), COS,
+            TAN.name(), new UnaryFunction(TAN.name(), FastMath::tan));
+
+    /**
+     * Return the same functions as `mathDefs()`, evaluated as selected by `mode`.  DEFAULT gives
+     * exactly `mathDefs()`; the functions of the other modes are distinct objects with the same
+     * names, except that FAST shares every function but `tan()` with DEFAULT.  Repeated calls with
+     * the same mode return the same functions.
+     */
+    public static Map<String, UnaryFunction> mathDefs(MathMode mode) {
+        assert mode != null;
+        return switch (mode) {
+            case STRICT -> STRICT_DEFS;
+            case DEFAULT -> mathDefs();
+            case FAST -> FAST_DEFS;
+        };
     }
 }
@@ -0,0 +1,285 @@
+package cs2110;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An immutable set of variable names, stored as a sparse bitset over ids assigned to names the
+ * first time they are seen.  Only the 64-bit words of the bitset that have bits set are stored,
+ * so a set of nearby ids (such as the cells a formula refers to) takes a few words however many
+ * names have been seen.  Unions take time linear in the number of stored words and share an
+ * operand when it already contains the other.
+ * <p>
+ * Ids are shared by all sets and are never reclaimed, so every distinct name used in a VarSet is
+ * kept for the lifetime of the program.  VarSet objects may be shared between threads.
+ */
+public final class VarSet {
+
+    /**
+     * The set with no names.
+     */
+    public static final VarSet EMPTY = new VarSet(new int[0], new long[0]);
+
+    /**
+     * The id of each name seen so far.
+     */
+    private static final Map<String, Integer> ids = new ConcurrentHashMap<>();
+
+    /**
+     * The name of each id, indexed by id.  Entries are only written while holding the lock on
+     * `ids`, before the id is published in `ids`.
+     */
+    private static volatile String[] nameTable = new String[64];
+
+    /**
+     * The number of ids assigned.
+     */
+    private static int idCount = 0;
+
+    /**
+     * The indices of the words of the bitset that have bits set, in increasing order, and those
+     * words.  Bit `i` of word `w` represents id `64 * indices[w] + i`.
+     */
+    private final int[] indices;
+    private final long[] words;
+
+    /**
+     * The number of names in this set.
+     */
+    private final int size;
+
+    /**
+     * A view of this set as a set of names, or null if it has not been created yet.
+     */
+    private Set<String> view;
+
+    private VarSet(int[] indices, long[] words) {
+        this.indices = indices;
+        this.words = words;
+        int count = 0;
+        for (long word : words) {
+            count += Long.bitCount(word);
+        }
+        size = count;
+    }
+
+    /**
+     * Return the set containing only `name`.
+     */
+    public static VarSet of(String name) {
+        assert name != null;
+        int id = idOf(name);
+        return new VarSet(new int[]{id >>> 6}, new long[]{1L << id});
+    }
+
+    /**
+     * Return the set containing the names in `names`.
+     */
+    public static VarSet copyOf(Set<String> names) {
+        assert names != null;
+        VarSet set = EMPTY;
+        for (String name : names) {
+            set = set.union(of(name));
+        }
+        return set;
+    }
+
+    /**
+     * Return the id of `name`, assigning it the next id if it does not have one yet.
+     */
+    private static int idOf(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        synchronized (ids) {
+            id = ids.get(name);
+            if (id == null) {
+                id = idCount;
+                String[] table = nameTable;
+                if (id == table.length) {
+                    table = Arrays.copyOf(table, 2 * table.length);
+                }
+                table[id] = name;
+                nameTable = table;
+                idCount++;
+                ids.put(name, id);
+            }
+            return id;
+        }
+    }
+
+    /**
+     * Return the name whose id is `id`.
+     */
+    private static String nameOf(int id) {
+        String[] table = nameTable;
+        if (id < table.length && table[id] != null) {
+            return table[id];
+        }
+        // The id was assigned by another thread, which may not have published the table yet.
+        synchronized (ids) {
+            return nameTable[id];
+        }
+    }
+
+    /**
+     * Return the set of names in this set or in `other`.
+     */
+    public VarSet union(VarSet other) {
+        assert other != null;
+
+        int[] unionIndices = new int[indices.length + other.indices.length];
+        long[] unionWords = new long[unionIndices.length];
+        int i = 0;
+        int j = 0;
+        int n = 0;
+        boolean coversOther = true;
+        boolean coveredByOther = true;
+        while (i < indices.length || j < other.indices.length) {
+            int index;
+            long word;
+            if (j == other.indices.length
+                    || (i < indices.length && indices[i] < other.indices[j])) {
+                index = indices[i];
+                word = words[i++];
+                coveredByOther = false;
+            } else if (i == indices.length || other.indices[j] < indices[i]) {
+                index = other.indices[j];
+                word = other.words[j++];
+                coversOther = false;
+            } else {
+                index = indices[i];
+                word = words[i] | other.words[j];
+                coversOther &= word == words[i];
+                coveredByOther &= word == other.words[j];
+                i++;
+                j++;
+            }
+            unionIndices[n] = index;
+            unionWords[n] = word;
+            n++;
+        }
+        if (coversOther) {
+            return this;
+        }
+        if (coveredByOther) {
+            return other;
+        }
+        return new VarSet(Arrays.copyOf(unionIndices, n), Arrays.copyOf(unionWords, n));
+    }
+
+    /**
+     * Return whether `name` is in this set.
+     */
+    public boolean contains(String name) {
+        Integer id = name == null ? null : ids.get(name);
+        return id != null && containsId(id);
+    }
+
+    private boolean containsId(int id) {
+        int w = Arrays.binarySearch(indices, id >>> 6);
+        return w >= 0 && (words[w] & (1L << id)) != 0;
+    }
+
+    /**
+     * Return whether this set has no names.
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Return the number of names in this set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return an unmodifiable view of this set as a set of names, iterated in the order their ids
+     * were assigned.
+     */
+    public Set<String> names() {
+        Set<String> names = view;
+        if (names == null) {
+            names = new Names();
+            view = names;
+        }
+        return names;
+    }
+
+    /**
+     * Return whether `obj` is a VarSet with the same names.
+     */
+    @Override
+    public boolean equals(Object obj) {
+        if (!(obj instanceof VarSet)) {
+            return false;
+        }
+        VarSet other = (VarSet) obj;
+        return Arrays.equals(indices, other.indices) && Arrays.equals(words, other.words);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(indices) + Arrays.hashCode(words);
+    }
+
+    @Override
+    public String toString() {
+        return names().toString();
+    }
+
+    /**
+     * The names of a VarSet, as a Set.
+     */
+    private final class Names extends AbstractSet<String> {
+
+        @Override
+        public boolean contains(Object obj) {
+            return obj instanceof String && VarSet.this.contains((String) obj);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public Iterator<String> iterator() {
+            return new Iterator<>() {
+                /**
+                 * The index of the word containing the next id, and the bits of that word not
+                 * yet returned.
+                 */
+                private int w = 0;
+                private long rest = words.length > 0 ? words[0] : 0;
+
+                @Override
+                public boolean hasNext() {
+                    while (rest == 0 && w + 1 < words.length) {
+                        w++;
+                        rest = words[w];
+                    }
+                    return rest != 0;
+                }
+
+                @Override
+                public String next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    int id = (indices[w] << 6) + Long.numberOfTrailingZeros(rest);
+                    rest &= rest - 1;
+                    return nameOf(id);
+                }
+            };
+        }
+    }
+}
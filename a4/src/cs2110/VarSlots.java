@@ -0,0 +1,102 @@
+package cs2110;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An assignment of integer slot indices to variable names.  Slots are assigned consecutively,
+ * starting at 0, in the order names are added, and a name's slot never changes once assigned.
+ * Binding an expression to a VarSlots (see `bind()`) resolves each of its variable names to a slot
+ * once, so that evaluating the bound expression against an `ArrayVarTable` using the same slots
+ * reads variables by index rather than by name.
+ */
+public class VarSlots {
+
+    /**
+     * The slot assigned to each name.
+     */
+    private final Map<String, Integer> slots = new HashMap<>();
+
+    /**
+     * The name assigned to each slot, indexed by slot.
+     */
+    private final List<String> names = new ArrayList<>();
+
+    /**
+     * Return the slot assigned to `name`, assigning it the next unused slot if it does not have one
+     * yet.
+     */
+    public int add(String name) {
+        assert name != null;
+
+        Integer slot = slots.get(name);
+        if (slot == null) {
+            slot = names.size();
+            slots.put(name, slot);
+            names.add(name);
+        }
+        return slot;
+    }
+
+    /**
+     * Return the slot assigned to `name`, or -1 if it has not been assigned one.
+     */
+    public int slotOf(String name) {
+        assert name != null;
+
+        Integer slot = slots.get(name);
+        return slot == null ? -1 : slot;
+    }
+
+    /**
+     * Return the name assigned to `slot`.  Requires `0 <= slot < size()`.
+     */
+    public String name(int slot) {
+        return names.get(slot);
+    }
+
+    /**
+     * Return the number of slots assigned so far.
+     */
+    public int size() {
+        return names.size();
+    }
+
+    /**
+     * Return the names assigned to slots so far, indexed by slot.
+     */
+    public String[] names() {
+        return names.toArray(new String[0]);
+    }
+
+    /**
+     * Return a copy of `expr` in which every Variable node is replaced by a `BoundVariable` reading
+     * from its slot in these slots, assigning new slots (in postfix order) to variables that do
+     * not have one yet.  Nodes of types other than `Constant`, `Variable`, `Operation`, and
+     * `Application` are left unbound and continue to look up their variables by name.
+     */
+    public Expression bind(Expression expr) {
+        assert expr != null;
+
+        if (expr instanceof BoundVariable && ((BoundVariable) expr).slots() == this) {
+            return expr;
+        }
+        if (expr instanceof Variable) {
+            String name = ((Variable) expr).name();
+            return new BoundVariable(name, this, add(name));
+        }
+        if (expr instanceof Operation) {
+            Operation operation = (Operation) expr;
+            Expression left = bind(operation.leftOperand());
+            Expression right = bind(operation.rightOperand());
+            return new Operation(operation.operator(), left, right);
+        }
+        if (expr instanceof Application) {
+            Application application = (Application) expr;
+            return new Application(application.function(), bind(application.argument()));
+        }
+        return expr;
+    }
+}
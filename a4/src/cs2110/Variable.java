@@ -1,6 +1,5 @@
 package cs2110;
 
-import java.util.HashSet;
 import java.util.Objects;
 import java.util.Set;
 
@@ -14,6 +13,11 @@ public class Variable implements Expression {
      */
     private final String name;
 
+    /**
+     * The set containing only this variable.
+     */
+    private final VarSet variables;
+
     /**
      * Creates a variable with the specified name.
      *
@@ -21,6 +25,14 @@ public class Variable implements Expression {
      */
     public Variable(String name) {
         this.name = name;
+        variables = VarSet.of(name);
+    }
+
+    /**
+     * Return the name of this variable.
+     */
+    String name() {
+        return name;
     }
 
     /**
@@ -67,7 +79,8 @@ public class Variable implements Expression {
     }
 
     /**
-     * Attempts to optimize this variable into a constant if its value is known; otherwise, returns itself.
+     * Optimizes this variable into a constant if its value is known; otherwise, returns itself.
+     * Checks `vars` before evaluating, so an unbound variable costs no exception.
      *
      * param vars The variable table containing values for variables.
      * return A Constant expression if the variable's value is known; otherwise, returns this variable.
@@ -75,9 +88,13 @@ public class Variable implements Expression {
     @Override
     public Expression optimize(VarTable vars) {
         assert vars != null;
+        if (!vars.contains(name)) {
+            return this;
+        }
         try {
             return new Constant(eval(vars));
-        } catch(UnboundVariableException e){
+        } catch (UnboundVariableException e) {
+            // Not reached, since `vars` contains this variable.
             return this;
         }
     }
@@ -89,9 +106,31 @@ public class Variable implements Expression {
      */
     @Override
     public Set<String> dependencies() {
-        Set<String> depend = new HashSet<>();
-        depend.add(name);
-        return depend;
+        return variables.names();
+    }
+
+    /**
+     * Returns the set containing only this variable, computed when it was created.
+     */
+    @Override
+    public VarSet variables() {
+        return variables;
+    }
+
+    /**
+     * A variable is a leaf.
+     */
+    @Override
+    public int depth() {
+        return 0;
+    }
+
+    /**
+     * A variable is never constant.
+     */
+    @Override
+    public boolean isConstant() {
+        return false;
     }
 
     /**
@@ -111,4 +150,12 @@ public class Variable implements Expression {
         Variable otherVar = (Variable) other;
         return Objects.equals(name, otherVar.name);
     }
+
+    /**
+     * Returns a hash code for this variable, consistent with `equals()`.
+     */
+    @Override
+    public int hashCode() {
+        return Objects.hashCode(name);
+    }
 }
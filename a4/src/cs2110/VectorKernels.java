@@ -0,0 +1,300 @@
+package cs2110;
+
+/**
+ * Loops over blocks of values for the VECTOR and VECTOR_RELAXED backends of `BatchEvaluator`.
+ * Each loop applies one operation to every lane of a block.  If the Vector API is available (see
+ * `usesVectorApi()`), the loops of `DoubleVectorKernels` are used, which are compiled to SIMD
+ * instructions (SSE, AVX2, or AVX-512, depending on the processor) and also cover `exp()`,
+ * `log()`, `sin()`, `cos()`, and `tan()`.  Otherwise, each loop is written with no calls,
+ * branches, or dependencies between lanes in its body, so that HotSpot's C2 compiler can vectorize
+ * it itself.  Operations that cannot be written either way are not provided here; callers fall
+ * back to scalar loops for them.
+ * <p>
+ * `DoubleVectorKernels` is compiled separately from the rest of the project (it needs the module
+ * `jdk.incubator.vector`), so it is only referred to through `SimdLoops` and loaded by reflection.
+ */
+final class VectorKernels {
+
+    /**
+     * The largest magnitude of an integer exponent that `powConstant()` expands into
+     * multiplications.
+     */
+    static final int MAX_EXPANDED_EXPONENT = 8;
+
+    /**
+     * Loops written with the Vector API, implemented by `DoubleVectorKernels`.  The methods have
+     * the same specifications as the methods of VectorKernels with the same names.
+     */
+    interface SimdLoops {
+
+        /**
+         * Return the number of doubles in each vector.
+         */
+        int lanes();
+
+        void operateConstant(Operator op, double[] a, int offset, double s, int length);
+
+        void constantOperate(Operator op, double s, double[] a, int offset, int length);
+
+        void operate(Operator op, double[] a, int aOffset, double[] b, int bOffset, int length);
+
+        /**
+         * Return whether `f` has a lanewise equivalent: true only for the functions of
+         * `UnaryFunction.mathDefs()` (which use `java.lang.Math`).
+         */
+        boolean isLanewise(UnaryFunction f);
+
+        void apply(UnaryFunction f, double[] a, int offset, int length);
+    }
+
+    /**
+     * The loops written with the Vector API, or null if it cannot be used.
+     */
+    private static final SimdLoops SIMD = loadSimdLoops();
+
+    /**
+     * Whether `SIMD` may be used.
+     */
+    private static final boolean VECTOR_API = SIMD != null;
+
+    private VectorKernels() {
+    }
+
+    /**
+     * Return the loops of `DoubleVectorKernels`, or null if the module `jdk.incubator.vector` was
+     * not resolved at startup (it is only if the JVM was started with
+     * `--add-modules jdk.incubator.vector`), `DoubleVectorKernels` was not compiled, or the
+     * preferred vectors of doubles have only one lane.
+     */
+    private static SimdLoops loadSimdLoops() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return null;
+        }
+        try {
+            SimdLoops loops = Class.forName("cs2110.DoubleVectorKernels")
+                    .asSubclass(SimdLoops.class).getDeclaredConstructor().newInstance();
+            return loops.lanes() > 1 ? loops : null;
+        } catch (ReflectiveOperationException | LinkageError e) {
+            // The class was not compiled, or the API cannot be used on this platform.
+            return null;
+        }
+    }
+
+    /**
+     * Return whether the loops here are carried out with the Vector API.
+     */
+    static boolean usesVectorApi() {
+        return VECTOR_API;
+    }
+
+    /**
+     * Return whether `op` is one of the operators `operateConstant()` and `constantOperate()`
+     * support.
+     */
+    static boolean isArithmetic(Operator op) {
+        return op == Operator.ADD || op == Operator.SUBTRACT || op == Operator.MULTIPLY
+                || op == Operator.DIVIDE;
+    }
+
+    /**
+     * Replace `a[offset + i]` with `a[offset + i] op s` for `0 <= i < length`.  Requires
+     * `isArithmetic(op)`.
+     */
+    static void operateConstant(Operator op, double[] a, int offset, double s, int length) {
+        if (VECTOR_API) {
+            SIMD.operateConstant(op, a, offset, s, length);
+            return;
+        }
+        int end = offset + length;
+        if (op == Operator.ADD) {
+            for (int i = offset; i < end; i++) {
+                a[i] = a[i] + s;
+            }
+        } else if (op == Operator.SUBTRACT) {
+            for (int i = offset; i < end; i++) {
+                a[i] = a[i] - s;
+            }
+        } else if (op == Operator.MULTIPLY) {
+            for (int i = offset; i < end; i++) {
+                a[i] = a[i] * s;
+            }
+        } else {
+            assert op == Operator.DIVIDE;
+            for (int i = offset; i < end; i++) {
+                a[i] = a[i] / s;
+            }
+        }
+    }
+
+    /**
+     * Replace `a[offset + i]` with `s op a[offset + i]` for `0 <= i < length`.  Requires
+     * `isArithmetic(op)`.
+     */
+    static void constantOperate(Operator op, double s, double[] a, int offset, int length) {
+        if (VECTOR_API) {
+            SIMD.constantOperate(op, s, a, offset, length);
+            return;
+        }
+        int end = offset + length;
+        if (op == Operator.ADD) {
+            for (int i = offset; i < end; i++) {
+                a[i] = s + a[i];
+            }
+        } else if (op == Operator.SUBTRACT) {
+            for (int i = offset; i < end; i++) {
+                a[i] = s - a[i];
+            }
+        } else if (op == Operator.MULTIPLY) {
+            for (int i = offset; i < end; i++) {
+                a[i] = s * a[i];
+            }
+        } else {
+            assert op == Operator.DIVIDE;
+            for (int i = offset; i < end; i++) {
+                a[i] = s / a[i];
+            }
+        }
+    }
+
+    /**
+     * Replace `a[aOffset + i]` with `a[aOffset + i] op b[bOffset + i]` for `0 <= i < length`.
+     * Requires `isArithmetic(op)`.
+     */
+    static void operate(Operator op, double[] a, int aOffset, double[] b, int bOffset,
+            int length) {
+        if (VECTOR_API) {
+            SIMD.operate(op, a, aOffset, b, bOffset, length);
+            return;
+        }
+        if (op == Operator.ADD) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] + b[bOffset + i];
+            }
+        } else if (op == Operator.SUBTRACT) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] - b[bOffset + i];
+            }
+        } else if (op == Operator.MULTIPLY) {
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] * b[bOffset + i];
+            }
+        } else {
+            assert op == Operator.DIVIDE;
+            for (int i = 0; i < length; i++) {
+                a[aOffset + i] = a[aOffset + i] / b[bOffset + i];
+            }
+        }
+    }
+
+    /**
+     * Return whether `powConstant()` supports the exponent `exponent`: an integer whose magnitude
+     * is at most MAX_EXPANDED_EXPONENT.
+     */
+    static boolean isExpandableExponent(double exponent) {
+        return exponent == Math.rint(exponent) && Math.abs(exponent) <= MAX_EXPANDED_EXPONENT;
+    }
+
+    /**
+     * Replace `a[offset + i]` with `a[offset + i]` raised to the power `exponent`, computed by
+     * repeated squaring, for `0 <= i < length`, using `scratch[0..length)` and
+     * `bases[0..length)` for intermediate values.  Every multiplication is rounded, so for
+     * exponents other than 0, 1, and 2 results may differ from `Math.pow()` by a few units in the
+     * last place; the error grows with the exponent's magnitude, to at most 8 ulps at
+     * MAX_EXPANDED_EXPONENT.  Lanes whose result (or, for a negative exponent, whose power before
+     * taking its reciprocal) is not a normal double, where repeated squaring may have overflowed
+     * or lost precision to underflow, are recomputed with `Math.pow()`.  Requires
+     * `isExpandableExponent(exponent)`, `scratch.length >= length`, and
+     * `bases.length >= length`.
+     */
+    static void powConstant(double[] a, int offset, double exponent, int length,
+            double[] scratch, double[] bases) {
+        assert isExpandableExponent(exponent);
+        assert scratch.length >= length;
+        assert bases.length >= length;
+
+        int end = offset + length;
+        int n = (int) Math.abs(exponent);
+        if (n == 0) {
+            // pow(x, 0) is 1 for every x, including NaN.
+            for (int i = offset; i < end; i++) {
+                a[i] = 1.0;
+            }
+            return;
+        }
+        // Compute x^n as the product of x^(2^k) for each bit k of n, with one pass over the block
+        // per bit so that each loop body stays free of branches.  `scratch` holds x^(2^k).
+        System.arraycopy(a, offset, bases, 0, length);
+        System.arraycopy(a, offset, scratch, 0, length);
+        int bit = Integer.numberOfTrailingZeros(n);
+        for (int k = 0; k < bit; k++) {
+            operate(Operator.MULTIPLY, scratch, 0, scratch, 0, length);
+        }
+        System.arraycopy(scratch, 0, a, offset, length);
+        for (int rest = n >>> (bit + 1); rest != 0; rest >>>= 1) {
+            operate(Operator.MULTIPLY, scratch, 0, scratch, 0, length);
+            if ((rest & 1) != 0) {
+                operate(Operator.MULTIPLY, a, offset, scratch, 0, length);
+            }
+        }
+        if (exponent < 0) {
+            constantOperate(Operator.DIVIDE, 1.0, a, offset, length);
+        }
+        // A power x^n is normal exactly when 1 / x^n is at most 2^1022 in magnitude.  (Infinite
+        // and NaN results, which are rare, are recomputed too.)
+        double max = exponent < 0 ? 0x1p1022 : Double.MAX_VALUE;
+        for (int i = 0; i < length; i++) {
+            double magnitude = Math.abs(a[offset + i]);
+            if (!(magnitude >= Double.MIN_NORMAL && magnitude <= max)) {
+                a[offset + i] = Math.pow(bases[i], exponent);
+            }
+        }
+    }
+
+    /**
+     * Replace `a[offset + i]` with its absolute value for `0 <= i < length`.
+     */
+    static void abs(double[] a, int offset, int length) {
+        if (VECTOR_API) {
+            SIMD.apply(UnaryFunction.ABS, a, offset, length);
+            return;
+        }
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            a[i] = Math.abs(a[i]);
+        }
+    }
+
+    /**
+     * Replace `a[offset + i]` with its square root for `0 <= i < length`.
+     */
+    static void sqrt(double[] a, int offset, int length) {
+        if (VECTOR_API) {
+            SIMD.apply(UnaryFunction.SQRT, a, offset, length);
+            return;
+        }
+        int end = offset + length;
+        for (int i = offset; i < end; i++) {
+            a[i] = Math.sqrt(a[i]);
+        }
+    }
+
+    /**
+     * Return whether `apply()` supports `f`: true for the `exp()`, `log()`, `sin()`, `cos()`,
+     * and `tan()` of `UnaryFunction.mathDefs()` if the Vector API is available.  (`abs()` and
+     * `sqrt()` have their own kernels.)
+     */
+    static boolean isLanewise(UnaryFunction f) {
+        return VECTOR_API && f != UnaryFunction.ABS && f != UnaryFunction.SQRT
+                && SIMD.isLanewise(f);
+    }
+
+    /**
+     * Replace `a[offset + i]` with `f(a[offset + i])` for `0 <= i < length`.  Results are within
+     * 1 ulp of the exact result, like those of `java.lang.Math`, but are not necessarily the same
+     * as them.  Requires `isLanewise(f)`.
+     */
+    static void apply(UnaryFunction f, double[] a, int offset, int length) {
+        assert isLanewise(f);
+        SIMD.apply(f, a, offset, length);
+    }
+}
@@ -0,0 +1,1176 @@
+package cs2110;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+class ExpressionCompilerTest {
+
+    @Test
+    @DisplayName("A compiled expression should assign slots to variables in the order they first " +
+            "appear in postfix order")
+    void testSlotOrder() throws IncompleteRpnException, UndefinedFunctionException {
+        CompiledExpression compiled = ExpressionCompiler.compile(
+                RpnParser.parse("y x * y 2 ^ + z -", Map.of()));
+        assertEquals(3, compiled.slotCount());
+        assertEquals("y", compiled.slotName(0));
+        assertEquals("x", compiled.slotName(1));
+        assertEquals("z", compiled.slotName(2));
+        assertEquals(1, compiled.slotOf("x"));
+        assertEquals(-1, compiled.slotOf("w"));
+    }
+
+    @Test
+    @DisplayName("A compiled expression should evaluate to the same value as its tree, using " +
+            "generated bytecode")
+    void testMatchesTree()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        String[] formulas = {"1.5", "x", "x y -", "x y / 2 ^", "3 x * sin() y exp() + sqrt()",
+                "x abs() log() y tan() / x cos() -", "0 x - y 0.5 ^ *"};
+        VarTable vars = MapVarTable.of("x", -2.75, "y", 0.3);
+        for (String formula : formulas) {
+            Expression expr = RpnParser.parse(formula, UnaryFunction.mathDefs());
+            CompiledExpression compiled = ExpressionCompiler.compile(expr);
+            assertTrue(compiled.getClass().isHidden());
+            assertEquals(expr.eval(vars), compiled.eval(vars), formula);
+        }
+    }
+
+    @Test
+    @DisplayName("A compiled expression should read its variables from the slot array")
+    void testEvalSlots() throws IncompleteRpnException, UndefinedFunctionException {
+        CompiledExpression compiled = ExpressionCompiler.compile(
+                RpnParser.parse("a b - c *", Map.of()));
+        assertEquals(-4.0, compiled.eval(new double[]{1, 3, 2}));
+        assertEquals(21.0, compiled.eval(new double[]{10, 3, 3}));
+    }
+
+    @Test
+    @DisplayName("A compiled expression should invoke functions and operators that are not " +
+            "built in through their objects")
+    void testCustomFunctions() throws UnboundVariableException {
+        UnaryFunction twice = new UnaryFunction("twice", x -> 2 * x);
+        Operator hypot = new Operator() {
+            public double operate(double operand1, double operand2) {
+                return Math.hypot(operand1, operand2);
+            }
+
+            public String symbol() {
+                return "hypot";
+            }
+        };
+        Expression expr = new Operation(hypot, new Application(twice, new Variable("x")),
+                new Constant(8));
+        CompiledExpression compiled = ExpressionCompiler.compile(expr);
+        assertTrue(compiled.getClass().isHidden());
+        assertEquals(10.0, compiled.eval(MapVarTable.of("x", 3)));
+    }
+
+    @Test
+    @DisplayName("Compiling an expression containing an unknown node type should fall back to " +
+            "evaluating the tree")
+    void testFallback() throws UnboundVariableException {
+        Expression opaque = new Expression() {
+            public double eval(VarTable vars) throws UnboundVariableException {
+                return vars.get("q") + 1;
+            }
+
+            public int opCount() {
+                return 1;
+            }
+
+            public String infixString() {
+                return "(q + 1)";
+            }
+
+            public String postfixString() {
+                return "q 1 +";
+            }
+
+            public Expression optimize(VarTable vars) {
+                return this;
+            }
+
+            public Set<String> dependencies() {
+                return Set.of("q");
+            }
+        };
+        CompiledExpression compiled = ExpressionCompiler.compile(
+                new Operation(Operator.MULTIPLY, new Variable("x"), opaque));
+        assertFalse(compiled.getClass().isHidden());
+        assertEquals(2, compiled.slotCount());
+        assertEquals(12.0, compiled.eval(MapVarTable.of("x", 3, "q", 3)));
+        assertThrows(UnboundVariableException.class,
+                () -> compiled.eval(MapVarTable.of("x", 3)));
+    }
+}
+
+class SlotBindingTest {
+
+    @Test
+    @DisplayName("Binding an expression should assign slots to its variables in postfix order " +
+            "and reuse slots that are already assigned")
+    void testBindSlots() throws IncompleteRpnException, UndefinedFunctionException {
+        VarSlots slots = new VarSlots();
+        slots.add("z");
+        Expression bound = slots.bind(RpnParser.parse("x z + y x * -", Map.of()));
+        assertEquals(3, slots.size());
+        assertEquals(0, slots.slotOf("z"));
+        assertEquals(1, slots.slotOf("x"));
+        assertEquals(2, slots.slotOf("y"));
+        assertEquals("((x + z) - (y * x))", bound.infixString());
+    }
+
+    @Test
+    @DisplayName("A bound expression should evaluate to the same value against an ArrayVarTable " +
+            "as its unbound form does against a MapVarTable")
+    void testBoundEval()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        Expression expr = RpnParser.parse("x y * sqrt() x -", UnaryFunction.mathDefs());
+        VarSlots slots = new VarSlots();
+        Expression bound = slots.bind(expr);
+
+        ArrayVarTable vars = new ArrayVarTable(slots);
+        vars.set("x", 2);
+        vars.set("y", 8);
+        assertEquals(expr.eval(MapVarTable.of("x", 2, "y", 8)), bound.eval(vars));
+        // Bound expressions still work with other kinds of VarTable.
+        assertEquals(2.0, bound.eval(MapVarTable.of("x", 2, "y", 8)));
+    }
+
+    @Test
+    @DisplayName("Reading an unassigned variable from an ArrayVarTable should throw an " +
+            "UnboundVariableException")
+    void testUnbound() throws IncompleteRpnException, UndefinedFunctionException {
+        VarSlots slots = new VarSlots();
+        Expression bound = slots.bind(RpnParser.parse("x y +", Map.of()));
+        ArrayVarTable vars = new ArrayVarTable(slots);
+        vars.set("x", 1);
+        UnboundVariableException e = assertThrows(UnboundVariableException.class,
+                () -> bound.eval(vars));
+        assertEquals("y", e.name());
+
+        vars.set("y", 1);
+        vars.unset("x");
+        assertFalse(vars.contains("x"));
+        assertThrows(UnboundVariableException.class, () -> vars.get("x"));
+        assertThrows(UnboundVariableException.class, () -> vars.get("w"));
+    }
+
+    @Test
+    @DisplayName("An ArrayVarTable should report its assigned variables like any other VarTable")
+    void testVarTable() throws UnboundVariableException {
+        ArrayVarTable vars = new ArrayVarTable(new VarSlots());
+        vars.set("a", 1.5);
+        vars.set("b", 2.5);
+        vars.set("a", 3.5);
+        assertEquals(2, vars.size());
+        assertEquals(Set.of("a", "b"), vars.names());
+        assertEquals(3.5, vars.get("a"));
+        assertEquals(3.5, vars.get(vars.slots().slotOf("a")));
+    }
+
+    @Test
+    @DisplayName("An expression compiled against shared slots should read an ArrayVarTable's " +
+            "values in place")
+    void testCompiledSharedSlots() throws IncompleteRpnException, UndefinedFunctionException,
+            UnboundVariableException {
+        VarSlots slots = new VarSlots();
+        ArrayVarTable vars = new ArrayVarTable(slots);
+        vars.set("w", 10);
+        CompiledExpression compiled = ExpressionCompiler.compile(
+                RpnParser.parse("x 2 *", Map.of()), slots);
+        assertEquals(1, compiled.slotOf("x"));
+        assertEquals(-1, compiled.slotOf("w"));
+        assertThrows(UnboundVariableException.class, () -> compiled.eval(vars));
+        vars.set("x", 4);
+        assertEquals(8.0, compiled.eval(vars));
+        assertEquals(8.0, compiled.eval(vars.values()));
+    }
+}
+
+class FormulaArenaTest {
+
+    @Test
+    @DisplayName("Formulas stored in an arena should evaluate to the same values as their trees, " +
+            "and rebuild into the same trees")
+    void testMatchesTree()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        String[] formulas = {"2.5", "x", "x y - z *", "x y / 2 ^ 1 +",
+                "3 x * sin() y exp() + sqrt()", "x abs() log() y tan() / x cos() - z /"};
+        FormulaArena arena = new FormulaArena();
+        int[] handles = new int[formulas.length];
+        for (int i = 0; i < formulas.length; i++) {
+            handles[i] = arena.add(RpnParser.parse(formulas[i], UnaryFunction.mathDefs()));
+        }
+
+        ArrayVarTable vars = new ArrayVarTable(arena.slots());
+        vars.set("x", -1.25);
+        vars.set("y", 0.75);
+        vars.set("z", 3);
+        VarTable mapVars = new MapVarTable();
+        mapVars.set("x", -1.25);
+        mapVars.set("y", 0.75);
+        mapVars.set("z", 3);
+        for (int i = 0; i < formulas.length; i++) {
+            double expected = RpnParser.parse(formulas[i], UnaryFunction.mathDefs()).eval(mapVars);
+            assertEquals(expected, arena.eval(handles[i], vars), formulas[i]);
+            assertEquals(expected, arena.eval(handles[i], vars.values()), formulas[i]);
+            assertEquals(RpnParser.parse(formulas[i], UnaryFunction.mathDefs()).infixString(),
+                    arena.expression(handles[i]).infixString(), formulas[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("An arena should evaluate the core math functions of every math mode with " +
+            "their own instructions, matching the functions exactly")
+    void testMathModes() throws IncompleteRpnException, UndefinedFunctionException {
+        double[] xs = {-2.5, -0.3, 0.0, 0.7, 1.9, 40.0, Double.NaN};
+        for (MathMode mode : MathMode.values()) {
+            Map<String, UnaryFunction> defs = UnaryFunction.mathDefs(mode);
+            for (UnaryFunction function : defs.values()) {
+                FormulaArena arena = new FormulaArena();
+                int formula = arena.add(RpnParser.parse("x " + function.name() + "()", defs));
+                // LOAD x, then a single opcode with no operand (rather than APPLY f).
+                assertEquals(3, arena.codeLength(), mode + " " + function.name());
+                assertSame(function, ((Application) arena.expression(formula)).function());
+                for (double x : xs) {
+                    assertEquals(function.apply(x), arena.eval(formula, new double[]{x}),
+                            mode + " " + function.name() + "(" + x + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("An arena should store each distinct constant once across all of its formulas")
+    void testSharedConstants() throws IncompleteRpnException, UndefinedFunctionException {
+        FormulaArena arena = new FormulaArena();
+        arena.add(RpnParser.parse("x 2 * 1 +", Map.of()));
+        arena.add(RpnParser.parse("y 1 + 2 /", Map.of()));
+        assertEquals(2, arena.size());
+        assertEquals(2, arena.constantCount());
+        assertEquals(2, arena.slots().size());
+    }
+
+    @Test
+    @DisplayName("Evaluating an arena formula that reads an unassigned variable from an " +
+            "ArrayVarTable should throw an UnboundVariableException")
+    void testUnbound() throws IncompleteRpnException, UndefinedFunctionException {
+        FormulaArena arena = new FormulaArena();
+        int formula = arena.add(RpnParser.parse("x y +", Map.of()));
+        ArrayVarTable vars = new ArrayVarTable(arena.slots());
+        vars.set("x", 1);
+        assertThrows(UnboundVariableException.class, () -> arena.eval(formula, vars));
+        assertThrows(IndexOutOfBoundsException.class, () -> arena.eval(formula + 1, vars));
+    }
+
+    @Test
+    @DisplayName("An arena should evaluate functions and operators that are not built in")
+    void testCustomFunctions() {
+        UnaryFunction twice = new UnaryFunction("twice", x -> 2 * x);
+        Operator max = new Operator() {
+            public double operate(double operand1, double operand2) {
+                return Math.max(operand1, operand2);
+            }
+
+            public String symbol() {
+                return "max";
+            }
+        };
+        FormulaArena arena = new FormulaArena();
+        int formula = arena.add(new Operation(max, new Application(twice, new Variable("x")),
+                new Variable("y")));
+        assertEquals(6.0, arena.eval(formula, new double[]{3, 5}));
+        assertEquals(7.0, arena.eval(formula, new double[]{3, 7}, arena.newStack()));
+        assertEquals("(twice(x) max y)", arena.expression(formula).infixString());
+    }
+}
+
+class BatchEvaluatorTest {
+
+    /**
+     * Return a table with `rows` rows of pseudorandom values in [-5, 5) for each of `names`.
+     */
+    static ColumnTable randomColumns(int rows, long seed, String... names) {
+        Random random = new Random(seed);
+        ColumnTable columns = new ColumnTable(rows);
+        for (String name : names) {
+            double[] column = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                column[i] = random.nextDouble() * 10 - 5;
+            }
+            columns.set(name, column);
+        }
+        return columns;
+    }
+
+    /**
+     * Assert that `out` holds the tree-walk value of `expr` for every row of `columns`, to within
+     * `delta` (exactly, if `delta` is 0).
+     */
+    static void assertMatchesTree(Expression expr, ColumnTable columns, double[] out, double delta)
+            throws UnboundVariableException {
+        for (int i = 0; i < columns.rows(); i++) {
+            VarTable vars = new MapVarTable();
+            for (String name : columns.names()) {
+                vars.set(name, columns.get(name)[i]);
+            }
+            assertEquals(expr.eval(vars), out[i], delta, expr.postfixString() + " row " + i);
+        }
+    }
+
+    @Test
+    @DisplayName("Batch evaluation should match tree evaluation bit for bit for every row")
+    void testMatchesTree()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        String[] formulas = {"1.5", "x", "x y - z *", "x y / 2 ^ 1 +", "x y * z +",
+                "3 x * sin() y exp() + sqrt()", "x abs() log() y tan() / x cos() - z /",
+                "z x y * -"};
+        ColumnTable columns = randomColumns(2500, 2110, "x", "y", "z");
+        for (String formula : formulas) {
+            Expression expr = RpnParser.parse(formula, UnaryFunction.mathDefs());
+            double[] out = new double[columns.rows()];
+            expr.evalBatch(columns, out);
+            assertMatchesTree(expr, columns, out, 0);
+
+            // Results must not depend on the block size.
+            double[] small = new double[columns.rows()];
+            new BatchEvaluator(false, 7).eval(expr, columns, small);
+            assertArrayEquals(out, small, formula);
+        }
+    }
+
+    @Test
+    @DisplayName("Batch evaluation with fused operations should closely match tree evaluation")
+    void testFused()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        ColumnTable columns = randomColumns(1000, 4, "x", "y", "z");
+        for (String formula : new String[]{"x y * z +", "z x y * +", "x y * z -", "z x y * -"}) {
+            Expression expr = RpnParser.parse(formula, Map.of());
+            double[] out = new double[columns.rows()];
+            new BatchEvaluator(true).eval(expr, columns, out);
+            assertMatchesTree(expr, columns, out, 1e-12);
+        }
+    }
+
+    @Test
+    @DisplayName("Batch evaluation should throw an UnboundVariableException if a variable has " +
+            "no column")
+    void testUnbound() throws IncompleteRpnException, UndefinedFunctionException {
+        Expression expr = RpnParser.parse("x y +", Map.of());
+        ColumnTable columns = randomColumns(10, 1, "x");
+        assertThrows(UnboundVariableException.class, () -> expr.evalBatch(columns, new double[10]));
+        assertThrows(IllegalArgumentException.class, () -> columns.set("y", new double[9]));
+    }
+}
+
+class VectorBackendTest {
+
+    @Test
+    @DisplayName("The VECTOR backend should match the SCALAR backend exactly for every " +
+            "operator and math function, including small integer powers")
+    void testMatchesScalar()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        String[] formulas = {"x 2.5 +", "3 x -", "x y * 0.1 *", "1 x /", "x y / 4 /",
+                "x abs() sqrt() y -", "x 1.5 ^", "x y ^", "x y - x y + * 2 x / +",
+                "x 2 ^ y 2 ^ + sqrt()", "x 0 ^", "x 1 ^", "x 3 ^", "x -5 ^", "x 8 ^ y -2 ^ *",
+                "x exp() y sin() +", "x abs() log() y cos() * x tan() -"};
+        ColumnTable columns = BatchEvaluatorTest.randomColumns(3000, 17, "x", "y");
+        BatchEvaluator scalar = new BatchEvaluator(BatchEvaluator.Backend.SCALAR, false);
+        BatchEvaluator vector = new BatchEvaluator(BatchEvaluator.Backend.VECTOR, false);
+        for (String formula : formulas) {
+            Expression expr = RpnParser.parse(formula, UnaryFunction.mathDefs());
+            double[] expected = new double[columns.rows()];
+            double[] actual = new double[columns.rows()];
+            scalar.eval(expr, columns, expected);
+            vector.eval(expr, columns, actual);
+            assertArrayEquals(expected, actual, formula);
+        }
+    }
+
+    @Test
+    @DisplayName("The VECTOR_RELAXED backend should compute the core math functions to within " +
+            "2 ulps of `Math`, and functions it has no lanewise form of exactly as the SCALAR " +
+            "backend does")
+    void testMathFunctions()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        // Block sizes that are not multiples of any vector length leave lanes for the tail loops.
+        ColumnTable columns = BatchEvaluatorTest.randomColumns(3001, 29, "x");
+        BatchEvaluator scalar = new BatchEvaluator(BatchEvaluator.Backend.SCALAR, false);
+        BatchEvaluator vector =
+                new BatchEvaluator(BatchEvaluator.Backend.VECTOR_RELAXED, false, 999);
+        for (MathMode mode : MathMode.values()) {
+            Map<String, UnaryFunction> defs = UnaryFunction.mathDefs(mode);
+            for (String name : List.of("exp", "log", "sin", "cos", "tan")) {
+                Expression expr = RpnParser.parse("x " + name + "()", defs);
+                double[] expected = new double[columns.rows()];
+                double[] actual = new double[columns.rows()];
+                scalar.eval(expr, columns, expected);
+                vector.eval(expr, columns, actual);
+                if (!VectorKernels.isLanewise(defs.get(name))) {
+                    assertArrayEquals(expected, actual, mode + " " + name);
+                    continue;
+                }
+                for (int i = 0; i < expected.length; i++) {
+                    assertTrue(MathAccuracyReport.ulps(actual[i], expected[i]) <= 2,
+                            name + "(" + columns.get("x")[i] + ")");
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("The vector backends should use the Vector API only when its module is " +
+            "available")
+    void testVectorApiDetection() {
+        boolean available = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+        if (!available) {
+            assertFalse(VectorKernels.usesVectorApi());
+        }
+        assertEquals(VectorKernels.usesVectorApi(),
+                VectorKernels.isLanewise(UnaryFunction.EXP));
+        assertFalse(VectorKernels.isLanewise(UnaryFunction.mathDefs(MathMode.FAST).get("tan")));
+    }
+
+    @Test
+    @DisplayName("The VECTOR_RELAXED backend should match the SCALAR backend to within 8 ulps " +
+            "for powers with small integer exponents")
+    void testExpandedPow()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        ColumnTable columns = BatchEvaluatorTest.randomColumns(3000, 23, "x");
+        BatchEvaluator scalar = new BatchEvaluator(BatchEvaluator.Backend.SCALAR, false);
+        BatchEvaluator vector =
+                new BatchEvaluator(BatchEvaluator.Backend.VECTOR_RELAXED, false, 100);
+        for (int n = -VectorKernels.MAX_EXPANDED_EXPONENT;
+                n <= VectorKernels.MAX_EXPANDED_EXPONENT; n++) {
+            Expression expr = RpnParser.parse("x " + n + " ^", Map.of());
+            double[] expected = new double[columns.rows()];
+            double[] actual = new double[columns.rows()];
+            scalar.eval(expr, columns, expected);
+            vector.eval(expr, columns, actual);
+            for (int i = 0; i < expected.length; i++) {
+                assertEquals(expected[i], actual[i], 8 * Math.ulp(expected[i]), "x^" + n);
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("The VECTOR_RELAXED backend should compute expanded powers whose intermediate " +
+            "values overflow or underflow as `Math.pow()` does")
+    void testExpandedPowExtremes()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        double[] xs = {1e160, -1e160, 1e-160, 1e200, -1e-200, 1e-310, 1e308, 0x1p511, 0x1p-511,
+                1.5e154, 3e-155, 1e77, 1e-77, 0.0, -0.0, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, Double.NaN, Double.MIN_VALUE, Double.MAX_VALUE, 1.0};
+        ColumnTable columns = new ColumnTable(xs.length);
+        columns.set("x", xs);
+        BatchEvaluator vector = new BatchEvaluator(BatchEvaluator.Backend.VECTOR_RELAXED, false);
+        for (int n = -VectorKernels.MAX_EXPANDED_EXPONENT;
+                n <= VectorKernels.MAX_EXPANDED_EXPONENT; n++) {
+            double[] actual = new double[xs.length];
+            vector.eval(RpnParser.parse("x " + n + " ^", Map.of()), columns, actual);
+            for (int i = 0; i < xs.length; i++) {
+                double expected = Math.pow(xs[i], n);
+                assertTrue(MathAccuracyReport.ulps(actual[i], expected) <= 8,
+                        xs[i] + "^" + n + " = " + actual[i] + ", not " + expected);
+            }
+        }
+        double[] out = new double[xs.length];
+        vector.eval(RpnParser.parse("x -2 ^", Map.of()), columns, out);
+        assertEquals(1e-320, out[0]);
+    }
+
+    @Test
+    @DisplayName("The batch backend should be selectable by name")
+    void testBackendByName() {
+        assertEquals(BatchEvaluator.Backend.VECTOR, BatchEvaluator.Backend.valueOf("VECTOR"));
+        assertEquals(BatchEvaluator.Backend.VECTOR_RELAXED,
+                BatchEvaluator.Backend.valueOf("vector_relaxed".toUpperCase()));
+        assertEquals(BatchEvaluator.Backend.SCALAR,
+                new BatchEvaluator(BatchEvaluator.Backend.SCALAR, true).backend());
+    }
+}
+
+class TabulatorTest {
+
+    @Test
+    @DisplayName("Sample points should be evenly spaced, starting at `lo` and ending exactly at " +
+            "`hi`")
+    void testAbscissa() {
+        assertEquals(10.0, Tabulator.abscissa(10, 17, 2, 0));
+        assertEquals(17.0, Tabulator.abscissa(10, 17, 2, 1));
+        assertEquals(0.5, Tabulator.abscissa(0, 1, 3, 1));
+        assertEquals(0.3, Tabulator.abscissa(0.1, 0.3, 7, 6));
+        assertEquals(4.0, Tabulator.abscissa(4, 9, 1, 0));
+    }
+
+    @Test
+    @DisplayName("Text output should have one line per sample, spanning several chunks")
+    void testText() throws Exception {
+        int n = 2 * Tabulator.CHUNK_SIZE + 3;
+        Expression expr = RpnParser.parse("x 2 * 1 +", Map.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Tabulator(new BatchEvaluator()).tabulate(expr, "x", 0, n - 1, n, out,
+                Tabulator.Format.TEXT);
+        String[] lines = out.toString().split("\n");
+        assertEquals(n, lines.length);
+        for (int i = 0; i < n; i++) {
+            assertEquals((double) i + " " + (2.0 * i + 1), lines[i]);
+        }
+    }
+
+    @Test
+    @DisplayName("Binary output should be pairs of doubles, matching interpreted evaluation")
+    void testBinary() throws Exception {
+        int n = Tabulator.CHUNK_SIZE + 100;
+        Expression expr = RpnParser.parse("x sin() x * 3 x / +",
+                UnaryFunction.mathDefs());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Tabulator(new BatchEvaluator()).tabulate(expr, "x", -2, 5, n, out,
+                Tabulator.Format.BINARY);
+        assertEquals(2 * Double.BYTES * n, out.size());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        for (int i = 0; i < n; i++) {
+            double x = in.readDouble();
+            assertEquals(Tabulator.abscissa(-2, 5, n, i), x);
+            assertEquals(expr.eval(MapVarTable.of("x", x)), in.readDouble());
+        }
+    }
+
+    @Test
+    @DisplayName("An expression depending on another variable should be rejected before " +
+            "anything is written")
+    void testUnbound() throws Exception {
+        Expression expr = RpnParser.parse("x y +", Map.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThrows(UnboundVariableException.class,
+                () -> new Tabulator(new BatchEvaluator()).tabulate(expr, "x", 0, 1, 10, out,
+                        Tabulator.Format.TEXT));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    @DisplayName("A million-point text table should have one line per point, spanning the " +
+            "whole range (its speed is measured by TabulateBenchmark)")
+    void testMillionPoints() throws Exception {
+        Expression expr = RpnParser.parse("x x * 3 x * - 2 + sqrt()", UnaryFunction.mathDefs());
+        Tabulator tabulator = new Tabulator(new BatchEvaluator());
+        // Count the lines written, remembering the last one.
+        int[] lines = {0};
+        StringBuilder line = new StringBuilder();
+        StringBuilder lastLine = new StringBuilder();
+        OutputStream sink = new OutputStream() {
+            @Override
+            public void write(int b) {
+                if (b == '\n') {
+                    lines[0]++;
+                    lastLine.setLength(0);
+                    lastLine.append(line);
+                    line.setLength(0);
+                } else {
+                    line.append((char) b);
+                }
+            }
+        };
+        tabulator.tabulate(expr, "x", 0, 10, 1_000_000, sink, Tabulator.Format.TEXT);
+        assertEquals(1_000_000, lines[0]);
+        assertEquals(0, line.length());
+        assertEquals("10.0 " + expr.eval(MapVarTable.of("x", 10)), lastLine.toString());
+    }
+
+    @Test
+    @DisplayName("The tabulate command should bind other variables, accept options, write " +
+            "files, and leave the abscissa variable set to `hi`")
+    void testCommand() throws IOException {
+        Path text = Files.createTempFile("table", ".txt");
+        Path binary = Files.createTempFile("table", ".bin");
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            System.setErr(new PrintStream(errors, true));
+            RpnCalc calc = new RpnCalc();
+            calc.doSet(new Scanner("a 2"));
+            calc.doTabulate(new Scanner("x 0 1 3 x a *"));
+            calc.doTabulate(new Scanner("--out " + text + " x 1 2 2"));
+            calc.doTabulate(new Scanner("--binary --out " + binary + " x 1 2 2"));
+            calc.doEval(new Scanner("x"));
+            calc.doTabulate(new Scanner("--binary x 1 2 2"));
+            calc.doTabulate(new Scanner("x 0 1 0"));
+            calc.doTabulate(new Scanner("x 0 1 2 x b +"));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        try {
+            assertTrue(printed.toString().replace(System.lineSeparator(), "\n")
+                    .startsWith("0.0 0.0\n0.5 1.0\n1.0 2.0\n2.0\n"));
+            assertEquals("1.0 2.0\n2.0 4.0\n", Files.readString(text));
+            DataInputStream in = new DataInputStream(Files.newInputStream(binary));
+            assertEquals(1.0, in.readDouble());
+            assertEquals(2.0, in.readDouble());
+            assertEquals(2.0, in.readDouble());
+            assertEquals(4.0, in.readDouble());
+            assertEquals(-1, in.read());
+            in.close();
+            assertTrue(errors.toString().contains("requires --out"));
+            assertTrue(errors.toString().contains("must be positive"));
+            assertTrue(errors.toString().contains("without first setting b"));
+        } finally {
+            Files.delete(text);
+            Files.delete(binary);
+        }
+    }
+}
+
+class SweepTest {
+
+    @Test
+    @DisplayName("Points should be written in row-major order with their coordinates")
+    void testOrder() throws Exception {
+        Expression expr = RpnParser.parse("x 10 * y +", Map.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Sweep(new BatchEvaluator(), ForkJoinPool.commonPool()).sweep(expr,
+                List.of(new Sweep.Range("x", 0, 2, 3), new Sweep.Range("y", 0, 1, 2)), out,
+                Tabulator.Format.TEXT, null);
+        assertEquals("""
+                0.0 0.0 0.0
+                0.0 1.0 1.0
+                1.0 0.0 10.0
+                1.0 1.0 11.0
+                2.0 0.0 20.0
+                2.0 1.0 21.0
+                """, out.toString());
+    }
+
+    @Test
+    @DisplayName("Output should not depend on the number of threads, and should match " +
+            "interpreted evaluation across many blocks")
+    void testDeterministic() throws Exception {
+        Expression expr = RpnParser.parse("x y * sin() z +", UnaryFunction.mathDefs());
+        List<Sweep.Range> ranges = List.of(new Sweep.Range("x", -1, 1, 97),
+                new Sweep.Range("y", 0, 3, 101), new Sweep.Range("z", 5, 6, 41));
+        ByteArrayOutputStream serial = new ByteArrayOutputStream();
+        ByteArrayOutputStream parallel = new ByteArrayOutputStream();
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            new Sweep(new BatchEvaluator(), one).sweep(expr, ranges, serial,
+                    Tabulator.Format.BINARY, null);
+            new Sweep(new BatchEvaluator(), four).sweep(expr, ranges, parallel,
+                    Tabulator.Format.BINARY, null);
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+        assertArrayEquals(serial.toByteArray(), parallel.toByteArray());
+
+        int size = 97 * 101 * 41;
+        assertTrue(size > Sweep.BLOCK_SIZE * Sweep.BLOCKS_PER_WINDOW);
+        assertEquals(4 * Double.BYTES * size, serial.size());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(serial.toByteArray()));
+        for (int i = 0; i < size; i++) {
+            double x = in.readDouble();
+            double y = in.readDouble();
+            double z = in.readDouble();
+            assertEquals(Tabulator.abscissa(-1, 1, 97, i / (101 * 41)), x);
+            assertEquals(Tabulator.abscissa(0, 3, 101, i / 41 % 101), y);
+            assertEquals(Tabulator.abscissa(5, 6, 41, i % 41), z);
+            MapVarTable vars = MapVarTable.of("x", x, "y", y);
+            vars.set("z", z);
+            assertEquals(expr.eval(vars), in.readDouble());
+        }
+    }
+
+    @Test
+    @DisplayName("Unswept variables and variables swept twice should be rejected")
+    void testRejected() throws Exception {
+        Sweep sweep = new Sweep(new BatchEvaluator(), ForkJoinPool.commonPool());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertThrows(UnboundVariableException.class, () -> sweep.sweep(
+                RpnParser.parse("x y +", Map.of()), List.of(new Sweep.Range("x", 0, 1, 2)),
+                out, Tabulator.Format.TEXT, null));
+        assertThrows(IllegalArgumentException.class, () -> sweep.sweep(
+                RpnParser.parse("x", Map.of()),
+                List.of(new Sweep.Range("x", 0, 1, 2), new Sweep.Range("x", 0, 1, 2)),
+                out, Tabulator.Format.TEXT, null));
+        assertThrows(IllegalArgumentException.class, () -> Sweep.size(
+                List.of(new Sweep.Range("x", 0, 1, 100_000), new Sweep.Range("y", 0, 1, 100_000))));
+        assertEquals(0, out.size());
+    }
+
+    @Test
+    @DisplayName("The sweep command should bind other variables, report its elapsed time, and " +
+            "leave each swept variable set to its `hi`")
+    void testCommand() {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            System.setErr(new PrintStream(errors, true));
+            RpnCalc calc = new RpnCalc();
+            calc.doSet(new Scanner("c 1"));
+            calc.doSweep(new Scanner("x 0 1 2 y 10 20 2 x y * c +"));
+            calc.doEval(new Scanner("x y +"));
+            calc.doSweep(new Scanner("x 0 1 0"));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        assertEquals("0.0 10.0 1.0\n0.0 20.0 1.0\n1.0 10.0 11.0\n1.0 20.0 21.0\n21.0\n",
+                printed.toString().replace(System.lineSeparator(), "\n"));
+        assertTrue(errors.toString().contains("Swept 4 points in"));
+        assertTrue(errors.toString().contains("must be positive"));
+    }
+}
+
+class AdaptiveTabulatorTest {
+
+    /**
+     * Return the samples written by `tabulator` for `expr` of x, as {xs, ys}.
+     */
+    static double[][] samples(AdaptiveTabulator tabulator, String expr, double lo, double hi,
+            int n, double tolerance, int budget) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        int count = tabulator.tabulate(RpnParser.parse(expr, UnaryFunction.mathDefs()), "x", lo,
+                hi, n, tolerance, budget, out, Tabulator.Format.BINARY);
+        assertEquals(2 * Double.BYTES * count, out.size());
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        double[][] samples = new double[2][count];
+        for (int i = 0; i < count; i++) {
+            samples[0][i] = in.readDouble();
+            samples[1][i] = in.readDouble();
+        }
+        return samples;
+    }
+
+    static AdaptiveTabulator tabulator() {
+        return new AdaptiveTabulator(new BatchEvaluator(), ForkJoinPool.commonPool());
+    }
+
+    @Test
+    @DisplayName("A linear function should only have the midpoints of its initial intervals " +
+            "evaluated")
+    void testLinear() throws Exception {
+        double[][] samples = samples(tabulator(), "x 3 * 1 +", 0, 8, 9, 1e-9, 1000);
+        assertEquals(17, samples[0].length);
+        for (int i = 0; i < 17; i++) {
+            assertEquals(i / 2.0, samples[0][i]);
+            assertEquals(3 * (i / 2.0) + 1, samples[1][i]);
+        }
+    }
+
+    @Test
+    @DisplayName("Samples should be sorted, concentrated where the function curves, and " +
+            "within budget")
+    void testRefinement() throws Exception {
+        double[][] samples = samples(tabulator(), "x sqrt()", 0, 1, 3, 1e-4, 500);
+        double[] xs = samples[0];
+        assertTrue(xs.length <= 500);
+        assertEquals(0.0, xs[0]);
+        assertEquals(1.0, xs[xs.length - 1]);
+        int belowTenth = 0;
+        for (int i = 0; i < xs.length; i++) {
+            if (i > 0) {
+                assertTrue(xs[i - 1] < xs[i]);
+            }
+            assertEquals(Math.sqrt(xs[i]), samples[1][i]);
+            if (xs[i] < 0.1) {
+                belowTenth++;
+            }
+        }
+        assertTrue(belowTenth > xs.length / 2, belowTenth + " of " + xs.length);
+    }
+
+    @Test
+    @DisplayName("Intervals containing a pole should be refined until the budget is spent")
+    void testPole() throws Exception {
+        double[][] samples = samples(tabulator(), "x tan()", 0, 3, 4, 0.01, 2000);
+        assertEquals(2000, samples[0].length);
+        double closest = Double.POSITIVE_INFINITY;
+        for (double x : samples[0]) {
+            closest = Math.min(closest, Math.abs(x - Math.PI / 2));
+        }
+        assertTrue(closest < 1e-6, "closest sample " + closest);
+    }
+
+    @Test
+    @DisplayName("Samples should not depend on the number of threads, even when the budget " +
+            "ends within a level")
+    void testDeterministic() throws Exception {
+        ForkJoinPool one = new ForkJoinPool(1);
+        ForkJoinPool four = new ForkJoinPool(4);
+        try {
+            double[][] serial = samples(new AdaptiveTabulator(new BatchEvaluator(), one),
+                    "x 50 * sin() x *", 0, 10, 3000, 1e-6, 20_000);
+            double[][] parallel = samples(new AdaptiveTabulator(new BatchEvaluator(), four),
+                    "x 50 * sin() x *", 0, 10, 3000, 1e-6, 20_000);
+            assertEquals(20_000, serial[0].length);
+            assertArrayEquals(serial[0], parallel[0]);
+            assertArrayEquals(serial[1], parallel[1]);
+        } finally {
+            one.shutdown();
+            four.shutdown();
+        }
+    }
+
+    @Test
+    @DisplayName("The tabulate command should accept --adaptive and --budget and reject " +
+            "invalid combinations")
+    void testCommand() {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            System.setErr(new PrintStream(errors, true));
+            RpnCalc calc = new RpnCalc();
+            calc.doTabulate(new Scanner("--adaptive 0.5 x 0 2 3 x 2 *"));
+            calc.doTabulate(new Scanner("--budget 10 x 0 2 3"));
+            calc.doTabulate(new Scanner("--adaptive 0.5 x 0 2 1"));
+            calc.doTabulate(new Scanner("--adaptive 0.5 --budget 2 x 0 2 3"));
+            calc.doTabulate(new Scanner("--adaptive -1 x 0 2 3"));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        assertEquals("0.0 0.0\n0.5 1.0\n1.0 2.0\n1.5 3.0\n2.0 4.0\n",
+                printed.toString().replace(System.lineSeparator(), "\n"));
+        assertTrue(errors.toString().contains("--budget requires --adaptive"));
+        assertTrue(errors.toString().contains("requires <lo> < <hi> and <n> >= 2"));
+        assertTrue(errors.toString().contains("at least <n> evaluations"));
+        assertTrue(errors.toString().contains("must not be negative"));
+    }
+}
+
+class MathModeTest {
+
+    /**
+     * Return arguments spread over `[lo, hi]`, including its ends.
+     */
+    private static double[] arguments(double lo, double hi, int n) {
+        double[] xs = new double[n];
+        Random random = new Random(2110);
+        for (int i = 0; i < n; i++) {
+            xs[i] = i == 0 ? lo : i == 1 ? hi : lo + (hi - lo) * random.nextDouble();
+        }
+        return xs;
+    }
+
+    @Test
+    @DisplayName("The DEFAULT mode should give exactly the functions of `mathDefs()`, and every " +
+            "mode should define the same names with shared `abs()` and `sqrt()`, with FAST " +
+            "differing from DEFAULT only in `tan()`")
+    void testDefs() {
+        assertEquals(UnaryFunction.mathDefs(), UnaryFunction.mathDefs(MathMode.DEFAULT));
+        for (MathMode mode : MathMode.values()) {
+            Map<String, UnaryFunction> defs = UnaryFunction.mathDefs(mode);
+            assertEquals(UnaryFunction.mathDefs().keySet(), defs.keySet());
+            assertSame(UnaryFunction.ABS, defs.get("abs"));
+            assertSame(UnaryFunction.SQRT, defs.get("sqrt"));
+            assertSame(defs, UnaryFunction.mathDefs(mode));
+        }
+        Map<String, UnaryFunction> fast = UnaryFunction.mathDefs(MathMode.FAST);
+        for (String name : List.of("exp", "log", "sin", "cos")) {
+            assertSame(UnaryFunction.mathDefs().get(name), fast.get(name));
+        }
+        assertNotSame(UnaryFunction.TAN, fast.get("tan"));
+        assertEquals(FastMath.tan(0.7), fast.get("tan").apply(0.7));
+    }
+
+    @Test
+    @DisplayName("STRICT functions should agree exactly with `StrictMath`")
+    void testStrict() {
+        Map<String, UnaryFunction> strict = UnaryFunction.mathDefs(MathMode.STRICT);
+        for (double x : arguments(-50, 50, 10_000)) {
+            assertEquals(StrictMath.exp(x), strict.get("exp").apply(x));
+            assertEquals(StrictMath.log(x), strict.get("log").apply(x));
+            assertEquals(StrictMath.sin(x), strict.get("sin").apply(x));
+            assertEquals(StrictMath.cos(x), strict.get("cos").apply(x));
+            assertEquals(StrictMath.tan(x), strict.get("tan").apply(x));
+        }
+    }
+
+    @Test
+    @DisplayName("FAST functions should stay within their documented errors, in ulps of the " +
+            "strict result")
+    void testFastAccuracy() {
+        Map<String, UnaryFunction> fast = UnaryFunction.mathDefs(MathMode.FAST);
+        Map<String, UnaryFunction> strict = UnaryFunction.mathDefs(MathMode.STRICT);
+        double[] wide = arguments(-1e5, 1e5, 100_000);
+        double[] near = arguments(-4, 4, 100_000);
+        assertTrue(MathAccuracyReport.measure(fast.get("exp"), strict.get("exp"),
+                arguments(-708, 708, 100_000)).maxUlps() <= 1);
+        double[] positive = arguments(-1000, 1000, 100_000);
+        for (int i = 0; i < positive.length; i++) {
+            positive[i] = Math.pow(2, positive[i]);
+        }
+        assertTrue(MathAccuracyReport.measure(fast.get("log"), strict.get("log"), positive)
+                .maxUlps() <= 1);
+        for (double[] xs : List.of(wide, near)) {
+            assertTrue(MathAccuracyReport.measure(fast.get("sin"), strict.get("sin"), xs)
+                    .maxUlps() <= 2);
+            assertTrue(MathAccuracyReport.measure(fast.get("cos"), strict.get("cos"), xs)
+                    .maxUlps() <= 2);
+            assertTrue(MathAccuracyReport.measure(fast.get("tan"), strict.get("tan"), xs)
+                    .maxUlps() <= 4);
+        }
+    }
+
+    @Test
+    @DisplayName("FAST trigonometric functions should stay within their documented errors near " +
+            "multiples of pi/2, where the reduced argument is tiny")
+    void testFastAccuracyNearMultiplesOfHalfPi() {
+        Map<String, UnaryFunction> fast = UnaryFunction.mathDefs(MathMode.FAST);
+        Map<String, UnaryFunction> strict = UnaryFunction.mathDefs(MathMode.STRICT);
+        // The doubles nearest k pi/2, and their neighbors up to 3 ulps away, for every k in range.
+        int maxK = (int) (1e5 * 2 / Math.PI);
+        double[] xs = new double[(2 * maxK + 1) * 7];
+        int i = 0;
+        for (int k = -maxK; k <= maxK; k++) {
+            double x = k * (Math.PI / 2);
+            for (int ulps = 0; ulps < 3; ulps++) {
+                x = Math.nextDown(x);
+            }
+            for (int ulps = -3; ulps <= 3; ulps++) {
+                xs[i++] = x;
+                x = Math.nextUp(x);
+            }
+        }
+        assertTrue(MathAccuracyReport.measure(fast.get("sin"), strict.get("sin"), xs)
+                .maxUlps() <= 2);
+        assertTrue(MathAccuracyReport.measure(fast.get("cos"), strict.get("cos"), xs)
+                .maxUlps() <= 2);
+        assertTrue(MathAccuracyReport.measure(fast.get("tan"), strict.get("tan"), xs)
+                .maxUlps() <= 4);
+        assertEquals(StrictMath.cos(Math.PI / 2), FastMath.cos(Math.PI / 2));
+        assertEquals(StrictMath.sin(100 * Math.PI), FastMath.sin(100 * Math.PI));
+        assertEquals(StrictMath.sin(-46066.74), FastMath.sin(-46066.74),
+                2 * Math.ulp(StrictMath.sin(-46066.74)));
+    }
+
+    @Test
+    @DisplayName("FAST functions should handle special and out-of-range arguments like `Math`")
+    void testFastSpecialValues() {
+        double[] xs = {0.0, -0.0, 1.0, Double.NaN, Double.POSITIVE_INFINITY,
+                Double.NEGATIVE_INFINITY, -1.0, Double.MIN_VALUE, Double.MAX_VALUE, 709.5, -745.0,
+                -800, 1e6, -3e300};
+        for (double x : xs) {
+            assertTrue(MathAccuracyReport.ulps(FastMath.exp(x), Math.exp(x)) <= 2, "exp " + x);
+            assertTrue(MathAccuracyReport.ulps(FastMath.log(x), Math.log(x)) <= 2, "log " + x);
+            assertTrue(MathAccuracyReport.ulps(FastMath.sin(x), Math.sin(x)) <= 2, "sin " + x);
+            assertTrue(MathAccuracyReport.ulps(FastMath.cos(x), Math.cos(x)) <= 2, "cos " + x);
+        }
+        assertEquals(1.0, FastMath.exp(0));
+        assertEquals(0.0, FastMath.log(1));
+        assertEquals(-0.0, FastMath.sin(-0.0));
+        assertEquals(Double.NEGATIVE_INFINITY, FastMath.log(0));
+    }
+
+    @Test
+    @DisplayName("Compiled expressions should call the functions of the mode they were parsed " +
+            "with")
+    void testCompiled()
+            throws IncompleteRpnException, UndefinedFunctionException, UnboundVariableException {
+        VarTable vars = MapVarTable.of("x", 0.7853981633974483);
+        for (MathMode mode : MathMode.values()) {
+            Expression expr = RpnParser.parse("x tan() x exp() * x log() +",
+                    UnaryFunction.mathDefs(mode));
+            CompiledExpression compiled = ExpressionCompiler.compile(expr);
+            assertTrue(compiled.getClass().isHidden());
+            assertEquals(expr.eval(vars), compiled.eval(vars), mode.name());
+        }
+    }
+
+    @Test
+    @DisplayName("A calculator session and a spreadsheet run should evaluate in their selected " +
+            "mode")
+    void testSelection() {
+        PrintStream out = System.out;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            new RpnCalc(MathMode.FAST).doEval(new Scanner("0.3 tan()"));
+            new RpnCalc(MathMode.STRICT).doEval(new Scanner("0.3 tan()"));
+        } finally {
+            System.setOut(out);
+        }
+        assertEquals(FastMath.tan(0.3) + "\n" + StrictMath.tan(0.3) + "\n",
+                printed.toString().replace(System.lineSeparator(), "\n"));
+
+        assertSame(UnaryFunction.mathDefs(), CsvEvaluator.mathDefs());
+        try {
+            System.setProperty("cs2110.math.mode", "fast");
+            assertSame(UnaryFunction.mathDefs(MathMode.FAST), CsvEvaluator.mathDefs());
+            System.setProperty("cs2110.math.mode", "bogus");
+            assertThrows(IllegalArgumentException.class, MathMode::fromSystemProperty);
+        } finally {
+            System.clearProperty("cs2110.math.mode");
+        }
+    }
+}
+
+class FloatBatchEvaluatorTest {
+
+    /**
+     * Return a table binding `x` and `y` to `rows` pseudo-random values in [-10, 10).
+     */
+    private static ColumnTable randomColumns(int rows) {
+        Random random = new Random(2110);
+        ColumnTable columns = new ColumnTable(rows);
+        for (String name : List.of("x", "y")) {
+            double[] column = new double[rows];
+            for (int i = 0; i < rows; i++) {
+                column[i] = 20 * random.nextDouble() - 10;
+            }
+            columns.set(name, column);
+        }
+        return columns;
+    }
+
+    @Test
+    @DisplayName("Narrowing a table should round every value to float and keep its shape")
+    void testNarrow() throws UnboundVariableException {
+        ColumnTable columns = new ColumnTable(3);
+        columns.set("x", new double[]{0.1, -2.5, 1e300});
+        FloatColumnTable narrowed = FloatColumnTable.narrow(columns);
+        assertEquals(3, narrowed.rows());
+        assertEquals(Set.of("x"), narrowed.names());
+        assertArrayEquals(new float[]{0.1f, -2.5f, Float.POSITIVE_INFINITY}, narrowed.get("x"));
+        assertThrows(UnboundVariableException.class, () -> narrowed.get("y"));
+        assertThrows(IllegalArgumentException.class, () -> narrowed.set("y", new float[2]));
+    }
+
+    @Test
+    @DisplayName("Arithmetic should be carried out in float, matching a per-row float " +
+            "evaluation exactly, across several blocks")
+    void testFloatArithmetic() throws Exception {
+        Expression expr = RpnParser.parse("x y * 3 + x 0.5 y - / - y abs() sqrt() *",
+                UnaryFunction.mathDefs());
+        int rows = 3 * 100 + 7;
+        FloatColumnTable columns = FloatColumnTable.narrow(randomColumns(rows));
+        float[] out = new float[rows];
+        new FloatBatchEvaluator(100).eval(expr, columns, out);
+        float[] xs = columns.get("x");
+        float[] ys = columns.get("y");
+        for (int i = 0; i < rows; i++) {
+            float x = xs[i];
+            float y = ys[i];
+            float expected = (x * y + 3f - x / (0.5f - y)) * (float) Math.sqrt(Math.abs(y));
+            assertEquals(expected, out[i], "row " + i);
+        }
+    }
+
+    @Test
+    @DisplayName("Other operators and functions should be computed in double and rounded")
+    void testRoundedFunctions() throws Exception {
+        Expression expr = RpnParser.parse("x sin() y 2 ^ +", UnaryFunction.mathDefs());
+        FloatColumnTable columns = FloatColumnTable.narrow(randomColumns(50));
+        float[] out = new float[50];
+        new FloatBatchEvaluator().eval(expr, columns, out);
+        for (int i = 0; i < 50; i++) {
+            float x = columns.get("x")[i];
+            float y = columns.get("y")[i];
+            assertEquals((float) Math.sin(x) + (float) Math.pow(y, 2), out[i]);
+        }
+        assertThrows(UnboundVariableException.class, () -> new FloatBatchEvaluator().eval(
+                RpnParser.parse("z", Map.of()), columns, out));
+    }
+
+    @Test
+    @DisplayName("The precision check should find float safe for well-conditioned expressions " +
+            "and unsafe under cancellation or overflow")
+    void testPrecisionCheck() throws Exception {
+        ColumnTable columns = randomColumns(10_000);
+        FloatPrecisionCheck good = FloatPrecisionCheck.check(
+                RpnParser.parse("x x * y y * + 1 +", Map.of()), columns, 500, new Random(1));
+        assertEquals(500, good.samples());
+        assertTrue(good.isSafe());
+        assertTrue(good.maxRelativeError() > 0);
+        assertTrue(good.meanRelativeError() <= good.maxRelativeError());
+
+        FloatPrecisionCheck cancelling = FloatPrecisionCheck.check(
+                RpnParser.parse("x 1e-6 + x - 1e-6 /", Map.of()), columns, 500, new Random(1));
+        assertFalse(cancelling.isSafe());
+        int worst = cancelling.worstRow();
+        assertTrue(worst >= 0 && worst < columns.rows());
+
+        FloatPrecisionCheck overflowing = FloatPrecisionCheck.check(
+                RpnParser.parse("x 1e30 * 1e30 *", Map.of()), columns, 10, new Random(1));
+        assertEquals(Double.POSITIVE_INFINITY, overflowing.maxRelativeError());
+
+        ColumnTable small = new ColumnTable(3);
+        small.set("x", new double[]{1, 2, 3});
+        assertEquals(3, FloatPrecisionCheck.check(RpnParser.parse("x 2 *", Map.of()), small, 100,
+                new Random(1)).samples());
+        assertThrows(UnboundVariableException.class, () -> FloatPrecisionCheck.check(
+                RpnParser.parse("z", Map.of()), small, 10, new Random(1)));
+    }
+
+    @Test
+    @DisplayName("A single-precision tabulation should write float ordinates at exact abscissas")
+    void testTabulate() throws Exception {
+        Expression expr = RpnParser.parse("x 3 /", Map.of());
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Tabulator(new FloatBatchEvaluator()).tabulate(expr, "x", 0, 1, 3, out,
+                Tabulator.Format.TEXT);
+        assertEquals("0.0 0.0\n0.5 0.16666667\n1.0 0.33333334\n", out.toString());
+
+        out.reset();
+        new Tabulator(new FloatBatchEvaluator()).tabulate(expr, "x", 0, 1, 3, out,
+                Tabulator.Format.BINARY);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        in.readDouble();
+        in.readDouble();
+        assertEquals(0.5, in.readDouble());
+        assertEquals((double) (0.5f / 3f), in.readDouble());
+    }
+
+    @Test
+    @DisplayName("The tabulate command should report single-precision error with --float and " +
+            "reject combining it with --adaptive")
+    void testCommand() {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            System.setErr(new PrintStream(errors, true));
+            RpnCalc calc = new RpnCalc();
+            calc.doTabulate(new Scanner("--float x 0 1 2 x 4 *"));
+            calc.doTabulate(new Scanner("--float x 1 2 3 x 1e-9 + x -"));
+            calc.doTabulate(new Scanner("--float --adaptive 0.1 x 0 1 3"));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        assertTrue(printed.toString().replace(System.lineSeparator(), "\n")
+                .startsWith("0.0 0.0\n1.0 4.0\n"));
+        String[] lines = errors.toString().split(System.lineSeparator());
+        assertEquals("Single precision: max relative error 0.0 over 2 sampled abscissa", lines[0]);
+        assertTrue(lines[2].startsWith("Warning: exceeds"));
+        assertEquals("--float cannot be combined with --adaptive", lines[3]);
+    }
+}
@@ -2,9 +2,23 @@ package cs2110;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.FileReader;
 import java.io.IOException;
 import java.io.StringReader;
+import java.io.UncheckedIOException;
+import java.math.BigDecimal;
+import java.math.MathContext;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import org.apache.commons.csv.CSVFormat;
+import org.apache.commons.csv.CSVParser;
+import org.apache.commons.csv.CSVRecord;
 import org.apache.commons.csv.QuoteMode;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -119,12 +133,241 @@ class CsvEvaluatorTest {
         assertEquals(expected, output.toString());
     }
 
+    @Test
+    @DisplayName("Formulas referencing cells that are not yet evaluated, out of bounds, or not " +
+            "cell names should evaluate to #N/A.")
+    void testEvaluateCsvUnavailableRefs() throws IOException {
+        String input = "1,=B2,=A1 x +,=A0,=A01\n" +
+                "2,=A1 A2 + sqrt() ZZ999 *,=A2 A1 -\n";
+        String expected = "1,#N/A,#N/A,#N/A,#N/A\n"
+                + "2,#N/A,1.0\n";
+
+        StringBuilder output = new StringBuilder();
+        CsvEvaluator.evaluateCsv(CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(input)),
+                CsvEvaluator.SIMPLIFIED_CSV.print(output));
+        assertEquals(expected, output.toString());
+    }
+
+    @Test
+    @DisplayName("Formulas raising an unavailable cell to the power 0 should still evaluate to " +
+            "#N/A")
+    void testEvaluateCsvUnavailableZeroPower() throws IOException {
+        String input = "1,=E0 0 ^,=E2 1 * 0 ^ -1 +,=A1 0 ^\n";
+        String expected = "1,#N/A,#N/A,1.0\n";
+
+        StringBuilder output = new StringBuilder();
+        CsvEvaluator.evaluateCsv(CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(input)),
+                CsvEvaluator.SIMPLIFIED_CSV.print(output));
+        assertEquals(expected, output.toString());
+    }
+
+    @Test
+    @DisplayName("Cell names should decode to their row and column, and other names should be " +
+            "rejected")
+    void testCellCoordinates() {
+        assertEquals(CellGrid.coordinates(4, 2), CellGrid.coordinates("B4"));
+        assertEquals(CellGrid.coordinates(10, 28), CellGrid.coordinates("AB10"));
+        assertEquals(CellGrid.coordinates(1, 16384), CellGrid.coordinates("XFD1"));
+        for (String name : new String[]{"", "B", "4", "b4", "B04", "B0", "B4x", "4B"}) {
+            assertEquals(-1, CellGrid.coordinates(name), name);
+        }
+    }
+
+    @Test
+    @DisplayName("A CellGrid should store values by coordinates and agree with lookups by name")
+    void testCellGrid() throws UnboundVariableException {
+        CellGrid cells = new CellGrid();
+        cells.set(3, 2, 1.5);
+        cells.set("AA100", -2);
+        assertEquals(1.5, cells.get("B3"));
+        assertEquals(-2.0, cells.get(100, 27));
+        assertEquals(2, cells.size());
+        assertTrue(cells.contains("B3"));
+        assertFalse(cells.contains(3, 3));
+        assertThrows(UnboundVariableException.class, () -> cells.get(2, 2));
+        assertThrows(UnboundVariableException.class, () -> cells.get("x"));
+        assertThrows(IllegalArgumentException.class, () -> cells.set("x", 1));
+
+        cells.unset("B3");
+        assertFalse(cells.contains(3, 2));
+        assertEquals(1, cells.size());
+        assertEquals(Set.of("AA100"), cells.names());
+    }
+
+    @Test
+    @DisplayName("Formulas filled down a column should share one cached shape and evaluate " +
+            "relative to their own row, both before and after the shape is compiled")
+    void testFormulaCacheFillDown() throws IOException {
+        StringBuilder input = new StringBuilder();
+        StringBuilder expected = new StringBuilder();
+        for (int row = 1; row <= 3 * FormulaCache.COMPILE_THRESHOLD; row++) {
+            input.append(row).append(',').append(row + 0.5)
+                    .append(",=A").append(row).append(" B").append(row).append(" *\n");
+            expected.append(row).append(',').append(row + 0.5).append(',')
+                    .append(row * (row + 0.5)).append('\n');
+        }
+        FormulaCache cache = new FormulaCache(4, UnaryFunction.mathDefs());
+
+        StringBuilder output = new StringBuilder();
+        CsvEvaluator.evaluateCsv(
+                CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(input.toString())),
+                CsvEvaluator.SIMPLIFIED_CSV.print(output), cache);
+        assertEquals(expected.toString(), output.toString());
+        assertEquals(1, cache.size());
+        assertEquals(1, cache.misses());
+        assertEquals(3 * FormulaCache.COMPILE_THRESHOLD - 1, cache.hits());
+    }
+
+    @Test
+    @DisplayName("A formula cache should distinguish formulas by relative shape, report missing " +
+            "cells as unbound, and evict its least recently used shape when full")
+    void testFormulaCache() throws Exception {
+        FormulaCache cache = new FormulaCache(2, UnaryFunction.mathDefs());
+        assertEquals(FormulaCache.relativeForm("A1  B2 +", 2, 2),
+                FormulaCache.relativeForm("B2 C3\t+", 3, 3));
+        assertNotEquals(FormulaCache.relativeForm("A1 2 +", 2, 2),
+                FormulaCache.relativeForm("A1 B2 +", 2, 2));
+
+        CellGrid cells = new CellGrid();
+        cells.set(1, 1, 3);
+        FormulaCache.Shape shape = cache.get("A1 2 *", 1, 2);
+        assertEquals(6.0, shape.eval(cells, 1, 2));
+        assertSame(shape, cache.get("B2 2 *", 2, 3));
+        assertThrows(UnboundVariableException.class, () -> shape.eval(cells, 2, 3));
+        assertThrows(UnboundVariableException.class,
+                () -> cache.get("A1 x +", 1, 2).eval(cells, 1, 2));
+        assertThrows(UndefinedFunctionException.class, () -> cache.get("A1 nope()", 1, 2));
+        assertThrows(IncompleteRpnException.class, () -> cache.get("A1 +", 1, 2));
+
+        // "A1 x +" is now the most recently used shape, so adding a third evicts "A1 2 *".
+        cache.get("A1 3 *", 1, 2);
+        assertEquals(2, cache.size());
+        assertNotSame(shape, cache.get("A1 2 *", 1, 2));
+    }
+
+    @Test
+    @DisplayName("Cached shapes should share one arena until evicted formulas fill it, and " +
+            "every shape, including evicted ones, should evaluate correctly before and after " +
+            "it is compiled")
+    void testFormulaCacheArena() throws Exception {
+        FormulaCache cache = new FormulaCache(2, UnaryFunction.mathDefs());
+        CellGrid cells = new CellGrid();
+        cells.set(1, 1, 3);
+        cells.set(1, 2, 5);
+        FormulaCache.Shape[] shapes = new FormulaCache.Shape[8];
+        for (int k = 0; k < shapes.length; k++) {
+            shapes[k] = cache.get("B1 A1 - " + k + " *", 2, 1);
+        }
+        assertSame(shapes[0].arena(), shapes[3].arena());
+        assertNotSame(shapes[3].arena(), shapes[4].arena());
+        assertEquals(4, shapes[0].arena().size());
+        assertEquals(2, shapes[0].arena().slots().size());
+
+        for (int use = 0; use < 2 * FormulaCache.COMPILE_THRESHOLD; use++) {
+            for (int k = 0; k < shapes.length; k++) {
+                assertEquals(2.0 * k, shapes[k].eval(cells, 2, 1));
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("Parallel evaluation should produce exactly the same output as serial " +
+            "evaluation, including #N/A for references to later, non-numeric, or failed cells")
+    void testEvaluateCsvParallel() throws IOException {
+        String[] formulas = {"=A%d B%d *", "=C%d A%d -", "=D%d sqrt()", "=E%d F%d +",
+                "=C%2$d", "=x", "=A1 B%d / G%d +", "=D%d E%d +", "=nope", "=A%d H%d *"};
+        Random random = new Random(2110);
+        StringBuilder input = new StringBuilder("1,2,=A1 B1 +,text,=D1 1 +\n");
+        for (int row = 2; row <= 2000; row++) {
+            input.append(row).append(',').append(random.nextDouble());
+            for (int column = 3; column <= 8; column++) {
+                int previous = Math.max(1, row - random.nextInt(3));
+                input.append(',').append(String.format(
+                        formulas[random.nextInt(formulas.length)], row, previous));
+            }
+            input.append('\n');
+        }
+
+        StringBuilder serial = new StringBuilder();
+        CsvEvaluator.evaluateCsv(
+                CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(input.toString())),
+                CsvEvaluator.SIMPLIFIED_CSV.print(serial));
+        StringBuilder parallel = new StringBuilder();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            CsvEvaluator.evaluateCsvParallel(
+                    CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(input.toString())),
+                    CsvEvaluator.SIMPLIFIED_CSV.print(parallel), pool);
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(serial.toString(), parallel.toString());
+        assertTrue(serial.toString().startsWith("1,2,3.0,text,#N/A\n"));
+    }
+
+    @Test
+    @DisplayName("Evaluating a sheet as one DAG should produce exactly the same output as " +
+            "serial evaluation, computing subexpressions shared across formulas once")
+    void testEvaluateCsvShared() throws IOException {
+        String pizza = "Ingredient,Quantity,Unit\nDough per pizza,250,g\nSalt per pizza,5,g\n"
+                + "Number of pizzas,3,pizzas\nHydration,0.67,ratio\nPoolish ratio,1,ratio\n"
+                + "Poolish per constituent,=610 300 /,ratio\n,,\n"
+                + "Poolish,=B7 B2 B3 - * B4 * B5 * B6 * 1 B5 + /,g\n"
+                + "Water,=B9 B7 / 1 B6 / 1 - *,mL\n"
+                + "Flour,=B9 B7 / 1 B5 B6 * / 1 - *,g\n,,\n"
+                + "Flour/water in poolish,=B9 B7 /,g\n"
+                + "Honey/salt in poolish,=B9 2 B13 * - 2 /,g\n"
+                + "Forward,=B16 1 +,\nText,=A1 1 +,\nUnknown,=x 1 +,\nBroken,=B2 +,\n";
+        StringBuilder serial = new StringBuilder();
+        CsvEvaluator.evaluateCsv(CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(pizza)),
+                CsvEvaluator.SIMPLIFIED_CSV.print(serial));
+        StringBuilder shared = new StringBuilder();
+        int nodes = new SharedSheetEvaluator(UnaryFunction.mathDefs()).evaluate(
+                readRecords(pizza), CsvEvaluator.SIMPLIFIED_CSV.print(shared));
+        assertEquals(serial.toString(), shared.toString());
+        // B9 B7 / (and the formulas of B9 and B7 themselves, which are substituted for their
+        // references) is computed once for all of the formulas using it: 27 distinct nodes
+        // instead of the 140 of the formulas written out in full.
+        assertEquals(27, nodes);
+
+        String[] formulas = {"=A%d B%d *", "=C%d A%d -", "=D%d sqrt()", "=E%d F%d +",
+                "=C%2$d", "=x", "=A1 B%d / G%d +", "=D%d E%d +", "=nope", "=A%d H%d *"};
+        Random random = new Random(2110);
+        StringBuilder input = new StringBuilder("1,2,=A1 B1 +,text,=D1 1 +\n");
+        for (int row = 2; row <= 300; row++) {
+            input.append(row).append(',').append(random.nextDouble());
+            for (int column = 3; column <= 8; column++) {
+                int previous = Math.max(1, row - random.nextInt(3));
+                input.append(',').append(String.format(
+                        formulas[random.nextInt(formulas.length)], row, previous));
+            }
+            input.append('\n');
+        }
+        serial = new StringBuilder();
+        CsvEvaluator.evaluateCsv(
+                CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(input.toString())),
+                CsvEvaluator.SIMPLIFIED_CSV.print(serial));
+        shared = new StringBuilder();
+        CsvEvaluator.evaluateCsvShared(
+                CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(input.toString())),
+                CsvEvaluator.SIMPLIFIED_CSV.print(shared));
+        assertEquals(serial.toString(), shared.toString());
+    }
+
+    /**
+     * Return the records of the spreadsheet `text`.
+     */
+    private static List<String[]> readRecords(String text) throws IOException {
+        List<String[]> records = new ArrayList<>();
+        for (CSVRecord record : CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(text))) {
+            records.add(record.values());
+        }
+        return records;
+    }
+
     // Not yet tested:
     // * Formulas with known function applications: correct evaluation
     // * Formulas with unknown function applications: #N/A
-    // * Formulas with future cell references (to numbers or other formulas): #N/A
-    // * Formulas with out-of-bounds cell references: #N/A
-    // * Formulas with variables that do not correspond to a cell coordinate: #N/A
     // * Formulas containing an incomplete RPN expression: #N/A
     //
     // TODO: The autograder will test your code under these conditions.  It is up to you to decide
@@ -133,3 +376,267 @@ class CsvEvaluatorTest {
 
 
 }
+
+class SimplifiedCsvReaderTest {
+
+    /**
+     * Return the records of `input` as read by a SimplifiedCsvReader.
+     */
+    static List<List<String>> readAll(String input) throws IOException {
+        SimplifiedCsvReader reader = new SimplifiedCsvReader(
+                ByteBuffer.wrap(input.getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8);
+        List<List<String>> records = new ArrayList<>();
+        while (reader.nextRecord()) {
+            records.add(List.of(reader.values()));
+        }
+        return records;
+    }
+
+    /**
+     * Return the records of `input` as read by Commons CSV using `SIMPLIFIED_CSV`.
+     */
+    static List<List<String>> readAllCommons(String input) throws IOException {
+        List<List<String>> records = new ArrayList<>();
+        for (CSVRecord record : CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(input))) {
+            records.add(List.of(record.values()));
+        }
+        return records;
+    }
+
+    @Test
+    @DisplayName("The reader should split records and cells exactly as Commons CSV does, " +
+            "including escapes, quotes, empty cells, and all record separators")
+    void testMatchesCommons() throws IOException {
+        String[] inputs = {"", "\n", "a", "a,", ",\n,", "a,b\nc\r\nd\re\n\n", "1,=A1 2 *\n",
+                "a\\,b,c\\\\d,\\n\\t\\x,\\\"q\n", "a\\\nb,c", "\"q,\"\"x\"\"\",y\n", "\"a\"  ,b",
+                "p\"q\",r", "h\u00e9llo,\\\u00e9,\"\u00fc\"\n"};
+        for (String input : inputs) {
+            assertEquals(readAllCommons(input), readAll(input), input);
+        }
+
+        Random random = new Random(2110);
+        String alphabet = "ab1.=,,\n\r\\\\\"  \u00e9";
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder input = new StringBuilder();
+            for (int j = random.nextInt(30); j > 0; j--) {
+                input.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            String text = input.toString();
+            List<List<String>> expected;
+            try {
+                expected = readAllCommons(text);
+            } catch (IOException | UncheckedIOException e) {
+                assertThrows(IOException.class, () -> readAll(text), text);
+                continue;
+            }
+            assertEquals(expected, readAll(text), text);
+        }
+    }
+
+    @Test
+    @DisplayName("Cells should be readable as CharSequences without converting them to Strings")
+    void testCellViews() throws IOException {
+        SimplifiedCsvReader reader = new SimplifiedCsvReader(
+                ByteBuffer.wrap("12.5,=A1 B1 +,x\\,y\n".getBytes(StandardCharsets.UTF_8)),
+                StandardCharsets.UTF_8);
+        assertTrue(reader.nextRecord());
+        assertEquals(3, reader.size());
+        CharSequence formula = reader.cell(1);
+        assertEquals('=', formula.charAt(0));
+        assertEquals(8, formula.length());
+        assertEquals("A1", formula.subSequence(1, 3).toString());
+        assertEquals("x,y", reader.cell(2).toString());
+        assertThrows(IndexOutOfBoundsException.class, () -> reader.cell(0).charAt(4));
+        assertFalse(reader.nextRecord());
+    }
+
+    @Test
+    @DisplayName("Evaluating a mapped file should produce the same output as evaluating it " +
+            "through Commons CSV")
+    void testEvaluateMappedFile() throws IOException {
+        Path file = Path.of("pizza.csv");
+        StringBuilder expected = new StringBuilder();
+        try (FileReader in = new FileReader(file.toFile());
+                CSVParser parser = CsvEvaluator.SIMPLIFIED_CSV.parse(in)) {
+            CsvEvaluator.evaluateCsv(parser, CsvEvaluator.SIMPLIFIED_CSV.print(expected));
+        }
+        StringBuilder output = new StringBuilder();
+        try (SimplifiedCsvReader reader = SimplifiedCsvReader.open(file)) {
+            CsvEvaluator.evaluateCsv(reader, CsvEvaluator.SIMPLIFIED_CSV.print(output),
+                    new FormulaCache(16, UnaryFunction.mathDefs()));
+        }
+        assertEquals(expected.toString(), output.toString());
+    }
+}
+
+class NumberParsingTest {
+
+    @Test
+    @DisplayName("isDouble() should accept exactly the strings that Double.parseDouble() accepts")
+    void testIsDouble() {
+        String[] numbers = {"1", "1.", "1.5", "-.5", "+0", "1e5", "1E+5", "1e-5d", "0x1p3",
+                "0X1.8P-1f", " 7 ", "NaN", "-Infinity", "1f", "00012.5000", "\t2\n"};
+        String[] nonNumbers = {"", ".", " ", "e5", "1e", "1e+", "x", "0x1", "0x.p1", "NaN1",
+                "1ff", "1.5.", "--1", "1e5.0", "0x1p", "Inf", "1 2", "#N/A", "A1"};
+        for (String number : numbers) {
+            assertTrue(NumberParser.isDouble(number), number);
+            assertEquals(Double.parseDouble(number), NumberParser.parseDouble(number), number);
+        }
+        for (String nonNumber : nonNumbers) {
+            assertFalse(NumberParser.isDouble(nonNumber), nonNumber);
+            assertThrows(NumberFormatException.class, () -> NumberParser.parseDouble(nonNumber));
+        }
+        assertTrue(NumberParser.isDouble("x=1.5;", 2, 5));
+        assertEquals(1.5, NumberParser.parseDouble("x=1.5;", 2, 5));
+    }
+
+    @Test
+    @DisplayName("parseDouble() should produce the same value as Double.parseDouble(), both on " +
+            "the fast path and for numbers too long or too large for it")
+    void testParseDouble() {
+        Random random = new Random(2110);
+        for (int i = 0; i < 100000; i++) {
+            double x = i % 2 == 0 ? Double.longBitsToDouble(random.nextLong())
+                    : random.nextInt(2000000) / Math.pow(10, random.nextInt(10));
+            String text = i % 3 == 0 || !Double.isFinite(x) ? Double.toString(x)
+                    : BigDecimal.valueOf(x).round(new MathContext(1 + random.nextInt(20)))
+                            .toString();
+            assertEquals(Double.parseDouble(text), NumberParser.parseDouble(text), text);
+        }
+        assertEquals(-0.0, NumberParser.parseDouble("-0.000"));
+        assertEquals(0.1, NumberParser.parseDouble("1e-1"));
+        assertEquals(1e23, NumberParser.parseDouble("1e23"));
+        assertEquals(9007199254740993.0, NumberParser.parseDouble("9007199254740993"));
+        assertEquals(1e19, NumberParser.parseDouble("9999999999999999999"));
+        assertEquals(9223372036854775807.0, NumberParser.parseDouble("9223372036854775807"));
+        assertEquals(9223372036854775808.0, NumberParser.parseDouble("9223372036854775808"));
+        assertEquals(-9.223372036854775809e18, NumberParser.parseDouble("-9223372036854775809"));
+        assertEquals(1.8446744073709552e19, NumberParser.parseDouble("18446744073709551616"));
+    }
+
+    @Test
+    @DisplayName("NumberFormatter should format values exactly as Double.toString() does")
+    void testNumberFormatter() {
+        NumberFormatter formatter = new NumberFormatter();
+        double[] values = {0, -0.0, 1, -1, 0.1, 0.001, 0.0009999, 1e7, 9999999.999999998, 12.5,
+                1234567.125, Double.NaN, Double.POSITIVE_INFINITY, Double.MIN_VALUE, 1e23};
+        for (double x : values) {
+            assertEquals(Double.toString(x), formatter.format(x).toString());
+        }
+
+        Random random = new Random(2110);
+        for (int i = 0; i < 100000; i++) {
+            double x;
+            if (i % 3 == 0) {
+                x = Double.longBitsToDouble(random.nextLong());
+            } else if (i % 3 == 1) {
+                x = (random.nextInt(2000000) - 1000000) / Math.pow(10, random.nextInt(8));
+            } else {
+                x = random.nextDouble() * Math.pow(10, random.nextInt(12) - 4);
+            }
+            assertEquals(Double.toString(x), formatter.format(x).toString());
+        }
+    }
+}
+
+class IncrementalSheetTest {
+
+    /**
+     * Return the serial evaluation of the spreadsheet `records`.
+     */
+    static String evaluate(List<String[]> records) throws IOException {
+        StringBuilder input = new StringBuilder();
+        for (String[] record : records) {
+            input.append(String.join(",", record)).append('\n');
+        }
+        StringBuilder output = new StringBuilder();
+        CsvEvaluator.evaluateCsv(
+                CsvEvaluator.SIMPLIFIED_CSV.parse(new StringReader(input.toString())),
+                CsvEvaluator.SIMPLIFIED_CSV.print(output));
+        return output.toString();
+    }
+
+    /**
+     * Return the output of `sheet`.
+     */
+    static String print(IncrementalSheet sheet) throws IOException {
+        StringBuilder output = new StringBuilder();
+        sheet.print(CsvEvaluator.SIMPLIFIED_CSV.print(output));
+        return output.toString();
+    }
+
+    @Test
+    @DisplayName("Changing one input should recompute only that cell and the formulas that " +
+            "depend on it, directly or indirectly")
+    void testRecomputesDependents() throws IOException {
+        IncrementalSheet sheet = new IncrementalSheet(
+                new FormulaCache(16, UnaryFunction.mathDefs()));
+        List<String[]> records = new ArrayList<>();
+        records.add(new String[]{"1", "2", "=A1 B1 +"});
+        records.add(new String[]{"3", "4", "=A2 B2 +"});
+        records.add(new String[]{"=C1 C2 +", "text", "=A3 2 *"});
+        assertEquals(9, sheet.update(records));
+        assertEquals(evaluate(records), print(sheet));
+
+        List<String[]> edited = new ArrayList<>(records);
+        edited.set(0, new String[]{"10", "2", "=A1 B1 +"});
+        assertEquals(4, sheet.update(edited));
+        assertEquals(evaluate(edited), print(sheet));
+        assertTrue(print(sheet).endsWith("19.0,text,38.0\n"));
+
+        // Rewriting a number without changing its value stops the recomputation there.
+        List<String[]> reformatted = new ArrayList<>(edited);
+        reformatted.set(1, new String[]{"3.0", "4", "=A2 B2 +"});
+        assertEquals(1, sheet.update(reformatted));
+        assertEquals(evaluate(reformatted), print(sheet));
+
+        assertEquals(0, sheet.update(reformatted));
+    }
+
+    @Test
+    @DisplayName("After any sequence of edits, including adding and removing cells and rows, " +
+            "the output should match evaluating the sheet from scratch")
+    void testRandomEdits() throws IOException {
+        String[] contents = {"1", "2.5", "-3", "text", "", "=A%d B%d *", "=C%2$d 1 +",
+                "=A1 B%d /", "=D%d sqrt()", "=E%d", "=x", "=A%d H%d -"};
+        Random random = new Random(2110);
+        List<String[]> records = new ArrayList<>();
+        for (int row = 1; row <= 40; row++) {
+            records.add(randomRecord(random, contents, row));
+        }
+        IncrementalSheet sheet = new IncrementalSheet(
+                new FormulaCache(16, UnaryFunction.mathDefs()));
+        sheet.update(records);
+        assertEquals(evaluate(records), print(sheet));
+
+        for (int edit = 0; edit < 200; edit++) {
+            records = new ArrayList<>(records);
+            int row = random.nextInt(records.size() + 1);
+            if (row == records.size()) {
+                records.add(randomRecord(random, contents, row + 1));
+            } else if (random.nextInt(10) == 0 && records.size() > 1) {
+                records.remove(records.size() - 1);
+            } else {
+                String[] record = records.get(row).clone();
+                int column = random.nextInt(record.length);
+                record[column] = String.format(contents[random.nextInt(contents.length)],
+                        row + 1, Math.max(1, row + 1 - random.nextInt(3)));
+                records.set(row, record);
+            }
+            sheet.update(records);
+            assertEquals(evaluate(records), print(sheet));
+        }
+    }
+
+    /**
+     * Return a record of 4 to 8 cells chosen from `contents`, formatted for row `row`.
+     */
+    static String[] randomRecord(Random random, String[] contents, int row) {
+        String[] record = new String[4 + random.nextInt(5)];
+        for (int column = 0; column < record.length; column++) {
+            record[column] = String.format(contents[random.nextInt(contents.length)], row,
+                    Math.max(1, row - random.nextInt(3)));
+        }
+        return record;
+    }
+}
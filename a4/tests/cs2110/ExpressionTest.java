@@ -1,5 +1,13 @@
 package cs2110;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Scanner;
 import java.util.Set;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
@@ -368,6 +376,45 @@ class OperationExpressionTest {
         assertEquals(new Constant(4.74),expr2.optimize(MapVarTable.empty()));
 
     }
+
+    @Test
+    @DisplayName("Optimizing an Operation node should return the same node for subtrees that do " +
+            "not change, and fold the ones that do")
+    void testOptimizeSharing() throws Exception {
+        Operation expr = (Operation) RpnParser.parse("x y + z 6 * sqrt() -",
+                UnaryFunction.mathDefs());
+        assertSame(expr, expr.optimize(MapVarTable.empty()));
+
+        Operation opt = (Operation) expr.optimize(MapVarTable.of("z", 6));
+        assertSame(expr.leftOperand(), opt.leftOperand());
+        assertEquals(new Constant(6), opt.rightOperand());
+    }
+
+    @Test
+    @DisplayName("Optimizing a large expression with unbound variables should never look up a " +
+            "variable that is not in the var table")
+    void testOptimizeWithoutLookups() {
+        Expression expr = new Variable("x0");
+        for (int i = 1; i < 2000; i++) {
+            Expression term = new Application(UnaryFunction.SIN,
+                    new Operation(Operator.MULTIPLY, new Constant(i + 0.5), new Variable("x" + i)));
+            expr = new Operation(Operator.ADD, expr, term);
+        }
+        int[] misses = new int[1];
+        VarTable vars = new MapVarTable() {
+            @Override
+            public double get(String name) throws UnboundVariableException {
+                if (!contains(name)) {
+                    misses[0]++;
+                }
+                return super.get(name);
+            }
+        };
+        vars.set("x7", 0);
+        Expression opt = expr.optimize(vars);
+        assertEquals(0, misses[0]);
+        assertEquals(expr.opCount() - 2, opt.opCount());
+    }
 }
 
 class ApplicationExpressionTest {
@@ -493,6 +540,17 @@ class ApplicationExpressionTest {
     }
 
 
+    @Test
+    @DisplayName("An Application node should not equal other kinds of objects, and equal " +
+            "Application nodes should have equal hash codes")
+    void testEqualsOtherAndHashCode() {
+        Expression expr1 = new Application(UnaryFunction.SQRT, new Variable("x"));
+        Expression expr2 = new Application(UnaryFunction.SQRT, new Variable("x"));
+        assertFalse(expr1.equals(new Variable("x")));
+        assertFalse(expr1.equals(null));
+        assertEquals(expr1.hashCode(), expr2.hashCode());
+    }
+
     @Test
     @DisplayName("An Application node has the same dependencies as its argument")
     void testDependencies() {
@@ -526,3 +584,391 @@ class ApplicationExpressionTest {
     }
 
 }
+
+class ExpressionInterningTest {
+
+    @Test
+    @DisplayName("Equal expressions of every node type should have equal hash codes")
+    void testHashCodes() throws Exception {
+        String[] formulas = {"x y * x y * +", "2 x ^ sqrt() 0 -", "1.5", "z"};
+        for (String formula : formulas) {
+            Expression expr1 = RpnParser.parse(formula, UnaryFunction.mathDefs());
+            Expression expr2 = RpnParser.parse(formula, UnaryFunction.mathDefs());
+            assertNotSame(expr1, expr2);
+            assertEquals(expr1, expr2);
+            assertEquals(expr1.hashCode(), expr2.hashCode());
+        }
+        assertEquals(new Constant(0.0).hashCode(), new Constant(-0.0).hashCode());
+    }
+
+    @Test
+    @DisplayName("Interning should share repeated subexpressions within and across expressions, " +
+            "but keep constants with different bits apart")
+    void testIntern() throws Exception {
+        ExpressionInterner interner = new ExpressionInterner();
+        String formula = "B9 B7 / 2 * B9 B7 / sqrt() +";
+        Operation expr = (Operation) RpnParser.parse(formula, 0, formula.length(),
+                UnaryFunction.mathDefs(), interner);
+        Expression ratio = ((Operation) expr.leftOperand()).leftOperand();
+        assertSame(ratio, ((Application) expr.rightOperand()).argument());
+        // B9, B7, B9 B7 /, 2, * , sqrt(), +
+        assertEquals(7, interner.size());
+
+        Expression other = interner.intern(RpnParser.parse("B9 B7 / 3 -", Map.of()));
+        assertSame(ratio, ((Operation) other).leftOperand());
+        assertSame(expr, interner.intern(RpnParser.parse(formula, UnaryFunction.mathDefs())));
+        assertNotSame(interner.constant(0.0), interner.constant(-0.0));
+        assertSame(interner.constant(Double.NaN), interner.constant(Double.NaN));
+    }
+
+    @Test
+    @DisplayName("A DAG should evaluate each shared node once and give the same values as " +
+            "evaluating the trees")
+    void testDagEval() throws Exception {
+        ExpressionInterner interner = new ExpressionInterner();
+        List<Expression> roots = new ArrayList<>();
+        for (String formula : new String[]{"x y + x y + *", "x y + sqrt() 1 -", "x 1 - abs()"}) {
+            roots.add(RpnParser.parse(formula, 0, formula.length(), UnaryFunction.mathDefs(),
+                    interner));
+        }
+        ExpressionDag dag = new ExpressionDag(roots);
+        // x, y, x y +, *, sqrt(), 1, -, x 1 -, abs()
+        assertEquals(9, dag.nodeCount());
+
+        int[] calls = new int[1];
+        VarTable vars = new MapVarTable() {
+            @Override
+            public double get(String name) throws UnboundVariableException {
+                calls[0]++;
+                return super.get(name);
+            }
+        };
+        vars.set("x", 3);
+        vars.set("y", 1.5);
+        double[] out = new double[3];
+        dag.evalAll(vars, out);
+        assertEquals(2, calls[0]);
+        for (int i = 0; i < roots.size(); i++) {
+            assertEquals(roots.get(i).eval(vars), out[i]);
+        }
+        assertEquals(20.25, new ExpressionDag(roots.get(0)).eval(vars));
+        assertThrows(UnboundVariableException.class,
+                () -> dag.evalAll(MapVarTable.of("x", 1), out));
+    }
+}
+
+class SimplifierTest {
+
+    /**
+     * Return the infix form of `formula` simplified by `simplifier`.
+     */
+    private static String simplified(Simplifier simplifier, String formula) throws Exception {
+        return simplifier.simplify(RpnParser.parse(formula, UnaryFunction.mathDefs()))
+                .infixString();
+    }
+
+    @Test
+    @DisplayName("Exact rules should remove identity operations and strength-reduce squares and " +
+            "division by powers of two, but keep rewrites that could change a value")
+    void testExactRules() throws Exception {
+        Simplifier exact = new Simplifier(Simplifier.Rules.EXACT, false);
+        assertEquals("x", simplified(exact, "x 1 * 1 * 1 /"));
+        assertEquals("x", simplified(exact, "1 x * 0 - -0 +"));
+        assertEquals("x", simplified(exact, "x 1 ^"));
+        assertEquals("(x ^ 0.0)", simplified(exact, "x 0 ^"));
+        assertEquals("1.0", simplified(exact, "2 3 + 0 ^"));
+        assertEquals("(x * x)", simplified(exact, "x 2 ^"));
+        assertEquals("(x * 0.25)", simplified(exact, "x 4 /"));
+        assertEquals("(x / 3.0)", simplified(exact, "x 3 /"));
+        assertEquals("(x + 0.0)", simplified(exact, "x 0 +"));
+        assertEquals("(x * 0.0)", simplified(exact, "x 0 *"));
+        assertEquals("(x ^ 3.0)", simplified(exact, "x 3 ^"));
+        assertEquals("(x ^ 0.5)", simplified(exact, "x 0.5 ^"));
+        assertEquals("((x + 1.0) ^ 2.0)", simplified(exact, "x 1 + 2 ^"));
+        assertEquals("((x + 1.0) + 2.0)", simplified(exact, "x 1 + 2 +"));
+        assertEquals("sqrt((x * x))", simplified(exact, "x 2 ^ 4 2 - 1 - * sqrt()"));
+    }
+
+    @Test
+    @DisplayName("Relaxed rules should also drop zeros, fold constants across chains, and expand " +
+            "small integer powers")
+    void testRelaxedRules() throws Exception {
+        Simplifier relaxed = new Simplifier(Simplifier.Rules.RELAXED, false);
+        assertEquals("x", simplified(relaxed, "x 0 + -0 -"));
+        assertEquals("1.0", simplified(relaxed, "x 0 ^"));
+        assertEquals("0.0", simplified(relaxed, "x y + 0 *"));
+        assertEquals("0.0", simplified(relaxed, "x y * x y * -"));
+        assertEquals("(x + 3.0)", simplified(relaxed, "x 1 + 2 +"));
+        assertEquals("((x + y) - 1.0)", simplified(relaxed, "1 x + y + 2 -"));
+        assertEquals("(5.0 - x)", simplified(relaxed, "2 x 1 - -  2 +"));
+        assertEquals("((x * y) * 6.0)", simplified(relaxed, "2 x * y * 3 *"));
+        assertEquals("((x / y) * 1.5)", simplified(relaxed, "3 x * y / 2 /"));
+        assertEquals("sqrt((x + 1.0))", simplified(relaxed, "x 1 + 0.5 ^"));
+        assertEquals("(x * (x * x))", simplified(relaxed, "x 3 ^"));
+        assertEquals("(((x * x) * (x * x)) * ((x * x) * (x * x)))",
+                simplified(relaxed, "x 8 ^"));
+        assertEquals("(1.0 / (x * (x * x)))", simplified(relaxed, "x -3 ^"));
+        assertEquals("pow3((x + 1.0))", simplified(relaxed, "x 1 + 3 ^"));
+        assertEquals("(1.0 / pow2((x + 1.0)))", simplified(relaxed, "x 1 + -2 ^"));
+        assertEquals("(1.0 / (x + 1.0))", simplified(relaxed, "x 1 + -1 ^"));
+        assertEquals("(x ^ 9.0)", simplified(relaxed, "x 9 ^"));
+    }
+
+    @Test
+    @DisplayName("Expanded powers should share their squares")
+    void testSharedSquares() {
+        Variable x = new Variable("x");
+        Simplifier relaxed = new Simplifier(Simplifier.Rules.RELAXED, false);
+        Operation power = (Operation) relaxed.simplify(
+                new Operation(Operator.POW, x, new Constant(4)));
+        assertSame(power.leftOperand(), power.rightOperand());
+    }
+
+    @Test
+    @DisplayName("Fusing should rewrite sums of products to FusedMultiplyAdd nodes, which " +
+            "print as the unfused tree and compile")
+    void testFused() throws Exception {
+        Simplifier fused = new Simplifier(Simplifier.Rules.EXACT, true);
+        Expression expr = fused.simplify(RpnParser.parse("a b * c + c a b * + -",
+                Map.of()));
+        assertEquals("(((a * b) + c) - ((a * b) + c))", expr.infixString());
+        Expression fma = ((Operation) expr).leftOperand();
+        assertInstanceOf(FusedMultiplyAdd.class, fma);
+        assertEquals(fma, ((Operation) expr).rightOperand());
+        assertEquals(2, fma.opCount());
+        assertEquals(Set.of("a", "b", "c"), fma.dependencies());
+        assertEquals("a b * c +", fma.postfixString());
+
+        Expression difference = fused.simplify(RpnParser.parse("a b * 1 -", Map.of()));
+        assertEquals("((a * b) + -1.0)", difference.infixString());
+
+        double a = 0.1;
+        double b = 10;
+        double c = -1;
+        VarTable vars = MapVarTable.of("a", a, "b", b);
+        vars.set("c", c);
+        assertEquals(Math.fma(a, b, c), fma.eval(vars));
+        assertNotEquals(a * b + c, fma.eval(vars));
+        CompiledExpression compiled = ExpressionCompiler.compile(fma);
+        assertTrue(compiled.getClass().isHidden());
+        assertEquals(Math.fma(a, b, c), compiled.eval(vars));
+        assertEquals(new Constant(Math.fma(a, b, c)), fma.optimize(vars));
+        assertSame(fma, fma.optimize(MapVarTable.of("x", 1)));
+    }
+
+    @Test
+    @DisplayName("optimize() should only fold constants, leaving other rewrites to Simplifier")
+    void testOptimize() throws Exception {
+        Expression expr = RpnParser.parse("x 1 * y 2 ^ + z 0 ^ /", Map.of());
+        assertSame(expr, expr.optimize(MapVarTable.empty()));
+        assertEquals("(((x * 1.0) + 9.0) / (z ^ 0.0))",
+                expr.optimize(MapVarTable.of("y", 3)).infixString());
+        assertEquals("(((x * 1.0) + 9.0) / 1.0)",
+                expr.optimize(MapVarTable.of("y", 3, "z", 7)).infixString());
+        assertEquals("(x + 9.0)", Simplifier.EXACT.simplify(
+                expr.optimize(MapVarTable.of("y", 3, "z", 7))).infixString());
+    }
+
+    /**
+     * Values for which exact rewrites are easiest to get wrong.
+     */
+    private static final double[] SPECIAL_VALUES = {0.0, -0.0, 1.0, -1.0, 2.0, 0.5, 3.0, -2.5,
+            1e-310, 1e300, -1e300, Double.POSITIVE_INFINITY, Double.NEGATIVE_INFINITY,
+            Double.NaN};
+
+    private static final Operator[] OPERATORS = {Operator.ADD, Operator.SUBTRACT,
+            Operator.MULTIPLY, Operator.DIVIDE, Operator.POW};
+
+    private static final UnaryFunction[] FUNCTIONS = {UnaryFunction.ABS, UnaryFunction.SQRT,
+            UnaryFunction.EXP, UnaryFunction.SIN};
+
+    /**
+     * Return a random expression of at most `depth` levels over the variables x and y, with
+     * constants drawn from `constants`, constant exponents drawn from `exponents`, operators drawn
+     * from `operators`, and functions only if `functions` is true.
+     */
+    private static Expression randomExpression(Random random, int depth, double[] constants,
+            double[] exponents, Operator[] operators, boolean functions) {
+        int choice = random.nextInt(depth == 0 ? 2 : 6);
+        if (choice == 0) {
+            return new Constant(constants[random.nextInt(constants.length)]);
+        }
+        if (choice == 1) {
+            return new Variable(random.nextBoolean() ? "x" : "y");
+        }
+        if (choice == 5 && functions) {
+            return new Application(FUNCTIONS[random.nextInt(FUNCTIONS.length)],
+                    randomExpression(random, depth - 1, constants, exponents, operators,
+                            functions));
+        }
+        Operator op = operators[random.nextInt(operators.length)];
+        Expression left = randomExpression(random, depth - 1, constants, exponents, operators,
+                functions);
+        Expression right = op == Operator.POW
+                ? new Constant(exponents[random.nextInt(exponents.length)])
+                : randomExpression(random, depth - 1, constants, exponents, operators,
+                        functions);
+        return new Operation(op, left, right);
+    }
+
+    @Test
+    @DisplayName("Expressions simplified with exact rules should evaluate to exactly the same " +
+            "values as the original, including NaN, infinities, and signed zeros")
+    void testExactProperty() throws UnboundVariableException {
+        Random random = new Random(2110);
+        Simplifier exact = new Simplifier(Simplifier.Rules.EXACT, false);
+        for (int i = 0; i < 2000; i++) {
+            Expression expr = randomExpression(random, 5, SPECIAL_VALUES, SPECIAL_VALUES,
+                    OPERATORS, true);
+            Expression simple = exact.simplify(expr);
+            assertTrue(simple.opCount() <= expr.opCount());
+            for (double x : SPECIAL_VALUES) {
+                for (double y : new double[]{random.nextGaussian(), -0.0, Double.NaN}) {
+                    VarTable vars = MapVarTable.of("x", x, "y", y);
+                    double expected = expr.eval(vars);
+                    double actual = simple.eval(vars);
+                    assertEquals(0, Double.compare(expected, actual), () -> expr.infixString()
+                            + " => " + simple.infixString() + " at x=" + x + ", y=" + y);
+                }
+            }
+        }
+    }
+
+    @Test
+    @DisplayName("The calculator's `optimize` command should apply exact or relaxed rules and " +
+            "fusing only when asked to, and reject unknown options")
+    void testOptimizeCommand() {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            System.setErr(new PrintStream(errors, true));
+            RpnCalc calc = new RpnCalc();
+            calc.doOptimize(new Scanner("x 2 ^ 1 *"));
+            calc.doInfix(new Scanner(""));
+            calc.doOptimize(new Scanner("--exact"));
+            calc.doInfix(new Scanner(""));
+            calc.doOptimize(new Scanner("x 1 + 3 ^ y 0 * +"));
+            calc.doInfix(new Scanner(""));
+            calc.doOptimize(new Scanner("--relaxed x 1 + 3 ^ y 0 * +"));
+            calc.doInfix(new Scanner(""));
+            calc.doSet(new Scanner("x 2"));
+            calc.doEval(new Scanner(""));
+            // a * b - 1 is 0 unless the multiplication is fused with the subtraction.
+            calc.doOptimize(new Scanner("a b * 1 -"));
+            calc.doSet(new Scanner("a " + (1 + 0x1p-30)));
+            calc.doSet(new Scanner("b " + (1 - 0x1p-30)));
+            calc.doEval(new Scanner(""));
+            calc.doOptimize(new Scanner("--fma c d * 1 -"));
+            calc.doSet(new Scanner("c " + (1 + 0x1p-30)));
+            calc.doSet(new Scanner("d " + (1 - 0x1p-30)));
+            calc.doEval(new Scanner(""));
+            calc.doOptimize(new Scanner("--bogus x"));
+            calc.doInfix(new Scanner(""));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        assertEquals("((x ^ 2.0) * 1.0)\n(x * x)\n(((x + 1.0) ^ 3.0) + (y * 0.0))\n"
+                        + "pow3((x + 1.0))\n27.0\n0.0\n"
+                        + (-0x1p-60) + "\n((c * d) + -1.0)\n",
+                printed.toString().replace(System.lineSeparator(), "\n"));
+        assertTrue(errors.toString().contains("Unknown option: --bogus"));
+    }
+
+    @Test
+    @DisplayName("Expressions simplified with relaxed rules and fusing should evaluate to within " +
+            "rounding of the original for well-conditioned expressions")
+    void testRelaxedProperty() throws UnboundVariableException {
+        // Sums and products of positive values are well-conditioned, so reordering their
+        // operations or fusing them only changes results by a few units in the last place.
+        double[] constants = {1.0, 2.0, 0.5, 3.0, 4.0, 0.25, 1.75, 6.0, 8.0};
+        double[] exponents = {0.0, 1.0, 2.0, 3.0, 0.5, 1.5, -1.0, -2.0, 5.0, 8.0};
+        Operator[] operators = {Operator.ADD, Operator.MULTIPLY, Operator.DIVIDE, Operator.POW};
+        Random random = new Random(2110);
+        Simplifier relaxed = new Simplifier(Simplifier.Rules.RELAXED, true);
+        for (int i = 0; i < 2000; i++) {
+            Expression expr = randomExpression(random, 5, constants, exponents, operators,
+                    false);
+            Expression simple = relaxed.simplify(expr);
+            for (int j = 0; j < 10; j++) {
+                double x = 0.5 + random.nextDouble();
+                double y = 0.5 + random.nextDouble();
+                VarTable vars = MapVarTable.of("x", x, "y", y);
+                double expected = expr.eval(vars);
+                double actual = simple.eval(vars);
+                if (!Double.isFinite(expected)) {
+                    // Relaxed rules assume that values are finite.
+                    continue;
+                }
+                assertEquals(expected, actual, 1e-12 * Math.abs(expected), () ->
+                        expr.infixString() + " => " + simple.infixString() + " at x=" + x
+                                + ", y=" + y);
+            }
+        }
+    }
+}
+
+class ExpressionMetadataTest {
+
+    @Test
+    @DisplayName("Nodes should report their variables, operation count, depth, and constness")
+    void testMetadata() throws Exception {
+        Expression expr = RpnParser.parse("x y * 2 + sqrt() x -", UnaryFunction.mathDefs());
+        assertEquals(Set.of("x", "y"), expr.dependencies());
+        assertEquals(Set.of("x", "y"), expr.variables().names());
+        assertEquals(4, expr.opCount());
+        assertEquals(4, expr.depth());
+        assertFalse(expr.isConstant());
+
+        Expression constant = RpnParser.parse("2 3 ^ 1 -", Map.of());
+        assertTrue(constant.isConstant());
+        assertSame(VarSet.EMPTY, constant.variables());
+        assertEquals(2, constant.depth());
+        assertEquals(0, new Variable("x").depth());
+
+        FusedMultiplyAdd fma = new FusedMultiplyAdd(new Variable("a"), new Constant(2),
+                RpnParser.parse("b c + d *", Map.of()));
+        assertEquals(3, fma.depth());
+        assertEquals(4, fma.opCount());
+        assertEquals(4, fma.variables().size());
+    }
+
+    @Test
+    @DisplayName("Operations whose operands have the same variables should share one VarSet")
+    void testSharedVariables() throws Exception {
+        Operation expr = (Operation) RpnParser.parse("x y + y x * /", Map.of());
+        Operation left = (Operation) expr.leftOperand();
+        assertSame(left.variables(), expr.variables());
+        assertSame(expr.variables().names(), expr.dependencies());
+    }
+
+    @Test
+    @DisplayName("A VarSet should hold any number of names, however far apart their ids are")
+    void testVarSet() {
+        VarSet set = VarSet.EMPTY;
+        Set<String> expected = new HashSet<>();
+        for (int i = 0; i < 500; i += 7) {
+            String name = "varSetTest" + i;
+            set = set.union(VarSet.of(name));
+            expected.add(name);
+        }
+        VarSet far = VarSet.of("varSetTestFar");
+        assertEquals(expected, set.names());
+        assertEquals(expected.size(), set.size());
+        assertTrue(set.contains("varSetTest14"));
+        assertFalse(set.contains("varSetTest15"));
+        assertFalse(set.contains("varSetTestFar"));
+        assertFalse(set.contains("neverSeenBefore"));
+
+        VarSet both = far.union(set);
+        assertEquals(expected.size() + 1, both.size());
+        assertTrue(both.contains("varSetTestFar"));
+        assertSame(both, both.union(far));
+        assertSame(both, set.union(both));
+        assertEquals(both, VarSet.copyOf(both.names()));
+        assertEquals("[]", VarSet.EMPTY.toString());
+    }
+}
@@ -2,7 +2,16 @@ package cs2110;
 
 import static org.junit.jupiter.api.Assertions.*;
 
+import java.io.ByteArrayOutputStream;
+import java.io.PrintStream;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Scanner;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Test;
 
@@ -167,3 +176,441 @@ class RpnParserTest {
         assertThrows(UndefinedFunctionException.class, () -> RpnParser.parse("1 foo()", Map.of()));
     }
 }
+
+class RpnLexerTest {
+
+    @Test
+    @DisplayName("The lexer should split tokens at any whitespace and classify them as " +
+            "Token.parse() does")
+    void testClassification() {
+        String[] tokens = {"+", "-", "*", "/", "^", "**", "1", "-2.5e3", "1f", "0x1p3", "NaN",
+                "Infinity", "sqrt()", "()", "f(x)", "x", "A1", "1e", ".", "-x"};
+        StringBuilder text = new StringBuilder("\t ");
+        for (String token : tokens) {
+            text.append(token).append(" \n ");
+        }
+
+        RpnLexer lexer = new RpnLexer(text, 0, text.length());
+        for (String expected : tokens) {
+            assertTrue(lexer.next());
+            assertEquals(expected, lexer.text());
+            Token token = Token.parse(expected);
+            switch (lexer.kind()) {
+                case NUMBER:
+                    assertInstanceOf(Token.Number.class, token, expected);
+                    assertEquals(((Token.Number) token).doubleValue(), lexer.number());
+                    break;
+                case OPERATOR:
+                    assertInstanceOf(Token.Operator.class, token, expected);
+                    assertSame(((Token.Operator) token).opValue(), lexer.operator());
+                    break;
+                case FUNCTION:
+                    assertInstanceOf(Token.Function.class, token, expected);
+                    assertEquals(((Token.Function) token).name(), lexer.name());
+                    break;
+                default:
+                    assertInstanceOf(Token.Variable.class, token, expected);
+                    assertEquals(expected, lexer.name());
+            }
+        }
+        assertFalse(lexer.next());
+        assertFalse(lexer.next());
+    }
+
+    @Test
+    @DisplayName("Parsing a range of a character sequence should parse only that range")
+    void testParseRange() throws IncompleteRpnException, UndefinedFunctionException {
+        StringBuilder text = new StringBuilder("=2 x * sqrt()|junk");
+        Expression expr = RpnParser.parse(text, 1, text.indexOf("|"), UnaryFunction.mathDefs());
+        assertEquals(RpnParser.parse("2 x * sqrt()", UnaryFunction.mathDefs()), expr);
+        assertThrows(IncompleteRpnException.class,
+                () -> RpnParser.parse(text, 1, 5, UnaryFunction.mathDefs()));
+    }
+
+    @Test
+    @DisplayName("The tokenizer should yield the same tokens as the lexer")
+    void testTokenizer() {
+        Iterator<Token> tokens = Token.tokenizer(" 1.5  y ^ cos() ").iterator();
+        assertEquals(1.5, ((Token.Number) tokens.next()).doubleValue());
+        assertEquals("y", ((Token.Variable) tokens.next()).value());
+        assertSame(Operator.POW, ((Token.Operator) tokens.next()).opValue());
+        assertEquals("cos", ((Token.Function) tokens.next()).name());
+        assertFalse(tokens.hasNext());
+        assertThrows(NoSuchElementException.class, tokens::next);
+    }
+}
+
+class UserFunctionTest {
+
+    /**
+     * Return the core math functions plus `functions`.
+     */
+    private static Map<String, UnaryFunction> defs(UnaryFunction... functions) {
+        Map<String, UnaryFunction> defs = new HashMap<>(UnaryFunction.mathDefs());
+        for (UnaryFunction function : functions) {
+            defs.put(function.name(), function);
+        }
+        return defs;
+    }
+
+    @Test
+    @DisplayName("A function defined by an expression should evaluate that expression with its " +
+            "argument bound to its parameter")
+    void testFromExpression() throws Exception {
+        Expression body = RpnParser.parse("z 2 ^ z sin() +", UnaryFunction.mathDefs());
+        UnaryFunction f = UnaryFunction.fromExpression("f", body, "z");
+        for (double x : new double[]{0, -1.5, 3, Double.NaN}) {
+            assertEquals(body.eval(MapVarTable.of("z", x)), f.apply(x));
+        }
+        UnaryFunction constant = UnaryFunction.fromExpression("c", new Constant(2), "z");
+        assertEquals(2.0, constant.apply(7));
+        assertThrows(IllegalArgumentException.class, () -> UnaryFunction.fromExpression("g",
+                RpnParser.parse("z y +", Map.of()), "z"));
+    }
+
+    @Test
+    @DisplayName("A compiled expression with at most one variable should evaluate from a scalar " +
+            "argument, whether or not it could be compiled to bytecode")
+    void testScalarEval() throws Exception {
+        UnaryFunction twice = new UnaryFunction("twice", x -> 2 * x);
+        Expression expr = RpnParser.parse("x x * x twice() + 1 -", defs(twice));
+        CompiledExpression compiled = ExpressionCompiler.compile(expr);
+        assertTrue(compiled.getClass().isHidden());
+        assertEquals(expr.eval(MapVarTable.of("x", 2.5)), compiled.eval(2.5));
+        assertEquals(4.0, ExpressionCompiler.compile(new Constant(4)).eval(1.0));
+
+        VarSlots slots = new VarSlots();
+        slots.add("unused");
+        // Too long to compile.
+        Expression huge = new Variable("x");
+        for (int i = 0; i < 15; i++) {
+            huge = new Operation(Operator.ADD, huge, huge);
+        }
+        CompiledExpression interpreted = ExpressionCompiler.compile(huge, slots);
+        assertFalse(interpreted.getClass().isHidden());
+        assertEquals(32768 * 1.5, interpreted.eval(1.5));
+    }
+
+    @Test
+    @DisplayName("Parsing with inlining should replace calls to small user functions with their " +
+            "bodies, unless that would evaluate a non-trivial argument more than once")
+    void testInline() throws Exception {
+        UnaryFunction sqr = UnaryFunction.fromExpression("sqr",
+                RpnParser.parse("z z *", Map.of()), "z");
+        UnaryFunction inc = UnaryFunction.fromExpression("inc",
+                RpnParser.parse("z 1 +", Map.of()), "z");
+        Map<String, UnaryFunction> defs = defs(sqr, inc);
+        UnaryFunction quad = UnaryFunction.fromExpression("quad",
+                RpnParser.parse("z sqr() inc() sqr()", defs, true), "z");
+        defs.put("quad", quad);
+
+        assertEquals("((x * x) + 1.0)", RpnParser.parse("x sqr() inc()", defs, true)
+                .infixString());
+        assertEquals("(sin((x * y)) + 1.0)", RpnParser.parse("x y * sin() inc()", defs, true)
+                .infixString());
+        assertEquals("sqr((x + 1.0))", RpnParser.parse("x inc() sqr()", defs, true)
+                .infixString());
+        assertEquals("quad(x)", RpnParser.parse("x quad()", defs, false).infixString());
+        // The body of quad() could not inline its outer call to sqr().
+        assertEquals("sqr(((x * x) + 1.0))", RpnParser.parse("x quad()", defs, true)
+                .infixString());
+
+        Expression called = RpnParser.parse("x inc() y sqr() *", defs);
+        Expression inlined = UnaryFunction.inlineCalls(called);
+        assertEquals("((x + 1.0) * (y * y))", inlined.infixString());
+        VarTable vars = MapVarTable.of("x", 1.25, "y", -3);
+        assertEquals(called.eval(vars), inlined.eval(vars));
+        Expression builtins = RpnParser.parse("x sin() 2 *", defs);
+        assertSame(builtins, UnaryFunction.inlineCalls(builtins));
+    }
+
+    @Test
+    @DisplayName("Calls to functions that ignore their parameter should only be inlined if " +
+            "their argument has no variables, so that unbound variables are still reported")
+    void testInlineIgnoredArgument() throws Exception {
+        UnaryFunction k = UnaryFunction.fromExpression("k", new Constant(5), "x");
+        Map<String, UnaryFunction> defs = defs(k);
+        assertEquals("5.0", RpnParser.parse("2 3 * k()", defs, true).infixString());
+        assertEquals("k((x * y))", RpnParser.parse("x y * k()", defs, true).infixString());
+        assertEquals("k(y)", UnaryFunction.inlineCalls(RpnParser.parse("y k()", defs))
+                .infixString());
+
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            System.setErr(new PrintStream(errors, true));
+            RpnCalc calc = new RpnCalc();
+            calc.doDef(new Scanner("k x 5"));
+            calc.doTabulate(new Scanner("x 0 1 3 x y * k()"));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        assertEquals("", printed.toString());
+        assertTrue(errors.toString().contains("without first setting y"), errors.toString());
+    }
+
+    @Test
+    @DisplayName("Functions with large bodies should not be inlined")
+    void testInlineLimit() throws Exception {
+        StringBuilder body = new StringBuilder("z");
+        for (int i = 0; i <= UnaryFunction.MAX_INLINED_OPS; i++) {
+            body.append(" ").append(i).append(" +");
+        }
+        UnaryFunction big = UnaryFunction.fromExpression("big",
+                RpnParser.parse(body.toString(), Map.of()), "z");
+        Expression expr = RpnParser.parse("x big()", defs(big), true);
+        assertInstanceOf(Application.class, expr);
+    }
+
+    @Test
+    @DisplayName("The def command should define a function usable in later expressions, and " +
+            "reject bodies that depend on other variables")
+    void testDefCommand() {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            System.setErr(new PrintStream(errors, true));
+            RpnCalc calc = new RpnCalc();
+            calc.doDef(new Scanner("sqr z z 2 ^"));
+            calc.doEval(new Scanner("3 sqr()"));
+            calc.doDef(new Scanner("sqr z z 3 ^"));
+            calc.doDef(new Scanner("bad z z y +"));
+            calc.doEval(new Scanner("2 bad()"));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        assertEquals("9.0", printed.toString().strip());
+        assertTrue(errors.toString().contains("already defined"));
+        assertTrue(errors.toString().contains("undefined function bad"));
+    }
+}
+
+class MemoCacheTest {
+
+    @Test
+    @DisplayName("A cache should apply its function once per cached argument and count hits " +
+            "and misses")
+    void testHitsAndMisses() {
+        MemoCache cache = new MemoCache(100);
+        AtomicInteger calls = new AtomicInteger();
+        for (int round = 0; round < 3; round++) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(Math.sqrt(i), cache.apply(i, x -> {
+                    calls.incrementAndGet();
+                    return Math.sqrt(x);
+                }));
+            }
+        }
+        assertEquals(10, calls.get());
+        assertEquals(10, cache.misses());
+        assertEquals(20, cache.hits());
+        assertEquals(10, cache.size());
+        assertEquals(2.0 / 3, cache.hitRate(), 1e-12);
+    }
+
+    @Test
+    @DisplayName("Arguments should be compared by their bits")
+    void testBits() {
+        MemoCache cache = new MemoCache(10);
+        assertEquals(Double.POSITIVE_INFINITY, cache.apply(0.0, x -> 1 / x));
+        assertEquals(Double.NEGATIVE_INFINITY, cache.apply(-0.0, x -> 1 / x));
+        assertEquals(-1.0, cache.apply(Double.NaN, x -> -1.0));
+        assertEquals(-1.0, cache.apply(0.0 / 0.0, x -> -2.0));
+        assertEquals(1, cache.hits());
+    }
+
+    @Test
+    @DisplayName("A full cache should evict an entry that was not hit since the hand last " +
+            "passed it")
+    void testClock() {
+        MemoCache cache = new MemoCache(8);
+        assertEquals(8, cache.capacity());
+        for (int i = 0; i < 8; i++) {
+            cache.apply(i, x -> x);
+        }
+        cache.apply(0, x -> x);
+        cache.apply(8, x -> x);
+        assertEquals(1, cache.evictions());
+        assertEquals(8, cache.size());
+
+        long misses = cache.misses();
+        cache.apply(0, x -> x);
+        assertEquals(misses, cache.misses());
+        cache.apply(1, x -> x);
+        assertEquals(misses + 1, cache.misses());
+    }
+
+    @Test
+    @DisplayName("A cache should stay within its capacity and find every entry it holds " +
+            "under heavy eviction")
+    void testChurn() {
+        MemoCache cache = new MemoCache(300);
+        Random rng = new Random(5);
+        for (int i = 0; i < 100_000; i++) {
+            double x = rng.nextInt(1000) * 0.25;
+            assertEquals(x * 3, cache.apply(x, y -> y * 3));
+            // An argument just applied is always in the cache.
+            long hits = cache.hits();
+            assertEquals(x * 3, cache.apply(x, y -> Double.NaN));
+            assertEquals(hits + 1, cache.hits());
+        }
+        assertTrue(cache.size() <= cache.capacity());
+        assertEquals(cache.misses() - cache.size(), cache.evictions());
+    }
+
+    @Test
+    @DisplayName("A cache shared by several threads should return correct values and count " +
+            "every call")
+    void testConcurrent() throws InterruptedException {
+        MemoCache cache = new MemoCache(512);
+        int threadCount = 4;
+        int callsPerThread = 50_000;
+        AtomicInteger wrong = new AtomicInteger();
+        Thread[] threads = new Thread[threadCount];
+        for (int t = 0; t < threadCount; t++) {
+            long seed = t;
+            threads[t] = new Thread(() -> {
+                Random rng = new Random(seed);
+                for (int i = 0; i < callsPerThread; i++) {
+                    double x = rng.nextInt(800);
+                    if (cache.apply(x, Math::cbrt) != Math.cbrt(x)) {
+                        wrong.incrementAndGet();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(0, wrong.get());
+        assertEquals((long) threadCount * callsPerThread, cache.hits() + cache.misses());
+        assertTrue(cache.size() <= cache.capacity());
+    }
+
+    @Test
+    @DisplayName("def --memo should register a memoized function that is not inlined and " +
+            "whose statistics are printed by defs")
+    void testDefMemo() throws IncompleteRpnException, UndefinedFunctionException {
+        UnaryFunction sqr = UnaryFunction.fromExpression("sqr",
+                RpnParser.parse("z z *", Map.of()), "z").memoized(16);
+        Expression call = RpnParser.parse("y sqr()", Map.of("sqr", sqr), true);
+        assertInstanceOf(Application.class, call);
+
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            System.setErr(new PrintStream(errors, true));
+            RpnCalc calc = new RpnCalc();
+            calc.doDef(new Scanner("--memo 64 sqr z z z *"));
+            calc.doEval(new Scanner("3 sqr() 3 sqr() +"));
+            calc.doDef(new Scanner("--memo cube z z z z * *"));
+            calc.doDef(new Scanner("--memo -1 bad z z"));
+            calc.doDefs(new Scanner(""));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        List<String> lines = printed.toString().lines().toList();
+        assertEquals("18.0", lines.get(0));
+        assertTrue(lines.contains("* sqr() memoized: 1 of 64 entries, 1 hits, 1 misses"
+                + " (50.0% hit rate), 0 evictions"), lines.toString());
+        assertTrue(lines.contains("* cube() memoized: 0 of " + MemoCache.DEFAULT_CAPACITY
+                + " entries, 0 hits, 0 misses (0.0% hit rate), 0 evictions"), lines.toString());
+        assertTrue(errors.toString().contains("must be positive"));
+    }
+}
+
+class InterpolationTableTest {
+
+    @Test
+    @DisplayName("Every kind of table should meet its bound throughout its domain, be exact at " +
+            "its ends, and need fewer nodes with cubic interpolation")
+    void testBound() {
+        Random rng = new Random(8);
+        for (InterpolationTable.Nodes nodes : InterpolationTable.Nodes.values()) {
+            int[] sizes = new int[2];
+            for (InterpolationTable.Method method : InterpolationTable.Method.values()) {
+                InterpolationTable table = InterpolationTable.build(x -> Math.sin(x) * Math.exp(x),
+                        -1, 3, 1e-7, nodes, method);
+                assertTrue(table.maxError() <= 1e-7);
+                assertEquals(Math.sin(-1) * Math.exp(-1), table.eval(-1));
+                assertEquals(Math.sin(3) * Math.exp(3), table.eval(3));
+                for (int i = 0; i < 10_000; i++) {
+                    double x = -1 + 4 * rng.nextDouble();
+                    assertEquals(Math.sin(x) * Math.exp(x), table.eval(x), 2e-7,
+                            nodes + " " + method + " at " + x);
+                }
+                sizes[method.ordinal()] = table.size();
+            }
+            assertTrue(sizes[InterpolationTable.Method.CUBIC.ordinal()]
+                    < sizes[InterpolationTable.Method.LINEAR.ordinal()], nodes.toString());
+        }
+    }
+
+    @Test
+    @DisplayName("Arguments outside the domain, and NaN, should be evaluated exactly")
+    void testOutside() {
+        InterpolationTable table = InterpolationTable.build(Math::cbrt, 1, 2, 1e-3,
+                InterpolationTable.Nodes.UNIFORM, InterpolationTable.Method.LINEAR);
+        assertEquals(Math.cbrt(0.5), table.eval(0.5));
+        assertEquals(Math.cbrt(7), table.eval(7));
+        assertTrue(Double.isNaN(table.eval(Double.NaN)));
+    }
+
+    @Test
+    @DisplayName("A function that is not finite on the domain, or a bound that cannot be met, " +
+            "should be rejected")
+    void testRejected() {
+        assertThrows(IllegalArgumentException.class, () -> InterpolationTable.build(Math::log,
+                0, 1, 1e-3, InterpolationTable.Nodes.CHEBYSHEV,
+                InterpolationTable.Method.CUBIC));
+        assertThrows(IllegalArgumentException.class, () -> InterpolationTable.build(Math::signum,
+                -1, 1, 1e-3, InterpolationTable.Nodes.UNIFORM,
+                InterpolationTable.Method.LINEAR));
+    }
+
+    @Test
+    @DisplayName("def --table should register an interpolated function that is listed by defs")
+    void testDefTable() {
+        PrintStream out = System.out;
+        PrintStream err = System.err;
+        ByteArrayOutputStream printed = new ByteArrayOutputStream();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        try {
+            System.setOut(new PrintStream(printed, true));
+            System.setErr(new PrintStream(errors, true));
+            RpnCalc calc = new RpnCalc();
+            calc.doDef(new Scanner("--table 0 2 1e-9 --chebyshev --cubic g x x exp() x sin() *"));
+            calc.doEval(new Scanner("1 g()"));
+            calc.doEval(new Scanner("5 g()"));
+            calc.doDef(new Scanner("--table 2 1 0.1 h x x"));
+            calc.doDef(new Scanner("--table 0 1 0.1 --memo h x x"));
+            calc.doDef(new Scanner("--table 0 1 0.1 h x x log()"));
+            calc.doDefs(new Scanner(""));
+        } finally {
+            System.setOut(out);
+            System.setErr(err);
+        }
+        List<String> lines = printed.toString().lines().toList();
+        assertEquals(Math.exp(1) * Math.sin(1), Double.parseDouble(lines.get(0)), 1e-9);
+        assertEquals(String.valueOf(Math.exp(5) * Math.sin(5)), lines.get(1));
+        assertTrue(lines.stream().anyMatch(line -> line.startsWith("* g() interpolated on [0.0,"
+                + " 2.0] with ")), lines.toString());
+        assertTrue(lines.stream().noneMatch(line -> line.startsWith("* h()")));
+        assertTrue(errors.toString().contains("finite <lo> < <hi>"));
+        assertTrue(errors.toString().contains("cannot be combined"));
+        assertTrue(errors.toString().contains("Cannot interpolate"));
+    }
+}
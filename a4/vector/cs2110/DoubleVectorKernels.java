@@ -0,0 +1,181 @@
+package cs2110;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The loops of `VectorKernels` written with the Vector API (`jdk.incubator.vector`), which
+ * compiles each lanewise operation to SIMD instructions of the processor's widest supported
+ * shape, and provides lanewise `exp()`, `log()`, `sin()`, `cos()`, and `tan()` that C2 cannot
+ * derive from a scalar loop.  Lanes left over after the last full vector are computed one at a
+ * time.
+ * <p>
+ * This class lives in the optional "vector" source folder, which is compiled separately with
+ * `--add-modules jdk.incubator.vector` (see README.md) so that the rest of the project builds
+ * without the incubator module.  `VectorKernels` loads it by reflection, and only if the module
+ * was resolved at startup.
+ */
+final class DoubleVectorKernels implements VectorKernels.SimdLoops {
+
+    /**
+     * The vector shape operations are carried out in.
+     */
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    /**
+     * Create the loops.  Called by `VectorKernels` through reflection.
+     */
+    DoubleVectorKernels() {
+    }
+
+    /**
+     * Return the number of doubles in each vector.
+     */
+    @Override
+    public int lanes() {
+        return SPECIES.length();
+    }
+
+    /**
+     * Replace `a[offset + i]` with `a[offset + i] op s` for `0 <= i < length`.  Requires
+     * `VectorKernels.isArithmetic(op)`.
+     */
+    @Override
+    public void operateConstant(Operator op, double[] a, int offset, double s, int length) {
+        // Each call passes a constant lanewise operator, which the JIT compiler needs to see to
+        // compile the loop to SIMD instructions.
+        if (op == Operator.ADD) {
+            operateConstant(VectorOperators.ADD, op, a, offset, s, length);
+        } else if (op == Operator.SUBTRACT) {
+            operateConstant(VectorOperators.SUB, op, a, offset, s, length);
+        } else if (op == Operator.MULTIPLY) {
+            operateConstant(VectorOperators.MUL, op, a, offset, s, length);
+        } else {
+            assert op == Operator.DIVIDE;
+            operateConstant(VectorOperators.DIV, op, a, offset, s, length);
+        }
+    }
+
+    private static void operateConstant(VectorOperators.Binary binary, Operator op, double[] a,
+            int offset, double s, int length) {
+        int end = offset + length;
+        int i = offset;
+        for (int bound = offset + SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(binary, s).intoArray(a, i);
+        }
+        for (; i < end; i++) {
+            a[i] = op.operate(a[i], s);
+        }
+    }
+
+    /**
+     * Replace `a[offset + i]` with `s op a[offset + i]` for `0 <= i < length`.  Requires
+     * `VectorKernels.isArithmetic(op)`.
+     */
+    @Override
+    public void constantOperate(Operator op, double s, double[] a, int offset, int length) {
+        if (op == Operator.ADD) {
+            constantOperate(VectorOperators.ADD, op, s, a, offset, length);
+        } else if (op == Operator.SUBTRACT) {
+            constantOperate(VectorOperators.SUB, op, s, a, offset, length);
+        } else if (op == Operator.MULTIPLY) {
+            constantOperate(VectorOperators.MUL, op, s, a, offset, length);
+        } else {
+            assert op == Operator.DIVIDE;
+            constantOperate(VectorOperators.DIV, op, s, a, offset, length);
+        }
+    }
+
+    private static void constantOperate(VectorOperators.Binary binary, Operator op, double s,
+            double[] a, int offset, int length) {
+        DoubleVector broadcast = DoubleVector.broadcast(SPECIES, s);
+        int end = offset + length;
+        int i = offset;
+        for (int bound = offset + SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            broadcast.lanewise(binary, DoubleVector.fromArray(SPECIES, a, i)).intoArray(a, i);
+        }
+        for (; i < end; i++) {
+            a[i] = op.operate(s, a[i]);
+        }
+    }
+
+    /**
+     * Replace `a[aOffset + i]` with `a[aOffset + i] op b[bOffset + i]` for `0 <= i < length`.
+     * Requires `VectorKernels.isArithmetic(op)`.
+     */
+    @Override
+    public void operate(Operator op, double[] a, int aOffset, double[] b, int bOffset,
+            int length) {
+        if (op == Operator.ADD) {
+            operate(VectorOperators.ADD, op, a, aOffset, b, bOffset, length);
+        } else if (op == Operator.SUBTRACT) {
+            operate(VectorOperators.SUB, op, a, aOffset, b, bOffset, length);
+        } else if (op == Operator.MULTIPLY) {
+            operate(VectorOperators.MUL, op, a, aOffset, b, bOffset, length);
+        } else {
+            assert op == Operator.DIVIDE;
+            operate(VectorOperators.DIV, op, a, aOffset, b, bOffset, length);
+        }
+    }
+
+    private static void operate(VectorOperators.Binary binary, Operator op, double[] a,
+            int aOffset, double[] b, int bOffset, int length) {
+        int i = 0;
+        for (int bound = SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, aOffset + i)
+                    .lanewise(binary, DoubleVector.fromArray(SPECIES, b, bOffset + i))
+                    .intoArray(a, aOffset + i);
+        }
+        for (; i < length; i++) {
+            a[aOffset + i] = op.operate(a[aOffset + i], b[bOffset + i]);
+        }
+    }
+
+    /**
+     * Return whether `f` has a lanewise equivalent: true only for the functions of
+     * `UnaryFunction.mathDefs()` (which use `java.lang.Math`).
+     */
+    @Override
+    public boolean isLanewise(UnaryFunction f) {
+        return f == UnaryFunction.ABS || f == UnaryFunction.SQRT || f == UnaryFunction.EXP
+                || f == UnaryFunction.LOG || f == UnaryFunction.SIN || f == UnaryFunction.COS
+                || f == UnaryFunction.TAN;
+    }
+
+    /**
+     * Replace `a[offset + i]` with `f(a[offset + i])` for `0 <= i < length`.  Requires
+     * `isLanewise(f)`.
+     */
+    @Override
+    public void apply(UnaryFunction f, double[] a, int offset, int length) {
+        assert isLanewise(f);
+        if (f == UnaryFunction.ABS) {
+            apply(VectorOperators.ABS, f, a, offset, length);
+        } else if (f == UnaryFunction.SQRT) {
+            apply(VectorOperators.SQRT, f, a, offset, length);
+        } else if (f == UnaryFunction.EXP) {
+            apply(VectorOperators.EXP, f, a, offset, length);
+        } else if (f == UnaryFunction.LOG) {
+            apply(VectorOperators.LOG, f, a, offset, length);
+        } else if (f == UnaryFunction.SIN) {
+            apply(VectorOperators.SIN, f, a, offset, length);
+        } else if (f == UnaryFunction.COS) {
+            apply(VectorOperators.COS, f, a, offset, length);
+        } else {
+            apply(VectorOperators.TAN, f, a, offset, length);
+        }
+    }
+
+    private static void apply(VectorOperators.Unary unary, UnaryFunction f, double[] a,
+            int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        for (int bound = offset + SPECIES.loopBound(length); i < bound; i += SPECIES.length()) {
+            DoubleVector.fromArray(SPECIES, a, i).lanewise(unary).intoArray(a, i);
+        }
+        for (; i < end; i++) {
+            a[i] = f.apply(a[i]);
+        }
+    }
+}